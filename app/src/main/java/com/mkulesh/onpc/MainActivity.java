@@ -18,8 +18,10 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
+import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.util.Log;
 import android.view.KeyEvent;
 import android.view.Menu;
 import android.view.MenuItem;
@@ -30,12 +32,15 @@ import android.widget.Toast;
 import com.google.android.material.tabs.TabLayout;
 import com.mkulesh.onpc.config.AppLocale;
 import com.mkulesh.onpc.config.CfgAppSettings;
+import com.mkulesh.onpc.config.CfgDiscoveredDevices;
 import com.mkulesh.onpc.config.Configuration;
 import com.mkulesh.onpc.fragments.BaseFragment;
 import com.mkulesh.onpc.fragments.Dialogs;
 import com.mkulesh.onpc.iscp.ConnectionIf;
 import com.mkulesh.onpc.iscp.ConnectionState;
 import com.mkulesh.onpc.iscp.DeviceList;
+import com.mkulesh.onpc.iscp.ProtocolRecorder;
+import com.mkulesh.onpc.iscp.SessionConnector;
 import com.mkulesh.onpc.iscp.State;
 import com.mkulesh.onpc.iscp.StateHolder;
 import com.mkulesh.onpc.iscp.StateManager;
@@ -46,11 +51,14 @@ import com.mkulesh.onpc.iscp.scripts.AutoPower;
 import com.mkulesh.onpc.iscp.scripts.MessageScript;
 import com.mkulesh.onpc.iscp.scripts.MessageScriptIf;
 import com.mkulesh.onpc.iscp.scripts.RequestListeningMode;
+import com.mkulesh.onpc.utils.AndroidUtils;
 import com.mkulesh.onpc.utils.Logging;
 import com.mkulesh.onpc.utils.Utils;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -60,6 +68,7 @@ import androidx.appcompat.app.ActionBar;
 import androidx.appcompat.app.ActionBarDrawerToggle;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.Toolbar;
+import androidx.core.content.FileProvider;
 import androidx.viewpager.widget.ViewPager;
 
 public class MainActivity extends AppCompatActivity implements StateManager.StateListener, DeviceList.BackgroundEventListener
@@ -74,7 +83,7 @@ public class MainActivity extends AppCompatActivity implements StateManager.Stat
     private ViewPager viewPager;
     private Menu mainMenu;
     private ConnectionState connectionState;
-    private final StateHolder stateHolder = new StateHolder();
+    private final StateHolder stateHolder = new StateHolder(this);
     private DeviceList deviceList;
     private Toast exitToast = null;
     private MainNavigationDrawer navigationDrawer;
@@ -82,6 +91,12 @@ public class MainActivity extends AppCompatActivity implements StateManager.Stat
     private String versionName = null;
     private int startRequestCode;
     private final AtomicBoolean connectToAnyDevice = new AtomicBoolean(false);
+    // Identifier of the stored device if it is not reachable on the stored host
+    private String expectedIdentifier = null;
+    // Start time of the activity used to measure the time until the first connection
+    private long startTime = 0;
+    // The connection that is currently established in background, if any
+    private SessionConnector pendingSession = null;
     public int orientation;
     private String intentData = null;
     private MessageScript messageScript = null;
@@ -94,9 +109,16 @@ public class MainActivity extends AppCompatActivity implements StateManager.Stat
     @Override
     protected void onCreate(Bundle savedInstanceState)
     {
+        startTime = System.currentTimeMillis();
         configuration = new Configuration(this);
         setTheme(configuration.appSettings.getTheme(this, CfgAppSettings.ThemeType.MAIN_THEME));
+        Logging.setOutput(line -> Log.d("onpc", line));
+        // Release builds do not log unless the developer mode is switched on
+        Logging.setLevel(BuildConfig.DEBUG || configuration.isDeveloperMode() ?
+                Logging.Level.INFO : Logging.Level.NONE);
         Logging.saveLogging = Logging.isEnabled() && configuration.isDeveloperMode();
+        Logging.setTraceEnabled(configuration.isProtocolTrace());
+        ProtocolRecorder.setEnabled(getCacheDir(), configuration.isProtocolCapture());
 
         // Note that due to onActivityResult, the activity will be started twice
         // after the Preference activity is closed
@@ -111,7 +133,7 @@ public class MainActivity extends AppCompatActivity implements StateManager.Stat
         {
             final PackageInfo pi = getPackageManager().getPackageInfo(getPackageName(), 0);
             versionName = "v. " + pi.versionName;
-            Logging.info(this, "Starting application: version " + versionName + ", orientation " + orientation);
+            Logging.info(this, "Starting application: version {}, orientation {}", versionName, orientation);
         }
         catch (PackageManager.NameNotFoundException e)
         {
@@ -121,7 +143,9 @@ public class MainActivity extends AppCompatActivity implements StateManager.Stat
 
         connectionState = new ConnectionState(this);
         deviceList = new DeviceList(this, connectionState, this,
-                configuration.favoriteConnections.getDevices());
+                configuration.favoriteConnections.getDevices(),
+                configuration.discoveredDevices,
+                configuration.isSubnetSweep() ? configuration.getSubnetSweepNetworks() : null);
 
         // Initially reset zone state
         configuration.initActiveZone(ReceiverInformationMsg.DEFAULT_ACTIVE_ZONE);
@@ -135,7 +159,7 @@ public class MainActivity extends AppCompatActivity implements StateManager.Stat
     public void onConfigurationChanged(android.content.res.Configuration newConfig)
     {
         orientation = newConfig.orientation;
-        Logging.info(this, "device orientation change: " + orientation);
+        Logging.info(this, "device orientation change: {}", orientation);
         super.onConfigurationChanged(newConfig);
 
         // restore active page
@@ -197,14 +221,14 @@ public class MainActivity extends AppCompatActivity implements StateManager.Stat
                 navigationDrawer.updateNavigationContent(stateHolder.getState());
             }
         };
-        Utils.setDrawerListener(navigationDrawer.getDrawerLayout(), mDrawerToggle);
+        AndroidUtils.setDrawerListener(navigationDrawer.getDrawerLayout(), mDrawerToggle);
     }
 
     @Override
     protected void attachBaseContext(Context newBase)
     {
         final Locale prefLocale = AppLocale.ContextWrapper.getPreferredLocale(newBase);
-        Logging.info(this, "Application locale: " + prefLocale);
+        Logging.info(this, "Application locale: {}", prefLocale);
         super.attachBaseContext(AppLocale.ContextWrapper.wrap(newBase, prefLocale));
     }
 
@@ -237,7 +261,7 @@ public class MainActivity extends AppCompatActivity implements StateManager.Stat
         }
         catch (Exception e)
         {
-            Logging.info(this, "cannot save state: " + e.getLocalizedMessage());
+            Logging.info(this, "cannot save state: {}", e.getLocalizedMessage());
         }
     }
 
@@ -254,7 +278,7 @@ public class MainActivity extends AppCompatActivity implements StateManager.Stat
         }
         catch (Exception e)
         {
-            Logging.info(this, "cannot restore state: " + e.getLocalizedMessage());
+            Logging.info(this, "cannot restore state: {}", e.getLocalizedMessage());
         }
     }
 
@@ -271,7 +295,7 @@ public class MainActivity extends AppCompatActivity implements StateManager.Stat
         for (int i = 0; i < mainMenu.size(); i++)
         {
             final MenuItem m = mainMenu.getItem(i);
-            Utils.updateMenuIconColor(this, m);
+            AndroidUtils.updateMenuIconColor(this, m);
             if (m.getItemId() == R.id.menu_receiver_information)
             {
                 m.setVisible(configuration.isDeveloperMode());
@@ -280,6 +304,10 @@ public class MainActivity extends AppCompatActivity implements StateManager.Stat
             {
                 m.setVisible(Logging.saveLogging);
             }
+            if (m.getItemId() == R.id.menu_export_capture)
+            {
+                m.setVisible(ProtocolRecorder.isActive());
+            }
         }
         updateToolbar(stateHolder.getState());
         return true;
@@ -295,7 +323,7 @@ public class MainActivity extends AppCompatActivity implements StateManager.Stat
             return true;
         }
 
-        Logging.info(this, "Selected main menu: " + menuItem.getTitle());
+        Logging.info(this, "Selected main menu: {}", menuItem.getTitle());
         switch (menuItem.getItemId())
         {
         case R.id.menu_power_standby:
@@ -318,11 +346,37 @@ public class MainActivity extends AppCompatActivity implements StateManager.Stat
             dl.showXmlDialog(R.mipmap.ic_launcher, R.string.menu_latest_logging, Logging.getLatestLogging());
             return true;
         }
+        case R.id.menu_export_capture:
+            exportCapture();
+            return true;
         default:
             return super.onOptionsItemSelected(menuItem);
         }
     }
 
+    private void exportCapture()
+    {
+        final File f = ProtocolRecorder.export(getCacheDir());
+        if (f == null)
+        {
+            Toast.makeText(this, R.string.menu_export_capture_failed, Toast.LENGTH_SHORT).show();
+            return;
+        }
+        try
+        {
+            final Uri uri = FileProvider.getUriForFile(this, getPackageName() + ".fileprovider", f);
+            final Intent intent = new Intent(Intent.ACTION_SEND);
+            intent.setType("application/octet-stream");
+            intent.putExtra(Intent.EXTRA_STREAM, uri);
+            intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+            startActivity(Intent.createChooser(intent, getResources().getString(R.string.menu_export_capture)));
+        }
+        catch (Exception e)
+        {
+            Logging.info(this, "can not share protocol capture: {}", e.getLocalizedMessage());
+        }
+    }
+
     private void powerOnOff()
     {
         final State state = getStateManager().getState();
@@ -355,7 +409,7 @@ public class MainActivity extends AppCompatActivity implements StateManager.Stat
         {
             finish();
         }
-        else if (Utils.isToastVisible(exitToast))
+        else if (AndroidUtils.isToastVisible(exitToast))
         {
             exitToast.cancel();
             exitToast = null;
@@ -408,11 +462,21 @@ public class MainActivity extends AppCompatActivity implements StateManager.Stat
 
     public void connectToDevice(BroadcastResponseMsg response)
     {
-        if (connectToDevice(response.getHost(), response.getPort(), false))
+        connectToDevice(response, false);
+    }
+
+    /**
+     * Procedure connects to the given discovered device and stores it as the current device.
+     * If connectToAnyInErrorCase is set and the device is not reachable, the discovery connects
+     * to the device with the same identifier, if the identifier is known.
+     */
+    private void connectToDevice(BroadcastResponseMsg response, final boolean connectToAnyInErrorCase)
+    {
+        connectToDevice(response.getHost(), response.getPort(), connectToAnyInErrorCase, () ->
         {
             configuration.saveDevice(response.getHost(), response.getPort());
             updateTabs();
-        }
+        });
     }
 
     private void updateTabs()
@@ -431,8 +495,15 @@ public class MainActivity extends AppCompatActivity implements StateManager.Stat
         }
     }
 
-    public boolean connectToDevice(final String device, final int port, final boolean connectToAnyInErrorCase)
+    /**
+     * Procedure connects to the given device. A new connection is established asynchronously:
+     * the given callback is called in the GUI thread once the device is connected.
+     */
+    public void connectToDevice(final String device, final int port, final boolean connectToAnyInErrorCase,
+                                @Nullable final Runnable onConnected)
     {
+        final long requestTime = System.currentTimeMillis();
+
         // Parse and use input intent
         AutoPower.AutoPowerMode powerMode = null;
         if (configuration.isAutoPower())
@@ -450,73 +521,201 @@ public class MainActivity extends AppCompatActivity implements StateManager.Stat
 
         intentData = null;
 
-        stateHolder.release(false, "reconnect");
-        stateHolder.waitForRelease();
-        onStateChanged(stateHolder.getState(), null);
         int zone = configuration.getZone();
-        try
+        if (messageScript == null && powerMode != AutoPower.AutoPowerMode.ALL_STANDBY &&
+                stateHolder.activate(device, port, zone))
+        {
+            // The device is still connected in background: no reconnect is necessary
+            final State s = stateHolder.getState();
+            if (powerMode == AutoPower.AutoPowerMode.POWER_ON && !s.isOn())
+            {
+                getStateManager().sendMessage(new PowerStatusMsg(s.getActiveZone(), PowerStatusMsg.PowerStatus.ON));
+            }
+            updateConfiguration(s);
+            onStateChanged(s, null);
+            logConnectTime(device, port, requestTime);
+            if (onConnected != null)
+            {
+                onConnected.run();
+            }
+            return;
+        }
+
+        stateHolder.detachForeground();
+        onStateChanged(stateHolder.getState(), null);
+
+        final ArrayList<MessageScriptIf> messageScripts = new ArrayList<>();
+        if (powerMode != null)
+        {
+            messageScripts.add(new AutoPower(powerMode));
+        }
+        messageScripts.add(new RequestListeningMode());
+        if (messageScript != null)
         {
-            final ArrayList<MessageScriptIf> messageScripts = new ArrayList<>();
-            if (powerMode != null)
+            messageScripts.add(messageScript);
+            zone = messageScript.getZone();
+            // Be sure that messageScript.tab contains a value from CfgAppSettings.Tabs enum.
+            // If not, the app will crash here
+            if (messageScript.tab != null)
             {
-                messageScripts.add(new AutoPower(powerMode));
+                try
+                {
+                    setOpenedTab(CfgAppSettings.Tabs.valueOf(messageScript.tab.toUpperCase()));
+                }
+                catch (Exception ex)
+                {
+                    // nothing to do
+                }
             }
-            messageScripts.add(new RequestListeningMode());
-            if (messageScript != null)
+        }
+
+        // A previous connection that is still pending is superseded by this one
+        final int sessionZone = zone;
+        pendingSession = new SessionConnector(getCandidateHosts(device, port), port, new SessionConnector.Listener()
+        {
+            @Override
+            public void onConnected(@NonNull SessionConnector session)
             {
-                messageScripts.add(messageScript);
-                zone = messageScript.getZone();
-                // Be sure that messageScript.tab contains a value from CfgAppSettings.Tabs enum.
-                // If not, the app will crash here
-                if (messageScript.tab != null)
+                runOnUiThread(() ->
                 {
-                    try
+                    if (session != pendingSession)
                     {
-                        setOpenedTab(CfgAppSettings.Tabs.valueOf(messageScript.tab.toUpperCase()));
+                        Logging.info(MainActivity.this, "connection to {} discarded", session.getHostAndPort());
+                        session.close();
+                        return;
                     }
-                    catch (Exception ex)
+                    pendingSession = null;
+                    // The winning host of a moved device is remembered as the stored device
+                    final String host = session.isMoved() ? session.getHost() : device;
+                    if (session.isMoved() && device.equals(configuration.getDeviceName())
+                            && port == configuration.getDevicePort())
                     {
-                        // nothing to do
+                        Logging.info(MainActivity.this, "stored device {} moved to {}", device, host);
+                        configuration.saveDevice(host, port);
                     }
-                }
+                    stateHolder.setStateManager(host, port, new StateManager(
+                            deviceList, connectionState, stateHolder,
+                            session, sessionZone,
+                            true,
+                            savedReceiverInformation,
+                            messageScripts));
+                    savedReceiverInformation = null;
+                    // Default receiver information used if ReceiverInformationMsg is missing
+                    {
+                        final State s = stateHolder.getState();
+                        s.createDefaultReceiverInfo(MainActivity.this::getString,
+                                configuration.audioControl.isForceAudioControl());
+                        configuration.setReceiverInformation(s);
+                    }
+                    if (!deviceList.isActive())
+                    {
+                        deviceList.start();
+                    }
+                    logConnectTime(device, port, requestTime);
+                    if (onConnected != null)
+                    {
+                        onConnected.run();
+                    }
+                });
             }
 
-            stateHolder.setStateManager(new StateManager(
-                    deviceList, connectionState, this,
-                    device, port, zone,
-                    true,
-                    savedReceiverInformation,
-                    messageScripts));
-            savedReceiverInformation = null;
-            // Default receiver information used if ReceiverInformationMsg is missing
+            @Override
+            public void onFailed(@NonNull SessionConnector session)
             {
-                final State s = stateHolder.getState();
-                s.createDefaultReceiverInfo(this, configuration.audioControl.isForceAudioControl());
-                configuration.setReceiverInformation(s);
+                runOnUiThread(() ->
+                {
+                    if (session != pendingSession)
+                    {
+                        return;
+                    }
+                    pendingSession = null;
+                    onConnectionFailed(device, port, sessionZone, connectToAnyInErrorCase, onConnected);
+                });
             }
-            if (!deviceList.isActive())
+        });
+        pendingSession.start();
+    }
+
+    /**
+     * Procedure collects the hosts where the given device can be reachable: the requested host
+     * and the hosts known from the device discovery or from a favorite connection for the same
+     * device identifier.
+     */
+    @NonNull
+    private List<String> getCandidateHosts(@NonNull final String device, final int port)
+    {
+        final List<String> hosts = new ArrayList<>();
+        hosts.add(device);
+        final List<BroadcastResponseMsg> known = new ArrayList<>();
+        for (CfgDiscoveredDevices.Device d : configuration.discoveredDevices.getDevices())
+        {
+            known.add(d.message);
+        }
+        known.addAll(configuration.favoriteConnections.getDevices());
+        String identifier = "";
+        for (BroadcastResponseMsg msg : known)
+        {
+            if (msg.getHost().equals(device) && msg.getPort() == port && !msg.getIdentifier().isEmpty())
             {
-                deviceList.start();
+                identifier = msg.getIdentifier();
+                break;
             }
-            return true;
         }
-        catch (Exception ex)
+        if (identifier.isEmpty())
         {
-            if (Configuration.ENABLE_MOCKUP)
+            return hosts;
+        }
+        for (BroadcastResponseMsg msg : known)
+        {
+            if (identifier.equals(msg.getIdentifier()) && msg.getPort() == port && !hosts.contains(msg.getHost()))
             {
-                stateHolder.setStateManager(new StateManager(connectionState, this, zone));
-                final State s = stateHolder.getState();
-                s.createDefaultReceiverInfo(this, configuration.audioControl.isForceAudioControl());
-                updateConfiguration(s);
-                return true;
+                hosts.add(msg.getHost());
             }
-            else if (deviceList.isActive() && connectToAnyInErrorCase)
+        }
+        return hosts;
+    }
+
+    private void onConnectionFailed(final String device, final int port, final int zone,
+                                    final boolean connectToAnyInErrorCase, @Nullable final Runnable onConnected)
+    {
+        if (Configuration.ENABLE_MOCKUP)
+        {
+            stateHolder.setStateManager(device, port, new StateManager(connectionState, stateHolder, zone));
+            final State s = stateHolder.getState();
+            s.createDefaultReceiverInfo(this::getString, configuration.audioControl.isForceAudioControl());
+            updateConfiguration(s);
+            if (onConnected != null)
             {
-                Logging.info(this, "searching for any device to connect");
-                connectToAnyDevice.set(true);
+                onConnected.run();
             }
+            return;
+        }
+        connectionState.showConnectionError(Utils.ipToString(device, port));
+        if (deviceList.isActive() && connectToAnyInErrorCase)
+        {
+            // If the device is known from a previous discovery, it is expected on an other host
+            final CfgDiscoveredDevices.Device d = configuration.discoveredDevices.find(device, port);
+            expectedIdentifier = d == null || d.message.getIdentifier().isEmpty() ?
+                    null : d.message.getIdentifier();
+            Logging.info(this, "searching for " + (expectedIdentifier == null ?
+                    "any device" : "device " + expectedIdentifier) + " to connect");
+            connectToAnyDevice.set(true);
+        }
+    }
+
+    private void logConnectTime(final String device, final int port, final long requestTime)
+    {
+        if (startTime > 0)
+        {
+            Logging.info(this, "connected to " + Utils.ipToString(device, port) + " in "
+                    + (System.currentTimeMillis() - startTime) + "ms after start");
+            startTime = 0;
+        }
+        else
+        {
+            Logging.info(this, "switched to " + Utils.ipToString(device, port) + " in "
+                    + (System.currentTimeMillis() - requestTime) + "ms");
         }
-        return false;
     }
 
     @Override
@@ -526,9 +725,11 @@ public class MainActivity extends AppCompatActivity implements StateManager.Stat
         {
             getStateManager().inform(di.message);
         }
-        else if (connectToAnyDevice.get())
+        else if (connectToAnyDevice.get() &&
+                (expectedIdentifier == null || expectedIdentifier.equals(di.message.getIdentifier())))
         {
             connectToAnyDevice.set(false);
+            expectedIdentifier = null;
             connectToDevice(di.message);
         }
     }
@@ -565,18 +766,25 @@ public class MainActivity extends AppCompatActivity implements StateManager.Stat
         {
             deviceList.start();
         }
+        final CfgDiscoveredDevices.Device lastSeen = configuration.discoveredDevices.getLastSeen();
         if (!configuration.getDeviceName().isEmpty() && configuration.getDevicePort() > 0)
         {
             Logging.info(this, "use stored connection data: "
                     + Utils.ipToString(configuration.getDeviceName(), configuration.getDevicePort()));
-            connectToDevice(configuration.getDeviceName(), configuration.getDevicePort(), true);
+            connectToDevice(configuration.getDeviceName(), configuration.getDevicePort(), true, null);
         }
         else if (messageScript != null &&
                 !messageScript.getHost().equals(ConnectionIf.EMPTY_HOST) &&
                 messageScript.getPort() != ConnectionIf.EMPTY_PORT)
         {
-            Logging.info(this, "use intent connection data: " + messageScript.getHostAndPort());
-            connectToDevice(messageScript.getHost(), messageScript.getPort(), true);
+            Logging.info(this, "use intent connection data: {}", messageScript.getHostAndPort());
+            connectToDevice(messageScript.getHost(), messageScript.getPort(), true, null);
+        }
+        else if (lastSeen != null)
+        {
+            Logging.info(this, "use last discovered device: {}", lastSeen.message);
+            // A stale entry falls back to the discovery of the same or any device
+            connectToDevice(lastSeen.message, true);
         }
         else
         {
@@ -595,11 +803,11 @@ public class MainActivity extends AppCompatActivity implements StateManager.Stat
     {
         if (intent != null)
         {
-            Logging.info(this, "Received intent: " + intent);
+            Logging.info(this, "Received intent: {}", intent);
             if (intent.getDataString() != null)
             {
                 intentData = intent.getDataString();
-                final MessageScript ms = (intentData != null && !intentData.isEmpty()) ? new MessageScript(this, intentData) : null;
+                final MessageScript ms = (intentData != null && !intentData.isEmpty()) ? new MessageScript(this::getString, intentData) : null;
                 messageScript = ms != null && ms.isValid() ? ms : null;
             }
             else
@@ -625,7 +833,16 @@ public class MainActivity extends AppCompatActivity implements StateManager.Stat
         }
         deviceList.stop();
         connectionState.stop();
-        stateHolder.release(true, "pause");
+        // A connection that is still pending will be discarded
+        pendingSession = null;
+        if (isFinishing())
+        {
+            stateHolder.release(true, "exit");
+        }
+        else
+        {
+            stateHolder.pause();
+        }
     }
 
     @Override
@@ -659,13 +876,13 @@ public class MainActivity extends AppCompatActivity implements StateManager.Stat
     }
 
     @Override
-    public void onManagerStopped()
+    public void onManagerStopped(@NonNull StateManager manager)
     {
-        stateHolder.setStateManager(null);
+        // nothing to do: the manager is already removed from the state holder
     }
 
     @Override
-    public void onDeviceDisconnected()
+    public void onDeviceDisconnected(@NonNull StateManager manager)
     {
         if (!stateHolder.isAppExit())
         {
@@ -692,7 +909,11 @@ public class MainActivity extends AppCompatActivity implements StateManager.Stat
                 }
                 subTitle.append(state.getActiveZoneInfo().getName());
             }
-            if (!state.isOn())
+            if (state.getSnapshot().reconnecting)
+            {
+                subTitle.append(" (").append(getResources().getString(R.string.state_reconnecting)).append(")");
+            }
+            else if (!state.isOn())
             {
                 subTitle.append(" (").append(getResources().getString(R.string.state_standby)).append(")");
             }
@@ -707,10 +928,10 @@ public class MainActivity extends AppCompatActivity implements StateManager.Stat
                 if (m.getItemId() == R.id.menu_power_standby)
                 {
                     m.setEnabled(state != null);
-                    Utils.updateMenuIconColor(this, m);
+                    AndroidUtils.updateMenuIconColor(this, m);
                     if (m.isEnabled() && state != null)
                     {
-                        Utils.setDrawableColorAttr(this, m.getIcon(),
+                        AndroidUtils.setDrawableColorAttr(this, m.getIcon(),
                                 state.isOn() ? android.R.attr.textColorTertiary : R.attr.colorAccent);
                     }
                 }
@@ -740,7 +961,7 @@ public class MainActivity extends AppCompatActivity implements StateManager.Stat
             {
                 if (event.getAction() == KeyEvent.ACTION_DOWN)
                 {
-                    Logging.info(this, "Key event: " + event);
+                    Logging.info(this, "Key event: {}", event);
                     getStateManager().changeMasterVolume(configuration.audioControl.getSoundControl(),
                             event.getKeyCode() == KeyEvent.KEYCODE_VOLUME_UP);
                     return true;
@@ -798,7 +1019,7 @@ public class MainActivity extends AppCompatActivity implements StateManager.Stat
                 }
                 catch (Exception ex)
                 {
-                    Logging.info(this, "can not change opened tab: " + ex.getLocalizedMessage());
+                    Logging.info(this, "can not change opened tab: {}", ex.getLocalizedMessage());
                 }
                 break;
             }
@@ -38,6 +38,7 @@ import com.mkulesh.onpc.iscp.State;
 import com.mkulesh.onpc.iscp.messages.BroadcastResponseMsg;
 import com.mkulesh.onpc.iscp.messages.PowerStatusMsg;
 import com.mkulesh.onpc.iscp.messages.ReceiverInformationMsg;
+import com.mkulesh.onpc.utils.AndroidUtils;
 import com.mkulesh.onpc.utils.Logging;
 import com.mkulesh.onpc.utils.Utils;
 
@@ -189,8 +190,8 @@ class MainNavigationDrawer
         checkBox.setOnCheckedChangeListener((buttonView, isChecked) ->
                 deviceFriendlyName.setVisibility(isChecked ? View.VISIBLE : View.GONE));
 
-        final Drawable icon = Utils.getDrawable(activity, R.drawable.drawer_connect);
-        Utils.setDrawableColorAttr(activity, icon, android.R.attr.textColorSecondary);
+        final Drawable icon = AndroidUtils.getDrawable(activity, R.drawable.drawer_connect);
+        AndroidUtils.setDrawableColorAttr(activity, icon, android.R.attr.textColorSecondary);
         final AlertDialog dialog = new AlertDialog.Builder(activity)
                 .setTitle(R.string.drawer_device_connect)
                 .setIcon(icon)
@@ -198,12 +199,12 @@ class MainNavigationDrawer
                 .setView(frameView)
                 .setNegativeButton(activity.getResources().getString(R.string.action_cancel), (dialog1, which) ->
                 {
-                    Utils.showSoftKeyboard(activity, deviceName, false);
+                    AndroidUtils.showSoftKeyboard(activity, deviceName, false);
                     dialog1.dismiss();
                 })
                 .setPositiveButton(activity.getResources().getString(R.string.action_ok), (dialog12, which) ->
                 {
-                    Utils.showSoftKeyboard(activity, deviceName, false);
+                    AndroidUtils.showSoftKeyboard(activity, deviceName, false);
                     // First, use port from configuration
                     if (devicePort.getText().length() == 0)
                     {
@@ -218,7 +219,7 @@ class MainNavigationDrawer
                     {
                         final String device = deviceName.getText().toString();
                         final int port = Integer.parseInt(devicePort.getText().toString());
-                        if (activity.connectToDevice(device, port, false))
+                        activity.connectToDevice(device, port, false, () ->
                         {
                             configuration.saveDevice(device, port);
                             if (checkBox.isChecked())
@@ -230,7 +231,7 @@ class MainNavigationDrawer
                                         activity.getStateManager().getState(), friendlyName, null);
                                 activity.getDeviceList().updateFavorites(true);
                             }
-                        }
+                        });
                     }
                     catch (Exception e)
                     {
@@ -242,12 +243,12 @@ class MainNavigationDrawer
                 }).create();
 
         dialog.show();
-        Utils.fixIconColor(dialog, android.R.attr.textColorSecondary);
+        AndroidUtils.fixIconColor(dialog, android.R.attr.textColorSecondary);
     }
 
     private void navigationChangeZone(final int idx)
     {
-        Logging.info(this, "changed zone: " + idx);
+        Logging.info(this, "changed zone: {}", idx);
         configuration.setActiveZone(idx);
         activity.restartActivity();
     }
@@ -275,7 +276,7 @@ class MainNavigationDrawer
             final AppCompatImageView logo = navigationView.getHeaderView(i).findViewById(R.id.drawer_header);
             if (logo != null)
             {
-                Utils.setImageViewColorAttr(activity, logo, R.attr.colorAccent);
+                AndroidUtils.setImageViewColorAttr(activity, logo, R.attr.colorAccent);
             }
         }
     }
@@ -296,7 +297,7 @@ class MainNavigationDrawer
 
         // store devices
         devices.clear();
-        devices.addAll(activity.getDeviceList().getDevices());
+        devices.addAll(activity.getDeviceList().getKnownDevices());
         int favorites = 0;
         for (BroadcastResponseMsg msg : devices)
         {
@@ -412,7 +413,7 @@ class MainNavigationDrawer
             {
                 editBtn.setVisibility(View.VISIBLE);
                 editBtn.setOnClickListener(v -> editListener.onEditItem());
-                Utils.setButtonEnabled(activity, editBtn, true);
+                AndroidUtils.setButtonEnabled(activity, editBtn, true);
             }
             else
             {
@@ -427,7 +428,7 @@ class MainNavigationDrawer
      */
     private void navigationDevice(int idx)
     {
-        Logging.info(this, "selected multiroom device: " + idx);
+        Logging.info(this, "selected multiroom device: {}", idx);
         if (idx < devices.size())
         {
             activity.connectToDevice(devices.get(idx));
@@ -495,8 +496,8 @@ class MainNavigationDrawer
             }
         });
 
-        final Drawable icon = Utils.getDrawable(activity, R.drawable.drawer_edit_item);
-        Utils.setDrawableColorAttr(activity, icon, android.R.attr.textColorSecondary);
+        final Drawable icon = AndroidUtils.getDrawable(activity, R.drawable.drawer_edit_item);
+        AndroidUtils.setDrawableColorAttr(activity, icon, android.R.attr.textColorSecondary);
         final AlertDialog dialog = new AlertDialog.Builder(activity)
                 .setTitle(R.string.favorite_connection_edit)
                 .setIcon(icon)
@@ -504,12 +505,12 @@ class MainNavigationDrawer
                 .setView(frameView)
                 .setNegativeButton(activity.getResources().getString(R.string.action_cancel), (dialog1, which) ->
                 {
-                    Utils.showSoftKeyboard(activity, deviceAlias, false);
+                    AndroidUtils.showSoftKeyboard(activity, deviceAlias, false);
                     dialog1.dismiss();
                 })
                 .setPositiveButton(activity.getResources().getString(R.string.action_ok), (dialog12, which) ->
                 {
-                    Utils.showSoftKeyboard(activity, deviceAlias, false);
+                    AndroidUtils.showSoftKeyboard(activity, deviceAlias, false);
                     // rename or delete favorite connection
                     if (renameBtn.isChecked() && deviceAlias.getText().length() > 0)
                     {
@@ -531,7 +532,7 @@ class MainNavigationDrawer
                 }).create();
 
         dialog.show();
-        Utils.fixIconColor(dialog, android.R.attr.textColorSecondary);
+        AndroidUtils.fixIconColor(dialog, android.R.attr.textColorSecondary);
     }
 
     private void onRadioBtnChange(final AppCompatRadioButton[] radioGroup, AppCompatRadioButton v)
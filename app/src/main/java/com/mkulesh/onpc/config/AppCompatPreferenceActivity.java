@@ -21,8 +21,8 @@ import android.view.View;
 import android.view.ViewGroup;
 
 import com.mkulesh.onpc.R;
+import com.mkulesh.onpc.utils.AndroidUtils;
 import com.mkulesh.onpc.utils.Logging;
-import com.mkulesh.onpc.utils.Utils;
 
 import java.util.Locale;
 
@@ -53,7 +53,7 @@ public abstract class AppCompatPreferenceActivity extends AppCompatActivity
     protected void attachBaseContext(Context newBase)
     {
         final Locale prefLocale = AppLocale.ContextWrapper.getPreferredLocale(newBase);
-        Logging.info(this, "Settings locale: " + prefLocale);
+        Logging.info(this, "Settings locale: {}", prefLocale);
         super.attachBaseContext(AppLocale.ContextWrapper.wrap(newBase, prefLocale));
     }
 
@@ -77,7 +77,7 @@ public abstract class AppCompatPreferenceActivity extends AppCompatActivity
         if (preference instanceof PreferenceGroup)
         {
             PreferenceGroup group = ((PreferenceGroup) preference);
-            Utils.setDrawableColorAttr(c, group.getIcon(), android.R.attr.textColorSecondary);
+            AndroidUtils.setDrawableColorAttr(c, group.getIcon(), android.R.attr.textColorSecondary);
             for (int i = 0; i < group.getPreferenceCount(); i++)
             {
                 tintIcons(c, group.getPreference(i));
@@ -85,7 +85,7 @@ public abstract class AppCompatPreferenceActivity extends AppCompatActivity
         }
         else
         {
-            Utils.setDrawableColorAttr(c, preference.getIcon(), android.R.attr.textColorSecondary);
+            AndroidUtils.setDrawableColorAttr(c, preference.getIcon(), android.R.attr.textColorSecondary);
         }
     }
 
@@ -25,7 +25,7 @@ import android.preference.PreferenceManager;
 
 import java.util.Locale;
 
-import static com.mkulesh.onpc.utils.Utils.getStringPref;
+import static com.mkulesh.onpc.utils.AndroidUtils.getStringPref;
 
 /*********************************************************
  * Handling of locale (language etc)
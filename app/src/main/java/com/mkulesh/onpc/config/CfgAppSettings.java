@@ -28,7 +28,7 @@ import java.util.Locale;
 import androidx.annotation.NonNull;
 import androidx.annotation.StyleRes;
 
-import static com.mkulesh.onpc.utils.Utils.getStringPref;
+import static com.mkulesh.onpc.utils.AndroidUtils.getStringPref;
 
 public class CfgAppSettings
 {
@@ -176,7 +176,7 @@ public class CfgAppSettings
 
     public void setOpenedTab(CfgAppSettings.Tabs tab)
     {
-        Logging.info(this, "Save opened tab: " + tab.toString());
+        Logging.info(this, "Save opened tab: {}", tab);
         SharedPreferences.Editor prefEditor = preferences.edit();
         prefEditor.putString(OPENED_TAB_NAME, tab.toString());
         prefEditor.apply();
@@ -117,7 +117,7 @@ public class CfgAudioControl
 
     public void setMasterVolumeMax(int limit)
     {
-        Logging.info(this, "Save volume max limit: " + limit);
+        Logging.info(this, "Save volume max limit: {}", limit);
         SharedPreferences.Editor prefEditor = preferences.edit();
         prefEditor.putInt(getMasterVolumeMaxParameter(), limit);
         prefEditor.apply();
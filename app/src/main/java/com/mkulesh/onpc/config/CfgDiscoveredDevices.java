@@ -0,0 +1,237 @@
+/*
+ * Enhanced Music Controller
+ * Copyright (C) 2018-2023 by Mikhail Kulesh
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with this program.
+ */
+
+package com.mkulesh.onpc.config;
+
+import android.content.SharedPreferences;
+
+import com.mkulesh.onpc.iscp.ConnectionIf;
+import com.mkulesh.onpc.iscp.EISCPMessage;
+import com.mkulesh.onpc.iscp.messages.BroadcastResponseMsg;
+import com.mkulesh.onpc.utils.Logging;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import static com.mkulesh.onpc.utils.AndroidUtils.getStringPref;
+
+/**
+ * Persistent cache of the devices found by the device discovery. It allows to show and
+ * connect the known devices immediately on start; the discovery running in parallel only
+ * verifies and updates the cached entries.
+ */
+public class CfgDiscoveredDevices
+{
+    private static final String DISCOVERED_DEVICE_SEP = "<;>";
+    private static final String DISCOVERED_DEVICE_NUMBER = "discovered_device_number";
+    private static final String DISCOVERED_DEVICE_ITEM = "discovered_device_item";
+
+    // Entries that were not seen for this time are stale and dropped
+    private static final long MAX_AGE = 30L * 24 * 60 * 60 * 1000;
+    // The last-seen time of an unchanged entry is only written with this period
+    private static final long UPDATE_PERIOD = 60 * 60 * 1000;
+    private static final int MAX_DEVICES = 16;
+
+    public static class Device
+    {
+        public final BroadcastResponseMsg message;
+        public final long lastSeen;
+
+        Device(@NonNull final BroadcastResponseMsg message, final long lastSeen)
+        {
+            this.message = message;
+            this.lastSeen = lastSeen;
+        }
+
+        boolean isSameDevice(@NonNull final BroadcastResponseMsg msg)
+        {
+            return message.getIdentifier().isEmpty() ?
+                    message.fromHost(msg) : message.getIdentifier().equals(msg.getIdentifier());
+        }
+
+        boolean isEqual(@NonNull final BroadcastResponseMsg msg)
+        {
+            return message.fromHost(msg) && message.getIdentifier().equals(msg.getIdentifier())
+                    && equals(message.getModel(), msg.getModel())
+                    && equals(message.getFriendlyName(), msg.getFriendlyName());
+        }
+
+        private static boolean equals(@Nullable final String s1, @Nullable final String s2)
+        {
+            return s1 == null ? s2 == null : s1.equals(s2);
+        }
+    }
+
+    // The list is sorted by the last-seen time, most recent first
+    private final ArrayList<Device> devices = new ArrayList<>();
+
+    private SharedPreferences preferences;
+
+    void setPreferences(SharedPreferences preferences)
+    {
+        this.preferences = preferences;
+    }
+
+    void read()
+    {
+        devices.clear();
+        final long now = System.currentTimeMillis();
+        final int dNumber = preferences.getInt(DISCOVERED_DEVICE_NUMBER, 0);
+        for (int i = 0; i < dNumber; i++)
+        {
+            final String key = DISCOVERED_DEVICE_ITEM + "_" + i;
+            final String val = getStringPref(preferences, key, "");
+            final String[] tokens = val.split(DISCOVERED_DEVICE_SEP);
+            if (tokens.length < 5)
+            {
+                continue;
+            }
+            try
+            {
+                final String host = tokens[0];
+                final int port = Integer.parseInt(tokens[1], 10);
+                final ConnectionIf.ProtoType protoType = ConnectionIf.ProtoType.valueOf(tokens[2]);
+                final long lastSeen = Long.parseLong(tokens[3], 10);
+                if (now - lastSeen > MAX_AGE)
+                {
+                    Logging.info(this, "Drop stale discovered device: {}:{}", host, port);
+                    continue;
+                }
+                // ISCP devices are restored from the data of the broadcast response,
+                // DCP devices from the model, the friendly name and the identifier
+                final BroadcastResponseMsg msg = protoType == ConnectionIf.ProtoType.ISCP ?
+                        new BroadcastResponseMsg(InetAddress.getByName(host),
+                                new EISCPMessage(BroadcastResponseMsg.CODE, tokens[4])) :
+                        new BroadcastResponseMsg(host, port, tokens[4],
+                                tokens.length > 5 && !tokens[5].isEmpty() ? tokens[5] : null,
+                                tokens.length > 6 && !tokens[6].isEmpty() ? tokens[6] : null);
+                if (msg.isValidConnection())
+                {
+                    devices.add(new Device(msg, lastSeen));
+                }
+            }
+            catch (Exception ex)
+            {
+                // nothing to do
+            }
+        }
+    }
+
+    private void write()
+    {
+        final int dNumber = devices.size();
+        SharedPreferences.Editor prefEditor = preferences.edit();
+        prefEditor.putInt(DISCOVERED_DEVICE_NUMBER, dNumber);
+        for (int i = 0; i < dNumber; i++)
+        {
+            final Device d = devices.get(i);
+            final BroadcastResponseMsg msg = d.message;
+            final String payload = msg.getProtoType() == ConnectionIf.ProtoType.ISCP ? msg.getData() :
+                    msg.getModel() + DISCOVERED_DEVICE_SEP
+                            + (msg.getFriendlyName() == null ? "" : msg.getFriendlyName()) + DISCOVERED_DEVICE_SEP
+                            + msg.getIdentifier();
+            final String key = DISCOVERED_DEVICE_ITEM + "_" + i;
+            prefEditor.putString(key, msg.getHost() + DISCOVERED_DEVICE_SEP
+                    + msg.getPort() + DISCOVERED_DEVICE_SEP
+                    + msg.getProtoType().name() + DISCOVERED_DEVICE_SEP
+                    + d.lastSeen + DISCOVERED_DEVICE_SEP
+                    + (payload == null ? "" : payload));
+        }
+        prefEditor.apply();
+    }
+
+    @NonNull
+    public List<Device> getDevices()
+    {
+        synchronized (devices)
+        {
+            return new ArrayList<>(devices);
+        }
+    }
+
+    /**
+     * Procedure returns the cached entry with the given host and port, if any.
+     */
+    @Nullable
+    public Device find(@NonNull final String host, int port)
+    {
+        synchronized (devices)
+        {
+            for (Device d : devices)
+            {
+                if (d.message.getHost().equals(host) && d.message.getPort() == port)
+                {
+                    return d;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Procedure returns the most recently seen device, if any.
+     */
+    @Nullable
+    public Device getLastSeen()
+    {
+        synchronized (devices)
+        {
+            return devices.isEmpty() ? null : devices.get(0);
+        }
+    }
+
+    /**
+     * Procedure stores a response of the device discovery. A device with an identifier
+     * is updated if it was found on a new host.
+     */
+    public void update(@NonNull final BroadcastResponseMsg msg)
+    {
+        if (!msg.isValidConnection() || (msg.getProtoType() == ConnectionIf.ProtoType.ISCP && msg.getData() == null))
+        {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        synchronized (devices)
+        {
+            for (int i = 0; i < devices.size(); i++)
+            {
+                final Device d = devices.get(i);
+                if (!d.isSameDevice(msg))
+                {
+                    continue;
+                }
+                if (d.isEqual(msg) && now - d.lastSeen < UPDATE_PERIOD)
+                {
+                    return;
+                }
+                if (!d.message.fromHost(msg))
+                {
+                    Logging.info(this, "Discovered device moved: {} -> {}", d.message, msg);
+                }
+                devices.remove(i);
+                break;
+            }
+            devices.add(0, new Device(new BroadcastResponseMsg(msg), now));
+            while (devices.size() > MAX_DEVICES)
+            {
+                devices.remove(devices.size() - 1);
+            }
+            write();
+        }
+    }
+}
@@ -27,7 +27,7 @@ import java.util.List;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import static com.mkulesh.onpc.utils.Utils.getStringPref;
+import static com.mkulesh.onpc.utils.AndroidUtils.getStringPref;
 
 public class CfgFavoriteConnections
 {
@@ -123,13 +123,13 @@ public class CfgFavoriteConnections
         {
             final BroadcastResponseMsg oldMsg = devices.get(idx);
             newMsg = new BroadcastResponseMsg(connection.getHost(), connection.getPort(), alias, identifier);
-            Logging.info(this, "Update favorite connection: " + oldMsg.toString() + " -> " + newMsg);
+            Logging.info(this, "Update favorite connection: {} -> {}", oldMsg, newMsg);
             devices.set(idx, newMsg);
         }
         else
         {
             newMsg = new BroadcastResponseMsg(connection.getHost(), connection.getPort(), alias, null);
-            Logging.info(this, "Add favorite connection: " + newMsg);
+            Logging.info(this, "Add favorite connection: {}", newMsg);
             devices.add(newMsg);
         }
         write();
@@ -142,7 +142,7 @@ public class CfgFavoriteConnections
         if (idx >= 0)
         {
             final BroadcastResponseMsg oldMsg = devices.get(idx);
-            Logging.info(this, "Delete favorite connection: " + oldMsg.toString());
+            Logging.info(this, "Delete favorite connection: {}", oldMsg);
             devices.remove(oldMsg);
             write();
         }
@@ -167,7 +167,7 @@ public class CfgFavoriteConnections
             {
                 final BroadcastResponseMsg newMsg = new BroadcastResponseMsg(
                         oldMsg.getHost(), oldMsg.getPort(), oldMsg.getAlias(), identifier);
-                Logging.info(this, "Update favorite connection: " + oldMsg + " -> " + newMsg);
+                Logging.info(this, "Update favorite connection: {} -> {}", oldMsg, newMsg);
                 devices.set(idx, newMsg);
                 write();
             }
@@ -36,7 +36,7 @@ import androidx.annotation.DrawableRes;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import static com.mkulesh.onpc.utils.Utils.getStringPref;
+import static com.mkulesh.onpc.utils.AndroidUtils.getStringPref;
 
 public class CfgFavoriteShortcuts
 {
@@ -317,13 +317,13 @@ public class CfgFavoriteShortcuts
         {
             final Shortcut oldMsg = shortcuts.get(idx);
             newMsg = new Shortcut(oldMsg, alias);
-            Logging.info(this, "Update favorite shortcut: " + oldMsg + " -> " + newMsg);
+            Logging.info(this, "Update favorite shortcut: {} -> {}", oldMsg, newMsg);
             shortcuts.set(idx, newMsg);
         }
         else
         {
             newMsg = new Shortcut(shortcut, alias);
-            Logging.info(this, "Add favorite shortcut: " + newMsg);
+            Logging.info(this, "Add favorite shortcut: {}", newMsg);
             shortcuts.add(newMsg);
         }
         write();
@@ -335,7 +335,7 @@ public class CfgFavoriteShortcuts
         if (idx >= 0)
         {
             final Shortcut oldMsg = shortcuts.get(idx);
-            Logging.info(this, "Delete favorite shortcut: " + oldMsg.toString());
+            Logging.info(this, "Delete favorite shortcut: {}", oldMsg);
             shortcuts.remove(oldMsg);
             write();
         }
@@ -26,7 +26,7 @@ import java.util.List;
 import androidx.annotation.DrawableRes;
 import androidx.annotation.NonNull;
 
-import static com.mkulesh.onpc.utils.Utils.getStringPref;
+import static com.mkulesh.onpc.utils.AndroidUtils.getStringPref;
 
 class CheckableItem
 {
@@ -32,7 +32,7 @@ import java.util.List;
 
 import androidx.annotation.NonNull;
 
-import static com.mkulesh.onpc.utils.Utils.getStringPref;
+import static com.mkulesh.onpc.utils.AndroidUtils.getStringPref;
 
 public class Configuration
 {
@@ -49,6 +49,8 @@ public class Configuration
     private static final String SELECTED_DEVICE_SELECTORS = "selected_device_selectors";
 
     private static final String AUTO_POWER = "auto_power";
+    private static final String SUBNET_SWEEP = "subnet_sweep";
+    private static final String SUBNET_SWEEP_NETWORKS = "subnet_sweep_networks";
     static final String FRIENDLY_NAMES = "pref_friendly_names";
     static final String NETWORK_SERVICES = "network_services";
     private static final String SELECTED_NETWORK_SERVICES = "selected_network_services";
@@ -59,6 +61,8 @@ public class Configuration
     static final String KEEP_PLAYBACK_MODE = "keep_playback_mode";
     private static final String EXIT_CONFIRM = "exit_confirm";
     private static final String DEVELOPER_MODE = "developer_mode";
+    static final String PROTOCOL_TRACE = "protocol_trace";
+    static final String PROTOCOL_CAPTURE = "protocol_capture";
 
     private final SharedPreferences preferences;
 
@@ -68,6 +72,7 @@ public class Configuration
     public final CfgAppSettings appSettings = new CfgAppSettings();
     public final CfgAudioControl audioControl = new CfgAudioControl();
     public final CfgFavoriteConnections favoriteConnections = new CfgFavoriteConnections();
+    public final CfgDiscoveredDevices discoveredDevices = new CfgDiscoveredDevices();
     public final CfgFavoriteShortcuts favoriteShortcuts = new CfgFavoriteShortcuts();
 
     public Configuration(Context context)
@@ -85,6 +90,9 @@ public class Configuration
         favoriteConnections.setPreferences(preferences);
         favoriteConnections.read();
 
+        discoveredDevices.setPreferences(preferences);
+        discoveredDevices.read();
+
         favoriteShortcuts.setPreferences(preferences);
         favoriteShortcuts.read();
     }
@@ -150,10 +158,10 @@ public class Configuration
         SharedPreferences.Editor prefEditor = preferences.edit();
 
         Logging.info(this, "Save receiver information");
-        Logging.info(this, "    Network protocol: " + state.protoType.name());
+        Logging.info(this, "    Network protocol: {}", state.protoType.name());
         prefEditor.putString(PROTO_TYPE, state.protoType.name());
         final String model = state.getModel();
-        Logging.info(this, "    Model: " + model);
+        Logging.info(this, "    Model: {}", model);
         if (!model.isEmpty())
         {
             prefEditor.putString(MODEL, model);
@@ -169,10 +177,10 @@ public class Configuration
                 }
                 str.append(p);
             }
-            Logging.info(this, "    Network services: " + str);
+            Logging.info(this, "    Network services: {}", str);
             prefEditor.putString(NETWORK_SERVICES, str.toString());
         }
-        List<ReceiverInformationMsg.Selector> deviceSelectors = state.cloneDeviceSelectors();
+        List<ReceiverInformationMsg.Selector> deviceSelectors = state.getDeviceSelectors();
         if (!deviceSelectors.isEmpty())
         {
             final StringBuilder str = new StringBuilder();
@@ -185,7 +193,7 @@ public class Configuration
                 str.append(d.getId());
                 prefEditor.putString(DEVICE_SELECTORS + "_" + d.getId(), d.getName());
             }
-            Logging.info(this, "    Device selectors: " + str);
+            Logging.info(this, "    Device selectors: {}", str);
             prefEditor.putString(DEVICE_SELECTORS, str.toString());
         }
 
@@ -296,11 +304,32 @@ public class Configuration
         return preferences.getBoolean(Configuration.EXIT_CONFIRM, false);
     }
 
+    public boolean isSubnetSweep()
+    {
+        return preferences.getBoolean(SUBNET_SWEEP, false);
+    }
+
+    @NonNull
+    public String getSubnetSweepNetworks()
+    {
+        return getStringPref(preferences, SUBNET_SWEEP_NETWORKS, "");
+    }
+
     public boolean isDeveloperMode()
     {
         return preferences.getBoolean(DEVELOPER_MODE, false);
     }
 
+    public boolean isProtocolTrace()
+    {
+        return preferences.getBoolean(PROTOCOL_TRACE, false);
+    }
+
+    public boolean isProtocolCapture()
+    {
+        return preferences.getBoolean(PROTOCOL_CAPTURE, false);
+    }
+
     @NonNull
     public static ConnectionIf.ProtoType getProtoType(final SharedPreferences preferences)
     {
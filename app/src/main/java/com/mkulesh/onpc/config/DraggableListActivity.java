@@ -19,7 +19,7 @@ import com.mobeta.android.dslv.DragSortListView;
 
 import java.util.List;
 
-import static com.mkulesh.onpc.utils.Utils.getStringPref;
+import static com.mkulesh.onpc.utils.AndroidUtils.getStringPref;
 
 public abstract class DraggableListActivity extends AppCompatPreferenceActivity
 {
@@ -24,7 +24,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
-import static com.mkulesh.onpc.utils.Utils.getStringPref;
+import static com.mkulesh.onpc.utils.AndroidUtils.getStringPref;
 
 public class PreferencesDeviceSelectors extends DraggableListActivity
 {
@@ -56,7 +56,7 @@ public class PreferencesDeviceSelectors extends DraggableListActivity
                             sp.code, InputSelectorMsg.InputType.values(), InputSelectorMsg.InputType.NONE);
             if (item == InputSelectorMsg.InputType.NONE)
             {
-                Logging.info(this, "Input selector not known: " + sp.code);
+                Logging.info(this, "Input selector not known: {}", sp.code);
                 continue;
             }
             if (sp.checked)
@@ -32,7 +32,7 @@ public class PreferencesListeningModes extends DraggableListActivity
     {
         super.onCreate(savedInstanceState);
         ConnectionIf.ProtoType protoType = Configuration.getProtoType(preferences);
-        Logging.info(this, "Listening mode for: " + protoType);
+        Logging.info(this, "Listening mode for: {}", protoType);
         prepareList(CfgAudioControl.getSelectedListeningModePar(protoType));
         prepareSelectors(protoType);
         setTitle(R.string.pref_listening_modes);
@@ -54,7 +54,7 @@ public class PreferencesListeningModes extends DraggableListActivity
                     sp.code, ListeningModeMsg.Mode.values(), ListeningModeMsg.Mode.UP);
             if (item == ListeningModeMsg.Mode.UP)
             {
-                Logging.info(this, "Listening mode not known: " + sp.code);
+                Logging.info(this, "Listening mode not known: {}", sp.code);
                 continue;
             }
             if (sp.checked)
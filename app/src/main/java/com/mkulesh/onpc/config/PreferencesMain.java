@@ -21,8 +21,11 @@ import android.os.Bundle;
 
 import com.mkulesh.onpc.R;
 import com.mkulesh.onpc.iscp.ConnectionIf;
+import com.mkulesh.onpc.iscp.ProtocolRecorder;
+import com.mkulesh.onpc.utils.Logging;
 
 import androidx.preference.ListPreference;
+import androidx.preference.Preference;
 import androidx.preference.PreferenceCategory;
 import androidx.preference.PreferenceFragmentCompat;
 import androidx.preference.PreferenceManager;
@@ -51,6 +54,25 @@ public class PreferencesMain extends AppCompatPreferenceActivity
             prepareListPreference(findPreference(CfgAudioControl.SOUND_CONTROL), null);
             tintIcons(getPreferenceScreen().getContext(), getPreferenceScreen());
             hidePreferences();
+            final Preference protocolTrace = findPreference(Configuration.PROTOCOL_TRACE);
+            if (protocolTrace != null)
+            {
+                // Protocol tracing is switched immediately, without reconnection
+                protocolTrace.setOnPreferenceChangeListener((preference, newValue) ->
+                {
+                    Logging.setTraceEnabled((Boolean) newValue);
+                    return true;
+                });
+            }
+            final Preference protocolCapture = findPreference(Configuration.PROTOCOL_CAPTURE);
+            if (protocolCapture != null)
+            {
+                protocolCapture.setOnPreferenceChangeListener((preference, newValue) ->
+                {
+                    ProtocolRecorder.setEnabled(preference.getContext().getCacheDir(), (Boolean) newValue);
+                    return true;
+                });
+            }
         }
 
         private void hidePreferences()
@@ -53,7 +53,7 @@ public class PreferencesNetworkServices extends DraggableListActivity
                     sp.code, ServiceType.values(), ServiceType.UNKNOWN);
             if (item == ServiceType.UNKNOWN)
             {
-                Logging.info(this, "Service not known: " + sp.code);
+                Logging.info(this, "Service not known: {}", sp.code);
                 continue;
             }
             if (sp.checked)
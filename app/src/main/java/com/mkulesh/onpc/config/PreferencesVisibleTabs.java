@@ -66,7 +66,7 @@ public class PreferencesVisibleTabs extends DraggableListActivity
             }
             catch (Exception ex)
             {
-                Logging.info(this, "A tab with code not known: " + sp.code);
+                Logging.info(this, "A tab with code not known: {}", sp.code);
             }
         }
 
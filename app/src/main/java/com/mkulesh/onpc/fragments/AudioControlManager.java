@@ -32,12 +32,13 @@ import com.mkulesh.onpc.iscp.State;
 import com.mkulesh.onpc.iscp.messages.AudioMutingMsg;
 import com.mkulesh.onpc.iscp.messages.CenterLevelCommandMsg;
 import com.mkulesh.onpc.iscp.messages.DirectCommandMsg;
+import com.mkulesh.onpc.iscp.messages.ListeningModeMsg;
 import com.mkulesh.onpc.iscp.messages.MasterVolumeMsg;
 import com.mkulesh.onpc.iscp.messages.ReceiverInformationMsg;
 import com.mkulesh.onpc.iscp.messages.SubwooferLevelCommandMsg;
 import com.mkulesh.onpc.iscp.messages.ToneCommandMsg;
+import com.mkulesh.onpc.utils.AndroidUtils;
 import com.mkulesh.onpc.utils.Logging;
-import com.mkulesh.onpc.utils.Utils;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -97,8 +98,9 @@ class AudioControlManager
 
     private boolean isDirectMode(@NonNull final State state)
     {
+        final ListeningModeMsg.Mode listeningMode = state.getSnapshot().listeningMode;
         return (isDirectCmdAvailable(state) && state.toneDirect == DirectCommandMsg.Status.ON) ||
-                (state.listeningMode != null && state.listeningMode.isDirectMode());
+                (listeningMode != null && listeningMode.isDirectMode());
     }
 
     boolean showAudioControlDialog()
@@ -170,7 +172,7 @@ class AudioControlManager
 
         updateActiveView(state);
         audioControlDialog.show();
-        Utils.fixIconColor(audioControlDialog, android.R.attr.textColorSecondary);
+        AndroidUtils.fixIconColor(audioControlDialog, android.R.attr.textColorSecondary);
         return true;
     }
 
@@ -244,10 +246,10 @@ class AudioControlManager
             maxVolumeBtn.setImageResource(R.drawable.volume_max_limit);
             maxVolumeBtn.setContentDescription(activity.getString(R.string.master_volume_restrict));
             maxVolumeBtn.setLongClickable(true);
-            maxVolumeBtn.setOnLongClickListener(v -> Utils.showButtonDescription(activity, v));
+            maxVolumeBtn.setOnLongClickListener(v -> AndroidUtils.showButtonDescription(activity, v));
             maxVolumeBtn.setClickable(true);
             maxVolumeBtn.setOnClickListener(v -> showMasterVolumeMaxDialog(state));
-            Utils.setButtonEnabled(activity, maxVolumeBtn, true);
+            AndroidUtils.setButtonEnabled(activity, maxVolumeBtn, true);
         }
 
         final AppCompatSeekBar progressBar = group.findViewWithTag("tone_progress_bar");
@@ -283,17 +285,18 @@ class AudioControlManager
         final int scale = (zone != null && zone.getVolumeStep() == 0) ? 2 : 1;
         return (zone != null && zone.getVolMax() > 0) ?
                 scale * zone.getVolMax() :
-                Math.max(state.volumeLevel, scale * MasterVolumeMsg.MAX_VOLUME_1_STEP);
+                Math.max(state.getSnapshot().volumeLevel, scale * MasterVolumeMsg.MAX_VOLUME_1_STEP);
     }
 
     private void updateVolumeGroup(@NonNull final State state, @NonNull final LinearLayout group)
     {
         final AppCompatSeekBar progressBar = group.findViewWithTag("tone_progress_bar");
         final ReceiverInformationMsg.Zone zone = state.getActiveZoneInfo();
+        final int volumeLevel = state.getSnapshot().volumeLevel;
         final int maxVolume = Math.min(getVolumeMax(state, zone),
                 activity.getConfiguration().audioControl.getMasterVolumeMax());
 
-        updateProgressLabel(group, R.string.master_volume, State.getVolumeLevelStr(state.volumeLevel, zone));
+        updateProgressLabel(group, R.string.master_volume, State.getVolumeLevelStr(volumeLevel, zone));
 
         final TextView minValue = group.findViewWithTag("tone_min_value");
         minValue.setText("0");
@@ -302,7 +305,7 @@ class AudioControlManager
         maxValue.setText(State.getVolumeLevelStr(maxVolume, zone));
 
         progressBar.setMax(maxVolume);
-        progressBar.setProgress(Math.max(0, state.volumeLevel));
+        progressBar.setProgress(Math.max(0, volumeLevel));
     }
 
     private void showMasterVolumeMaxDialog(@NonNull final State state)
@@ -360,7 +363,7 @@ class AudioControlManager
         });
 
         masterVolumeMaxDialog.show();
-        Utils.fixIconColor(masterVolumeMaxDialog, android.R.attr.textColorSecondary);
+        AndroidUtils.fixIconColor(masterVolumeMaxDialog, android.R.attr.textColorSecondary);
     }
 
     private void prepareToneControl(@NonNull final State state,
@@ -26,7 +26,8 @@ import com.mkulesh.onpc.R;
 import com.mkulesh.onpc.config.CfgAppSettings;
 import com.mkulesh.onpc.iscp.ISCPMessage;
 import com.mkulesh.onpc.iscp.State;
-import com.mkulesh.onpc.utils.Utils;
+import com.mkulesh.onpc.utils.AndroidUtils;
+import com.mkulesh.onpc.utils.Logging;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -53,6 +54,17 @@ abstract public class BaseFragment extends Fragment
     private int buttonMarginVertical = 0;
     final PopupManager popupManager = new PopupManager();
 
+    // Versions of the state fields rendered by this fragment and the fields changed since the last update
+    private State renderedState = null;
+    private final int[] renderedVersions = new int[State.Field.values().length];
+    private int changedFields = State.ALL_FIELDS;
+
+    // Measurement of UI work: number and duration of updates within the current period
+    private final static long UI_WORK_PERIOD = 10000;
+    private long uiWorkStart = 0;
+    private int uiWorkUpdates = 0;
+    private long uiWorkTime = 0;
+
     interface ButtonListener
     {
         void onPostProcessing();
@@ -107,6 +119,8 @@ abstract public class BaseFragment extends Fragment
 
     public void update(final State state, @Nullable HashSet<State.ChangeType> eventChanges)
     {
+        final long startTime = System.nanoTime();
+        updateChangedFields(state, eventChanges == null);
         if (eventChanges == null)
         {
             eventChanges = new HashSet<>();
@@ -120,6 +134,7 @@ abstract public class BaseFragment extends Fragment
         {
             updateActiveView(state, eventChanges);
         }
+        measureUiWork(startTime);
         if (activity.isConnected() && state != null)
         {
             if (state.popup.get() != null)
@@ -133,6 +148,64 @@ abstract public class BaseFragment extends Fragment
         }
     }
 
+    private void updateChangedFields(@Nullable final State state, boolean fullUpdate)
+    {
+        if (state == null)
+        {
+            renderedState = null;
+            changedFields = State.ALL_FIELDS;
+            return;
+        }
+        changedFields = fullUpdate || state != renderedState ? State.ALL_FIELDS : 0;
+        renderedState = state;
+        for (State.Field f : State.Field.values())
+        {
+            final int version = state.getVersion(f);
+            if (renderedVersions[f.ordinal()] != version)
+            {
+                renderedVersions[f.ordinal()] = version;
+                changedFields |= f.getMask();
+            }
+        }
+    }
+
+    /**
+     * Checks whether one of given state fields is changed since the previous update of this fragment.
+     * Shall only be called from updateActiveView or updateStandbyView.
+     */
+    boolean isChanged(@NonNull final State.Field... fields)
+    {
+        for (State.Field f : fields)
+        {
+            if ((changedFields & f.getMask()) != 0)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void measureUiWork(long startTime)
+    {
+        final long now = System.nanoTime();
+        uiWorkUpdates++;
+        uiWorkTime += now - startTime;
+        if (uiWorkStart == 0)
+        {
+            uiWorkStart = startTime;
+        }
+        final long period = (now - uiWorkStart) / 1000000L;
+        if (period >= UI_WORK_PERIOD)
+        {
+            final float seconds = period / 1000.0f;
+            Logging.info(this, "UI work: " + Math.round(uiWorkUpdates / seconds) + " updates/s, "
+                    + Math.round(uiWorkTime / 1000000.0f / seconds) + " ms/s");
+            uiWorkStart = now;
+            uiWorkUpdates = 0;
+            uiWorkTime = 0;
+        }
+    }
+
     protected abstract void updateStandbyView(@Nullable final State state);
 
     protected abstract void updateActiveView(@NonNull final State state, @NonNull final HashSet<State.ChangeType> eventChanges);
@@ -207,18 +280,18 @@ abstract public class BaseFragment extends Fragment
         if (b.getContentDescription() != null && b.getContentDescription().length() > 0)
         {
             b.setLongClickable(true);
-            b.setOnLongClickListener(v -> Utils.showButtonDescription(activity, v));
+            b.setOnLongClickListener(v -> AndroidUtils.showButtonDescription(activity, v));
         }
     }
 
     void setButtonEnabled(View b, boolean isEnabled)
     {
-        Utils.setButtonEnabled(activity, b, isEnabled);
+        AndroidUtils.setButtonEnabled(activity, b, isEnabled);
     }
 
     void setButtonSelected(View b, boolean isSelected)
     {
-        Utils.setButtonSelected(activity, b, isSelected);
+        AndroidUtils.setButtonSelected(activity, b, isSelected);
     }
 
     @SuppressWarnings("SameParameterValue")
@@ -36,7 +36,7 @@ import com.mkulesh.onpc.iscp.messages.FirmwareUpdateMsg;
 import com.mkulesh.onpc.iscp.messages.NetworkStandByMsg;
 import com.mkulesh.onpc.iscp.messages.PowerStatusMsg;
 import com.mkulesh.onpc.iscp.messages.PresetMemoryMsg;
-import com.mkulesh.onpc.utils.Utils;
+import com.mkulesh.onpc.utils.AndroidUtils;
 import com.mkulesh.onpc.widgets.HorizontalNumberPicker;
 
 import androidx.annotation.DrawableRes;
@@ -64,8 +64,8 @@ public class Dialogs
 
     public AlertDialog createOkDialog(@NonNull final FrameLayout frameView, @DrawableRes final int iconId, @StringRes final int titleId)
     {
-        final Drawable icon = Utils.getDrawable(activity, iconId);
-        Utils.setDrawableColorAttr(activity, icon, android.R.attr.textColorSecondary);
+        final Drawable icon = AndroidUtils.getDrawable(activity, iconId);
+        AndroidUtils.setDrawableColorAttr(activity, icon, android.R.attr.textColorSecondary);
         return new AlertDialog.Builder(activity)
                 .setTitle(titleId)
                 .setIcon(icon)
@@ -96,7 +96,7 @@ public class Dialogs
             b.setText(getTranslatedName(activity, state.getDcpSearchCriteria().get(i).first));
             b.setTag(state.getDcpSearchCriteria().get(i).second);
             b.setChecked(i == 0);
-            b.setTextColor(Utils.getThemeColorAttr(activity, android.R.attr.textColor));
+            b.setTextColor(AndroidUtils.getThemeColorAttr(activity, android.R.attr.textColor));
             b.setOnClickListener((v) -> {
                 for (int k = 0; k < searchCriteria.getChildCount(); k++)
                 {
@@ -110,8 +110,8 @@ public class Dialogs
         final AppCompatEditText searchText = frameView.findViewById(R.id.search_string);
         searchText.setText(activity.getStateManager().getState().artist);
 
-        final Drawable icon = Utils.getDrawable(activity, R.drawable.cmd_search);
-        Utils.setDrawableColorAttr(activity, icon, android.R.attr.textColorSecondary);
+        final Drawable icon = AndroidUtils.getDrawable(activity, R.drawable.cmd_search);
+        AndroidUtils.setDrawableColorAttr(activity, icon, android.R.attr.textColorSecondary);
         final AlertDialog dialog = new AlertDialog.Builder(activity)
                 .setTitle(R.string.medialist_search)
                 .setIcon(icon)
@@ -119,12 +119,12 @@ public class Dialogs
                 .setView(frameView)
                 .setNegativeButton(activity.getResources().getString(R.string.action_cancel), (dialog1, which) ->
                 {
-                    Utils.showSoftKeyboard(activity, searchText, false);
+                    AndroidUtils.showSoftKeyboard(activity, searchText, false);
                     dialog1.dismiss();
                 })
                 .setPositiveButton(activity.getResources().getString(R.string.action_ok), (dialog2, which) ->
                 {
-                    Utils.showSoftKeyboard(activity, searchText, false);
+                    AndroidUtils.showSoftKeyboard(activity, searchText, false);
                     for (int i = 0; i < searchCriteria.getChildCount(); i++)
                     {
                         final AppCompatRadioButton b = (AppCompatRadioButton) searchCriteria.getChildAt(i);
@@ -145,7 +145,7 @@ public class Dialogs
                 .create();
 
         dialog.show();
-        Utils.fixIconColor(dialog, android.R.attr.textColorSecondary);
+        AndroidUtils.fixIconColor(dialog, android.R.attr.textColorSecondary);
     }
 
     @NonNull
@@ -177,8 +177,8 @@ public class Dialogs
 
     public void showFirmwareUpdateDialog()
     {
-        final Drawable icon = Utils.getDrawable(activity, R.drawable.cmd_firmware_update);
-        Utils.setDrawableColorAttr(activity, icon, android.R.attr.textColorSecondary);
+        final Drawable icon = AndroidUtils.getDrawable(activity, R.drawable.cmd_firmware_update);
+        AndroidUtils.setDrawableColorAttr(activity, icon, android.R.attr.textColorSecondary);
         final AlertDialog dialog = new AlertDialog.Builder(activity)
                 .setTitle(R.string.device_firmware)
                 .setIcon(icon)
@@ -197,13 +197,13 @@ public class Dialogs
                 .create();
 
         dialog.show();
-        Utils.fixIconColor(dialog, android.R.attr.textColorSecondary);
+        AndroidUtils.fixIconColor(dialog, android.R.attr.textColorSecondary);
     }
 
     public void showNetworkStandByDialog()
     {
-        final Drawable icon = Utils.getDrawable(activity, R.drawable.menu_power_standby);
-        Utils.setDrawableColorAttr(activity, icon, android.R.attr.textColorSecondary);
+        final Drawable icon = AndroidUtils.getDrawable(activity, R.drawable.menu_power_standby);
+        AndroidUtils.setDrawableColorAttr(activity, icon, android.R.attr.textColorSecondary);
         final AlertDialog dialog = new AlertDialog.Builder(activity)
                 .setTitle(R.string.device_network_standby)
                 .setIcon(icon)
@@ -221,7 +221,7 @@ public class Dialogs
                 .create();
 
         dialog.show();
-        Utils.fixIconColor(dialog, android.R.attr.textColorSecondary);
+        AndroidUtils.fixIconColor(dialog, android.R.attr.textColorSecondary);
     }
 
     public void showAvInfoDialog(@Nullable final State state)
@@ -261,7 +261,7 @@ public class Dialogs
 
         final AlertDialog dialog = createOkDialog(frameView, state.getServiceIcon(), R.string.av_info_dialog);
         dialog.show();
-        Utils.fixIconColor(dialog, android.R.attr.textColorSecondary);
+        AndroidUtils.fixIconColor(dialog, android.R.attr.textColorSecondary);
     }
 
     public void showPresetMemoryDialog(@NonNull final State state)
@@ -275,8 +275,8 @@ public class Dialogs
         numberPicker.setValue(state.nextEmptyPreset());
         numberPicker.setEnabled(true);
 
-        final Drawable icon = Utils.getDrawable(activity, R.drawable.cmd_track_menu);
-        Utils.setDrawableColorAttr(activity, icon, android.R.attr.textColorSecondary);
+        final Drawable icon = AndroidUtils.getDrawable(activity, R.drawable.cmd_track_menu);
+        AndroidUtils.setDrawableColorAttr(activity, icon, android.R.attr.textColorSecondary);
         final AlertDialog dialog = new AlertDialog.Builder(activity)
                 .setTitle(R.string.cmd_preset_memory)
                 .setIcon(icon)
@@ -284,12 +284,12 @@ public class Dialogs
                 .setView(frameView)
                 .setNegativeButton(activity.getResources().getString(R.string.action_cancel), (dialog1, which) ->
                 {
-                    Utils.showSoftKeyboard(activity, numberPicker, false);
+                    AndroidUtils.showSoftKeyboard(activity, numberPicker, false);
                     dialog1.dismiss();
                 })
                 .setPositiveButton(activity.getResources().getString(R.string.action_ok), (dialog12, which) ->
                 {
-                    Utils.showSoftKeyboard(activity, numberPicker, false);
+                    AndroidUtils.showSoftKeyboard(activity, numberPicker, false);
                     // in order to get updated preset list, we need to request Receiver Information
                     activity.getStateManager().requestRIonPreset(true);
                     activity.getStateManager().sendMessage(new PresetMemoryMsg(numberPicker.getValue()));
@@ -297,7 +297,7 @@ public class Dialogs
                 .create();
 
         dialog.show();
-        Utils.fixIconColor(dialog, android.R.attr.textColorSecondary);
+        AndroidUtils.fixIconColor(dialog, android.R.attr.textColorSecondary);
     }
 
     public void showEditShortcutDialog(@NonNull final CfgFavoriteShortcuts.Shortcut shortcut, final ButtonListener bl)
@@ -311,8 +311,8 @@ public class Dialogs
         final EditText alias = frameView.findViewById(R.id.favorite_shortcut_alias);
         alias.setText(shortcut.alias);
 
-        final Drawable icon = Utils.getDrawable(activity, R.drawable.drawer_edit_item);
-        Utils.setDrawableColorAttr(activity, icon, android.R.attr.textColorSecondary);
+        final Drawable icon = AndroidUtils.getDrawable(activity, R.drawable.drawer_edit_item);
+        AndroidUtils.setDrawableColorAttr(activity, icon, android.R.attr.textColorSecondary);
         final AlertDialog dialog = new AlertDialog.Builder(activity)
                 .setTitle(R.string.favorite_shortcut_edit)
                 .setIcon(icon)
@@ -320,12 +320,12 @@ public class Dialogs
                 .setView(frameView)
                 .setNegativeButton(activity.getResources().getString(R.string.action_cancel), (dialog1, which) ->
                 {
-                    Utils.showSoftKeyboard(activity, alias, false);
+                    AndroidUtils.showSoftKeyboard(activity, alias, false);
                     dialog1.dismiss();
                 })
                 .setPositiveButton(activity.getResources().getString(R.string.action_ok), (dialog2, which) ->
                 {
-                    Utils.showSoftKeyboard(activity, alias, false);
+                    AndroidUtils.showSoftKeyboard(activity, alias, false);
                     activity.getConfiguration().favoriteShortcuts.updateShortcut(
                             shortcut, alias.getText().toString());
                     if (bl != null)
@@ -337,13 +337,13 @@ public class Dialogs
                 .create();
 
         dialog.show();
-        Utils.fixIconColor(dialog, android.R.attr.textColorSecondary);
+        AndroidUtils.fixIconColor(dialog, android.R.attr.textColorSecondary);
     }
 
     public void showOnStandByDialog(@NonNull final PowerStatusMsg cmdMsg)
     {
-        final Drawable icon = Utils.getDrawable(activity, R.drawable.menu_power_standby);
-        Utils.setDrawableColorAttr(activity, icon, android.R.attr.textColorSecondary);
+        final Drawable icon = AndroidUtils.getDrawable(activity, R.drawable.menu_power_standby);
+        AndroidUtils.setDrawableColorAttr(activity, icon, android.R.attr.textColorSecondary);
         final AlertDialog dialog = new AlertDialog.Builder(activity)
                 .setTitle(R.string.menu_power_standby)
                 .setIcon(icon)
@@ -361,7 +361,7 @@ public class Dialogs
                     d.dismiss();
                 }).create();
         dialog.show();
-        Utils.fixIconColor(dialog, android.R.attr.textColorSecondary);
+        AndroidUtils.fixIconColor(dialog, android.R.attr.textColorSecondary);
     }
 
     public void showHtmlDialog(@DrawableRes int icon, @StringRes int title, @StringRes int textId)
@@ -15,6 +15,7 @@
 package com.mkulesh.onpc.fragments;
 
 import android.annotation.SuppressLint;
+import android.graphics.Bitmap;
 import android.graphics.drawable.Drawable;
 import android.os.Bundle;
 import android.view.LayoutInflater;
@@ -53,6 +54,7 @@ import com.mkulesh.onpc.iscp.messages.ServiceType;
 import com.mkulesh.onpc.iscp.messages.TimeInfoMsg;
 import com.mkulesh.onpc.iscp.messages.TimeSeekMsg;
 import com.mkulesh.onpc.iscp.messages.TuningCommandMsg;
+import com.mkulesh.onpc.utils.AndroidUtils;
 import com.mkulesh.onpc.utils.Logging;
 import com.mkulesh.onpc.utils.Utils;
 
@@ -384,7 +386,7 @@ public class ListenFragment extends BaseFragment implements AudioControlManager.
 
         cover.setEnabled(false);
         cover.setImageResource(R.drawable.empty_cover);
-        Utils.setImageViewColorAttr(activity, cover, android.R.attr.textColor);
+        AndroidUtils.setImageViewColorAttr(activity, cover, android.R.attr.textColor);
 
         seekBar.setEnabled(false);
         seekBar.setProgress(0);
@@ -428,28 +430,17 @@ public class ListenFragment extends BaseFragment implements AudioControlManager.
         Logging.info(this, "Updating playback monitor");
 
         // Auto volume control
-        final State.SoundControlType soundControl = state.soundControlType(
-                activity.getConfiguration().audioControl.getSoundControl(), state.getActiveZoneInfo());
-        switch (soundControl)
+        if (isChanged(State.Field.VOLUME))
         {
-        case RI_AMP:
-            prepareAmplifierButtons();
-            break;
-        case DEVICE_BUTTONS:
-        case DEVICE_SLIDER:
-        case DEVICE_BTN_AROUND_SLIDER:
-        case DEVICE_BTN_ABOVE_SLIDER:
-            prepareDeviceSoundButtons(soundControl, state);
-            break;
-        default:
-            clearSoundVolumeButtons();
-            break;
+            updateSoundControls(state);
         }
 
         // Text (album and artist)
+        if (isChanged(State.Field.TRACK, State.Field.PRESETS))
         {
-            ((TextView) rootView.findViewById(R.id.tv_album)).setText(state.album);
-            ((TextView) rootView.findViewById(R.id.tv_artist)).setText(state.artist);
+            final State.Snapshot snapshot = state.getSnapshot();
+            ((TextView) rootView.findViewById(R.id.tv_album)).setText(snapshot.album);
+            ((TextView) rootView.findViewById(R.id.tv_artist)).setText(snapshot.artist);
 
             final TextView title = rootView.findViewById(R.id.tv_title);
             final TextView format = rootView.findViewById(R.id.tv_file_format);
@@ -459,14 +450,14 @@ public class ListenFragment extends BaseFragment implements AudioControlManager.
                 final String presetInfo = preset != null ? preset.displayedString(false) : "";
                 final TextView album = rootView.findViewById(R.id.tv_album);
                 album.setText(presetInfo);
-                final String stationInfo = state.isDab() || state.isFm() ? state.stationName : "";
+                final String stationInfo = state.isDab() || state.isFm() ? snapshot.stationName : "";
                 title.setText(!stationInfo.equals(presetInfo) ? stationInfo : "");
-                format.setText(String.format(" %s", state.getFrequencyInfo(activity)));
+                format.setText(String.format(" %s", state.getFrequencyInfo(activity::getString)));
             }
             else
             {
-                title.setText(state.title);
-                format.setText(state.fileFormat);
+                title.setText(snapshot.title);
+                format.setText(snapshot.fileFormat);
             }
             format.setClickable(state.protoType == ConnectionIf.ProtoType.ISCP);
             format.setOnClickListener((v) ->
@@ -477,32 +468,67 @@ public class ListenFragment extends BaseFragment implements AudioControlManager.
         }
 
         // service icon and track
+        if (isChanged(State.Field.TRACK, State.Field.OTHER))
         {
             final TextView track = rootView.findViewById(R.id.tv_track);
-            track.setText(state.getTrackInfo(activity));
+            track.setText(state.getTrackInfo(activity::getString));
             updateInputSource(state, state.getServiceIcon(), true);
         }
 
         // cover
-        cover.setEnabled(true);
-        if (state.cover == null || state.isSimpleInput())
+        if (isChanged(State.Field.COVER))
         {
-            cover.setImageResource(R.drawable.empty_cover);
-            Utils.setImageViewColorAttr(activity, cover, android.R.attr.textColor);
+            cover.setEnabled(true);
+            activity.getStateManager().setCoverSize(Math.max(cover.getWidth(), cover.getHeight()));
+            if (state.cover == null || state.isSimpleInput())
+            {
+                cover.setImageResource(R.drawable.empty_cover);
+                AndroidUtils.setImageViewColorAttr(activity, cover, android.R.attr.textColor);
+            }
+            else
+            {
+                cover.setColorFilter(null);
+                cover.setImageBitmap((Bitmap) state.cover);
+            }
         }
-        else
+
+        // progress bar
+        if (isChanged(State.Field.TIME, State.Field.TRACK, State.Field.OTHER))
         {
-            cover.setColorFilter(null);
-            cover.setImageBitmap(state.cover);
+            updateProgressBar(state);
         }
 
-        // progress bar
-        updateProgressBar(state);
+        // Track menu, playback buttons, multiroom and feeds
+        if (isChanged(State.Field.MEDIA_LIST, State.Field.PRESETS, State.Field.OTHER))
+        {
+            updatePlaybackControls(state);
+        }
+    }
+
+    private void updateSoundControls(@NonNull final State state)
+    {
+        final State.SoundControlType soundControl = state.soundControlType(
+                activity.getConfiguration().audioControl.getSoundControl(), state.getActiveZoneInfo());
+        switch (soundControl)
+        {
+        case RI_AMP:
+            prepareAmplifierButtons();
+            break;
+        case DEVICE_BUTTONS:
+        case DEVICE_SLIDER:
+        case DEVICE_BTN_AROUND_SLIDER:
+        case DEVICE_BTN_ABOVE_SLIDER:
+            prepareDeviceSoundButtons(soundControl, state);
+            break;
+        default:
+            clearSoundVolumeButtons();
+            break;
+        }
 
-        // buttons
+        final State.Snapshot snapshot = state.getSnapshot();
         final ArrayList<String> selectedListeningModes = new ArrayList<>();
         final CfgAudioControl ac = activity.getConfiguration().audioControl;
-        for (ListeningModeMsg.Mode m : ac.getSortedListeningModes(false, state.listeningMode, state.protoType))
+        for (ListeningModeMsg.Mode m : ac.getSortedListeningModes(false, snapshot.listeningMode, state.protoType))
         {
             selectedListeningModes.add(m.getCode());
         }
@@ -512,9 +538,9 @@ public class ListenFragment extends BaseFragment implements AudioControlManager.
             setButtonEnabled(b, true);
             if (b.getTag() instanceof AudioMutingMsg.Status)
             {
-                setButtonSelected(b, state.audioMuting == AudioMutingMsg.Status.ON);
+                setButtonSelected(b, snapshot.audioMuting == AudioMutingMsg.Status.ON);
                 prepareButtonListeners(b, new AudioMutingMsg(
-                        state.getActiveZone(), AudioMutingMsg.toggle(state.audioMuting, state.protoType)));
+                        state.getActiveZone(), AudioMutingMsg.toggle(snapshot.audioMuting, state.protoType)));
             }
             else if (b.getTag() instanceof MasterVolumeMsg.Command)
             {
@@ -526,7 +552,7 @@ public class ListenFragment extends BaseFragment implements AudioControlManager.
                 }
                 else
                 {
-                    b.setOnLongClickListener(v -> Utils.showButtonDescription(activity, v));
+                    b.setOnLongClickListener(v -> AndroidUtils.showButtonDescription(activity, v));
                 }
             }
             else if (b.getTag() instanceof ListeningModeMsg.Mode)
@@ -535,7 +561,7 @@ public class ListenFragment extends BaseFragment implements AudioControlManager.
                 if (selectedListeningModes.contains(s.getCode()))
                 {
                     b.setVisibility(View.VISIBLE);
-                    setButtonSelected(b, s == state.listeningMode);
+                    setButtonSelected(b, s == snapshot.listeningMode);
                     if (b.isSelected())
                     {
                         b.getParent().requestChildFocus(b, b);
@@ -551,7 +577,10 @@ public class ListenFragment extends BaseFragment implements AudioControlManager.
                 updateVolumeLevel(b, state);
             }
         }
+    }
 
+    private void updatePlaybackControls(@NonNull final State state)
+    {
         // Track menu and playback buttons
         if (state.protoType == ConnectionIf.ProtoType.ISCP || state.isRadioInput())
         {
@@ -575,7 +604,7 @@ public class ListenFragment extends BaseFragment implements AudioControlManager.
                         activity.getStateManager().sendTrackCmd(OperationCommandMsg.Command.MENU, false));
             }
         }
-        else if (state.protoType == ConnectionIf.ProtoType.DCP && state.inputType == InputSelectorMsg.InputType.DCP_NET)
+        else if (state.protoType == ConnectionIf.ProtoType.DCP && state.getSnapshot().inputType == InputSelectorMsg.InputType.DCP_NET)
         {
             prepareButton(btnTrackMenu, null,
                     ServiceType.DCP_PLAYQUEUE.getImageId(),
@@ -637,6 +666,7 @@ public class ListenFragment extends BaseFragment implements AudioControlManager.
      */
     private void updatePlaybackButtons(@NonNull final State state)
     {
+        final State.Snapshot snapshot = state.getSnapshot();
         setButtonsVisibility(fmDabButtons, View.GONE);
         setButtonsVisibility(playbackButtons, View.VISIBLE);
 
@@ -648,8 +678,8 @@ public class ListenFragment extends BaseFragment implements AudioControlManager.
             {
                 // For common btnPausePlay button, set desired command (PLAY or PAUSE)
                 // depending on current play state
-                final boolean isPaused = (state.playStatus == PlayStatusMsg.PlayStatus.STOP ||
-                        state.playStatus == PlayStatusMsg.PlayStatus.PAUSE);
+                final boolean isPaused = (snapshot.playStatus == PlayStatusMsg.PlayStatus.STOP ||
+                        snapshot.playStatus == PlayStatusMsg.PlayStatus.PAUSE);
                 opCommand = isPaused ? OperationCommandMsg.Command.PLAY.toString() :
                         OperationCommandMsg.Command.PAUSE.toString();
             }
@@ -699,35 +729,35 @@ public class ListenFragment extends BaseFragment implements AudioControlManager.
             setButtonEnabled(b, true);
         }
 
-        if (state.repeatStatus == PlayStatusMsg.RepeatStatus.DISABLE)
+        if (snapshot.repeatStatus == PlayStatusMsg.RepeatStatus.DISABLE)
         {
             setButtonEnabled(btnRepeat, false);
         }
         else
         {
             final OperationCommandMsg msg = new OperationCommandMsg(
-                    OperationCommandMsg.toggleRepeat(state.protoType, state.repeatStatus));
-            prepareButton(btnRepeat, msg, state.repeatStatus.getImageId(), msg.getCommand().getDescriptionId());
+                    OperationCommandMsg.toggleRepeat(state.protoType, snapshot.repeatStatus));
+            prepareButton(btnRepeat, msg, snapshot.repeatStatus.getImageId(), msg.getCommand().getDescriptionId());
             setButtonEnabled(btnRepeat, true);
-            setButtonSelected(btnRepeat, state.repeatStatus != PlayStatusMsg.RepeatStatus.OFF);
+            setButtonSelected(btnRepeat, snapshot.repeatStatus != PlayStatusMsg.RepeatStatus.OFF);
         }
 
-        if (state.shuffleStatus == PlayStatusMsg.ShuffleStatus.DISABLE)
+        if (snapshot.shuffleStatus == PlayStatusMsg.ShuffleStatus.DISABLE)
         {
             setButtonEnabled(btnRandom, false);
         }
         else
         {
             final OperationCommandMsg msg = new OperationCommandMsg(
-                    OperationCommandMsg.toggleShuffle(state.protoType, state.shuffleStatus));
+                    OperationCommandMsg.toggleShuffle(state.protoType, snapshot.shuffleStatus));
             prepareButton(btnRandom, msg, msg.getCommand().getImageId(), msg.getCommand().getDescriptionId());
             setButtonEnabled(btnRandom, true);
-            setButtonSelected(btnRandom, state.shuffleStatus != PlayStatusMsg.ShuffleStatus.OFF);
+            setButtonSelected(btnRandom, snapshot.shuffleStatus != PlayStatusMsg.ShuffleStatus.OFF);
         }
 
-        setButtonEnabled(btnPrevious, state.isPlaying());
-        setButtonEnabled(btnNext, state.isPlaying());
-        setButtonEnabled(btnPausePlay, state.isOn());
+        setButtonEnabled(btnPrevious, snapshot.isPlaying());
+        setButtonEnabled(btnNext, snapshot.isPlaying());
+        setButtonEnabled(btnPausePlay, snapshot.isOn());
     }
 
     /*
@@ -749,7 +779,7 @@ public class ListenFragment extends BaseFragment implements AudioControlManager.
                     final AlertDialog alertDialog = MultiroomManager.createDeviceSelectionDialog(
                             activity, b.getContentDescription());
                     alertDialog.show();
-                    Utils.fixIconColor(alertDialog, android.R.attr.textColorSecondary);
+                    AndroidUtils.fixIconColor(alertDialog, android.R.attr.textColorSecondary);
                 }
             });
         }
@@ -772,8 +802,8 @@ public class ListenFragment extends BaseFragment implements AudioControlManager.
             b.setVisibility(View.VISIBLE);
             b.setText(ch.toString());
             setButtonEnabled(b, state.isOn());
-            final Drawable icon = Utils.getDrawable(activity, R.drawable.cmd_multiroom_channel);
-            Utils.setDrawableColorAttr(activity, icon,
+            final Drawable icon = AndroidUtils.getDrawable(activity, R.drawable.cmd_multiroom_channel);
+            AndroidUtils.setDrawableColorAttr(activity, icon,
                     state.isOn() ? R.attr.colorButtonEnabled : R.attr.colorButtonDisabled);
             b.setCompoundDrawablesWithIntrinsicBounds(icon, null, null, null);
             prepareButtonListeners(b, cmd, null);
@@ -793,15 +823,16 @@ public class ListenFragment extends BaseFragment implements AudioControlManager.
     @SuppressLint("SetTextI18n")
     private void updateVolumeLevel(View view, @Nullable final State state)
     {
-        final boolean volumeValid = state != null && state.isOn() && state.volumeLevel != MasterVolumeMsg.NO_LEVEL;
+        final State.Snapshot snapshot = state != null ? state.getSnapshot() : null;
+        final boolean volumeValid = snapshot != null && snapshot.isOn() && snapshot.volumeLevel != MasterVolumeMsg.NO_LEVEL;
         if (view instanceof AppCompatButton)
         {
             final AppCompatButton b = (AppCompatButton) view;
-            final Drawable icon = Utils.getDrawable(activity, R.drawable.volume_audio_control);
+            final Drawable icon = AndroidUtils.getDrawable(activity, R.drawable.volume_audio_control);
             b.setText(volumeValid ?
-                    State.getVolumeLevelStr(state.volumeLevel, state.getActiveZoneInfo()) : "");
+                    State.getVolumeLevelStr(snapshot.volumeLevel, state.getActiveZoneInfo()) : "");
             setButtonEnabled(b, volumeValid);
-            Utils.setDrawableColorAttr(activity, icon, volumeValid ?
+            AndroidUtils.setDrawableColorAttr(activity, icon, volumeValid ?
                     R.attr.colorButtonEnabled : R.attr.colorButtonDisabled);
             b.setCompoundDrawablesWithIntrinsicBounds(icon, null, null, null);
         }
@@ -814,7 +845,7 @@ public class ListenFragment extends BaseFragment implements AudioControlManager.
                 final int maxVolume = Math.min(audioControlManager.getVolumeMax(state, zone),
                         activity.getConfiguration().audioControl.getMasterVolumeMax());
                 b.setMax(maxVolume);
-                b.setProgress(Math.max(0, state.volumeLevel));
+                b.setProgress(Math.max(0, snapshot.volumeLevel));
             }
             else
             {
@@ -879,10 +910,11 @@ public class ListenFragment extends BaseFragment implements AudioControlManager.
      */
     private void updateProgressBar(@NonNull final State state)
     {
-        ((TextView) rootView.findViewById(R.id.tv_time_start)).setText(state.currentTime);
-        ((TextView) rootView.findViewById(R.id.tv_time_end)).setText(state.maxTime);
-        final int currTime = Utils.timeToSeconds(state.currentTime);
-        final int maxTime = Utils.timeToSeconds(state.maxTime);
+        final State.Snapshot snapshot = state.getSnapshot();
+        ((TextView) rootView.findViewById(R.id.tv_time_start)).setText(snapshot.currentTime);
+        ((TextView) rootView.findViewById(R.id.tv_time_end)).setText(snapshot.maxTime);
+        final int currTime = Utils.timeToSeconds(snapshot.currentTime);
+        final int maxTime = Utils.timeToSeconds(snapshot.maxTime);
         if (currTime >= 0 && maxTime >= 0)
         {
             seekBar.setMax(maxTime);
@@ -893,14 +925,15 @@ public class ListenFragment extends BaseFragment implements AudioControlManager.
             seekBar.setMax(1000);
             seekBar.setProgress(0);
         }
-        seekBar.setEnabled(state.isPlaying() && state.timeSeek == MenuStatusMsg.TimeSeek.ENABLE);
+        seekBar.setEnabled(snapshot.isPlaying() && snapshot.timeSeek == MenuStatusMsg.TimeSeek.ENABLE);
     }
 
     private void seekTime(int newSec)
     {
         final State state = activity.getStateManager().getState();
-        final int currTime = Utils.timeToSeconds(state.currentTime);
-        final int maxTime = Utils.timeToSeconds(state.maxTime);
+        final State.Snapshot snapshot = state.getSnapshot();
+        final int currTime = Utils.timeToSeconds(snapshot.currentTime);
+        final int maxTime = Utils.timeToSeconds(snapshot.maxTime);
         if (currTime >= 0 && maxTime >= 0)
         {
             final int hour = newSec / 3600;
@@ -908,8 +941,8 @@ public class ListenFragment extends BaseFragment implements AudioControlManager.
             final int sec = newSec - hour * 3600 - min * 60;
             activity.getStateManager().requestSkipNextTimeMsg(2);
             final TimeSeekMsg msg = new TimeSeekMsg(state.getModel(), hour, min, sec);
-            state.currentTime = msg.getTimeAsString();
-            ((TextView) rootView.findViewById(R.id.tv_time_start)).setText(state.currentTime);
+            // The state is only modified by the state manager thread: the new time is just displayed
+            ((TextView) rootView.findViewById(R.id.tv_time_start)).setText(msg.getTimeAsString());
             activity.getStateManager().sendMessage(msg);
         }
     }
@@ -20,7 +20,7 @@ import android.view.View;
 
 import com.mkulesh.onpc.MainActivity;
 import com.mkulesh.onpc.R;
-import com.mkulesh.onpc.utils.Utils;
+import com.mkulesh.onpc.utils.AndroidUtils;
 
 import androidx.annotation.NonNull;
 import androidx.appcompat.widget.AppCompatEditText;
@@ -102,11 +102,11 @@ class MediaFilter
         if (this.visible)
         {
             filterRegex.requestFocus();
-            Utils.showSoftKeyboard(activity, filterRegex, true);
+            AndroidUtils.showSoftKeyboard(activity, filterRegex, true);
         }
         else
         {
-            Utils.showSoftKeyboard(activity, filterRegex, false);
+            AndroidUtils.showSoftKeyboard(activity, filterRegex, false);
             filterRegex.clearFocus();
             if (clear && filterRegex.getText() != null)
             {
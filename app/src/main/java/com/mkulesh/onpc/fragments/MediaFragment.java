@@ -48,8 +48,8 @@ import com.mkulesh.onpc.iscp.messages.PresetCommandMsg;
 import com.mkulesh.onpc.iscp.messages.ReceiverInformationMsg;
 import com.mkulesh.onpc.iscp.messages.ServiceType;
 import com.mkulesh.onpc.iscp.messages.XmlListItemMsg;
+import com.mkulesh.onpc.utils.AndroidUtils;
 import com.mkulesh.onpc.utils.Logging;
-import com.mkulesh.onpc.utils.Utils;
 
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -262,7 +262,7 @@ public class MediaFragment extends BaseFragment implements AdapterView.OnItemCli
             final String title = selectedItem.getTitle();
             final DcpMediaContainerMsg dcpCmd = (selectedItem.getCmdMessage() instanceof DcpMediaContainerMsg) ?
                     (DcpMediaContainerMsg) selectedItem.getCmdMessage() : null;
-            Logging.info(this, "Context menu '" + item.getTitle() + "'; " + selectedItem);
+            Logging.info(this, "Context menu '{}'; {}", item.getTitle(), selectedItem);
             selectedItem = null;
             switch (item.getItemId())
             {
@@ -392,13 +392,13 @@ public class MediaFragment extends BaseFragment implements AdapterView.OnItemCli
                 final ServiceType s = state.serviceType == null ? ServiceType.UNKNOWN : state.serviceType;
                 final CfgFavoriteShortcuts.Shortcut shortcut = new CfgFavoriteShortcuts.Shortcut(
                         shortcutCfg.getNextId(),
-                        state.inputType,
+                        state.getSnapshot().inputType,
                         s,
                         item,
                         alias);
                 if (!state.pathItems.isEmpty())
                 {
-                    Logging.info(this, "full path to the item: " + state.pathItems);
+                    Logging.info(this, "full path to the item: {}", state.pathItems);
                     shortcut.setPathItems(state.pathItems, getActivity(), s);
                 }
                 shortcutCfg.updateShortcut(shortcut, shortcut.alias);
@@ -440,7 +440,8 @@ public class MediaFragment extends BaseFragment implements AdapterView.OnItemCli
     @Override
     protected void updateActiveView(@NonNull final State state, @NonNull final HashSet<State.ChangeType> eventChanges)
     {
-        if (eventChanges.contains(State.ChangeType.MEDIA_ITEMS) || eventChanges.contains(State.ChangeType.RECEIVER_INFO))
+        // The list is only rebuilt if the media items or presets are actually changed
+        if (isChanged(State.Field.MEDIA_LIST, State.Field.PRESETS))
         {
             Logging.info(this, "Updating media fragment");
             mediaFilter.disable();
@@ -487,8 +488,9 @@ public class MediaFragment extends BaseFragment implements AdapterView.OnItemCli
 
     private void updateSelectorButtons(@NonNull final State state)
     {
+        final State.Snapshot snapshot = state.getSnapshot();
         selectorPaletteLayout.removeAllViews();
-        List<ReceiverInformationMsg.Selector> deviceSelectors = state.cloneDeviceSelectors();
+        List<ReceiverInformationMsg.Selector> deviceSelectors = state.getDeviceSelectors();
         if (deviceSelectors.isEmpty())
         {
             return;
@@ -497,7 +499,7 @@ public class MediaFragment extends BaseFragment implements AdapterView.OnItemCli
         // Selectors
         AppCompatButton selectedButton = null;
         for (ReceiverInformationMsg.Selector s : activity.getConfiguration().getSortedDeviceSelectors(
-                false, state.inputType, deviceSelectors))
+                false, snapshot.inputType, deviceSelectors))
         {
             if (s.getId().equals(InputSelectorMsg.InputType.SOURCE.getCode()) &&
                     !s.isActiveForZone(state.getActiveZone()))
@@ -512,7 +514,7 @@ public class MediaFragment extends BaseFragment implements AdapterView.OnItemCli
                 continue;
             }
 
-            final boolean isSelected = state.isOn() && state.inputType.getCode().equals(s.getId());
+            final boolean isSelected = snapshot.isOn() && snapshot.inputType.getCode().equals(s.getId());
             final boolean waitingForData = !isSelected || !state.isTopLayer();
             final AppCompatButton b = createButton(msg.getInputType().getDescriptionId(),
                     null, msg.getInputType(), null);
@@ -548,6 +550,7 @@ public class MediaFragment extends BaseFragment implements AdapterView.OnItemCli
 
     private void updateSelectorButtonsState(@NonNull final State state)
     {
+        final State.Snapshot snapshot = state.getSnapshot();
         for (int i = 0; i < selectorPaletteLayout.getChildCount(); i++)
         {
             final View v = selectorPaletteLayout.getChildAt(i);
@@ -558,7 +561,7 @@ public class MediaFragment extends BaseFragment implements AdapterView.OnItemCli
             }
             if (v.getTag() instanceof InputSelectorMsg.InputType)
             {
-                setButtonSelected(v, state.inputType == v.getTag());
+                setButtonSelected(v, snapshot.inputType == v.getTag());
             }
         }
     }
@@ -566,17 +569,19 @@ public class MediaFragment extends BaseFragment implements AdapterView.OnItemCli
     @SuppressWarnings("StatementWithEmptyBody")
     private void updateListView(@NonNull final State state)
     {
+        final State.Snapshot snapshot = state.getSnapshot();
         listView.clearChoices();
         listView.invalidate();
-        final List<XmlListItemMsg> mediaItems = state.cloneMediaItems();
+        List<XmlListItemMsg> mediaItems = state.getMediaItems();
         if (state.protoType == ConnectionIf.ProtoType.DCP && !state.isTopLayer() && mediaItems.isEmpty())
         {
+            mediaItems = new ArrayList<>();
             mediaItems.add(new XmlListItemMsg(0, 0,
                     getString(R.string.medialist_no_items), XmlListItemMsg.Icon.UNKNOWN,
                     false, null));
         }
 
-        final List<NetworkServiceMsg> serviceItems = state.cloneServiceItems();
+        final List<NetworkServiceMsg> serviceItems = state.getServiceItems();
 
         ArrayList<ISCPMessage> newItems = new ArrayList<>();
         int playing = -1;
@@ -602,7 +607,7 @@ public class MediaFragment extends BaseFragment implements AdapterView.OnItemCli
             {
                 if ((state.isFm() && p.isFm())
                         || (state.isDab() && p.isDab())
-                        || (state.inputType == InputSelectorMsg.InputType.AM && p.isAm()))
+                        || (snapshot.inputType == InputSelectorMsg.InputType.AM && p.isAm()))
                 {
                     final boolean isPlaying = (p.getId() == state.preset);
                     newItems.add(new PresetCommandMsg(
@@ -687,7 +692,7 @@ public class MediaFragment extends BaseFragment implements AdapterView.OnItemCli
                 final NetworkServiceMsg cmd = (NetworkServiceMsg) selectedItem;
                 if (cmd.getService() == ServiceType.SPOTIFY || cmd.getService() == ServiceType.DCP_SPOTIFY)
                 {
-                    Logging.info(this, "Selected media item: " + cmd + " -> launch Spotify app");
+                    Logging.info(this, "Selected media item: {} -> launch Spotify app", cmd);
                     // Also see AndroidManifest.xml, queries section
                     Intent intent = getContext().getPackageManager().getLaunchIntentForPackage("com.spotify.music");
                     if (intent != null)
@@ -733,6 +738,7 @@ public class MediaFragment extends BaseFragment implements AdapterView.OnItemCli
 
     private void updateTitle(@NonNull final State state, boolean processing)
     {
+        final State.Snapshot snapshot = state.getSnapshot();
         // Top menu button
         {
             final AppCompatImageButton cmdTopButton = rootView.findViewById(R.id.cmd_top_button);
@@ -751,7 +757,7 @@ public class MediaFragment extends BaseFragment implements AdapterView.OnItemCli
             }
             else
             {
-                title.append(activity.getResources().getString(state.inputType.getDescriptionId()));
+                title.append(activity.getResources().getString(snapshot.inputType.getDescriptionId()));
             }
             if (state.isRadioInput())
             {
@@ -759,16 +765,16 @@ public class MediaFragment extends BaseFragment implements AdapterView.OnItemCli
                         .append(activity.getResources().getString(R.string.medialist_items))
                         .append(": ").append(filteredItems);
             }
-            else if (!state.title.isEmpty())
+            else if (!snapshot.title.isEmpty())
             {
-                title.append(": ").append(state.title);
+                title.append(": ").append(snapshot.title);
             }
         }
         else if (state.isPlaybackMode() || state.isMenuMode())
         {
-            title.append(state.title);
+            title.append(snapshot.title);
         }
-        else if (state.inputType.isMediaList())
+        else if (snapshot.inputType.isMediaList())
         {
             if (selector != null && state.isTopLayer() && activity.getConfiguration().isFriendlyNames())
             {
@@ -809,7 +815,7 @@ public class MediaFragment extends BaseFragment implements AdapterView.OnItemCli
         titleBar.setTag("VISIBLE");
         titleBar.setText(title.toString());
         titleBar.setEnabled(!state.isTopLayer());
-        setProgressIndicator(state, state.inputType.isMediaList() && processing);
+        setProgressIndicator(state, snapshot.inputType.isMediaList() && processing);
     }
 
     public boolean onBackPressed()
@@ -836,7 +842,7 @@ public class MediaFragment extends BaseFragment implements AdapterView.OnItemCli
         {
             final AppCompatImageView btn = rootView.findViewById(R.id.progress_indicator);
             btn.setVisibility(showProgress ? View.VISIBLE : View.GONE);
-            Utils.setImageViewColorAttr(activity, btn, R.attr.colorButtonDisabled);
+            AndroidUtils.setImageViewColorAttr(activity, btn, R.attr.colorButtonDisabled);
         }
 
         // DCP Search button
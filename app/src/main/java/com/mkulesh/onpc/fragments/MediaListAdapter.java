@@ -30,7 +30,7 @@ import com.mkulesh.onpc.iscp.messages.NetworkServiceMsg;
 import com.mkulesh.onpc.iscp.messages.OperationCommandMsg;
 import com.mkulesh.onpc.iscp.messages.PresetCommandMsg;
 import com.mkulesh.onpc.iscp.messages.XmlListItemMsg;
-import com.mkulesh.onpc.utils.Utils;
+import com.mkulesh.onpc.utils.AndroidUtils;
 
 import java.util.ArrayList;
 
@@ -70,7 +70,7 @@ final class MediaListAdapter extends ArrayAdapter<ISCPMessage>
                 icon.setImageResource(msg.getIcon().getImageId());
                 icon.setVisibility(View.VISIBLE);
                 boolean isPlaying = msg.getIcon() == XmlListItemMsg.Icon.PLAY;
-                Utils.setImageViewColorAttr(mediaFragment.activity, icon,
+                AndroidUtils.setImageViewColorAttr(mediaFragment.activity, icon,
                         isPlaying ? R.attr.colorAccent : R.attr.colorButtonDisabled);
             }
             else if (!msg.isSelectable())
@@ -79,7 +79,7 @@ final class MediaListAdapter extends ArrayAdapter<ISCPMessage>
                 icon.setVisibility(View.GONE);
             }
             tvTitle.setText(msg.getTitle());
-            tvTitle.setTextColor(Utils.getThemeColorAttr(mediaFragment.activity,
+            tvTitle.setTextColor(AndroidUtils.getThemeColorAttr(mediaFragment.activity,
                     (mediaFragment.moveFrom == msg.getMessageId() || !msg.isSelectable()) ?
                             android.R.attr.textColorSecondary : android.R.attr.textColor));
         }
@@ -89,7 +89,7 @@ final class MediaListAdapter extends ArrayAdapter<ISCPMessage>
             icon.setImageResource(msg.getService().getImageId());
             final boolean isPlaying = mediaFragment.activity.getStateManager() != null &&
                     mediaFragment.activity.getStateManager().getState().serviceIcon == msg.getService();
-            Utils.setImageViewColorAttr(mediaFragment.activity, icon,
+            AndroidUtils.setImageViewColorAttr(mediaFragment.activity, icon,
                     isPlaying ? R.attr.colorAccent : R.attr.colorButtonDisabled);
             tvTitle.setText(msg.getService().getDescriptionId());
         }
@@ -99,7 +99,7 @@ final class MediaListAdapter extends ArrayAdapter<ISCPMessage>
             if (msg.getCommand().isImageValid())
             {
                 icon.setImageResource(msg.getCommand().getImageId());
-                Utils.setImageViewColorAttr(mediaFragment.activity, icon, android.R.attr.textColor);
+                AndroidUtils.setImageViewColorAttr(mediaFragment.activity, icon, android.R.attr.textColor);
             }
             tvTitle.setText(msg.getCommand().getDescriptionId());
         }
@@ -109,12 +109,12 @@ final class MediaListAdapter extends ArrayAdapter<ISCPMessage>
             if (msg.getPreset() != PresetCommandMsg.NO_PRESET)
             {
                 icon.setImageResource(R.drawable.media_item_play);
-                Utils.setImageViewColorAttr(mediaFragment.activity, icon, R.attr.colorAccent);
+                AndroidUtils.setImageViewColorAttr(mediaFragment.activity, icon, R.attr.colorAccent);
             }
             else
             {
                 icon.setImageResource(msg.getPresetConfig().getImageId());
-                Utils.setImageViewColorAttr(mediaFragment.activity, icon, android.R.attr.textColor);
+                AndroidUtils.setImageViewColorAttr(mediaFragment.activity, icon, android.R.attr.textColor);
             }
             tvTitle.setText(msg.getPresetConfig().displayedString(true));
         }
@@ -124,14 +124,14 @@ final class MediaListAdapter extends ArrayAdapter<ISCPMessage>
             icon.setImageResource(R.drawable.media_item_radio);
             final boolean isPlaying = mediaFragment.activity.getStateManager() != null &&
                     mediaFragment.activity.getStateManager().getState().dcpTunerMode == msg.getTunerMode();
-            Utils.setImageViewColorAttr(mediaFragment.activity, icon,
+            AndroidUtils.setImageViewColorAttr(mediaFragment.activity, icon,
                     isPlaying ? R.attr.colorAccent : R.attr.colorButtonDisabled);
             tvTitle.setText(msg.getTunerMode().getDescriptionId());
         }
         else if (item instanceof DcpMediaContainerMsg)
         {
             icon.setImageResource(OperationCommandMsg.Command.RETURN.getImageId());
-            Utils.setImageViewColorAttr(mediaFragment.activity, icon, android.R.attr.textColor);
+            AndroidUtils.setImageViewColorAttr(mediaFragment.activity, icon, android.R.attr.textColor);
             tvTitle.setText(OperationCommandMsg.Command.RETURN.getDescriptionId());
         }
 
@@ -27,8 +27,8 @@ import com.mkulesh.onpc.iscp.State;
 import com.mkulesh.onpc.iscp.messages.BroadcastResponseMsg;
 import com.mkulesh.onpc.iscp.messages.MultiroomDeviceInformationMsg;
 import com.mkulesh.onpc.iscp.messages.MultiroomGroupSettingMsg;
+import com.mkulesh.onpc.utils.AndroidUtils;
 import com.mkulesh.onpc.utils.Logging;
-import com.mkulesh.onpc.utils.Utils;
 import com.mkulesh.onpc.widgets.CheckableItemView;
 
 import java.util.ArrayList;
@@ -75,7 +75,7 @@ class MultiroomManager
 
         // Create device list
         final LinearLayout deviceGroup = frameView.findViewById(R.id.device_group);
-        Logging.info(activity, "Devices for group: " + myGroupId);
+        Logging.info(activity, "Devices for group: {}", myGroupId);
         for (BroadcastResponseMsg msg : devices)
         {
             final CheckableItemView view = createDeviceItem(activity, msg,
@@ -94,11 +94,11 @@ class MultiroomManager
             }
         }
         final int maxGroupId = _maxGroupId;
-        Logging.info(activity, "    Maximum group ID=" + maxGroupId);
+        Logging.info(activity, "    Maximum group ID={}", maxGroupId);
 
         // Create dialog
-        final Drawable icon = Utils.getDrawable(activity, R.drawable.cmd_multiroom_group);
-        Utils.setDrawableColorAttr(activity, icon, android.R.attr.textColorSecondary);
+        final Drawable icon = AndroidUtils.getDrawable(activity, R.drawable.cmd_multiroom_group);
+        AndroidUtils.setDrawableColorAttr(activity, icon, android.R.attr.textColorSecondary);
 
         return new AlertDialog.Builder(activity)
                 .setTitle(title)
@@ -165,7 +165,7 @@ class MultiroomManager
             cv.toggle();
         });
 
-        Logging.info(activity, "    " + msg + "; " + description + "; attached=" + attached);
+        Logging.info(activity, "    {}; {}; attached={}", msg, description, attached);
         return view;
     }
 
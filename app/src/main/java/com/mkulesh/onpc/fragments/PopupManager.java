@@ -29,8 +29,8 @@ import com.mkulesh.onpc.iscp.PopupBuilder;
 import com.mkulesh.onpc.iscp.State;
 import com.mkulesh.onpc.iscp.messages.CustomPopupMsg;
 import com.mkulesh.onpc.iscp.messages.XmlListItemMsg;
+import com.mkulesh.onpc.utils.AndroidUtils;
 import com.mkulesh.onpc.utils.Logging;
-import com.mkulesh.onpc.utils.Utils;
 
 import java.util.List;
 
@@ -50,8 +50,8 @@ class PopupManager
             Logging.info(this, "create track menu dialog");
             final FrameLayout frameView = new FrameLayout(activity);
 
-            final Drawable icon = Utils.getDrawable(activity, R.drawable.cmd_track_menu);
-            Utils.setDrawableColorAttr(activity, icon, android.R.attr.textColorSecondary);
+            final Drawable icon = AndroidUtils.getDrawable(activity, R.drawable.cmd_track_menu);
+            AndroidUtils.setDrawableColorAttr(activity, icon, android.R.attr.textColorSecondary);
 
             trackMenuDialog = new AlertDialog.Builder(activity)
                     .setTitle(R.string.cmd_track_menu)
@@ -80,7 +80,7 @@ class PopupManager
             updateTrackMenuGroup(activity, state, trackMenuGroup);
 
             trackMenuDialog.show();
-            Utils.fixIconColor(trackMenuDialog, android.R.attr.textColorSecondary);
+            AndroidUtils.fixIconColor(trackMenuDialog, android.R.attr.textColorSecondary);
         }
         else if (trackMenuGroup != null)
         {
@@ -94,14 +94,14 @@ class PopupManager
                                       @NonNull LinearLayout trackMenuGroup)
     {
         trackMenuGroup.removeAllViews();
-        final List<XmlListItemMsg> menuItems = state.cloneMediaItems();
+        final List<XmlListItemMsg> menuItems = state.getMediaItems();
         for (final XmlListItemMsg msg : menuItems)
         {
             if (msg.getTitle() == null || msg.getTitle().isEmpty())
             {
                 continue;
             }
-            Logging.info(this, "    menu item: " + msg);
+            Logging.info(this, "    menu item: {}", msg);
             final LinearLayout itemView = (LinearLayout) LayoutInflater.from(activity).
                     inflate(R.layout.media_item, trackMenuGroup, false);
             final View textView = itemView.findViewById(R.id.media_item_title);
@@ -110,7 +110,7 @@ class PopupManager
                 ((TextView) textView).setText(msg.getTitle());
                 if (!msg.isSelectable())
                 {
-                    ((TextView) textView).setTextColor(Utils.getThemeColorAttr(activity,
+                    ((TextView) textView).setTextColor(AndroidUtils.getThemeColorAttr(activity,
                             android.R.attr.textColorSecondary));
                     ((TextView) textView).setTextSize(TypedValue.COMPLEX_UNIT_PX,
                             activity.getResources().getDimensionPixelSize(R.dimen.secondary_text_size));
@@ -175,11 +175,11 @@ class PopupManager
             });
 
             popupDialog.show();
-            Utils.fixIconColor(popupDialog, android.R.attr.textColorSecondary);
+            AndroidUtils.fixIconColor(popupDialog, android.R.attr.textColorSecondary);
         }
         catch (Exception e)
         {
-            Logging.info(this, "can not create popup dialog: " + e.getLocalizedMessage());
+            Logging.info(this, "can not create popup dialog: {}", e.getLocalizedMessage());
         }
     }
 
@@ -162,7 +162,7 @@ public class RemoteControlFragment extends BaseFragment
         listeningMode.setVisibility(listeningModeLayout.getVisibility());
         if (eventChanges.contains(State.ChangeType.AUDIO_CONTROL))
         {
-            listeningMode.setText(state.listeningMode.getDescriptionId());
+            listeningMode.setText(state.getSnapshot().listeningMode.getDescriptionId());
         }
     }
 }
@@ -129,7 +129,7 @@ public class ShortcutsFragment extends BaseFragment
         selectedItem = (CfgFavoriteShortcuts.Shortcut) listViewAdapter.getItem(acmi.position);
         if (selectedItem != null)
         {
-            Logging.info(this, "Context menu: " + selectedItem);
+            Logging.info(this, "Context menu: {}", selectedItem);
             MenuInflater inflater = activity.getMenuInflater();
             inflater.inflate(R.menu.favorite_context_menu, menu);
         }
@@ -141,7 +141,7 @@ public class ShortcutsFragment extends BaseFragment
     {
         if (selectedItem != null)
         {
-            Logging.info(this, "Context menu '" + item.getTitle() + "'; " + selectedItem);
+            Logging.info(this, "Context menu '{}'; {}", item.getTitle(), selectedItem);
             switch (item.getItemId())
             {
             case R.id.shortcut_menu_edit:
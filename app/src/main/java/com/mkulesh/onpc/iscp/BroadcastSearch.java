@@ -15,26 +15,22 @@
 package com.mkulesh.onpc.iscp;
 
 import android.os.AsyncTask;
-import android.os.StrictMode;
 
 import com.mkulesh.onpc.iscp.messages.BroadcastResponseMsg;
 import com.mkulesh.onpc.utils.Logging;
 
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.InetAddress;
-import java.net.InetSocketAddress;
-import java.util.Arrays;
-import java.util.Calendar;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import androidx.annotation.Nullable;
+
 public class BroadcastSearch extends AsyncTask<Void, BroadcastResponseMsg, Void>
 {
-    private final static int TIMEOUT = 3000;
-
     // Connection state
     private final ConnectionState connectionState;
 
+    // Networks for the TCP sweep, an empty string for the local networks; null if not enabled
+    private final String subnetSweep;
+
     // Callbacks
     public interface EventListener
     {
@@ -49,14 +45,13 @@ public class BroadcastSearch extends AsyncTask<Void, BroadcastResponseMsg, Void>
     private final AtomicBoolean active = new AtomicBoolean();
     private ConnectionState.FailureReason failureReason = null;
 
-    BroadcastSearch(final ConnectionState connectionState, final EventListener eventListener)
+    BroadcastSearch(final ConnectionState connectionState, final EventListener eventListener,
+                    @Nullable final String subnetSweep)
     {
         this.connectionState = connectionState;
         this.eventListener = eventListener;
+        this.subnetSweep = subnetSweep;
         active.set(false);
-
-        StrictMode.ThreadPolicy policy = new StrictMode.ThreadPolicy.Builder().permitAll().build();
-        StrictMode.setThreadPolicy(policy);
     }
 
     @Override
@@ -103,183 +98,21 @@ public class BroadcastSearch extends AsyncTask<Void, BroadcastResponseMsg, Void>
     {
         Logging.info(this, "started, network=" + connectionState.isNetwork()
                 + ", wifi=" + connectionState.isWifi());
-
-        final Character[] models = new Character[]{ 'x', 'p' };
-
-        try
-        {
-            final DatagramSocket iscpSocket = prepareSocket(ConnectionIf.ISCP_PORT);
-            final DatagramSocket dcpSocket = prepareSocket(ConnectionIf.DCP_UDP_PORT);
-            final byte[] response = new byte[1024];
-
-            while (!isStopped())
-            {
-                requestIscp(iscpSocket, models[0]);
-                requestIscp(iscpSocket, models[1]);
-                requestDcp(dcpSocket);
-
-                final long startTime = Calendar.getInstance().getTimeInMillis();
-                while (Calendar.getInstance().getTimeInMillis() < startTime + TIMEOUT)
-                {
-                    if (isStopped())
-                    {
-                        break;
-                    }
-                    getIscpResponce(iscpSocket, response);
-                    getDcpResponce(dcpSocket, response);
-                }
-            }
-            iscpSocket.close();
-            dcpSocket.close();
-        }
-        catch (Exception e)
-        {
-            Logging.info(this, "Can not open socket: " + e);
-        }
-
-        Logging.info(this, "stopped");
+        if (subnetSweep != null)
+        {
+            // Networks that drop broadcast and multicast: the sweep runs once in parallel
+            final Thread t = new Thread(() -> new SubnetSweep(this::publishProgress)
+                    .run(SubnetSweep.parseNetworks(subnetSweep), this::isStopped),
+                    SubnetSweep.class.getSimpleName());
+            t.setDaemon(true);
+            t.start();
+        }
+        final DeviceDiscovery discovery = new DeviceDiscovery(this::publishProgress);
+        discovery.run(this::isStopped);
+        Logging.info(this, "stopped, time to first device: {}ms", discovery.getTimeToFirstDevice());
         return null;
     }
 
-    private DatagramSocket prepareSocket(int port) throws Exception
-    {
-        final DatagramSocket s = new DatagramSocket(null);
-        s.setReuseAddress(true);
-        s.setBroadcast(true);
-        s.setSoTimeout(500);
-        s.bind(new InetSocketAddress(port));
-        return s;
-    }
-
-    private EISCPMessage convertResponse(byte[] response)
-    {
-        try
-        {
-            final int startIndex = EISCPMessage.getMsgStartIndex(response);
-            if (startIndex != 0)
-            {
-                Logging.info(this, "  -> unexpected position of start index: " + startIndex);
-                return null;
-            }
-            final int hSize = EISCPMessage.getHeaderSize(response, startIndex);
-            final int dSize = EISCPMessage.getDataSize(response, startIndex);
-            return new EISCPMessage(0, response, startIndex, hSize, dSize);
-        }
-        catch (Exception e)
-        {
-            return null;
-        }
-    }
-
-    private void requestIscp(DatagramSocket socket, final Character modelCategoryId)
-    {
-        final EISCPMessage m = new EISCPMessage(modelCategoryId, "ECN", "QSTN");
-        final byte[] bytes = m.getBytes();
-
-        try
-        {
-            final InetAddress target = InetAddress.getByName("255.255.255.255");
-            final DatagramPacket p = new DatagramPacket(bytes, bytes.length, target, ConnectionIf.ISCP_PORT);
-            socket.send(p);
-            Logging.info(this, "message " + m + " for category '"
-                    + modelCategoryId + "' send to " + target + ", wait response for " + TIMEOUT + "ms");
-        }
-        catch (Exception e)
-        {
-            Logging.info(BroadcastSearch.this, "  -> can not send request: " + e);
-        }
-    }
-
-    private void getIscpResponce(final DatagramSocket socket, final byte[] response)
-    {
-        try
-        {
-            Arrays.fill(response, (byte) 0);
-            final DatagramPacket p2 = new DatagramPacket(response, response.length);
-            socket.receive(p2);
-            if (p2.getAddress() == null)
-            {
-                return;
-            }
-
-            final EISCPMessage msg = convertResponse(response);
-            if (msg == null || msg.getParameters() == null)
-            {
-                return;
-            }
-
-            if (msg.getParameters().equals("QSTN"))
-            {
-                return;
-            }
-
-            final BroadcastResponseMsg responseMessage = new BroadcastResponseMsg(p2.getAddress(), msg);
-            if (responseMessage.isValidConnection())
-            {
-                publishProgress(responseMessage);
-            }
-        }
-        catch (Exception e)
-        {
-            // nothing to do
-        }
-    }
-
-    private void requestDcp(DatagramSocket socket)
-    {
-        final String host = "239.255.255.250";
-        final String schema = "schemas-denon-com:device";
-        final String request =
-                "M-SEARCH * HTTP/1.1\r\n" +
-                        "HOST: " + host + ":" + ConnectionIf.DCP_UDP_PORT + "\r\n" +
-                        "MAN: \"ssdp:discover\"\r\n" +
-                        "MX: 10\r\n" +
-                        "ST: urn:" + schema + ":ACT-Denon:1\r\n\r\n";
-        final byte[] bytes = request.getBytes();
-
-        try
-        {
-            final InetAddress target = InetAddress.getByName(host);
-            final DatagramPacket p = new DatagramPacket(bytes, bytes.length, target, ConnectionIf.DCP_UDP_PORT);
-            socket.send(p);
-            Logging.info(this, "message M-SEARCH for category send to " + target + ", wait response for " + TIMEOUT + "ms");
-        }
-        catch (Exception e)
-        {
-            Logging.info(BroadcastSearch.this, "  -> can not send request: " + e);
-        }
-    }
-
-    private void getDcpResponce(DatagramSocket socket, final byte[] response)
-    {
-        final String schema = "schemas-denon-com:device";
-        try
-        {
-            Arrays.fill(response, (byte) 0);
-            final DatagramPacket p2 = new DatagramPacket(response, response.length);
-            socket.receive(p2);
-            if (p2.getAddress() == null || p2.getAddress().getHostAddress() == null)
-            {
-                return;
-            }
-
-            final String responseStr = new String(response);
-            if (responseStr.contains(schema))
-            {
-                final BroadcastResponseMsg responseMessage =
-                        new BroadcastResponseMsg(p2.getAddress().getHostAddress(), 23, "Denon-Heos AVR");
-                if (responseMessage.isValidConnection())
-                {
-                    publishProgress(responseMessage);
-                }
-            }
-        }
-        catch (Exception e)
-        {
-            // nothing to do
-        }
-    }
-
     @Override
     protected void onProgressUpdate(BroadcastResponseMsg... result)
     {
@@ -300,7 +133,7 @@ public class BroadcastSearch extends AsyncTask<Void, BroadcastResponseMsg, Void>
         super.onPostExecute(aVoid);
         if (failureReason != null)
         {
-            Logging.info(this, "Device not found: " + failureReason);
+            Logging.info(this, "Device not found: {}", failureReason);
             if (eventListener != null)
             {
                 eventListener.noDevice(failureReason);
@@ -32,7 +32,7 @@ import androidx.annotation.NonNull;
 import androidx.annotation.StringRes;
 
 @SuppressLint("NewApi")
-public class ConnectionState extends AppTask
+public class ConnectionState extends AppTask implements NetworkStateIf
 {
     public enum FailureReason
     {
@@ -71,7 +71,8 @@ public class ConnectionState extends AppTask
         return context;
     }
 
-    boolean isNetwork()
+    @Override
+    public boolean isNetwork()
     {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M)
         {
@@ -131,4 +132,22 @@ public class ConnectionState extends AppTask
         Logging.info(this, message);
         Toast.makeText(context, message, Toast.LENGTH_LONG).show();
     }
+
+    @Override
+    public void showConnectionError(@NonNull final String hostAndPort)
+    {
+        final String message = String.format(context.getResources().getString(
+                R.string.error_connection_no_response), hostAndPort);
+        Logging.info(this, message);
+        try
+        {
+            // An exception is possible here:
+            // Can't toast on a thread that has not called Looper.prepare()
+            Toast.makeText(context, message, Toast.LENGTH_LONG).show();
+        }
+        catch (Exception e)
+        {
+            // nothing to do
+        }
+    }
 }
@@ -0,0 +1,380 @@
+/*
+ * Enhanced Music Controller
+ * Copyright (C) 2018-2023 by Mikhail Kulesh
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with this program.
+ */
+
+package com.mkulesh.onpc.iscp;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.DisplayMetrics;
+import android.util.LruCache;
+
+import com.mkulesh.onpc.iscp.messages.JacketArtMsg;
+import com.mkulesh.onpc.utils.Logging;
+import com.mkulesh.onpc.utils.Utils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Loads cover images outside of the state thread. A loaded image is
+ * delivered into the input queue as a JacketArtMsg that holds the bitmap.
+ * Decoded images are kept in a memory cache that is shared between state
+ * managers (i.e. it survives a reconnect); the encoded images that are loaded
+ * from external URLs are additionally stored in the disk cache.
+ */
+public class CoverLoader implements CoverLoaderIf
+{
+    private final static String DISK_CACHE_DIR = "covers";
+    private final static long DISK_CACHE_SIZE = 16 * 1024 * 1024;
+    private final static String TMP_SUFFIX = ".tmp";
+    private final static int MEMORY_CACHE_SIZE = (int) Math.min(
+            Runtime.getRuntime().maxMemory() / 16, 12 * 1024 * 1024);
+
+    // Memory cache for decoded images, bounded in bytes
+    private final static LruCache<String, Bitmap> memoryCache = new LruCache<String, Bitmap>(MEMORY_CACHE_SIZE)
+    {
+        @Override
+        protected int sizeOf(String key, Bitmap value)
+        {
+            return value.getByteCount();
+        }
+    };
+
+    private final File diskCacheDir;
+    private final BlockingQueue<ISCPMessage> inputQueue;
+    private final ExecutorService executor;
+    private final AtomicInteger targetSize = new AtomicInteger();
+
+    CoverLoader(@NonNull final Context context, @NonNull final BlockingQueue<ISCPMessage> inputQueue)
+    {
+        this.diskCacheDir = new File(context.getCacheDir(), DISK_CACHE_DIR);
+        this.inputQueue = inputQueue;
+        this.executor = Executors.newSingleThreadExecutor(r ->
+        {
+            final Thread t = new Thread(r, CoverLoader.class.getSimpleName());
+            t.setDaemon(true);
+            return t;
+        });
+        // Until the cover view is measured, the smallest display dimension is used as a target size
+        final DisplayMetrics dm = context.getResources().getDisplayMetrics();
+        targetSize.set(Math.min(dm.widthPixels, dm.heightPixels));
+    }
+
+    public void setTargetSize(int size)
+    {
+        if (size > 0 && targetSize.getAndSet(size) != size)
+        {
+            Logging.info(this, "cover target size: {}px", size);
+        }
+    }
+
+    void stop()
+    {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Procedure requests an image given by URL.
+     * Images from external servers are cached using their URL. Receivers serve
+     * all images under the same URL: such images are cached using their content.
+     *
+     * @return the image from the memory cache, if available. Otherwise, the loading
+     * is scheduled and null is returned.
+     */
+    @Nullable
+    @Override
+    public Bitmap load(@NonNull final JacketArtMsg msg, final int request, @NonNull final String deviceHost)
+    {
+        final URL url = msg.getUrl();
+        final String urlKey = deviceHost.equals(url.getHost()) ? null : url.toString();
+        if (urlKey != null)
+        {
+            final Bitmap cover = memoryCache.get(getMemoryKey(urlKey));
+            if (cover != null)
+            {
+                Logging.info(this, "cover image from memory cache: {}", urlKey);
+                return cover;
+            }
+        }
+        if (executor.isShutdown())
+        {
+            return null;
+        }
+        executor.submit(() ->
+        {
+            final long startTime = System.currentTimeMillis();
+            Bitmap cover = null;
+            byte[] bytes = urlKey != null ? readDiskCache(urlKey) : null;
+            final boolean fromDiskCache = bytes != null;
+            if (bytes == null)
+            {
+                bytes = Utils.getUrlData(url, true);
+                if (bytes != null)
+                {
+                    final int offset = Utils.getUrlHeaderLength(bytes);
+                    if (offset > 0)
+                    {
+                        bytes = Utils.catBuffer(bytes, offset, bytes.length - offset);
+                    }
+                    if (urlKey != null)
+                    {
+                        writeDiskCache(urlKey, bytes);
+                    }
+                }
+            }
+            if (bytes != null && bytes.length > 0)
+            {
+                final String key = urlKey != null ? urlKey : getHash(bytes, 0, bytes.length);
+                cover = getBitmap(key, bytes, 0, bytes.length);
+            }
+            if (cover == null && fromDiskCache)
+            {
+                // the entry is corrupted: it is downloaded again on the next request
+                deleteDiskCache(urlKey);
+            }
+            Logging.info(this, "cover image loaded in {}ms", (System.currentTimeMillis() - startTime));
+            inputQueue.add(new JacketArtMsg(msg, request, cover));
+        });
+        return null;
+    }
+
+    /**
+     * Procedure requests an image assembled from BMP/JPEG packets.
+     * If the image is not cached, the array of the cover buffer is taken over
+     * for the decoding and recycled afterwards.
+     *
+     * @return the image from the memory cache, if available. Otherwise, the decoding
+     * is scheduled and null is returned.
+     */
+    @Nullable
+    @Override
+    public Bitmap decode(@NonNull final JacketArtMsg msg, final int request, @NonNull final CoverBuffer buffer)
+    {
+        final String key = getHash(buffer.getData(), 0, buffer.getSize());
+        final Bitmap cover = memoryCache.get(getMemoryKey(key));
+        if (cover != null)
+        {
+            Logging.info(this, "cover image from memory cache: {}", key);
+            return cover;
+        }
+        if (!executor.isShutdown())
+        {
+            final int length = buffer.getSize();
+            final byte[] bytes = buffer.detach();
+            executor.submit(() ->
+            {
+                final Bitmap c = getBitmap(key, bytes, 0, length);
+                buffer.recycle(bytes);
+                inputQueue.add(new JacketArtMsg(msg, request, c));
+            });
+        }
+        return null;
+    }
+
+    @NonNull
+    private String getMemoryKey(@NonNull final String key)
+    {
+        return key + "@" + targetSize.get();
+    }
+
+    @Nullable
+    private Bitmap getBitmap(@NonNull final String key, @NonNull final byte[] bytes, int offset, int length)
+    {
+        final String memoryKey = getMemoryKey(key);
+        Bitmap cover = memoryCache.get(memoryKey);
+        if (cover != null)
+        {
+            return cover;
+        }
+
+        // Decode image bounds first in order to calculate sample size
+        final BitmapFactory.Options opts = new BitmapFactory.Options();
+        opts.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(bytes, offset, length, opts);
+        if (opts.outWidth <= 0 || opts.outHeight <= 0)
+        {
+            Logging.info(this, "can not open image: BitmapFactory.decodeByteArray error");
+            return null;
+        }
+        final int size = targetSize.get();
+        int sampleSize = 1;
+        while (size > 0 && Math.min(opts.outWidth, opts.outHeight) / (2 * sampleSize) >= size)
+        {
+            sampleSize *= 2;
+        }
+        opts.inJustDecodeBounds = false;
+        opts.inSampleSize = sampleSize;
+        cover = BitmapFactory.decodeByteArray(bytes, offset, length, opts);
+        if (cover == null)
+        {
+            Logging.info(this, "can not open image: BitmapFactory.decodeByteArray error");
+            return null;
+        }
+        Logging.info(this, "cover image decoded: " + opts.outWidth + "x" + opts.outHeight
+                + ", sample size=" + sampleSize + ", data size=" + length + "B");
+        memoryCache.put(memoryKey, cover);
+        return cover;
+    }
+
+    @Nullable
+    private byte[] readDiskCache(@NonNull final String key)
+    {
+        final File f = new File(diskCacheDir, getHash(key.getBytes(Utils.UTF_8)));
+        if (!f.exists())
+        {
+            return null;
+        }
+        FileInputStream in = null;
+        try
+        {
+            in = new FileInputStream(f);
+            final byte[] bytes = Utils.streamToByteArray(in);
+            //noinspection ResultOfMethodCallIgnored
+            f.setLastModified(System.currentTimeMillis());
+            Logging.info(this, "cover image from disk cache: {}", key);
+            return bytes;
+        }
+        catch (Exception e)
+        {
+            Logging.info(this, "can not read disk cache: {}", e.getLocalizedMessage());
+            return null;
+        }
+        finally
+        {
+            close(in);
+        }
+    }
+
+    private void deleteDiskCache(@NonNull final String key)
+    {
+        final File f = new File(diskCacheDir, getHash(key.getBytes(Utils.UTF_8)));
+        if (f.delete())
+        {
+            Logging.info(this, "corrupted disk cache entry deleted: {}", key);
+        }
+    }
+
+    private void writeDiskCache(@NonNull final String key, @NonNull final byte[] bytes)
+    {
+        if (!diskCacheDir.exists() && !diskCacheDir.mkdirs())
+        {
+            return;
+        }
+        // The entry is written into a temporary file that is renamed when it is complete:
+        // an interrupted write never leaves a truncated entry under the URL key
+        final File f = new File(diskCacheDir, getHash(key.getBytes(Utils.UTF_8)));
+        final File tmp = new File(diskCacheDir, f.getName() + TMP_SUFFIX);
+        FileOutputStream out = null;
+        try
+        {
+            out = new FileOutputStream(tmp);
+            out.write(bytes);
+            out.close();
+            out = null;
+            if (!tmp.renameTo(f))
+            {
+                throw new Exception("can not rename " + tmp.getName());
+            }
+        }
+        catch (Exception e)
+        {
+            Logging.info(this, "can not write disk cache: {}", e.getLocalizedMessage());
+            close(out);
+            //noinspection ResultOfMethodCallIgnored
+            tmp.delete();
+            return;
+        }
+
+        // Delete least recently used entries if the cache exceeds its size
+        final File[] files = diskCacheDir.listFiles();
+        if (files == null)
+        {
+            return;
+        }
+        long cacheSize = 0;
+        for (File file : files)
+        {
+            cacheSize += file.length();
+        }
+        if (cacheSize <= DISK_CACHE_SIZE)
+        {
+            return;
+        }
+        Arrays.sort(files, (lhs, rhs) -> Long.compare(lhs.lastModified(), rhs.lastModified()));
+        for (File file : files)
+        {
+            if (cacheSize <= DISK_CACHE_SIZE)
+            {
+                break;
+            }
+            cacheSize -= file.length();
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+
+    private static void close(@Nullable final Closeable c)
+    {
+        if (c != null)
+        {
+            try
+            {
+                c.close();
+            }
+            catch (Exception e)
+            {
+                // nothing to do
+            }
+        }
+    }
+
+    @NonNull
+    private static String getHash(@NonNull final byte[] bytes)
+    {
+        return getHash(bytes, 0, bytes.length);
+    }
+
+    @NonNull
+    private static String getHash(@NonNull final byte[] bytes, int offset, int length)
+    {
+        try
+        {
+            final MessageDigest md = MessageDigest.getInstance("MD5");
+            md.update(bytes, offset, length);
+            final StringBuilder str = new StringBuilder();
+            for (byte b : md.digest())
+            {
+                str.append(Integer.toHexString((b & 0xFF) | 0x100).substring(1));
+            }
+            return str.toString();
+        }
+        catch (Exception e)
+        {
+            return Integer.toHexString(Arrays.hashCode(bytes)) + "-" + length;
+        }
+    }
+}
@@ -22,10 +22,11 @@ import android.widget.LinearLayout;
 import android.widget.RadioGroup;
 
 import com.mkulesh.onpc.R;
+import com.mkulesh.onpc.config.CfgDiscoveredDevices;
 import com.mkulesh.onpc.iscp.messages.BroadcastResponseMsg;
+import com.mkulesh.onpc.utils.AndroidUtils;
 import com.mkulesh.onpc.utils.AppTask;
 import com.mkulesh.onpc.utils.Logging;
-import com.mkulesh.onpc.utils.Utils;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -33,6 +34,7 @@ import java.util.Map;
 import java.util.TreeMap;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.view.ContextThemeWrapper;
 import androidx.appcompat.widget.AppCompatRadioButton;
@@ -51,13 +53,16 @@ public class DeviceList extends AppTask implements BroadcastSearch.EventListener
     {
         public final BroadcastResponseMsg message;
         private final boolean isFavorite;
+        // A device from the discovery cache that did not respond yet
+        private final boolean isCached;
         final int responses;
         boolean selected;
 
-        DeviceInfo(@NonNull final BroadcastResponseMsg msg, final boolean isFavorite, int responses)
+        DeviceInfo(@NonNull final BroadcastResponseMsg msg, final boolean isFavorite, final boolean isCached, int responses)
         {
             this.message = msg;
             this.isFavorite = isFavorite;
+            this.isCached = isCached;
             this.responses = responses;
             this.selected = false;
         }
@@ -88,17 +93,23 @@ public class DeviceList extends AppTask implements BroadcastSearch.EventListener
 
     private final BackgroundEventListener backgroundEventListener;
     private final List<BroadcastResponseMsg> favorites;
+    private final CfgDiscoveredDevices discoveredDevices;
+    private final String subnetSweep;
 
     public DeviceList(final Context context,
                       final ConnectionState connectionState,
                       final BackgroundEventListener backgroundEventListener,
-                      final List<BroadcastResponseMsg> favorites)
+                      final List<BroadcastResponseMsg> favorites,
+                      final CfgDiscoveredDevices discoveredDevices,
+                      @Nullable final String subnetSweep)
     {
         super(false);
         this.context = context;
         this.connectionState = connectionState;
         this.backgroundEventListener = backgroundEventListener;
         this.favorites = favorites;
+        this.discoveredDevices = discoveredDevices;
+        this.subnetSweep = subnetSweep;
     }
 
     public int getDevicesNumber()
@@ -109,14 +120,55 @@ public class DeviceList extends AppTask implements BroadcastSearch.EventListener
         }
     }
 
+    /**
+     * Procedure returns the favorite devices and the devices that responded
+     * to the current search
+     */
     public List<BroadcastResponseMsg> getDevices()
+    {
+        return getDevices(false);
+    }
+
+    /**
+     * Procedure additionally returns the cached devices that not yet responded
+     */
+    public List<BroadcastResponseMsg> getKnownDevices()
+    {
+        return getDevices(true);
+    }
+
+    /**
+     * Procedure returns a cheap snapshot of the same devices as getDevices.
+     * Only the list is copied: the messages are never modified and are shared, i.e. this
+     * method can be called for each received broadcast response.
+     */
+    public List<BroadcastResponseMsg> getDevicesSnapshot()
+    {
+        final List<BroadcastResponseMsg> retValue = new ArrayList<>();
+        synchronized (devices)
+        {
+            for (DeviceInfo di : devices.values())
+            {
+                if (!di.isCached)
+                {
+                    retValue.add(di.message);
+                }
+            }
+        }
+        return retValue;
+    }
+
+    private List<BroadcastResponseMsg> getDevices(boolean withCached)
     {
         List<BroadcastResponseMsg> retValue = new ArrayList<>();
         synchronized (devices)
         {
             for (DeviceInfo di : devices.values())
             {
-                retValue.add(new BroadcastResponseMsg(di.message));
+                if (withCached || !di.isCached)
+                {
+                    retValue.add(new BroadcastResponseMsg(di.message));
+                }
             }
         }
         return retValue;
@@ -127,13 +179,19 @@ public class DeviceList extends AppTask implements BroadcastSearch.EventListener
         synchronized (devices)
         {
             devices.clear();
+            // Known devices are available immediately, the search only verifies them
+            for (CfgDiscoveredDevices.Device d : discoveredDevices.getDevices())
+            {
+                devices.put(d.message.getHostAndPort(), new DeviceInfo(d.message, false, true, 0));
+            }
+            Logging.info(this, "cached devices: {}", devices.size());
         }
         updateFavorites(false);
         if (connectionState.isWifi())
         {
             super.start();
             Logging.info(this, "started");
-            searchEngine = new BroadcastSearch(connectionState, this);
+            searchEngine = new BroadcastSearch(connectionState, this, subnetSweep);
             searchEngine.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, (Void[]) null);
         }
         else
@@ -201,8 +259,8 @@ public class DeviceList extends AppTask implements BroadcastSearch.EventListener
             }
             for (BroadcastResponseMsg msg : favorites)
             {
-                Logging.info(this, "Added favorite connection " + msg + ", handle=" + callHandler);
-                final DeviceInfo newInfo = new DeviceInfo(msg, true, 0);
+                Logging.info(this, "Added favorite connection {}, handle={}", msg, callHandler);
+                final DeviceInfo newInfo = new DeviceInfo(msg, true, false, 0);
                 devices.put(msg.getHostAndPort(), newInfo);
                 if (callHandler && backgroundEventListener != null)
                 {
@@ -217,10 +275,10 @@ public class DeviceList extends AppTask implements BroadcastSearch.EventListener
     {
         if (!msg.isValidConnection())
         {
-            Logging.info(this, "  invalid response " + msg + ", ignored");
+            Logging.info(this, "  invalid response {}, ignored", msg);
             return;
         }
-        Logging.info(this, "  new response " + msg);
+        Logging.info(this, "  new response {}", msg);
 
         synchronized (devices)
         {
@@ -229,15 +287,20 @@ public class DeviceList extends AppTask implements BroadcastSearch.EventListener
             DeviceInfo newInfo;
             if (oldInfo == null)
             {
-                newInfo = new DeviceInfo(msg, false, 1);
+                newInfo = new DeviceInfo(msg, false, false, 1);
                 devices.put(d, newInfo);
             }
             else
             {
                 final BroadcastResponseMsg newMsg = oldInfo.isFavorite ? oldInfo.message : msg;
-                newInfo = new DeviceInfo(newMsg, oldInfo.isFavorite, oldInfo.responses + 1);
+                newInfo = new DeviceInfo(newMsg, oldInfo.isFavorite, false, oldInfo.responses + 1);
                 devices.put(d, newInfo);
             }
+            if (newInfo.responses == 1)
+            {
+                discoveredDevices.update(msg);
+                removeMovedDevice(d, msg.getIdentifier());
+            }
             if (dialogMode)
             {
                 updateRadioGroup(devices);
@@ -250,15 +313,23 @@ public class DeviceList extends AppTask implements BroadcastSearch.EventListener
 
             if (!dialogMode)
             {
+                // A cached device that did not respond yet may be stale: it neither confirms
+                // nor delays the end of the search
                 int okDevice = 0;
+                int expectedDevice = 0;
                 for (DeviceInfo di : devices.values())
                 {
+                    if (di.isCached)
+                    {
+                        continue;
+                    }
+                    expectedDevice++;
                     if ((di.isFavorite && di.responses == 0) || di.responses >= RESPONSE_NUMBER)
                     {
                         okDevice++;
                     }
                 }
-                if (okDevice < devices.size())
+                if (okDevice < expectedDevice)
                 {
                     return;
                 }
@@ -268,6 +339,28 @@ public class DeviceList extends AppTask implements BroadcastSearch.EventListener
         }
     }
 
+    private void removeMovedDevice(@NonNull final String hostAndPort, @NonNull final String identifier)
+    {
+        if (identifier.isEmpty())
+        {
+            return;
+        }
+        final List<String> toBeDeleted = new ArrayList<>();
+        for (Map.Entry<String, DeviceInfo> d : devices.entrySet())
+        {
+            if (d.getValue().isCached && !d.getKey().equals(hostAndPort)
+                    && identifier.equals(d.getValue().message.getIdentifier()))
+            {
+                toBeDeleted.add(d.getKey());
+            }
+        }
+        for (String key : toBeDeleted)
+        {
+            Logging.info(this, "  cached device {} moved to {}", key, hostAndPort);
+            devices.remove(key);
+        }
+    }
+
     @Override
     public void noDevice(ConnectionState.FailureReason reason)
     {
@@ -293,8 +386,8 @@ public class DeviceList extends AppTask implements BroadcastSearch.EventListener
         dialogEventListener = listener;
         final FrameLayout frameView = new FrameLayout(context);
 
-        final Drawable icon = Utils.getDrawable(context, R.drawable.media_item_search);
-        Utils.setDrawableColorAttr(context, icon, android.R.attr.textColorSecondary);
+        final Drawable icon = AndroidUtils.getDrawable(context, R.drawable.media_item_search);
+        AndroidUtils.setDrawableColorAttr(context, icon, android.R.attr.textColorSecondary);
         dialog = new AlertDialog.Builder(context)
                 .setTitle(R.string.drawer_device_search)
                 .setIcon(icon)
@@ -316,7 +409,7 @@ public class DeviceList extends AppTask implements BroadcastSearch.EventListener
         }
 
         dialog.show();
-        Utils.fixIconColor(dialog, android.R.attr.textColorSecondary);
+        AndroidUtils.fixIconColor(dialog, android.R.attr.textColorSecondary);
     }
 
     private void updateRadioGroup(final Map<String, DeviceInfo> devices)
@@ -335,7 +428,7 @@ public class DeviceList extends AppTask implements BroadcastSearch.EventListener
                             LinearLayout.LayoutParams.WRAP_CONTENT, LinearLayout.LayoutParams.WRAP_CONTENT);
                     b.setLayoutParams(lp);
                     b.setText(deviceInfo.message.getDescription());
-                    b.setTextColor(Utils.getThemeColorAttr(context, android.R.attr.textColor));
+                    b.setTextColor(AndroidUtils.getThemeColorAttr(context, android.R.attr.textColor));
                     b.setOnClickListener(v ->
                     {
                         deviceInfo.selected = true;
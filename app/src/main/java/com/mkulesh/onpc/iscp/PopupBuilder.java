@@ -31,6 +31,7 @@ import android.widget.Toast;
 import com.mkulesh.onpc.R;
 import com.mkulesh.onpc.iscp.messages.CustomPopupMsg;
 import com.mkulesh.onpc.iscp.messages.ServiceType;
+import com.mkulesh.onpc.utils.AndroidUtils;
 import com.mkulesh.onpc.utils.Logging;
 import com.mkulesh.onpc.utils.Utils;
 
@@ -92,7 +93,7 @@ public class PopupBuilder
         }
 
         final String title = popup.getAttribute("title");
-        Logging.info(this, "received popup: " + title);
+        Logging.info(this, "received popup: {}", title);
 
         final FrameLayout frameView = new FrameLayout(context);
         AlertDialog.Builder builder = new AlertDialog.Builder(context)
@@ -102,8 +103,8 @@ public class PopupBuilder
         // icon
         if (serviceIcon != R.drawable.media_item_unknown)
         {
-            final Drawable bg = Utils.getDrawable(context, serviceIcon);
-            Utils.setDrawableColorAttr(context, bg, android.R.attr.textColorSecondary);
+            final Drawable bg = AndroidUtils.getDrawable(context, serviceIcon);
+            AndroidUtils.setDrawableColorAttr(context, bg, android.R.attr.textColorSecondary);
             builder.setIcon(bg);
         }
 
@@ -243,7 +244,7 @@ public class PopupBuilder
         b.setText(button.getAttribute("text"));
         b.setOnClickListener(v ->
         {
-            Utils.showSoftKeyboard(context, v, false);
+            AndroidUtils.showSoftKeyboard(context, v, false);
             button.setAttribute("selected", "true");
             alertDialog.dismiss();
             final CustomPopupMsg outMsg = new CustomPopupMsg(uiType, documentToXml(document));
@@ -276,7 +277,7 @@ public class PopupBuilder
         }
         catch (Exception e)
         {
-            Logging.info(document, "Can not generate popup response: " + e.getLocalizedMessage());
+            Logging.info(document, "Can not generate popup response: {}", e.getLocalizedMessage());
             return null;
         }
     }
@@ -14,55 +14,333 @@
 
 package com.mkulesh.onpc.iscp;
 
+import com.mkulesh.onpc.utils.AppScheduler;
 import com.mkulesh.onpc.utils.Logging;
+import com.mkulesh.onpc.utils.Utils;
 
-import java.util.concurrent.TimeUnit;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.atomic.AtomicBoolean;
 
-public class StateHolder
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Holds the sessions of the app. The foreground session is the state manager that is shown
+ * in the UI. Up to MAX_ACTIVE_SESSIONS - 1 recently used Onkyo/Pioneer devices are kept fully
+ * connected in background, so that switching back to such a device does not require a reconnect.
+ * A Denon device is never kept in background: its DCP port accepts only one client, i.e. a
+ * background session would lock out other controllers. The devices of stopped background
+ * sessions, including all Denon devices, are only watched by the lightweight presence sessions
+ * of a PresenceMonitor. Devices that were never used are not watched: a presence session holds
+ * a connection to the device. The callbacks of the background sessions are not forwarded to the UI.
+ * When the app is paused, the sessions are kept for PAUSE_RELEASE_DELAY, so that a short
+ * switch to another app does not drop them.
+ */
+public class StateHolder implements StateManager.StateListener, PresenceMonitor.Listener
 {
+    // Number of fully active sessions, including the foreground session
+    private final static int MAX_ACTIVE_SESSIONS = 3;
+    // Estimated heap that may be used by the background sessions
+    private final static long BACKGROUND_MEMORY_LIMIT = 16 * 1024 * 1024;
+    // Number of devices watched by the presence monitor
+    private final static int MAX_PRESENCE_SESSIONS = 4;
+    // Time after that all sessions of a paused app are stopped
+    private final static long PAUSE_RELEASE_DELAY = 60000;
+
+    private final StateManager.StateListener listener;
     private StateManager stateManager = null;
+    private String stateManagerKey = null;
+    // Background sessions in the access order: the first entry is the least recently used one
+    private final LinkedHashMap<String, StateManager> backgroundSessions = new LinkedHashMap<>(8, 0.75f, true);
+    // All managers that are not stopped yet
+    private final Set<StateManager> runningManagers = new HashSet<>();
+    private PresenceMonitor presenceMonitor = null;
+    // Devices watched by the presence monitor in the order they were added
+    private final ArrayList<String> presenceDevices = new ArrayList<>();
     private final AtomicBoolean released = new AtomicBoolean();
+    private long releaseRequestTime = 0;
+    private ScheduledFuture<?> pauseRelease = null;
     private boolean appExit = false;
 
-    public StateHolder()
+    public StateHolder(@NonNull final StateManager.StateListener listener)
     {
+        this.listener = listener;
         released.set(true);
     }
 
-    public void setStateManager(StateManager stateManager)
+    /**
+     * Procedure sets a new foreground session. The previous foreground session, if any,
+     * is moved into background. An existing background session of the same device is stopped.
+     */
+    public void setStateManager(@NonNull final String host, final int port, @NonNull StateManager stateManager)
+    {
+        final String key = Utils.ipToString(host, port);
+        synchronized (released)
+        {
+            cancelPauseRelease();
+            detachForeground();
+            final StateManager old = backgroundSessions.remove(key);
+            if (old != null)
+            {
+                old.stop();
+            }
+            this.stateManager = stateManager;
+            this.stateManagerKey = key;
+            appExit = false;
+            runningManagers.add(stateManager);
+            released.set(false);
+            removePresence(host, port);
+        }
+        logSessions("new session " + key);
+    }
+
+    /**
+     * Procedure brings a background session of the given device into foreground.
+     *
+     * @return false if no background session for this device and zone exists
+     */
+    public boolean activate(@NonNull final String host, final int port, final int zone)
+    {
+        final String key = Utils.ipToString(host, port);
+        synchronized (released)
+        {
+            final StateManager sm = backgroundSessions.remove(key);
+            if (sm == null)
+            {
+                return false;
+            }
+            if (sm.getState().getActiveZone() != zone)
+            {
+                Logging.info(this, "background session {} stopped: zone changed", key);
+                sm.stop();
+                return false;
+            }
+            cancelPauseRelease();
+            appExit = false;
+            detachForeground();
+            stateManager = sm;
+            stateManagerKey = key;
+        }
+        logSessions("activated session " + key);
+        return true;
+    }
+
+    /**
+     * Procedure moves the foreground session into background
+     */
+    public void detachForeground()
+    {
+        synchronized (released)
+        {
+            if (stateManager != null && runningManagers.contains(stateManager))
+            {
+                backgroundSessions.put(stateManagerKey, stateManager);
+            }
+            stateManager = null;
+            stateManagerKey = null;
+            trimBackgroundSessions();
+        }
+    }
+
+    /**
+     * Procedure stops the background sessions of Denon devices, and the least recently used
+     * background sessions if there are too much of them or they use too much memory. The devices
+     * of stopped sessions are watched by the presence monitor.
+     */
+    private void trimBackgroundSessions()
+    {
+        long memory = 0;
+        final Iterator<Map.Entry<String, StateManager>> dcp = backgroundSessions.entrySet().iterator();
+        while (dcp.hasNext())
+        {
+            final Map.Entry<String, StateManager> e = dcp.next();
+            final StateManager sm = e.getValue();
+            if (sm.getState().protoType == ConnectionIf.ProtoType.DCP)
+            {
+                Logging.info(this, "background session {} stopped: DCP port released", e.getKey());
+                dcp.remove();
+                sm.stop();
+                addPresence(sm.getState());
+            }
+            else
+            {
+                memory += sm.getMemoryUsage();
+            }
+        }
+        final Iterator<Map.Entry<String, StateManager>> it = backgroundSessions.entrySet().iterator();
+        while (it.hasNext() && (backgroundSessions.size() > MAX_ACTIVE_SESSIONS - 1 || memory > BACKGROUND_MEMORY_LIMIT))
+        {
+            final Map.Entry<String, StateManager> e = it.next();
+            final StateManager sm = e.getValue();
+            Logging.info(this, "background session {} stopped, memory: {}B", e.getKey(), sm.getMemoryUsage());
+            memory -= sm.getMemoryUsage();
+            it.remove();
+            sm.stop();
+            addPresence(sm.getState());
+        }
+    }
+
+    /**
+     * Procedure watches the presence of a device whose background session is stopped.
+     * Only the MAX_PRESENCE_SESSIONS most recently stopped devices are watched.
+     */
+    private void addPresence(@NonNull final State state)
+    {
+        if (presenceMonitor == null)
+        {
+            presenceMonitor = new PresenceMonitor(this);
+            presenceMonitor.start();
+        }
+        final PresenceMonitor.Presence old = presenceMonitor.get(state.getHost(), state.getPort());
+        if (old != null && old.getState().getActiveZone() != state.getActiveZone())
+        {
+            presenceMonitor.remove(state.getHost(), state.getPort());
+        }
+        presenceMonitor.add(state.getHost(), state.getPort(), state.getActiveZone());
+        presenceDevices.remove(state.getHostAndPort());
+        presenceDevices.add(state.getHostAndPort());
+        while (presenceDevices.size() > MAX_PRESENCE_SESSIONS)
+        {
+            final PresenceMonitor.Presence p = presenceMonitor.get(presenceDevices.remove(0));
+            if (p != null)
+            {
+                presenceMonitor.remove(p.getHost(), p.getPort());
+            }
+        }
+    }
+
+    private void removePresence(@NonNull final String host, final int port)
+    {
+        presenceDevices.remove(Utils.ipToString(host, port));
+        if (presenceMonitor != null)
+        {
+            presenceMonitor.remove(host, port);
+        }
+    }
+
+    @Override
+    public void onPresenceChanged(@NonNull PresenceMonitor.Presence presence)
+    {
+        Logging.info(this, "presence of " + presence.getHostAndPort() + ": connected=" + presence.isConnected()
+                + ", power=" + presence.getState().powerStatus
+                + ", name=" + presence.getState().getDeviceName(true));
+    }
+
+    /**
+     * Procedure returns the estimated heap usage in bytes per device: foreground,
+     * background and presence sessions.
+     */
+    @NonNull
+    public Map<String, Long> getMemoryUsage()
     {
-        this.stateManager = stateManager;
+        final Map<String, Long> usage = new LinkedHashMap<>();
         synchronized (released)
         {
-            released.set(stateManager == null);
+            if (stateManager != null)
+            {
+                usage.put(stateManagerKey, stateManager.getMemoryUsage());
+            }
+            for (Map.Entry<String, StateManager> e : new ArrayList<>(backgroundSessions.entrySet()))
+            {
+                usage.put(e.getKey(), e.getValue().getMemoryUsage());
+            }
+            if (presenceMonitor != null)
+            {
+                for (PresenceMonitor.Presence p : presenceMonitor.getSessions())
+                {
+                    usage.put(p.getHostAndPort(), p.getMemoryEstimate());
+                }
+            }
         }
+        return usage;
     }
 
+    private void logSessions(@NonNull final String reason)
+    {
+        if (!Logging.isEnabled())
+        {
+            return;
+        }
+        long total = 0;
+        final StringBuilder str = new StringBuilder();
+        for (Map.Entry<String, Long> e : getMemoryUsage().entrySet())
+        {
+            total += e.getValue();
+            str.append(str.length() == 0 ? "" : ", ").append(e.getKey()).append("=").append(e.getValue() / 1024).append("KB");
+        }
+        Logging.info(this, reason + ": sessions [" + str + "], total " + total / 1024 + "KB");
+    }
+
+    @Nullable
     public StateManager getStateManager()
     {
         return stateManager;
     }
 
+    @Nullable
     public State getState()
     {
-        return stateManager == null ? null : stateManager.getState();
+        final StateManager sm = stateManager;
+        return sm == null ? null : sm.getState();
+    }
+
+    /**
+     * Procedure moves the foreground session into background when the app is paused. All
+     * sessions are stopped if the app is not resumed within PAUSE_RELEASE_DELAY.
+     */
+    public void pause()
+    {
+        synchronized (released)
+        {
+            appExit = true;
+            detachForeground();
+            if (pauseRelease == null && !runningManagers.isEmpty())
+            {
+                pauseRelease = AppScheduler.schedule(() -> release(true, "pause timeout"), PAUSE_RELEASE_DELAY);
+            }
+        }
+        logSessions("paused");
+    }
+
+    private void cancelPauseRelease()
+    {
+        if (pauseRelease != null)
+        {
+            pauseRelease.cancel(false);
+            pauseRelease = null;
+        }
     }
 
+    /**
+     * Procedure stops all sessions, including the background and presence sessions
+     */
     public void release(boolean appExit, String reason)
     {
         this.appExit = appExit;
         synchronized (released)
         {
-            if (stateManager != null)
+            cancelPauseRelease();
+            if (presenceMonitor != null)
+            {
+                presenceMonitor.stop();
+                presenceMonitor = null;
+            }
+            presenceDevices.clear();
+            backgroundSessions.clear();
+            if (!runningManagers.isEmpty())
             {
-                Logging.info(this, "request to release state holder (" + reason + ")");
+                Logging.info(this, "request to release state holder ({})", reason);
                 released.set(false);
-                // state manager may be set to null in setStateManager during the setting
-                // "released" to false
-                if (stateManager != null)
+                releaseRequestTime = System.currentTimeMillis();
+                for (StateManager sm : runningManagers)
                 {
-                    stateManager.stop();
+                    sm.stop();
                 }
             }
             else
@@ -72,31 +350,61 @@ public class StateHolder
         }
     }
 
-    public void waitForRelease()
+    public boolean isAppExit()
     {
-        while (true)
+        return appExit;
+    }
+
+    @Override
+    public void onStateChanged(State state, @Nullable HashSet<State.ChangeType> eventChanges)
+    {
+        final StateManager sm = stateManager;
+        if (sm != null && sm.getState() == state)
         {
-            synchronized (released)
-            {
-                if (released.get())
-                {
-                    Logging.info(this, "state holder released");
-                    return;
-                }
-            }
-            try
+            listener.onStateChanged(state, eventChanges);
+        }
+    }
+
+    @Override
+    public void onManagerStopped(@NonNull StateManager manager)
+    {
+        boolean foreground = false;
+        synchronized (released)
+        {
+            runningManagers.remove(manager);
+            backgroundSessions.values().remove(manager);
+            if (manager == stateManager)
             {
-                TimeUnit.MILLISECONDS.sleep(50);
+                stateManager = null;
+                stateManagerKey = null;
+                foreground = true;
             }
-            catch (InterruptedException e)
+            if (!released.get() && runningManagers.isEmpty())
             {
-                // nothing to do
+                // The release is completed by the callback of the last stopped manager;
+                // nobody waits for it
+                released.set(true);
+                if (releaseRequestTime > 0)
+                {
+                    Logging.info(this, "state holder released in "
+                            + (System.currentTimeMillis() - releaseRequestTime) + "ms");
+                    releaseRequestTime = 0;
+                }
             }
         }
+        if (foreground)
+        {
+            listener.onManagerStopped(manager);
+        }
     }
 
-    public boolean isAppExit()
+    @Override
+    public void onDeviceDisconnected(@NonNull StateManager manager)
     {
-        return appExit;
+        // The UI is only informed if no other device is shown
+        if (stateManager == null)
+        {
+            listener.onDeviceDisconnected(manager);
+        }
     }
 }
@@ -15,8 +15,9 @@
 package com.mkulesh.onpc.iscp;
 
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.os.AsyncTask;
-import android.os.StrictMode;
+import android.os.Looper;
 
 import com.mkulesh.onpc.config.CfgFavoriteShortcuts;
 import com.mkulesh.onpc.iscp.messages.AlbumNameMsg;
@@ -80,50 +81,76 @@ import com.mkulesh.onpc.iscp.messages.VideoInformationMsg;
 import com.mkulesh.onpc.iscp.messages.XmlListInfoMsg;
 import com.mkulesh.onpc.iscp.scripts.MessageScript;
 import com.mkulesh.onpc.iscp.scripts.MessageScriptIf;
+import com.mkulesh.onpc.utils.AppScheduler;
 import com.mkulesh.onpc.utils.Logging;
 
+import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
 import java.util.HashSet;
-import java.util.Map;
-import java.util.Timer;
+import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 public class StateManager extends AsyncTask<Void, Void, Void>
 {
+    // GUI update delays: within a message burst, the updates are batched using the maximal delay.
+    // Otherwise, the update is performed after a short delay in order to collect messages that
+    // arrive together, or within the next display frame if the change is caused by the user.
     private static final long GUI_UPDATE_DELAY = 500;
+    private static final long GUI_IDLE_DELAY = 100;
+    private static final long GUI_FRAME_DELAY = 16;
+    private static final long USER_ACTION_PERIOD = 1000;
 
     public interface StateListener
     {
         void onStateChanged(State state, @Nullable final HashSet<State.ChangeType> eventChanges);
 
-        void onManagerStopped();
+        void onManagerStopped(@NonNull final StateManager manager);
 
-        void onDeviceDisconnected();
+        void onDeviceDisconnected(@NonNull final StateManager manager);
     }
 
     private final DeviceList deviceList;
     private final ConnectionState connectionState;
-    private final Map<String, MessageChannel> multiroomChannels = new HashMap<>();
+    private final MultiroomPeers multiroomPeers;
+    private final GroupAcknowledge groupAcknowledge;
+    private final ReconnectPolicy reconnectPolicy = new ReconnectPolicy();
 
     private final StateListener stateListener;
     private final MessageChannel messageChannel;
     private final State state;
+    private final CoverLoader coverLoader;
 
     private final AtomicBoolean requestXmlList = new AtomicBoolean();
     private final AtomicBoolean playbackMode = new AtomicBoolean();
     private final AtomicInteger skipNextTimeMsg = new AtomicInteger();
     private final AtomicBoolean requestRIonPreset = new AtomicBoolean();
     private final HashSet<State.ChangeType> eventChanges = new HashSet<>();
+    private final AtomicBoolean guiUpdatePending = new AtomicBoolean();
+    private final AtomicLong guiChangeTime = new AtomicLong();
+    private final AtomicLong guiUpdateTime = new AtomicLong();
+    private final AtomicLong userActionTime = new AtomicLong();
+    private final AtomicInteger guiUpdateCount = new AtomicInteger();
+    private final AtomicLong guiUpdateLatency = new AtomicLong();
+    private final AtomicLong guiUpdateMaxLatency = new AtomicLong();
+    private final AtomicLong stopRequestTime = new AtomicLong();
     private int xmlReqId = 0;
     private ISCPMessage circlePlayQueueMsg = null;
 
+    // Maximum time the state thread waits for the message channel threads on stop
+    private final static long TERMINATION_TIMEOUT = 3000;
+    // Maximum time to find the HTTP port of a DCP device
+    private final static long HTTP_PORT_TIMEOUT = 5000;
+
     private final static String[] trackStateQueries = new String[]{
             ArtistNameMsg.CODE, AlbumNameMsg.CODE, TitleNameMsg.CODE,
             FileFormatMsg.CODE, TrackInfoMsg.CODE, TimeInfoMsg.CODE,
@@ -153,25 +180,40 @@ public class StateManager extends AsyncTask<Void, Void, Void>
     public StateManager(final DeviceList deviceList,
                         final ConnectionState connectionState,
                         final StateListener stateListener,
-                        final String host, final int port,
+                        final @NonNull SessionConnector session,
                         final int zone,
                         final boolean keepPlaybackMode,
                         final String savedReceiverInformation,
-                        final @NonNull ArrayList<MessageScriptIf> messageScripts) throws Exception
+                        final @NonNull ArrayList<MessageScriptIf> messageScripts)
     {
         this.deviceList = deviceList;
         this.connectionState = connectionState;
         this.stateListener = stateListener;
 
-        messageChannel = port == ConnectionIf.DCP_PORT ?
-                new MessageChannelDcp(zone, connectionState, inputQueue) :
-                new MessageChannelIscp(connectionState, inputQueue);
-        if (!messageChannel.connectToServer(host, port))
+        // The session is already connected by the SessionConnector: the sockets are only attached
+        if (session.isDcp())
         {
-            throw new Exception("Cannot connect to server");
+            final MessageChannelDcp dcpChannel = new MessageChannelDcp(zone, connectionState, inputQueue);
+            dcpChannel.attachToServer(session.getSocket());
+            if (session.getHeosSocket() != null)
+            {
+                dcpChannel.attachHeos(session.getHeosSocket());
+            }
+            messageChannel = dcpChannel;
         }
+        else
+        {
+            messageChannel = new MessageChannelIscp(connectionState, inputQueue);
+            messageChannel.attachToServer(session.getSocket());
+        }
+        // A broken connection is re-established by the channel, the state is kept
+        messageChannel.setReconnectPolicy(reconnectPolicy);
+        multiroomPeers = new MultiroomPeers(connectionState, inputQueue, multiroomQueries);
+        groupAcknowledge = new GroupAcknowledge(multiroomPeers::removeAllowedMessage);
 
         state = new State(messageChannel.getProtoType(), messageChannel.getHost(), messageChannel.getPort(), zone);
+        coverLoader = new CoverLoader(connectionState.getContext(), inputQueue);
+        state.setCoverLoader(coverLoader);
 
         // In LTE mode, always use BMP images instead of links since direct links
         // can be not available
@@ -196,8 +238,6 @@ public class StateManager extends AsyncTask<Void, Void, Void>
         this.messageScripts = messageScripts;
 
         messageChannel.start();
-        StrictMode.ThreadPolicy policy = new StrictMode.ThreadPolicy.Builder().permitAll().build();
-        StrictMode.setThreadPolicy(policy);
         executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, (Void[]) null);
 
         // initial call os the message scripts
@@ -233,14 +273,15 @@ public class StateManager extends AsyncTask<Void, Void, Void>
         this.stateListener = stateListener;
 
         messageChannel = new MessageChannelIscp(connectionState, inputQueue);
+        multiroomPeers = new MultiroomPeers(connectionState, inputQueue, multiroomQueries);
+        groupAcknowledge = new GroupAcknowledge(multiroomPeers::removeAllowedMessage);
         state = new MockupState(zone);
+        coverLoader = null;
         useBmpImages = false;
         setPlaybackMode(false);
         messageScripts = new ArrayList<>();
 
         messageChannel.start();
-        StrictMode.ThreadPolicy policy = new StrictMode.ThreadPolicy.Builder().permitAll().build();
-        StrictMode.setThreadPolicy(policy);
         executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, (Void[]) null);
     }
 
@@ -249,13 +290,23 @@ public class StateManager extends AsyncTask<Void, Void, Void>
         keepPlaybackMode.set(flag);
     }
 
+    public void setCoverSize(int size)
+    {
+        if (coverLoader != null)
+        {
+            coverLoader.setTargetSize(size);
+        }
+    }
+
     public void stop()
     {
-        messageChannel.stop();
-        for (MessageChannel m : multiroomChannels.values())
+        stopRequestTime.compareAndSet(0, System.currentTimeMillis());
+        if (coverLoader != null)
         {
-            m.stop();
+            coverLoader.stop();
         }
+        messageChannel.stop();
+        multiroomPeers.stop();
     }
 
     @NonNull
@@ -264,10 +315,19 @@ public class StateManager extends AsyncTask<Void, Void, Void>
         return state;
     }
 
+    /**
+     * Estimated heap usage of this session in bytes, including the decoded cover image
+     */
+    public long getMemoryUsage()
+    {
+        final Object cover = state.cover;
+        return state.getMemoryEstimate() + (cover instanceof Bitmap ? ((Bitmap) cover).getByteCount() : 0);
+    }
+
     @Override
     protected Void doInBackground(Void... params)
     {
-        Logging.info(this, "started: " + this);
+        Logging.info(this, "started: {}", this);
 
         if (state.protoType == ConnectionIf.ProtoType.ISCP)
         {
@@ -278,7 +338,7 @@ public class StateManager extends AsyncTask<Void, Void, Void>
             requestInitialDcpState();
         }
 
-        final BlockingQueue<Timer> timerQueue = new ArrayBlockingQueue<>(1, true);
+        guiUpdatePending.set(false);
         skipNextTimeMsg.set(0);
         requestXmlList.set(false);
         playbackMode.set(false);
@@ -296,12 +356,34 @@ public class StateManager extends AsyncTask<Void, Void, Void>
 
                 final ISCPMessage msg = inputQueue.take();
 
+                if (msg instanceof ReconnectPolicy.ReconnectingMsg || msg instanceof ReconnectPolicy.ResumedMsg)
+                {
+                    // The GUI shows that the connection is being re-established
+                    final State.ChangeType changed = state.update(msg);
+                    if (changed != State.ChangeType.NONE)
+                    {
+                        eventChanges.add(changed);
+                        scheduleGuiUpdate();
+                    }
+                    if (msg instanceof ReconnectPolicy.ResumedMsg)
+                    {
+                        requestResumedState((ReconnectPolicy.ResumedMsg) msg);
+                    }
+                    continue;
+                }
+
+                if (groupAcknowledge.process(msg) && !msg.fromHost(messageChannel))
+                {
+                    // the status of other group devices does not belong to this state
+                    continue;
+                }
+
                 if (msg instanceof ZonedMessage)
                 {
                     final ZonedMessage zMsg = (ZonedMessage) msg;
                     if (zMsg.zoneIndex != state.getActiveZone())
                     {
-                        Logging.info(this, "message ignored: non active zone " + zMsg.zoneIndex);
+                        Logging.info(this, "message ignored: non active zone {}", zMsg.zoneIndex);
                         continue;
                     }
                 }
@@ -322,7 +404,7 @@ public class StateManager extends AsyncTask<Void, Void, Void>
                 }
                 catch (Exception e)
                 {
-                    Logging.info(this, "cannot process message: " + e.getLocalizedMessage());
+                    Logging.info(this, "cannot process message: {}", e.getLocalizedMessage());
                     for (StackTraceElement el : e.getStackTrace())
                     {
                         Logging.info(this, el.toString());
@@ -334,46 +416,32 @@ public class StateManager extends AsyncTask<Void, Void, Void>
                     handleMultiroom();
                 }
 
-                if (changed && timerQueue.isEmpty())
+                if (changed)
                 {
-                    final Timer t = new Timer();
-                    timerQueue.add(t);
-                    t.schedule(new java.util.TimerTask()
-                    {
-                        @Override
-                        public void run()
-                        {
-                            timerQueue.poll();
-                            publishProgress();
-                        }
-                    }, GUI_UPDATE_DELAY);
+                    scheduleGuiUpdate();
                 }
             }
             catch (Exception e)
             {
-                Logging.info(this, "interrupted: " + e.getLocalizedMessage());
+                Logging.info(this, "interrupted: {}", e.getLocalizedMessage());
                 break;
             }
         }
 
-        while (true)
+        // The peers are also stopped if the main channel was closed by the device
+        multiroomPeers.stop();
+        if (!messageChannel.awaitTermination(TERMINATION_TIMEOUT)
+                || !multiroomPeers.awaitTermination(TERMINATION_TIMEOUT))
         {
-            int activeCount = 0;
-            for (MessageChannel m : multiroomChannels.values())
-            {
-                if (m.isActive())
-                {
-                    activeCount++;
-                }
-            }
-            if (activeCount == 0)
-            {
-                break;
-            }
+            Logging.info(this, "message channels not terminated within {}ms", TERMINATION_TIMEOUT);
         }
 
-        Logging.info(this, "stopped: " + this);
-        stateListener.onManagerStopped();
+        final long requestTime = stopRequestTime.get();
+        Logging.info(this, "stopped: " + this
+                + (requestTime > 0 ? " in " + (System.currentTimeMillis() - requestTime) + "ms" : "")
+                + ", " + getGuiUpdateMetrics()
+                + "; " + reconnectPolicy.getMetrics());
+        stateListener.onManagerStopped(this);
         return null;
     }
 
@@ -398,12 +466,13 @@ public class StateManager extends AsyncTask<Void, Void, Void>
 
     private void requestInitialDcpState()
     {
-        if (requestDcpReceiverInfo(ConnectionIf.DCP_HTTP_PORT))
-        {
-            return;
-        }
-        // Fallback to the port 80 for older models
-        if (!requestDcpReceiverInfo(80))
+        // The HTTP port is DCP_HTTP_PORT for newer and 80 for older models: both ports are raced
+        final int httpPort = getDcpHttpPort();
+        // The winner only accepted the connection: if it does not deliver the receiver
+        // information, the other port is tried before the default state is requested
+        final int otherPort = httpPort == ConnectionIf.DCP_HTTP_PORT ? 80 : ConnectionIf.DCP_HTTP_PORT;
+        if (httpPort == ConnectionIf.EMPTY_PORT
+                || !(requestDcpReceiverInfo(httpPort) || requestDcpReceiverInfo(otherPort)))
         {
             // request DcpReceiverInformationMsg here since no ReceiverInformation exists
             // otherwise it will be requested when ReceiverInformation is processed
@@ -415,6 +484,99 @@ public class StateManager extends AsyncTask<Void, Void, Void>
         }
     }
 
+    private int getDcpHttpPort()
+    {
+        final AtomicInteger httpPort = new AtomicInteger(ConnectionIf.EMPTY_PORT);
+        final CountDownLatch raceFinished = new CountDownLatch(1);
+        final EndpointRacer racer = new EndpointRacer(messageChannel.getHost() + "/http");
+        racer.add(messageChannel.getHost(), ConnectionIf.DCP_HTTP_PORT);
+        racer.add(messageChannel.getHost(), 80);
+        racer.start(HTTP_PORT_TIMEOUT, new EndpointRacer.Callback()
+        {
+            @Override
+            public void onConnected(@NonNull SocketChannel socket, @NonNull String host, int port)
+            {
+                try
+                {
+                    socket.close();
+                }
+                catch (Exception e)
+                {
+                    // nothing to do
+                }
+                httpPort.set(port);
+                raceFinished.countDown();
+            }
+
+            @Override
+            public void onFailed(@NonNull String reason)
+            {
+                Logging.info(StateManager.this, "DCP HTTP port not available: {}", reason);
+                raceFinished.countDown();
+            }
+        });
+        try
+        {
+            raceFinished.await(HTTP_PORT_TIMEOUT, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            // nothing to do
+        }
+        return httpPort.get();
+    }
+
+    /**
+     * Procedure requests the parts of the state that could be changed while the connection
+     * was broken: power, input, volume and the current track. All other parts of the state
+     * are kept; if the power or the input was changed, the further state is requested
+     * upon the received messages as usual.
+     */
+    private void requestResumedState(@NonNull final ReconnectPolicy.ResumedMsg msg)
+    {
+        Logging.info(this, "session resumed after {}ms, reconnect {}, {}",
+                msg.getDowntime(), msg.getReconnectCount(), reconnectPolicy.getMetrics());
+        final boolean isIscp = state.protoType == ConnectionIf.ProtoType.ISCP;
+        if (isIscp)
+        {
+            messageChannel.sendMessage(
+                    new EISCPMessage(JacketArtMsg.CODE,
+                            useBmpImages ? JacketArtMsg.TYPE_BMP : JacketArtMsg.TYPE_LINK));
+        }
+        if (!state.isOn())
+        {
+            final String[] powerStateQueries = new String[]{
+                    PowerStatusMsg.ZONE_COMMANDS[state.getActiveZone()]
+            };
+            sendQueries(powerStateQueries, "requesting resumed power state...");
+            return;
+        }
+        final String[] resumedStateQueries = new String[]{
+                PowerStatusMsg.ZONE_COMMANDS[state.getActiveZone()],
+                InputSelectorMsg.ZONE_COMMANDS[state.getActiveZone()],
+                PlayStatusMsg.CODE,
+                AudioMutingMsg.ZONE_COMMANDS[state.getActiveZone()],
+                MasterVolumeMsg.ZONE_COMMANDS[state.getActiveZone()]
+        };
+        sendQueries(resumedStateQueries, "requesting resumed state...");
+        if (isIscp)
+        {
+            sendQueries(trackStateQueries, "requesting resumed track state...");
+            if (state.isPlaying())
+            {
+                messageChannel.sendMessage(
+                        new EISCPMessage(JacketArtMsg.CODE, JacketArtMsg.REQUEST));
+            }
+        }
+        else
+        {
+            final String[] trackStatusQueries = new String[]{
+                    DcpMediaItemMsg.CODE
+            };
+            sendQueries(trackStatusQueries, "DCP: requesting resumed track state...");
+        }
+    }
+
     private boolean requestDcpReceiverInfo(final int port)
     {
         try
@@ -424,7 +586,7 @@ public class StateManager extends AsyncTask<Void, Void, Void>
         }
         catch (Exception ex)
         {
-            Logging.info(this, "Cannot load DCP receiver information: " + ex.getLocalizedMessage());
+            Logging.info(this, "Cannot load DCP receiver information: {}", ex.getLocalizedMessage());
         }
         return false;
     }
@@ -433,7 +595,7 @@ public class StateManager extends AsyncTask<Void, Void, Void>
     protected void onPostExecute(Void aVoid)
     {
         super.onPostExecute(aVoid);
-        stateListener.onDeviceDisconnected();
+        stateListener.onDeviceDisconnected(this);
     }
 
     private boolean processIscpMessage(@NonNull ISCPMessage msg)
@@ -685,6 +847,7 @@ public class StateManager extends AsyncTask<Void, Void, Void>
         if (!state.isOn())
         {
             state.inputType = InputSelectorMsg.InputType.NONE;
+            state.publishSnapshot();
             return changed != State.ChangeType.NONE;
         }
 
@@ -720,16 +883,8 @@ public class StateManager extends AsyncTask<Void, Void, Void>
             // After transmitting a power on COMMAND（PWON, the next COMMAND
             // shall be transmitted at least 1 second later
             final int REQUEST_DELAY = 1500;
-            final Timer t = new Timer();
-            t.schedule(new java.util.TimerTask()
-            {
-                @Override
-                public void run()
-                {
-                    sendQueries(playStateQueries,
-                            "DCP: requesting play state with delay " + REQUEST_DELAY + "ms...");
-                }
-            }, REQUEST_DELAY);
+            AppScheduler.schedule(() -> sendQueries(playStateQueries,
+                    "DCP: requesting play state with delay " + REQUEST_DELAY + "ms..."), REQUEST_DELAY);
         }
 
         if (msg instanceof InputSelectorMsg)
@@ -758,7 +913,7 @@ public class StateManager extends AsyncTask<Void, Void, Void>
             final int currItems = mc.getStart() + mc.getItems().size();
             if (currItems < mc.getCount() && mc.getCid().equals(state.mediaListCid))
             {
-                Logging.info(this, "Requesting DCP media list: currItems=" + currItems + ", count=" + mc.getCount());
+                Logging.info(this, "Requesting DCP media list: currItems={}, count={}", currItems, mc.getCount());
                 final DcpMediaContainerMsg newMc = new DcpMediaContainerMsg(mc);
                 newMc.setAid("");
                 newMc.setStart(currItems);
@@ -792,13 +947,85 @@ public class StateManager extends AsyncTask<Void, Void, Void>
         return true;
     }
 
+    private void scheduleGuiUpdate()
+    {
+        if (!guiUpdatePending.compareAndSet(false, true))
+        {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        guiChangeTime.set(now);
+        final long delay;
+        if (now - userActionTime.get() < USER_ACTION_PERIOD)
+        {
+            delay = GUI_FRAME_DELAY;
+        }
+        else if (now - guiUpdateTime.get() < GUI_UPDATE_DELAY)
+        {
+            delay = GUI_UPDATE_DELAY;
+        }
+        else
+        {
+            delay = GUI_IDLE_DELAY;
+        }
+        AppScheduler.schedule(() ->
+        {
+            guiUpdatePending.set(false);
+            publishProgress();
+        }, delay);
+    }
+
     @Override
     protected void onProgressUpdate(Void... result)
     {
+        final long now = System.currentTimeMillis();
+        final long latency = now - guiChangeTime.get();
+        guiUpdateTime.set(now);
+        guiUpdateCount.incrementAndGet();
+        guiUpdateLatency.addAndGet(latency);
+        if (latency > guiUpdateMaxLatency.get())
+        {
+            guiUpdateMaxLatency.set(latency);
+        }
         stateListener.onStateChanged(state, eventChanges);
         eventChanges.clear();
     }
 
+    private void onUserAction()
+    {
+        // Only changes requested from the GUI thread are considered as user actions
+        if (Looper.myLooper() == Looper.getMainLooper())
+        {
+            userActionTime.set(System.currentTimeMillis());
+        }
+    }
+
+    public int getGuiUpdateCount()
+    {
+        return guiUpdateCount.get();
+    }
+
+    public long getGuiUpdateMaxLatency()
+    {
+        return guiUpdateMaxLatency.get();
+    }
+
+    public long getGuiUpdateAverageLatency()
+    {
+        final int count = guiUpdateCount.get();
+        return count > 0 ? guiUpdateLatency.get() / count : 0;
+    }
+
+    @NonNull
+    public String getGuiUpdateMetrics()
+    {
+        return "GUI updates: " + getGuiUpdateCount()
+                + ", latency avg=" + getGuiUpdateAverageLatency() + "ms"
+                + ", max=" + getGuiUpdateMaxLatency() + "ms"
+                + "; scheduler threads: " + AppScheduler.getThreadCount()
+                + ", tasks: " + AppScheduler.getTaskCount();
+    }
+
     private void requestListState()
     {
         Logging.info(this, "requesting list state...");
@@ -832,7 +1059,8 @@ public class StateManager extends AsyncTask<Void, Void, Void>
 
     public void sendMessage(final ISCPMessage msg)
     {
-        Logging.info(this, "sending message: " + msg.toString());
+        onUserAction();
+        Logging.info(this, "sending message: {}", msg);
         if (msg.isMultiline())
         {
             msg.logParameters();
@@ -852,8 +1080,24 @@ public class StateManager extends AsyncTask<Void, Void, Void>
 
     public void sendMessageToGroup(final ISCPMessage msg)
     {
-        Logging.info(this, "sending message to group: " + msg.toString());
-        for (MessageChannel m : multiroomChannels.values())
+        onUserAction();
+        Logging.info(this, "sending message to group: {}", msg);
+        final String code = msg.getCmdMsg().getCode();
+        final Collection<MessageChannel> channels = multiroomPeers.getChannels();
+        final List<String> devices = new ArrayList<>();
+        devices.add(messageChannel.getHostAndPort());
+        for (MessageChannel m : channels)
+        {
+            devices.add(m.getHostAndPort());
+        }
+        // a pending command with the same code withdraws it from the peers when it is finished,
+        // therefore the code is allowed after the start of the new command
+        groupAcknowledge.start(code, devices);
+        multiroomPeers.addAllowedMessage(code);
+
+        // Each channel sends the command from its own thread, i.e. all devices
+        // receive it in parallel; the latencies are logged by groupAcknowledge
+        for (MessageChannel m : channels)
         {
             m.sendMessage(msg.getCmdMsg());
         }
@@ -866,9 +1110,10 @@ public class StateManager extends AsyncTask<Void, Void, Void>
         {
             return;
         }
+        onUserAction();
         if (repeat)
         {
-            Logging.info(this, "starting repeat mode: " + msg);
+            Logging.info(this, "starting repeat mode: {}", msg);
             circlePlayQueueMsg = msg;
         }
         requestXmlList.set(true);
@@ -908,7 +1153,8 @@ public class StateManager extends AsyncTask<Void, Void, Void>
 
     public void sendTrackMsg(final OperationCommandMsg msg, boolean doReturn)
     {
-        Logging.info(this, "sending track cmd: " + msg.toString());
+        onUserAction();
+        Logging.info(this, "sending track cmd: {}", msg);
         if (!state.isPlaybackMode())
         {
             messageChannel.sendMessage(LIST_MSG.getCmdMsg());
@@ -922,6 +1168,7 @@ public class StateManager extends AsyncTask<Void, Void, Void>
 
     public void sendDcpMediaCmd(DcpMediaContainerMsg mc, int aid)
     {
+        onUserAction();
         final DcpMediaContainerMsg mc1 = new DcpMediaContainerMsg(mc);
         mc1.setAid(Integer.toString(aid));
         messageChannel.sendMessage(mc1.getCmdMsg());
@@ -943,7 +1190,7 @@ public class StateManager extends AsyncTask<Void, Void, Void>
 
     private void handleMultiroom()
     {
-        for (BroadcastResponseMsg msg : deviceList.getDevices())
+        for (BroadcastResponseMsg msg : deviceList.getDevicesSnapshot())
         {
             if (!msg.isValidConnection())
             {
@@ -953,25 +1200,8 @@ public class StateManager extends AsyncTask<Void, Void, Void>
             {
                 continue;
             }
-            if (multiroomChannels.containsKey(msg.getHostAndPort()))
-            {
-                continue;
-            }
-            Logging.info(this, "connecting to multiroom device: " + msg.getHostAndPort());
-            final MessageChannel m = msg.getPort() == ConnectionIf.DCP_PORT ?
-                    new MessageChannelDcp(ReceiverInformationMsg.DEFAULT_ACTIVE_ZONE, connectionState, inputQueue) :
-                    new MessageChannelIscp(connectionState, inputQueue);
-            for (String code : multiroomQueries)
-            {
-                m.addAllowedMessage(code);
-                m.sendMessage(new EISCPMessage(code, EISCPMessage.QUERY));
-            }
-
-            if (m.connectToServer(msg.getHost(), msg.getPort()))
-            {
-                multiroomChannels.put(msg.getHostAndPort(), m);
-                m.start();
-            }
+            // Non-blocking: connected, pending and recently failed peers are skipped
+            multiroomPeers.connect(msg);
         }
     }
 
@@ -1003,9 +1233,9 @@ public class StateManager extends AsyncTask<Void, Void, Void>
 
     public void applyShortcut(@NonNull final Context context, @NonNull final CfgFavoriteShortcuts.Shortcut shortcut)
     {
-        Logging.info(this, "selected favorite shortcut: " + shortcut);
+        Logging.info(this, "selected favorite shortcut: {}", shortcut);
         final String data = shortcut.toScript(context, state);
-        final MessageScript messageScript = new MessageScript(context, data);
+        final MessageScript messageScript = new MessageScript(context::getString, data);
         activateScript(messageScript);
     }
 }
@@ -0,0 +1,256 @@
+/*
+ * Enhanced Music Controller
+ * Copyright (C) 2018-2023 by Mikhail Kulesh
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with this program.
+ */
+package com.mkulesh.onpc.utils;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.res.Configuration;
+import android.graphics.PorterDuff;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.util.TypedValue;
+import android.view.Gravity;
+import android.view.LayoutInflater;
+import android.view.MenuItem;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.inputmethod.InputMethodManager;
+import android.widget.ImageView;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import com.mkulesh.onpc.R;
+
+import androidx.annotation.AttrRes;
+import androidx.annotation.ColorInt;
+import androidx.annotation.NonNull;
+import androidx.appcompat.app.ActionBarDrawerToggle;
+import androidx.appcompat.app.AlertDialog;
+import androidx.appcompat.widget.AppCompatButton;
+import androidx.appcompat.widget.AppCompatImageButton;
+import androidx.drawerlayout.widget.DrawerLayout;
+
+/**
+ * Android-specific helpers: resources, themes, views and preferences.
+ * Platform-independent helpers are located in the Utils class of the protocol core.
+ */
+public class AndroidUtils
+{
+    @SuppressWarnings("deprecation")
+    @SuppressLint("NewApi")
+    public static Drawable getDrawable(Context context, int icon)
+    {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP)
+        {
+            return context.getResources().getDrawable(icon, context.getTheme());
+        }
+        else
+        {
+            return context.getResources().getDrawable(icon);
+        }
+    }
+
+    /**
+     * Procedure returns theme color
+     */
+    @ColorInt
+    public static int getThemeColorAttr(final Context context, @AttrRes int resId)
+    {
+        final TypedValue value = new TypedValue();
+        context.getTheme().resolveAttribute(resId, value, true);
+        return value.data;
+    }
+
+    /**
+     * Procedure updates menu item color depends its enabled state
+     */
+    public static void updateMenuIconColor(Context context, MenuItem m)
+    {
+        setDrawableColorAttr(context, m.getIcon(),
+                m.isEnabled() ? android.R.attr.textColorTertiary : R.attr.colorPrimaryDark);
+    }
+
+    /**
+     * Procedure sets AppCompatImageButton color given by attribute ID
+     */
+    public static void setImageButtonColorAttr(Context context, AppCompatImageButton b, @AttrRes int resId)
+    {
+        final int c = getThemeColorAttr(context, resId);
+        b.clearColorFilter();
+        b.setColorFilter(c, PorterDuff.Mode.SRC_ATOP);
+    }
+
+    public static void setButtonEnabled(Context context, View b, boolean isEnabled)
+    {
+        @AttrRes int resId = isEnabled ? R.attr.colorButtonEnabled : R.attr.colorButtonDisabled;
+        b.setEnabled(isEnabled);
+        if (b instanceof AppCompatImageButton)
+        {
+            AndroidUtils.setImageButtonColorAttr(context, (AppCompatImageButton) b, resId);
+        }
+        if (b instanceof AppCompatButton)
+        {
+            ((AppCompatButton) b).setTextColor(AndroidUtils.getThemeColorAttr(context, resId));
+        }
+    }
+
+    public static void setButtonSelected(Context context, View b, boolean isSelected)
+    {
+        @AttrRes int resId = isSelected ? R.attr.colorAccent : R.attr.colorButtonEnabled;
+        b.setSelected(isSelected);
+        if (b instanceof AppCompatImageButton)
+        {
+            AndroidUtils.setImageButtonColorAttr(context, (AppCompatImageButton) b, resId);
+        }
+        if (b instanceof AppCompatButton)
+        {
+            ((AppCompatButton) b).setTextColor(AndroidUtils.getThemeColorAttr(context, resId));
+        }
+    }
+
+    /**
+     * Procedure sets ImageView background color given by attribute ID
+     */
+    public static void setImageViewColorAttr(Context context, ImageView b, @AttrRes int resId)
+    {
+        final int c = getThemeColorAttr(context, resId);
+        b.clearColorFilter();
+        b.setColorFilter(c, PorterDuff.Mode.SRC_ATOP);
+    }
+
+    public static void setDrawableColorAttr(Context c, Drawable drawable, @AttrRes int resId)
+    {
+        if (drawable != null)
+        {
+            drawable.clearColorFilter();
+            drawable.setColorFilter(getThemeColorAttr(c, resId), PorterDuff.Mode.SRC_ATOP);
+        }
+    }
+
+    /**
+     * Fix dialog icon color after dialog creation. Necessary for older Android Versions
+     */
+    public static void fixIconColor(@NonNull AlertDialog dialog, @AttrRes int resId)
+    {
+        final ImageView imageView = dialog.findViewById(android.R.id.icon);
+        if (imageView != null)
+        {
+            AndroidUtils.setImageViewColorAttr(dialog.getContext(), imageView, resId);
+        }
+    }
+
+    /**
+     * Procedure hows toast that contains description of the given button
+     */
+    @SuppressLint("RtlHardcoded")
+    public static boolean showButtonDescription(Context context, View button)
+    {
+        final CharSequence contentDesc = button.getContentDescription();
+        final ViewGroup dummyView = null;
+        //noinspection ConstantConditions
+        final LinearLayout toastView = (LinearLayout) LayoutInflater.from(context).
+                inflate(R.layout.widget_toast, dummyView, false);
+        final TextView textView = toastView != null ? toastView.findViewById(R.id.toast_message) : null;
+
+        if (contentDesc != null && contentDesc.length() > 0 && textView != null)
+        {
+            textView.setText(contentDesc);
+
+            int[] pos = new int[2];
+            button.getLocationOnScreen(pos);
+
+            final Toast t = new Toast(context);
+            t.setView(toastView);
+            t.setDuration(Toast.LENGTH_SHORT);
+            t.setGravity(Gravity.TOP | Gravity.LEFT, 0, 0);
+            toastView.measure(View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED),
+                    View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED));
+            final int x = pos[0] + button.getMeasuredWidth() / 2 - (toastView.getMeasuredWidth() / 2);
+            final int y = pos[1] - 2 * toastView.getMeasuredHeight()
+                    - context.getResources().getDimensionPixelSize(R.dimen.activity_vertical_margin_port);
+            t.setGravity(Gravity.TOP | Gravity.LEFT, x, y);
+            t.show();
+            return true;
+        }
+        return false;
+    }
+
+    @SuppressWarnings("deprecation")
+    public static boolean isToastVisible(Toast toast)
+    {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R)
+        {
+            return toast != null;
+        }
+        else
+        {
+            return toast != null && toast.getView() != null && toast.getView().isShown();
+        }
+    }
+
+    /**
+     * Procedure checks whether the hard keyboard is available
+     */
+    private static boolean isHardwareKeyboardAvailable(Context context)
+    {
+        return context.getResources().getConfiguration().keyboard != Configuration.KEYBOARD_NOKEYS;
+    }
+
+    public static void showSoftKeyboard(Context context, View v, boolean flag)
+    {
+        if (AndroidUtils.isHardwareKeyboardAvailable(context))
+        {
+            return;
+        }
+        final InputMethodManager imm = (InputMethodManager) context.getSystemService(Context.INPUT_METHOD_SERVICE);
+        if (imm == null)
+        {
+            return;
+        }
+        if (flag)
+        {
+            imm.toggleSoftInput(InputMethodManager.SHOW_FORCED, InputMethodManager.HIDE_IMPLICIT_ONLY);
+        }
+        else
+        {
+            imm.hideSoftInputFromWindow(v.getWindowToken(), 0);
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    public static void setDrawerListener(DrawerLayout mDrawerLayout, ActionBarDrawerToggle mDrawerToggle)
+    {
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M)
+        {
+            mDrawerLayout.removeDrawerListener(mDrawerToggle);
+            mDrawerLayout.addDrawerListener(mDrawerToggle);
+        }
+        else
+        {
+            mDrawerLayout.setDrawerListener(mDrawerToggle);
+        }
+    }
+
+    @NonNull
+    public static String getStringPref(@NonNull final SharedPreferences preferences,
+                                       @NonNull final String par, @NonNull final String def)
+    {
+        final String val = preferences.getString(par, def);
+        //noinspection ConstantConditions
+        return val == null ? def : val;
+    }
+}
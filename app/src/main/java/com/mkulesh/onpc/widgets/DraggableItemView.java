@@ -23,7 +23,7 @@ import android.widget.LinearLayout;
 import android.widget.TextView;
 
 import com.mkulesh.onpc.R;
-import com.mkulesh.onpc.utils.Utils;
+import com.mkulesh.onpc.utils.AndroidUtils;
 
 import androidx.annotation.DrawableRes;
 
@@ -46,7 +46,7 @@ public class DraggableItemView extends LinearLayout implements Checkable
         textView = this.findViewById(R.id.draggable_text);
         checkBox = this.findViewById(R.id.draggable_checkbox);
         ImageView checkableDragger = this.findViewById(R.id.draggable_dragger);
-        Utils.setImageViewColorAttr(getContext(), checkableDragger, android.R.attr.textColor);
+        AndroidUtils.setImageViewColorAttr(getContext(), checkableDragger, android.R.attr.textColor);
         super.onFinishInflate();
     }
 
@@ -66,7 +66,7 @@ public class DraggableItemView extends LinearLayout implements Checkable
     {
         icon.setImageResource(imageId);
         icon.setVisibility(VISIBLE);
-        Utils.setImageViewColorAttr(getContext(), icon, android.R.attr.textColorSecondary);
+        AndroidUtils.setImageViewColorAttr(getContext(), icon, android.R.attr.textColorSecondary);
     }
 
     public void setText(String line)
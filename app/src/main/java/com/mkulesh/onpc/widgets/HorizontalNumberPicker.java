@@ -29,7 +29,7 @@ import android.widget.LinearLayout;
 import android.widget.TextView;
 
 import com.mkulesh.onpc.R;
-import com.mkulesh.onpc.utils.Utils;
+import com.mkulesh.onpc.utils.AndroidUtils;
 
 import androidx.appcompat.widget.AppCompatImageButton;
 
@@ -78,12 +78,12 @@ public class HorizontalNumberPicker extends LinearLayout implements OnClickListe
 
             bDecrease = findViewById(R.id.button_decrease);
             bDecrease.setOnClickListener(this);
-            bDecrease.setOnLongClickListener(v -> Utils.showButtonDescription(getContext(), v));
+            bDecrease.setOnLongClickListener(v -> AndroidUtils.showButtonDescription(getContext(), v));
             updateViewColor(bDecrease);
 
             bIncrease = findViewById(R.id.button_increase);
             bIncrease.setOnClickListener(this);
-            bIncrease.setOnLongClickListener(v -> Utils.showButtonDescription(getContext(), v));
+            bIncrease.setOnLongClickListener(v -> AndroidUtils.showButtonDescription(getContext(), v));
             updateViewColor(bIncrease);
 
             description = findViewById(R.id.label_text);
@@ -144,13 +144,13 @@ public class HorizontalNumberPicker extends LinearLayout implements OnClickListe
         if (v instanceof AppCompatImageButton)
         {
             final int attrId = v.isEnabled() ? R.attr.colorButtonEnabled : R.attr.colorButtonDisabled;
-            Utils.setImageButtonColorAttr(getContext(), (AppCompatImageButton) v, attrId);
+            AndroidUtils.setImageButtonColorAttr(getContext(), (AppCompatImageButton) v, attrId);
         }
         else if (v instanceof TextView)
         {
             final int attrId = v.isEnabled() ? R.attr.colorButtonEnabled : R.attr.colorButtonDisabled;
             final TextView b = (TextView) v;
-            b.setTextColor(Utils.getThemeColorAttr(getContext(), attrId));
+            b.setTextColor(AndroidUtils.getThemeColorAttr(getContext(), attrId));
         }
     }
 }
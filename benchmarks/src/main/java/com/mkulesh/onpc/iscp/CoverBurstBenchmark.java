@@ -0,0 +1,99 @@
+/*
+ * Enhanced Music Controller
+ * Copyright (C) 2018-2023 by Mikhail Kulesh
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with this program.
+ */
+
+package com.mkulesh.onpc.iscp;
+
+import com.mkulesh.onpc.iscp.messages.JacketArtMsg;
+import com.mkulesh.onpc.iscp.messages.MessageFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A burst of NJA packets as sent by the receiver for a cover image in BMP/JPEG format:
+ * frame decoding, message creation and assembly of the image in the cover buffer of the
+ * State. Receivers send up to 1024 bytes of the image per packet. No cover loader is set,
+ * i.e. the assembled image is not decoded.
+ */
+@org.openjdk.jmh.annotations.State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CoverBurstBenchmark
+{
+    private final static int PACKET_SIZE = 1024;
+    private final static int CHUNK_SIZE = 1500;
+
+    @Param({ "16384", "262144" })
+    public int imageSize;
+
+    private byte[] stream;
+    private State state;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        Fixtures.disableLogging();
+        final byte[] image = new byte[imageSize];
+        new Random(imageSize).nextBytes(image);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int offset = 0; offset < imageSize; offset += PACKET_SIZE)
+        {
+            final char flag = offset == 0 ? '0' : (offset + PACKET_SIZE >= imageSize ? '2' : '1');
+            final StringBuilder par = new StringBuilder().append('1').append(flag);
+            for (int i = offset; i < Math.min(offset + PACKET_SIZE, imageSize); i++)
+            {
+                par.append(String.format("%02x", image[i] & 0xFF));
+            }
+            out.write(new EISCPMessage(JacketArtMsg.CODE, par.toString()).getBytes());
+        }
+        stream = out.toByteArray();
+        state = new State(ConnectionIf.ProtoType.ISCP, "127.0.0.1", ConnectionIf.ISCP_PORT, 0);
+    }
+
+    @Benchmark
+    public State decode()
+    {
+        final IscpFrameDecoder decoder = new IscpFrameDecoder();
+        for (int offset = 0; offset < stream.length; offset += CHUNK_SIZE)
+        {
+            decoder.decode(stream, offset, Math.min(CHUNK_SIZE, stream.length - offset), (raw, remaining) ->
+            {
+                try
+                {
+                    state.update(MessageFactory.create(raw));
+                }
+                catch (Exception e)
+                {
+                    throw new IllegalStateException(e);
+                }
+            });
+        }
+        return state;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Enhanced Music Controller
+ * Copyright (C) 2018-2023 by Mikhail Kulesh
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with this program.
+ */
+
+package com.mkulesh.onpc.iscp;
+
+import com.jayway.jsonpath.JsonPath;
+import com.mkulesh.onpc.iscp.messages.DCPMessageFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversion of Denon input messages: DCP telnet lines (fixtures/dcp-telnet.txt) and
+ * HEOS JSON responses and events (fixtures/heos-responses.txt). The score is the time
+ * needed to convert all lines of the fixture.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DcpMessageFactoryBenchmark
+{
+    private final DCPMessageFactory factory = new DCPMessageFactory();
+    private List<String> telnetLines, heosLines;
+    private Integer pid = null;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        Fixtures.disableLogging();
+        factory.prepare(0);
+        telnetLines = Fixtures.readLines("dcp-telnet.txt");
+        heosLines = Fixtures.readLines("heos-responses.txt");
+        for (String line : heosLines)
+        {
+            if (line.contains("player/get_players"))
+            {
+                pid = JsonPath.read(line, "$.payload[0].pid");
+            }
+        }
+    }
+
+    @Benchmark
+    public void convertTelnet(final Blackhole bh)
+    {
+        for (String line : telnetLines)
+        {
+            bh.consume(factory.convertInputMsg(line, null));
+        }
+    }
+
+    @Benchmark
+    public void convertHeos(final Blackhole bh)
+    {
+        for (String line : heosLines)
+        {
+            bh.consume(factory.convertInputMsg(line, pid));
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Enhanced Music Controller
+ * Copyright (C) 2018-2023 by Mikhail Kulesh
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with this program.
+ */
+
+package com.mkulesh.onpc.iscp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * EISCP frame decoding and encoding. The stream contains one frame for every message
+ * code known to the message factory (fixtures/iscp-messages.txt) and is passed to the
+ * decoder in chunks of the given size, as it is read from the socket.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EiscpFrameBenchmark
+{
+    @State(Scope.Thread)
+    public static class Chunks
+    {
+        @Param({ "1500", "65536" })
+        public int chunkSize;
+    }
+
+    private final List<EISCPMessage> messages = new ArrayList<>();
+    private byte[] stream;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        Fixtures.disableLogging();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (String line : Fixtures.readLines("iscp-messages.txt"))
+        {
+            final EISCPMessage m = new EISCPMessage(line.substring(0, 3), line.substring(3));
+            messages.add(m);
+            out.write(m.getBytes());
+        }
+        stream = out.toByteArray();
+    }
+
+    @Benchmark
+    public void decode(final Chunks chunks, final Blackhole bh)
+    {
+        final int chunkSize = chunks.chunkSize;
+        final IscpFrameDecoder decoder = new IscpFrameDecoder();
+        for (int offset = 0; offset < stream.length; offset += chunkSize)
+        {
+            decoder.decode(stream, offset, Math.min(chunkSize, stream.length - offset),
+                    (raw, remaining) -> bh.consume(raw));
+        }
+    }
+
+    @Benchmark
+    public void encode(final Blackhole bh)
+    {
+        for (EISCPMessage m : messages)
+        {
+            bh.consume(m.getBytes());
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Enhanced Music Controller
+ * Copyright (C) 2018-2023 by Mikhail Kulesh
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with this program.
+ */
+
+package com.mkulesh.onpc.iscp;
+
+import com.mkulesh.onpc.iscp.messages.MessageFactory;
+import com.mkulesh.onpc.iscp.messages.XmlListInfoMsg;
+import com.mkulesh.onpc.utils.Logging;
+import com.mkulesh.onpc.utils.StringResourceIf;
+import com.mkulesh.onpc.utils.Utils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Access to the benchmark fixtures located in the resources of this module.
+ * Text fixtures contain one item per line; empty lines and lines starting
+ * with '#' are comments.
+ */
+final class Fixtures
+{
+    private final static String ROOT = "/fixtures/";
+
+    // The string resources of the app are not available on a plain JVM
+    final static StringResourceIf STRINGS = resId -> "string/" + Integer.toHexString(resId);
+
+    private Fixtures()
+    {
+        // nothing to do
+    }
+
+    static void disableLogging()
+    {
+        // The logging would dominate all measurements
+        Logging.setLevel(Logging.Level.NONE);
+    }
+
+    static boolean exists(@NonNull final String name)
+    {
+        return Fixtures.class.getResource(ROOT + name) != null;
+    }
+
+    @NonNull
+    static byte[] readBytes(@NonNull final String name) throws IOException
+    {
+        final InputStream stream = Fixtures.class.getResourceAsStream(ROOT + name);
+        if (stream == null)
+        {
+            throw new IOException("Fixture not found: " + name);
+        }
+        return Utils.streamToByteArray(stream);
+    }
+
+    @NonNull
+    static String readText(@NonNull final String name) throws IOException
+    {
+        return new String(readBytes(name), Utils.UTF_8);
+    }
+
+    @NonNull
+    static List<String> readLines(@NonNull final String name) throws IOException
+    {
+        final List<String> lines = new ArrayList<>();
+        for (String line : readText(name).split("\n"))
+        {
+            final String l = line.endsWith("\r") ? line.substring(0, line.length() - 1) : line;
+            if (!l.isEmpty() && !l.startsWith("#"))
+            {
+                lines.add(l);
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Captures are read from files: the fixture is copied into a temporary file
+     * that is deleted when the benchmark JVM exits.
+     */
+    @NonNull
+    static File toFile(@NonNull final String name) throws IOException
+    {
+        final File f = File.createTempFile("fixture", "-" + name.replace('/', '-'));
+        f.deleteOnExit();
+        final FileOutputStream out = new FileOutputStream(f);
+        try
+        {
+            out.write(readBytes(name));
+        }
+        finally
+        {
+            out.close();
+        }
+        return f;
+    }
+
+    /**
+     * Builds an NLA media list with the given number of items from fixtures/nla-items.txt
+     * in the format used by Onkyo and Pioneer receivers for a DLNA or USB folder.
+     */
+    @NonNull
+    static XmlListInfoMsg createMediaList(final int size) throws Exception
+    {
+        final List<String> lines = readLines("nla-items.txt");
+        final StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"utf-8\"?>");
+        xml.append("<response status=\"ok\"><items offset=\"0\" totalitems=\"").append(size).append("\">");
+        for (int i = 0; i < size; i++)
+        {
+            // Line format: iconid|title
+            final String[] item = lines.get(i % lines.size()).split("\\|", 2);
+            xml.append("<item iconid=\"").append(item[0])
+                    .append("\" title=\"").append(item[1].replace("&", "&amp;"))
+                    .append("\" url=\"\" selectable=\"1\"/>");
+        }
+        xml.append("</items></response>");
+        // Format: "tzzzzsurr<.....>"
+        return (XmlListInfoMsg) MessageFactory.create(
+                new EISCPMessage(XmlListInfoMsg.CODE, "X0001S000" + xml));
+    }
+}
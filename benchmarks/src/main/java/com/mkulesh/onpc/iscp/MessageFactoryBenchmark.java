@@ -0,0 +1,76 @@
+/*
+ * Enhanced Music Controller
+ * Copyright (C) 2018-2023 by Mikhail Kulesh
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with this program.
+ */
+
+package com.mkulesh.onpc.iscp;
+
+import com.mkulesh.onpc.iscp.messages.MessageFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creation of ISCP messages from raw EISCP messages: one message for every code that is
+ * known to the message factory. The score is the average time per message.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageFactoryBenchmark
+{
+    // Number of lines in fixtures/iscp-messages.txt, checked in setup
+    private final static int MESSAGES = 75;
+
+    private final List<EISCPMessage> messages = new ArrayList<>();
+
+    @Setup
+    public void setup() throws Exception
+    {
+        Fixtures.disableLogging();
+        for (String line : Fixtures.readLines("iscp-messages.txt"))
+        {
+            messages.add(new EISCPMessage(line.substring(0, 3), line.substring(3)));
+        }
+        if (messages.size() != MESSAGES)
+        {
+            throw new Exception("Unexpected number of messages: " + messages.size());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public void create(final Blackhole bh) throws Exception
+    {
+        for (EISCPMessage raw : messages)
+        {
+            bh.consume(MessageFactory.create(raw));
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Enhanced Music Controller
+ * Copyright (C) 2018-2023 by Mikhail Kulesh
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with this program.
+ */
+
+package com.mkulesh.onpc.iscp;
+
+import com.mkulesh.onpc.iscp.messages.MessageFactory;
+import com.mkulesh.onpc.iscp.messages.PowerStatusMsg;
+import com.mkulesh.onpc.iscp.scripts.MessageScript;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Matching of incoming messages by the message script engine. Both scripts stay in
+ * the waiting state, i.e. every invocation performs the complete comparison:
+ * - waitResponse: the script waits for a response with a given parameter
+ * - waitListItem: the script waits for a media item that is not in the list of 100
+ * items, i.e. all media and service items are compared
+ */
+@org.openjdk.jmh.annotations.State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageScriptBenchmark
+{
+    private final static String RESPONSE_SCRIPT = "<?xml version=\"1.0\" encoding=\"utf-8\"?>"
+            + "<onpcScript host=\"\" port=\"\" zone=\"0\">"
+            + "<send cmd=\"PWR\" par=\"01\" wait=\"PWR\" resp=\"01\"/>"
+            + "</onpcScript>";
+
+    private final static String LIST_ITEM_SCRIPT = "<?xml version=\"1.0\" encoding=\"utf-8\"?>"
+            + "<onpcScript host=\"\" port=\"\" zone=\"0\">"
+            + "<send cmd=\"NLA\" par=\"Genre\" wait=\"NLA\" listitem=\"Ornithology\"/>"
+            + "</onpcScript>";
+
+    /**
+     * The message channel is always active; sent messages are ignored.
+     */
+    private static class ChannelStub implements MessageChannel
+    {
+        @Override
+        public void start()
+        {
+            // nothing to do
+        }
+
+        @Override
+        public void stop()
+        {
+            // nothing to do
+        }
+
+        @Override
+        public boolean isActive()
+        {
+            return true;
+        }
+
+        @Override
+        public void addAllowedMessage(String code)
+        {
+            // nothing to do
+        }
+
+        @Override
+        public void removeAllowedMessage(String code)
+        {
+            // nothing to do
+        }
+
+        @Override
+        public ProtoType getProtoType()
+        {
+            return ProtoType.ISCP;
+        }
+
+        @Override
+        public boolean connectToServer(@NonNull String host, int port)
+        {
+            return true;
+        }
+
+        @Override
+        public void attachToServer(@NonNull SocketChannel socket)
+        {
+            // nothing to do
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout)
+        {
+            return true;
+        }
+
+        @Override
+        public void setReconnectPolicy(ReconnectPolicy reconnectPolicy)
+        {
+            // nothing to do
+        }
+
+        @Override
+        public void sendMessage(EISCPMessage eiscpMessage)
+        {
+            // nothing to do
+        }
+
+        @NonNull
+        @Override
+        public String getHost()
+        {
+            return "127.0.0.1";
+        }
+
+        @Override
+        public int getPort()
+        {
+            return ISCP_PORT;
+        }
+
+        @NonNull
+        @Override
+        public String getHostAndPort()
+        {
+            return getHost() + ":" + getPort();
+        }
+    }
+
+    private final MessageChannel channel = new ChannelStub();
+    private State standbyState, listState;
+    private MessageScript responseScript, listItemScript;
+    private ISCPMessage powerMsg, listMsg;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        Fixtures.disableLogging();
+
+        // A receiver in standby mode
+        standbyState = new State(ConnectionIf.ProtoType.ISCP, "127.0.0.1", ConnectionIf.ISCP_PORT, 0);
+        powerMsg = MessageFactory.create(new EISCPMessage(PowerStatusMsg.CODE, "00"));
+        standbyState.update(powerMsg);
+        responseScript = new MessageScript(Fixtures.STRINGS, RESPONSE_SCRIPT);
+        responseScript.start(standbyState, channel);
+
+        // A receiver that shows a media list of a music server
+        final SessionReplay replay = new SessionReplay(Fixtures.toFile("captures/TX-NR676.bin"), 0);
+        listState = replay.newState();
+        for (ISCPMessage msg : replay.decodeMessages())
+        {
+            listState.update(msg);
+        }
+        listMsg = Fixtures.createMediaList(100);
+        listState.update(listMsg);
+        if (listState.getMediaItems().size() != 100)
+        {
+            throw new Exception("Unexpected number of media items: " + listState.getMediaItems().size());
+        }
+        listItemScript = new MessageScript(Fixtures.STRINGS, LIST_ITEM_SCRIPT);
+        listItemScript.start(listState, channel);
+    }
+
+    @Benchmark
+    public void waitResponse()
+    {
+        responseScript.processMessage(powerMsg, standbyState, channel);
+    }
+
+    @Benchmark
+    public void waitListItem()
+    {
+        listItemScript.processMessage(listMsg, listState, channel);
+    }
+}
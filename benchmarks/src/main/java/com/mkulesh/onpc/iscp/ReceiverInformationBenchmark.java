@@ -0,0 +1,99 @@
+/*
+ * Enhanced Music Controller
+ * Copyright (C) 2018-2023 by Mikhail Kulesh
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with this program.
+ */
+
+package com.mkulesh.onpc.iscp;
+
+import com.mkulesh.onpc.iscp.messages.ReceiverInformationMsg;
+import com.sun.net.httpserver.HttpServer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of the receiver information. ISCP models use the NRI response (fixtures/nri),
+ * Denon models use Deviceinfo.xml (fixtures/deviceinfo). Since the DCP receiver information
+ * is always requested via HTTP, the Deviceinfo.xml is served by a local HTTP server while
+ * the message is created in the setup; only the parsing is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReceiverInformationBenchmark
+{
+    @Param({ "TX-NR676", "TX-RZ840", "VSX-LX303", "SC-LX502", "DRX-3.3",
+            "AVR-X1500H", "AVR-X2700H", "SR5015", "DRA-800H" })
+    public String model;
+
+    private ReceiverInformationMsg msg;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        Fixtures.disableLogging();
+        final String nri = "nri/" + model + ".xml";
+        if (Fixtures.exists(nri))
+        {
+            msg = new ReceiverInformationMsg(new EISCPMessage(ReceiverInformationMsg.CODE, Fixtures.readText(nri)));
+        }
+        else
+        {
+            msg = requestDcpReceiverInformation(Fixtures.readBytes("deviceinfo/" + model + ".xml"));
+        }
+        msg.parseXml(false);
+    }
+
+    private static ReceiverInformationMsg requestDcpReceiverInformation(final byte[] deviceInfo) throws Exception
+    {
+        final HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/goform/Deviceinfo.xml", exchange ->
+        {
+            exchange.sendResponseHeaders(200, deviceInfo.length);
+            final OutputStream out = exchange.getResponseBody();
+            out.write(deviceInfo);
+            out.close();
+        });
+        server.start();
+        try
+        {
+            return new ReceiverInformationMsg("127.0.0.1", server.getAddress().getPort());
+        }
+        finally
+        {
+            server.stop(0);
+        }
+    }
+
+    @Benchmark
+    public ReceiverInformationMsg parseXml() throws Exception
+    {
+        msg.parseXml(false);
+        return msg;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Enhanced Music Controller
+ * Copyright (C) 2018-2023 by Mikhail Kulesh
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with this program.
+ */
+
+package com.mkulesh.onpc.iscp;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * State updates on a replayed session. The captures (fixtures/captures) contain the startup
+ * of the app: receiver information, power and play state queries, a media list, track
+ * information with time updates and, for ISCP models, a cover image in BMP/JPEG packets.
+ * The messages are decoded in the setup; every invocation applies them to a new State.
+ * The score is the number of replayed sessions per second; the "messages" counter gives
+ * the number of messages per second.
+ */
+@org.openjdk.jmh.annotations.State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StateUpdateBenchmark
+{
+    @org.openjdk.jmh.annotations.State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters
+    {
+        public long messages;
+
+        @Setup(Level.Iteration)
+        public void reset()
+        {
+            messages = 0;
+        }
+    }
+
+    @Param({ "TX-NR676", "VSX-LX303", "AVR-X1500H" })
+    public String model;
+
+    private SessionReplay replay;
+    private List<ISCPMessage> messages;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        Fixtures.disableLogging();
+        replay = new SessionReplay(Fixtures.toFile("captures/" + model + ".bin"), 0);
+        messages = replay.decodeMessages();
+    }
+
+    @Benchmark
+    public State update(final Counters counters)
+    {
+        final State state = replay.newState();
+        for (ISCPMessage msg : messages)
+        {
+            state.update(msg);
+        }
+        counters.messages += messages.size();
+        return state;
+    }
+}
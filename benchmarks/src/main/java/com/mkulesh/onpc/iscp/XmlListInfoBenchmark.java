@@ -0,0 +1,72 @@
+/*
+ * Enhanced Music Controller
+ * Copyright (C) 2018-2023 by Mikhail Kulesh
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with this program.
+ */
+
+package com.mkulesh.onpc.iscp;
+
+import com.mkulesh.onpc.iscp.messages.XmlListInfoMsg;
+import com.mkulesh.onpc.iscp.messages.XmlListItemMsg;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of NLA media lists with the given number of items. Receivers send up to 100
+ * items per NLA response, a longer list is requested in several steps.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XmlListInfoBenchmark
+{
+    @Param({ "10", "100", "500" })
+    public int items;
+
+    private XmlListInfoMsg msg;
+    private final List<XmlListItemMsg> result = new ArrayList<>();
+
+    @Setup
+    public void setup() throws Exception
+    {
+        Fixtures.disableLogging();
+        msg = Fixtures.createMediaList(items);
+        msg.parseXml(result, 2);
+        if (result.size() != items)
+        {
+            throw new Exception("Unexpected number of items: " + result.size());
+        }
+    }
+
+    @Benchmark
+    public List<XmlListItemMsg> parseXml() throws Exception
+    {
+        msg.parseXml(result, 2);
+        return result;
+    }
+}
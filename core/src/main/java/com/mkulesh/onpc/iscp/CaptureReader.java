@@ -0,0 +1,115 @@
+/*
+ * Enhanced Music Controller
+ * Copyright (C) 2018-2023 by Mikhail Kulesh
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with this program.
+ */
+
+package com.mkulesh.onpc.iscp;
+
+import com.mkulesh.onpc.utils.Utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Reads a protocol capture written by ProtocolRecorder. An exported capture can consist
+ * of several files, each of them starting with its own header: the record times of all
+ * files are converted into nanoseconds since the start of the first file. The nanosecond time
+ * base of a header is only valid within the recording process: the parts are therefore
+ * placed using their wall-clock start time, and never before the end of the previous part.
+ */
+class CaptureReader
+{
+    static class Record
+    {
+        final long time;
+        final ProtocolRecorder.Source source;
+        final ProtocolRecorder.Direction direction;
+        final byte[] data;
+
+        Record(long time, ProtocolRecorder.Source source, ProtocolRecorder.Direction direction, byte[] data)
+        {
+            this.time = time;
+            this.source = source;
+            this.direction = direction;
+            this.data = data;
+        }
+    }
+
+    @NonNull
+    static List<Record> read(@NonNull final File file) throws IOException
+    {
+        return read(Utils.streamToByteArray(new FileInputStream(file)));
+    }
+
+    @NonNull
+    static List<Record> read(@NonNull final byte[] bytes) throws IOException
+    {
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        final List<Record> records = new ArrayList<>();
+        final ProtocolRecorder.Source[] sources = ProtocolRecorder.Source.values();
+        final ProtocolRecorder.Direction[] directions = ProtocolRecorder.Direction.values();
+        final byte[] magic = new byte[ProtocolRecorder.MAGIC.length];
+        Long firstStartTime = null;
+        long timeOffset = 0;
+        long lastTime = 0;
+        while (buffer.remaining() >= ProtocolRecorder.RECORD_HEADER_SIZE)
+        {
+            // A file header starts a new part of the capture
+            buffer.mark();
+            buffer.get(magic);
+            if (Arrays.equals(magic, ProtocolRecorder.MAGIC))
+            {
+                final long startTime = buffer.getLong(); // wall-clock start time in milliseconds
+                buffer.getLong(); // nanosecond time base
+                if (firstStartTime == null)
+                {
+                    firstStartTime = startTime;
+                }
+                timeOffset = Math.max(lastTime, (startTime - firstStartTime) * 1000000L);
+                continue;
+            }
+            buffer.reset();
+            if (firstStartTime == null)
+            {
+                throw new IOException("Invalid capture: file header not found");
+            }
+
+            final long time = buffer.getLong();
+            final int source = buffer.get();
+            final int direction = buffer.get();
+            final int length = buffer.getInt();
+            if (source == ProtocolRecorder.Source.NONE.ordinal())
+            {
+                // End marker
+                break;
+            }
+            if (source < 0 || source >= sources.length || direction < 0 || direction >= directions.length
+                    || length < 0 || length > buffer.remaining())
+            {
+                throw new IOException("Invalid capture record at position "
+                        + (buffer.position() - ProtocolRecorder.RECORD_HEADER_SIZE));
+            }
+            final byte[] data = new byte[length];
+            buffer.get(data);
+            lastTime = timeOffset + time;
+            records.add(new Record(lastTime, sources[source], directions[direction], data));
+        }
+        return records;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Enhanced Music Controller
+ * Copyright (C) 2018-2023 by Mikhail Kulesh
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with this program.
+ */
+
+package com.mkulesh.onpc.iscp;
+
+import com.mkulesh.onpc.iscp.messages.JacketArtMsg;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Buffer for cover images that are transmitted as a sequence of BMP/JPEG packets.
+ * The packets are decoded directly into a byte array that is reused across covers.
+ * The array is allocated with the size of the largest cover received so far. If the
+ * array is handed over to the cover loader, it is returned back via recycle().
+ */
+public class CoverBuffer
+{
+    private final static int INITIAL_SIZE = 64 * 1024;
+
+    private byte[] buffer = null;
+    private int size = 0;
+    private int sizeHint = INITIAL_SIZE;
+    private boolean started = false;
+
+    // An array that was released by the CoverLoader
+    private final AtomicReference<byte[]> spare = new AtomicReference<>();
+
+    void start()
+    {
+        started = true;
+        size = 0;
+        if (buffer == null)
+        {
+            final byte[] b = spare.getAndSet(null);
+            buffer = (b != null && b.length >= sizeHint) ? b : new byte[sizeHint];
+        }
+    }
+
+    boolean isStarted()
+    {
+        return started;
+    }
+
+    void append(@NonNull final JacketArtMsg msg)
+    {
+        final int length = msg.getRawDataSize();
+        if (!started || length <= 0)
+        {
+            return;
+        }
+        if (size + length > buffer.length)
+        {
+            buffer = Arrays.copyOf(buffer, Math.max(2 * buffer.length, size + length));
+        }
+        size += msg.decodeRawData(buffer, size);
+        sizeHint = Math.max(sizeHint, size);
+    }
+
+    /**
+     * Procedure finishes the current cover. The array and the size are valid until
+     * the next call of start() or detach().
+     */
+    void finish()
+    {
+        started = false;
+    }
+
+    @NonNull
+    public byte[] getData()
+    {
+        return buffer == null ? new byte[0] : buffer;
+    }
+
+    public int getSize()
+    {
+        return size;
+    }
+
+    /**
+     * Procedure transfers the ownership of the array to the caller. The caller
+     * shall call recycle() as soon as the array is not used anymore.
+     */
+    @NonNull
+    public byte[] detach()
+    {
+        final byte[] b = getData();
+        buffer = null;
+        size = 0;
+        return b;
+    }
+
+    public void recycle(@NonNull final byte[] b)
+    {
+        spare.set(b);
+    }
+
+    /**
+     * Number of bytes held by this buffer, including the recycled array
+     */
+    public int getAllocatedSize()
+    {
+        final byte[] b = buffer;
+        final byte[] s = spare.get();
+        return (b == null ? 0 : b.length) + (s == null ? 0 : s.length);
+    }
+}
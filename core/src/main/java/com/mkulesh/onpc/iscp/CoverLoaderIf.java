@@ -0,0 +1,43 @@
+/*
+ * Enhanced Music Controller
+ * Copyright (C) 2018-2023 by Mikhail Kulesh
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with this program.
+ */
+package com.mkulesh.onpc.iscp;
+
+import com.mkulesh.onpc.iscp.messages.JacketArtMsg;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Platform-dependent loader of cover images. A loaded image is delivered into
+ * the input queue as a JacketArtMsg. The image type depends on the platform:
+ * on Android, it is a Bitmap.
+ */
+public interface CoverLoaderIf
+{
+    /**
+     * Procedure requests an image given by URL.
+     *
+     * @return the cached image, if available. Otherwise, the loading is scheduled and null is returned.
+     */
+    @Nullable
+    Object load(@NonNull final JacketArtMsg msg, final int request, @NonNull final String deviceHost);
+
+    /**
+     * Procedure requests an image assembled from BMP/JPEG packets.
+     *
+     * @return the cached image, if available. Otherwise, the decoding is scheduled and null is returned.
+     */
+    @Nullable
+    Object decode(@NonNull final JacketArtMsg msg, final int request, @NonNull final CoverBuffer buffer);
+}
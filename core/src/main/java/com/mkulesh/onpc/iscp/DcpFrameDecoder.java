@@ -0,0 +1,126 @@
+/*
+ * Enhanced Music Controller
+ * Copyright (C) 2018-2023 by Mikhail Kulesh
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with this program.
+ */
+
+package com.mkulesh.onpc.iscp;
+
+import com.mkulesh.onpc.iscp.messages.DcpReceiverInformationMsg;
+import com.mkulesh.onpc.utils.Logging;
+import com.mkulesh.onpc.utils.Utils;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Splits the raw DCP or HEOS input stream into text messages terminated by CR or CR LF.
+ * An incomplete message is kept until its remaining part is received.
+ */
+class DcpFrameDecoder
+{
+    private final static int CR = 0x0D;
+    private final static int LF = 0x0A;
+
+    interface MessageListener
+    {
+        void onMessage(@NonNull String dcpMsg, int remaining);
+    }
+
+    private byte[] packetJoinBuffer = null;
+
+    /**
+     * Procedure drops an incomplete message, for example if the connection was re-established
+     */
+    void reset()
+    {
+        packetJoinBuffer = null;
+    }
+
+    void decode(@NonNull final byte[] data, final int offset, final int length, @NonNull final MessageListener listener)
+    {
+        byte[] bytes;
+
+        if (packetJoinBuffer == null)
+        {
+            // A new buffer - just copy it
+            bytes = Utils.catBuffer(data, offset, length);
+        }
+        else
+        {
+            // Remaining part of existing buffer - join it
+            final int s1 = packetJoinBuffer.length;
+            bytes = new byte[s1 + length];
+            System.arraycopy(packetJoinBuffer, 0, bytes, 0, s1);
+            System.arraycopy(data, offset, bytes, s1, length);
+            packetJoinBuffer = null;
+        }
+
+        int remaining = bytes.length;
+        while (remaining > 0)
+        {
+            remaining = processDcpData(bytes, listener);
+            if (remaining < 0)
+            {
+                // An error, nothing to process
+                return;
+            }
+
+            if (remaining > 0)
+            {
+                bytes = Utils.catBuffer(bytes, bytes.length - remaining, remaining);
+            }
+        }
+    }
+
+    private int processDcpData(byte[] bytes, @NonNull final MessageListener listener)
+    {
+        int expectedSize = -1;
+        for (int i = 0; i < bytes.length; i++)
+        {
+            if (bytes[i] == CR)
+            {
+                expectedSize = i;
+                break;
+            }
+        }
+        if (expectedSize <= 0)
+        {
+            final String logMsg = new String(bytes, Utils.UTF_8);
+            if (logMsg.startsWith(DcpReceiverInformationMsg.DCP_COMMAND_PRESET))
+            {
+                // A corner case: OPTPN has some time no end of message symbol
+                Logging.info(this, "<< DCP warning: end of message not found: {}", logMsg);
+                expectedSize = logMsg.length();
+            }
+            else
+            {
+                packetJoinBuffer = bytes;
+                return -1;
+            }
+        }
+
+        if (expectedSize + 1 < bytes.length &&
+                bytes[expectedSize] == CR &&
+                bytes[expectedSize + 1] == LF)
+        {
+            // Consider possible LF after CR
+            expectedSize++;
+        }
+
+        final byte[] stringBytes = expectedSize + 1 == bytes.length ?
+                bytes : Utils.catBuffer(bytes, 0, expectedSize);
+
+        final String dcpMsg = new String(stringBytes, Utils.UTF_8).trim();
+        final int remaining = Math.max(0, bytes.length - expectedSize - 1);
+        listener.onMessage(dcpMsg, remaining);
+        return remaining;
+    }
+}
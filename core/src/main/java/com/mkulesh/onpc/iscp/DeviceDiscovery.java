@@ -0,0 +1,505 @@
+/*
+ * Enhanced Music Controller
+ * Copyright (C) 2018-2023 by Mikhail Kulesh
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with this program.
+ */
+
+package com.mkulesh.onpc.iscp;
+
+import com.mkulesh.onpc.iscp.messages.BroadcastResponseMsg;
+import com.mkulesh.onpc.utils.Logging;
+import com.mkulesh.onpc.utils.Utils;
+
+import org.w3c.dom.Element;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Discovery of Onkyo/Pioneer (ISCP ECN broadcast) and Denon (SSDP M-SEARCH) devices.
+ * The search loop is independent of the platform: it is performed by the broadcast
+ * search of the app and by the headless daemon.
+ * Both protocols are served by non-blocking datagram channels and one selector, i.e. a
+ * response is processed as soon as it arrives. The requests are repeated with an exponential
+ * back-off: a fast burst at the start finds the devices quickly, further requests are sparse.
+ * Within a probe round, a device is reported only once.
+ * The SSDP response of a Denon device only refers to its device description: the descriptions
+ * are loaded in parallel by a small thread pool and cached by USN for the max-age given in the
+ * response, so that the model and friendly name are known without a connection to the device.
+ */
+public class DeviceDiscovery
+{
+    // Probe schedule: the delay between probe rounds starts with FIRST_PROBE_DELAY
+    // and is doubled after each round up to MAX_PROBE_DELAY
+    private final static long FIRST_PROBE_DELAY = 250;
+    private final static long MAX_PROBE_DELAY = 8000;
+    // The stop condition is checked at least with this period
+    private final static long STOP_CHECK_PERIOD = 500;
+    private final static int BUFFER_SIZE = 1024;
+
+    private final static String DCP_MULTICAST = "239.255.255.250";
+    private final static String DCP_SCHEMA = "schemas-denon-com:device";
+    private final static String DCP_DEFAULT_MODEL = "Denon-Heos AVR";
+
+    // Loading of SSDP device descriptions
+    private final static int DESCRIPTION_THREADS = 3;
+    private final static int DESCRIPTION_TIMEOUT = 2000;
+    private final static int DEFAULT_MAX_AGE = 1800;
+
+    private static class Description
+    {
+        final String usn;
+        final String host;
+        final String model;
+        final String friendlyName;
+        final String identifier;
+        final long expires;
+
+        Description(@NonNull final String usn, @NonNull final String host, @Nullable final String model,
+                    @Nullable final String friendlyName, @Nullable final String identifier, final long expires)
+        {
+            this.usn = usn;
+            this.host = host;
+            this.model = model;
+            this.friendlyName = friendlyName;
+            this.identifier = identifier;
+            this.expires = expires;
+        }
+
+        @NonNull
+        BroadcastResponseMsg toResponse(@NonNull final String host)
+        {
+            return new BroadcastResponseMsg(host, ConnectionIf.DCP_PORT,
+                    model == null ? DCP_DEFAULT_MODEL : model, friendlyName, identifier);
+        }
+    }
+
+    // The cache is shared by all searches
+    private final static Map<String, Description> descriptions = new HashMap<>();
+
+    public interface Listener
+    {
+        void onDeviceFound(@NonNull BroadcastResponseMsg response);
+    }
+
+    public interface StopCondition
+    {
+        boolean isStopped();
+    }
+
+    private final Listener listener;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final Set<String> roundDevices = new HashSet<>();
+    private long startTime = 0;
+    private long timeToFirstDevice = -1;
+    // The selector is woken up by the description loader
+    private volatile Selector selector = null;
+    private ExecutorService descriptionLoader = null;
+    private final Set<String> pendingDescriptions = new HashSet<>();
+    private final ConcurrentLinkedQueue<Description> loadedDescriptions = new ConcurrentLinkedQueue<>();
+    private int rounds = 0, responses = 0, duplicates = 0;
+
+    public DeviceDiscovery(@NonNull final Listener listener)
+    {
+        this.listener = listener;
+    }
+
+    /**
+     * Time from the start of the search until the first device was reported in milliseconds,
+     * or -1 if no device was found
+     */
+    public long getTimeToFirstDevice()
+    {
+        return timeToFirstDevice;
+    }
+
+    /**
+     * Sends discovery requests with the back-off schedule and processes the responses
+     * until the stop condition is fulfilled. The method blocks the calling thread.
+     */
+    public void run(@NonNull final StopCondition stopCondition)
+    {
+        final Character[] models = new Character[]{ 'x', 'p' };
+        startTime = System.currentTimeMillis();
+
+        DatagramChannel iscpChannel = null, dcpChannel = null;
+        try
+        {
+            // The targets are resolved once
+            final SocketAddress iscpTarget = new InetSocketAddress(
+                    InetAddress.getByName("255.255.255.255"), ConnectionIf.ISCP_PORT);
+            final SocketAddress dcpTarget = new InetSocketAddress(
+                    InetAddress.getByName(DCP_MULTICAST), ConnectionIf.DCP_UDP_PORT);
+            final ByteBuffer[] iscpRequests = new ByteBuffer[models.length];
+            for (int i = 0; i < models.length; i++)
+            {
+                iscpRequests[i] = ByteBuffer.wrap(new EISCPMessage(models[i], "ECN", "QSTN").getBytes());
+            }
+            final ByteBuffer dcpRequest = ByteBuffer.wrap(getDcpRequest().getBytes(Utils.UTF_8));
+
+            selector = Selector.open();
+            iscpChannel = prepareChannel(ConnectionIf.ISCP_PORT);
+            dcpChannel = prepareChannel(ConnectionIf.DCP_UDP_PORT);
+            iscpChannel.register(selector, SelectionKey.OP_READ);
+            dcpChannel.register(selector, SelectionKey.OP_READ);
+
+            long probeDelay = FIRST_PROBE_DELAY;
+            long nextProbeTime = startTime;
+            while (!stopCondition.isStopped())
+            {
+                final long now = System.currentTimeMillis();
+                if (now >= nextProbeTime)
+                {
+                    rounds++;
+                    roundDevices.clear();
+                    for (ByteBuffer r : iscpRequests)
+                    {
+                        send(iscpChannel, r, iscpTarget);
+                    }
+                    send(dcpChannel, dcpRequest, dcpTarget);
+                    Logging.info(this, "probe round {} sent, next round in {}ms", rounds, probeDelay);
+                    nextProbeTime = now + probeDelay;
+                    probeDelay = Math.min(2 * probeDelay, MAX_PROBE_DELAY);
+                }
+
+                selector.select(Math.max(1, Math.min(nextProbeTime - now, STOP_CHECK_PERIOD)));
+                for (SelectionKey key : selector.selectedKeys())
+                {
+                    final DatagramChannel channel = (DatagramChannel) key.channel();
+                    try
+                    {
+                        SocketAddress source;
+                        buffer.clear();
+                        while ((source = channel.receive(buffer)) != null)
+                        {
+                            final BroadcastResponseMsg msg = channel == iscpChannel ?
+                                    getIscpResponse(source) : getDcpResponse(source);
+                            if (msg != null)
+                            {
+                                processResponse(msg);
+                            }
+                            buffer.clear();
+                        }
+                    }
+                    catch (IOException e)
+                    {
+                        Logging.info(this, "  -> can not receive response: {}", e);
+                    }
+                }
+                selector.selectedKeys().clear();
+
+                // Descriptions loaded in the meantime
+                Description d;
+                while ((d = loadedDescriptions.poll()) != null)
+                {
+                    pendingDescriptions.remove(d.usn);
+                    processResponse(d.toResponse(d.host));
+                }
+            }
+        }
+        catch (Exception e)
+        {
+            Logging.info(this, "Can not open socket: {}", e);
+        }
+        finally
+        {
+            if (descriptionLoader != null)
+            {
+                descriptionLoader.shutdownNow();
+            }
+            close(iscpChannel);
+            close(dcpChannel);
+            if (selector != null)
+            {
+                try
+                {
+                    selector.close();
+                }
+                catch (IOException e)
+                {
+                    // nothing to do
+                }
+            }
+        }
+        Logging.info(this, "discovery finished: " + rounds + " rounds, " + responses + " responses, "
+                + duplicates + " duplicates, time to first device: " + timeToFirstDevice + "ms");
+        selector = null;
+    }
+
+    @NonNull
+    private static DatagramChannel prepareChannel(int port) throws IOException
+    {
+        // The socket adaptor is used since the options of the channel are not available on older Android versions
+        final DatagramChannel c = DatagramChannel.open();
+        c.socket().setReuseAddress(true);
+        c.socket().setBroadcast(true);
+        c.socket().bind(new InetSocketAddress(port));
+        c.configureBlocking(false);
+        return c;
+    }
+
+    private static void close(@Nullable final DatagramChannel c)
+    {
+        if (c != null)
+        {
+            try
+            {
+                c.close();
+            }
+            catch (IOException e)
+            {
+                // nothing to do
+            }
+        }
+    }
+
+    private void send(@NonNull final DatagramChannel channel, @NonNull final ByteBuffer request,
+                      @NonNull final SocketAddress target)
+    {
+        try
+        {
+            request.rewind();
+            channel.send(request, target);
+        }
+        catch (Exception e)
+        {
+            Logging.info(this, "  -> can not send request to {}: {}", target, e);
+        }
+    }
+
+    private void processResponse(@NonNull final BroadcastResponseMsg msg)
+    {
+        if (!msg.isValidConnection())
+        {
+            return;
+        }
+        responses++;
+        // A device may respond to several requests of the same round
+        if (!roundDevices.add(msg.getHostAndPort()))
+        {
+            duplicates++;
+            return;
+        }
+        if (timeToFirstDevice < 0)
+        {
+            timeToFirstDevice = System.currentTimeMillis() - startTime;
+            Logging.info(this, "first device found after {}ms: {}", timeToFirstDevice, msg.getHostAndPort());
+        }
+        listener.onDeviceFound(msg);
+    }
+
+    @Nullable
+    private BroadcastResponseMsg getIscpResponse(@NonNull final SocketAddress source)
+    {
+        try
+        {
+            final byte[] response = Arrays.copyOf(buffer.array(), buffer.position());
+            final int startIndex = EISCPMessage.getMsgStartIndex(response);
+            if (startIndex != 0)
+            {
+                Logging.info(this, "  -> unexpected position of start index: {}", startIndex);
+                return null;
+            }
+            final int hSize = EISCPMessage.getHeaderSize(response, startIndex);
+            final int dSize = EISCPMessage.getDataSize(response, startIndex);
+            final EISCPMessage msg = new EISCPMessage(0, response, startIndex, hSize, dSize);
+            // Our own request is also received since it is a broadcast
+            if (msg.getParameters() == null || msg.getParameters().equals("QSTN"))
+            {
+                return null;
+            }
+            return new BroadcastResponseMsg(((InetSocketAddress) source).getAddress(), msg);
+        }
+        catch (Exception e)
+        {
+            return null;
+        }
+    }
+
+    @Nullable
+    private BroadcastResponseMsg getDcpResponse(@NonNull final SocketAddress source)
+    {
+        final InetAddress address = ((InetSocketAddress) source).getAddress();
+        if (address == null || address.getHostAddress() == null)
+        {
+            return null;
+        }
+        final String host = address.getHostAddress();
+        final String responseStr = new String(buffer.array(), 0, buffer.position(), Utils.UTF_8);
+        if (!responseStr.contains(DCP_SCHEMA))
+        {
+            return null;
+        }
+
+        // SSDP headers: the names are case-insensitive
+        String location = null, usn = null;
+        int maxAge = DEFAULT_MAX_AGE;
+        for (String line : responseStr.split("\r\n"))
+        {
+            final int sep = line.indexOf(':');
+            if (sep <= 0)
+            {
+                continue;
+            }
+            final String name = line.substring(0, sep).trim().toUpperCase();
+            final String value = line.substring(sep + 1).trim();
+            if ("LOCATION".equals(name))
+            {
+                location = value;
+            }
+            else if ("USN".equals(name))
+            {
+                usn = value;
+            }
+            else if ("CACHE-CONTROL".equals(name) && value.toLowerCase().startsWith("max-age="))
+            {
+                try
+                {
+                    maxAge = Integer.parseInt(value.substring("max-age=".length()).trim(), 10);
+                }
+                catch (NumberFormatException e)
+                {
+                    // nothing to do
+                }
+            }
+        }
+        if (location == null || usn == null)
+        {
+            return new BroadcastResponseMsg(host, ConnectionIf.DCP_PORT, DCP_DEFAULT_MODEL);
+        }
+
+        // A cached description is used immediately
+        final long now = System.currentTimeMillis();
+        synchronized (descriptions)
+        {
+            final Description d = descriptions.get(usn);
+            if (d != null && d.expires > now)
+            {
+                return d.toResponse(host);
+            }
+        }
+
+        // Otherwise, the description is loaded once and the response is reported when it is available
+        if (!pendingDescriptions.add(usn))
+        {
+            duplicates++;
+            return null;
+        }
+        if (descriptionLoader == null)
+        {
+            descriptionLoader = Executors.newFixedThreadPool(DESCRIPTION_THREADS, r ->
+            {
+                final Thread t = new Thread(r, "SsdpDescription");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        final String descriptionUrl = location, descriptionUsn = usn;
+        final long expires = now + maxAge * 1000L;
+        descriptionLoader.submit(() ->
+        {
+            final Description d = loadDescription(descriptionUrl, descriptionUsn, host, expires);
+            loadedDescriptions.add(d);
+            final Selector s = selector;
+            if (s != null)
+            {
+                s.wakeup();
+            }
+        });
+        return null;
+    }
+
+    @NonNull
+    private Description loadDescription(@NonNull final String location, @NonNull final String usn,
+                                         @NonNull final String host, final long expires)
+    {
+        final long start = System.currentTimeMillis();
+        final String[] values = new String[2];
+        try
+        {
+            final URLConnection c = new URL(location).openConnection();
+            c.setConnectTimeout(DESCRIPTION_TIMEOUT);
+            c.setReadTimeout(DESCRIPTION_TIMEOUT);
+            final String xml = new String(Utils.streamToByteArray(c.getInputStream()), Utils.UTF_8);
+            Utils.openXml(this, xml, (final Element root) ->
+            {
+                final List<Element> devices = Utils.getElements(root, "device");
+                if (!devices.isEmpty())
+                {
+                    values[0] = Utils.getFirstElementValue(devices.get(0), "modelName", null);
+                    values[1] = Utils.getFirstElementValue(devices.get(0), "friendlyName", null);
+                }
+            });
+        }
+        catch (Exception e)
+        {
+            Logging.info(this, "  -> can not load device description {}: {}", location, e);
+        }
+
+        // The UUID of the USN identifies the device: "uuid:<UUID>::<type>"
+        String identifier = usn.startsWith("uuid:") ? usn.substring("uuid:".length()) : usn;
+        if (identifier.contains("::"))
+        {
+            identifier = identifier.substring(0, identifier.indexOf("::"));
+        }
+        final Description d = new Description(usn, host, values[0], values[1], identifier, expires);
+        Logging.info(this, "device description loaded in " + (System.currentTimeMillis() - start)
+                + "ms: model=" + d.model + ", name=" + d.friendlyName + ", uuid=" + identifier);
+        if (d.model != null)
+        {
+            synchronized (descriptions)
+            {
+                final long now = System.currentTimeMillis();
+                final Iterator<Description> it = descriptions.values().iterator();
+                while (it.hasNext())
+                {
+                    if (it.next().expires <= now)
+                    {
+                        it.remove();
+                    }
+                }
+                descriptions.put(usn, d);
+            }
+        }
+        return d;
+    }
+
+    @NonNull
+    private static String getDcpRequest()
+    {
+        return "M-SEARCH * HTTP/1.1\r\n" +
+                "HOST: " + DCP_MULTICAST + ":" + ConnectionIf.DCP_UDP_PORT + "\r\n" +
+                "MAN: \"ssdp:discover\"\r\n" +
+                "MX: 10\r\n" +
+                "ST: urn:" + DCP_SCHEMA + ":ACT-Denon:1\r\n\r\n";
+    }
+}
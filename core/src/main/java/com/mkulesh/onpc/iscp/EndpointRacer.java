@@ -0,0 +1,225 @@
+/*
+ * Enhanced Music Controller
+ * Copyright (C) 2018-2023 by Mikhail Kulesh
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with this program.
+ */
+
+package com.mkulesh.onpc.iscp;
+
+import com.mkulesh.onpc.utils.Logging;
+import com.mkulesh.onpc.utils.Utils;
+
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Races the connections to the candidate endpoints of a device in the happy-eyeballs style:
+ * the attempts are started one after another with a short delay, or as soon as the previous
+ * attempt failed, and run in parallel. The first connected endpoint wins and all other
+ * attempts are cancelled. The winning endpoint is
+ * remembered for the device and is tried first by the next race, so that an unreachable
+ * endpoint costs at most the attempt delay instead of the full timeout.
+ */
+public class EndpointRacer
+{
+    // Delay between two attempts, as recommended by RFC 8305
+    private final static long ATTEMPT_DELAY = 250;
+
+    // The winning endpoint of the last race per device
+    private final static Map<String, String> winners = new HashMap<>();
+
+    public interface Callback
+    {
+        void onConnected(@NonNull final SocketChannel socket, @NonNull final String host, final int port);
+
+        void onFailed(@NonNull final String reason);
+    }
+
+    private class Attempt implements SocketConnector.Callback
+    {
+        final String host;
+        final int port;
+        long startTime = 0;
+
+        Attempt(@NonNull final String host, final int port)
+        {
+            this.host = host;
+            this.port = port;
+        }
+
+        @NonNull
+        String getHostAndPort()
+        {
+            return Utils.ipToString(host, port);
+        }
+
+        @Override
+        public void onConnected(@NonNull SocketChannel socket)
+        {
+            onAttemptConnected(this, socket);
+        }
+
+        @Override
+        public void onFailed(@NonNull String reason)
+        {
+            onAttemptFailed(this, reason);
+        }
+    }
+
+    private final String device;
+    private final List<Attempt> attempts = new ArrayList<>();
+    private Callback callback = null;
+    private Attempt winner = null;
+    private int failed = 0;
+
+    /**
+     * @param device the key under that the winning endpoint is remembered
+     */
+    public EndpointRacer(@NonNull final String device)
+    {
+        this.device = device;
+    }
+
+    /**
+     * Procedure adds a candidate endpoint. The candidates are tried in the order they are added.
+     */
+    public void add(@NonNull final String host, final int port)
+    {
+        final Attempt a = new Attempt(host, port);
+        for (Attempt e : attempts)
+        {
+            if (e.getHostAndPort().equals(a.getHostAndPort()))
+            {
+                return;
+            }
+        }
+        attempts.add(a);
+    }
+
+    /**
+     * Procedure starts the race. The callback is called exactly once in the connector thread.
+     */
+    public void start(final long timeout, @NonNull final Callback callback)
+    {
+        this.callback = callback;
+        if (attempts.isEmpty())
+        {
+            callback.onFailed("no endpoints");
+            return;
+        }
+        final String remembered;
+        synchronized (winners)
+        {
+            remembered = winners.get(device);
+        }
+        for (int i = 0; i < attempts.size(); i++)
+        {
+            if (attempts.get(i).getHostAndPort().equals(remembered))
+            {
+                attempts.add(0, attempts.remove(i));
+                break;
+            }
+        }
+        if (attempts.size() > 1)
+        {
+            final StringBuilder str = new StringBuilder();
+            for (Attempt a : attempts)
+            {
+                str.append(str.length() == 0 ? "" : ", ").append(a.getHostAndPort());
+            }
+            Logging.info(this, "racing endpoints of {}: {}", device, str);
+        }
+        for (int i = 0; i < attempts.size(); i++)
+        {
+            final long delay = i * ATTEMPT_DELAY;
+            final Attempt a = attempts.get(i);
+            a.startTime = System.currentTimeMillis() + delay;
+            SocketConnector.getInstance().connect(a.host, a.port, delay, Math.max(1, timeout - delay), a);
+        }
+    }
+
+    private void onAttemptConnected(@NonNull final Attempt a, @NonNull final SocketChannel socket)
+    {
+        synchronized (this)
+        {
+            if (winner != null)
+            {
+                // The cancellation came too late
+                close(socket);
+                return;
+            }
+            winner = a;
+        }
+        for (Attempt other : attempts)
+        {
+            if (other != a)
+            {
+                SocketConnector.getInstance().cancel(other);
+            }
+        }
+        synchronized (winners)
+        {
+            winners.put(device, a.getHostAndPort());
+        }
+        if (attempts.size() > 1)
+        {
+            Logging.info(this, "endpoint {} of {} won", a.getHostAndPort(), device);
+        }
+        callback.onConnected(socket, a.host, a.port);
+    }
+
+    private void onAttemptFailed(@NonNull final Attempt a, @NonNull final String reason)
+    {
+        synchronized (this)
+        {
+            failed++;
+            if (winner != null)
+            {
+                return;
+            }
+            if (failed < attempts.size())
+            {
+                // The next attempt that is not started yet does not need to wait for its delay
+                final long now = System.currentTimeMillis();
+                for (int i = attempts.indexOf(a) + 1; i < attempts.size(); i++)
+                {
+                    final Attempt next = attempts.get(i);
+                    if (next.startTime > now)
+                    {
+                        next.startTime = now;
+                        SocketConnector.getInstance().expedite(next);
+                        break;
+                    }
+                }
+                return;
+            }
+        }
+        callback.onFailed(reason);
+    }
+
+    private static void close(@NonNull final SocketChannel socket)
+    {
+        try
+        {
+            socket.close();
+        }
+        catch (IOException e)
+        {
+            // nothing to do
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Enhanced Music Controller
+ * Copyright (C) 2018-2023 by Mikhail Kulesh
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with this program.
+ */
+
+package com.mkulesh.onpc.iscp;
+
+import com.mkulesh.onpc.utils.AppScheduler;
+import com.mkulesh.onpc.utils.Logging;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Acknowledgement tracking of a command that is sent to all devices of a multiroom group.
+ * A device acknowledges the command by the status message with the same code. The latency
+ * of each device and the total latency are logged as soon as all devices acknowledged
+ * the command or the timeout expired.
+ */
+public class GroupAcknowledge
+{
+    private final static long TIMEOUT = 5000;
+    private final static long PENDING = -1;
+
+    public interface FinishListener
+    {
+        void onGroupCommandFinished(@NonNull final String code);
+    }
+
+    private final FinishListener finishListener;
+
+    // the command that is waiting for acknowledgement
+    private String code = null;
+    private long startTime = 0;
+    private int sequence = 0;
+    private ScheduledFuture<?> timeoutTask = null;
+    private final Map<String, Long> latencies = new LinkedHashMap<>();
+
+    public GroupAcknowledge(@NonNull final FinishListener finishListener)
+    {
+        this.finishListener = finishListener;
+    }
+
+    /**
+     * Procedure starts the tracking of the command with given code that was sent
+     * to the given devices. A pending command is finished.
+     */
+    public synchronized void start(@NonNull final String code, @NonNull final Collection<String> devices)
+    {
+        if (this.code != null)
+        {
+            finish();
+        }
+        this.code = code;
+        startTime = System.currentTimeMillis();
+        latencies.clear();
+        for (String d : devices)
+        {
+            latencies.put(d, PENDING);
+        }
+        final int thisSequence = ++sequence;
+        timeoutTask = AppScheduler.schedule(() ->
+        {
+            synchronized (GroupAcknowledge.this)
+            {
+                if (this.code != null && sequence == thisSequence)
+                {
+                    finish();
+                }
+            }
+        }, TIMEOUT);
+    }
+
+    /**
+     * Procedure processes the received message.
+     *
+     * @return true if the message has the code of the pending group command. Such a message
+     * received from a group device shall not be processed further.
+     */
+    public synchronized boolean process(@NonNull final ISCPMessage msg)
+    {
+        if (code == null || !code.equals(msg.getCode()))
+        {
+            return false;
+        }
+        final Long l = latencies.get(msg.getHostAndPort());
+        if (l != null && l == PENDING)
+        {
+            latencies.put(msg.getHostAndPort(), System.currentTimeMillis() - startTime);
+            if (!latencies.containsValue(PENDING))
+            {
+                finish();
+            }
+        }
+        return true;
+    }
+
+    private void finish()
+    {
+        final StringBuilder str = new StringBuilder();
+        long total = 0;
+        int missing = 0;
+        for (Map.Entry<String, Long> e : latencies.entrySet())
+        {
+            str.append(str.length() == 0 ? "" : ", ").append(e.getKey()).append("=");
+            if (e.getValue() == PENDING)
+            {
+                str.append("timeout");
+                missing++;
+            }
+            else
+            {
+                str.append(e.getValue()).append("ms");
+                total = Math.max(total, e.getValue());
+            }
+        }
+        if (missing == 0)
+        {
+            Logging.info(this, "group command {} completed in {}ms: {}", code, total, str);
+        }
+        else
+        {
+            Logging.info(this, "group command " + code + " not acknowledged by "
+                    + missing + " of " + latencies.size() + " device(s): " + str);
+        }
+        if (timeoutTask != null)
+        {
+            timeoutTask.cancel(false);
+            timeoutTask = null;
+        }
+        finishListener.onGroupCommandFinished(code);
+        code = null;
+        latencies.clear();
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Enhanced Music Controller
+ * Copyright (C) 2018-2023 by Mikhail Kulesh
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with this program.
+ */
+
+package com.mkulesh.onpc.iscp;
+
+import com.mkulesh.onpc.utils.Logging;
+import com.mkulesh.onpc.utils.Utils;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Splits the raw ISCP input stream into EISCP messages. An incomplete message
+ * is kept until its remaining part is received.
+ */
+class IscpFrameDecoder
+{
+    interface MessageListener
+    {
+        void onMessage(@NonNull EISCPMessage raw, int remaining);
+    }
+
+    private byte[] packetJoinBuffer = null;
+    private int messageId = 0;
+
+    /**
+     * Procedure drops an incomplete message, for example if the connection was re-established
+     */
+    void reset()
+    {
+        packetJoinBuffer = null;
+    }
+
+    void decode(@NonNull final byte[] data, final int offset, final int length, @NonNull final MessageListener listener)
+    {
+        byte[] bytes;
+
+        if (packetJoinBuffer == null)
+        {
+            // A new buffer - just copy it
+            bytes = Utils.catBuffer(data, offset, length);
+        }
+        else
+        {
+            // Remaining part of existing buffer - join it
+            final int s1 = packetJoinBuffer.length;
+            bytes = new byte[s1 + length];
+            System.arraycopy(packetJoinBuffer, 0, bytes, 0, s1);
+            System.arraycopy(data, offset, bytes, s1, length);
+            packetJoinBuffer = null;
+        }
+
+        int remaining = bytes.length;
+        while (remaining > 0)
+        {
+            final int startIndex = EISCPMessage.getMsgStartIndex(bytes);
+            if (startIndex < 0)
+            {
+                Logging.info(this, "<< error: message start marker not found. {}B ignored", remaining);
+                return;
+            }
+            else if (startIndex > 0)
+            {
+                Logging.info(this, "<< error: unexpected position of message start: {}, remaining={}B", startIndex, remaining);
+            }
+
+            // convert header and data sizes
+            int hSize, dSize;
+            try
+            {
+                hSize = EISCPMessage.getHeaderSize(bytes, startIndex);
+                dSize = EISCPMessage.getDataSize(bytes, startIndex);
+            }
+            catch (Exception e)
+            {
+                Logging.info(this, "<< error: invalid expected size: {}", e.getLocalizedMessage());
+                packetJoinBuffer = null;
+                return;
+            }
+
+            // inspect expected size
+            final int expectedSize = hSize + dSize;
+            if (hSize < 0 || dSize < 0 || expectedSize > remaining)
+            {
+                packetJoinBuffer = bytes;
+                return;
+            }
+
+            // try to convert raw message. In case of any errors, skip expectedSize
+            EISCPMessage raw = null;
+            try
+            {
+                messageId++;
+                raw = new EISCPMessage(messageId, bytes, startIndex, hSize, dSize);
+            }
+            catch (Exception e)
+            {
+                remaining = Math.max(0, bytes.length - expectedSize);
+                Logging.info(this, "<< error: invalid raw message: {}, remaining={}B", e.getLocalizedMessage(), remaining);
+            }
+
+            if (raw != null)
+            {
+                remaining = Math.max(0, bytes.length - raw.getMsgSize());
+                listener.onMessage(raw, remaining);
+            }
+
+            if (remaining > 0)
+            {
+                bytes = Utils.catBuffer(bytes, bytes.length - remaining, remaining);
+            }
+        }
+    }
+}
@@ -14,8 +14,6 @@
 
 package com.mkulesh.onpc.iscp;
 
-import android.os.StrictMode;
-
 import com.jayway.jsonpath.JsonPath;
 import com.mkulesh.onpc.iscp.messages.DCPMessageFactory;
 import com.mkulesh.onpc.iscp.messages.DcpReceiverInformationMsg;
@@ -31,14 +29,18 @@ import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLConnection;
 import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 public class MessageChannelDcp extends AppTask implements Runnable, MessageChannel
 {
@@ -53,11 +55,13 @@ public class MessageChannelDcp extends AppTask implements Runnable, MessageChann
 
     // thread implementation
     private final AtomicBoolean threadCancelled = new AtomicBoolean();
+    private final CountDownLatch threadTerminated = new CountDownLatch(1);
 
     // connection state
-    private final ConnectionState connectionState;
+    private final NetworkStateIf networkState;
     private final OnpcSocket dcpSocket = new OnpcSocket();
     private final OnpcSocket heosSocket = new OnpcSocket(); // HEOS connection is optional
+    private ReconnectPolicy reconnectPolicy = null;
 
     // input-output queues
     private final BlockingQueue<EISCPMessage> outputQueue = new ArrayBlockingQueue<>(QUEUE_SIZE, true);
@@ -65,15 +69,15 @@ public class MessageChannelDcp extends AppTask implements Runnable, MessageChann
 
     // message handling
     private final DCPMessageFactory dcpMessageFactory = new DCPMessageFactory();
+    private final DcpFrameDecoder dcpFrameDecoder = new DcpFrameDecoder();
+    private final DcpFrameDecoder heosFrameDecoder = new DcpFrameDecoder();
     private Integer heosPid = null;
 
-    MessageChannelDcp(final int zone, final ConnectionState connectionState, final BlockingQueue<ISCPMessage> inputQueue)
+    public MessageChannelDcp(final int zone, final NetworkStateIf networkState, final BlockingQueue<ISCPMessage> inputQueue)
     {
         super(false);
-        this.connectionState = connectionState;
+        this.networkState = networkState;
         this.inputQueue = inputQueue;
-        StrictMode.ThreadPolicy policy = new StrictMode.ThreadPolicy.Builder().permitAll().build();
-        StrictMode.setThreadPolicy(policy);
         dcpMessageFactory.prepare(zone);
     }
 
@@ -94,9 +98,16 @@ public class MessageChannelDcp extends AppTask implements Runnable, MessageChann
         synchronized (threadCancelled)
         {
             threadCancelled.set(true);
+            threadCancelled.notifyAll();
         }
     }
 
+    @Override
+    public void setReconnectPolicy(@Nullable final ReconnectPolicy reconnectPolicy)
+    {
+        this.reconnectPolicy = reconnectPolicy;
+    }
+
     @NonNull
     @Override
     public String getHost()
@@ -123,6 +134,12 @@ public class MessageChannelDcp extends AppTask implements Runnable, MessageChann
         // nothing to do
     }
 
+    @Override
+    public void removeAllowedMessage(final String code)
+    {
+        // nothing to do
+    }
+
     @Override
     public ProtoType getProtoType()
     {
@@ -132,12 +149,59 @@ public class MessageChannelDcp extends AppTask implements Runnable, MessageChann
     @Override
     public void run()
     {
-        Logging.info(this, "started " + getHostAndPort() + ":" + this);
+        Logging.info(this, "started {}:{}", getHostAndPort(), this);
+
+        final boolean heosUsed = heosSocket.getSocket() != null;
+        final ArrayList<String> dcpOutputBuffer = new ArrayList<>();
+        boolean resumed = false;
+        do
+        {
+            if (heosSocket.getSocket() != null)
+            {
+                if (resumed)
+                {
+                    // initially, the change events are registered by DcpReceiverInformationMsg
+                    dcpOutputBuffer.add(DcpReceiverInformationMsg.HEOS_REGISTER_FOR_CHANGE_EVENTS);
+                }
+                if (heosPid == null)
+                {
+                    dcpOutputBuffer.add("heos://player/get_players");
+                }
+            }
+            processConnection(dcpOutputBuffer);
+            try
+            {
+                dcpSocket.close();
+                heosSocket.close();
+            }
+            catch (IOException e)
+            {
+                // nothing to do
+            }
+            if (!dcpOutputBuffer.isEmpty())
+            {
+                Logging.info(this, "{} DCP commands not sent before disconnect", dcpOutputBuffer.size());
+                dcpOutputBuffer.clear();
+            }
+            resumed = true;
+        }
+        while (reconnect(heosUsed));
 
+        super.stop();
+        Logging.info(this, "stopped {}:{}", getHostAndPort(), this);
+        inputQueue.add(new OperationCommandMsg(OperationCommandMsg.Command.DOWN));
+        threadTerminated.countDown();
+    }
+
+    /**
+     * Procedure processes the input and output messages until the connection is broken
+     * or the channel is cancelled
+     */
+    private void processConnection(@NonNull final ArrayList<String> dcpOutputBuffer)
+    {
         // Output data processing
         Long lastSendTime = null;
         final long DCP_SEND_DELAY = 75; // Send the COMMAND in 50ms or more intervals.
-        final ArrayList<String> dcpOutputBuffer = new ArrayList<>();
 
         while (true)
         {
@@ -147,12 +211,12 @@ public class MessageChannelDcp extends AppTask implements Runnable, MessageChann
                 {
                     if (threadCancelled.get())
                     {
-                        Logging.info(this, "cancelled " + getHostAndPort());
+                        Logging.info(this, "cancelled {}", getHostAndPort());
                         break;
                     }
                 }
 
-                if (!connectionState.isNetwork())
+                if (!networkState.isNetwork())
                 {
                     Logging.info(this, "no network");
                     break;
@@ -208,23 +272,70 @@ public class MessageChannelDcp extends AppTask implements Runnable, MessageChann
             }
             catch (Exception e)
             {
-                Logging.info(this, "interrupted " + getHostAndPort() + ": " + e.getLocalizedMessage());
+                Logging.info(this, "interrupted {}: {}", getHostAndPort(), e.getLocalizedMessage());
                 break;
             }
         }
+    }
+
+    /**
+     * Procedure re-establishes a broken connection if a reconnect policy is set. The optional
+     * HEOS port is re-connected if it was used before. Only the DCP commands of the message that
+     * was being written when the connection was broken are lost; the queued messages are sent
+     * after the connection is re-established. The HEOS change events are registered again by run().
+     *
+     * @return true if the connection is re-established
+     */
+    private boolean reconnect(final boolean heosUsed)
+    {
+        synchronized (threadCancelled)
+        {
+            if (reconnectPolicy == null || threadCancelled.get())
+            {
+                return false;
+            }
+        }
+        inputQueue.add(new ReconnectPolicy.ReconnectingMsg(this));
+        final SocketChannel s = reconnectPolicy.reconnect(getHost(), getPort(), networkState, threadCancelled);
+        if (s == null)
+        {
+            return false;
+        }
+        dcpSocket.attach(s);
+        dcpFrameDecoder.reset();
+        if (heosUsed)
+        {
+            final SocketChannel h = reconnectPolicy.connect(getHost(), DCP_HEOS_PORT, threadCancelled);
+            if (h != null)
+            {
+                heosSocket.attach(h);
+                heosFrameDecoder.reset();
+            }
+        }
+        if (!outputQueue.isEmpty())
+        {
+            Logging.info(this, "{} queued messages will be sent after reconnect", outputQueue.size());
+        }
+        inputQueue.add(new ReconnectPolicy.ResumedMsg(this,
+                reconnectPolicy.getReconnectCount(), reconnectPolicy.getDowntime()));
+        return true;
+    }
 
+    @Override
+    public boolean awaitTermination(long timeout)
+    {
+        if (!isActive())
+        {
+            return true;
+        }
         try
         {
-            dcpSocket.close();
-            heosSocket.close();
+            return threadTerminated.await(timeout, TimeUnit.MILLISECONDS);
         }
-        catch (IOException e)
+        catch (InterruptedException e)
         {
-            // nothing to do
+            return !isActive();
         }
-        super.stop();
-        Logging.info(this, "stopped " + getHostAndPort() + ":" + this);
-        inputQueue.add(new OperationCommandMsg(OperationCommandMsg.Command.DOWN));
     }
 
     private void sendDcpFormIphoneApp(final String rawCmd)
@@ -233,12 +344,14 @@ public class MessageChannelDcp extends AppTask implements Runnable, MessageChann
         try
         {
             final String fullCmd = ISCPMessage.getDcpGoformUrl(getHost(), DCP_HTTP_PORT, shortCmd);
-            Logging.info(this, "DCP formiPhoneApp request: " + fullCmd);
-            Utils.getUrlData(new URL(fullCmd), false);
+            Logging.info(this, "DCP formiPhoneApp request: {}", fullCmd);
+            ProtocolRecorder.record(ProtocolRecorder.Source.HTTP, ProtocolRecorder.Direction.OUT, fullCmd);
+            ProtocolRecorder.record(ProtocolRecorder.Source.HTTP, ProtocolRecorder.Direction.IN,
+                    Utils.getUrlData(new URL(fullCmd), false));
         }
         catch (Exception ex)
         {
-            Logging.info(this, "DCP formiPhoneApp error: " + ex.getLocalizedMessage());
+            Logging.info(this, "DCP formiPhoneApp error: {}", ex.getLocalizedMessage());
         }
     }
 
@@ -258,13 +371,20 @@ public class MessageChannelDcp extends AppTask implements Runnable, MessageChann
             http.setRequestProperty("Content-Type", "text/xml; charset=UTF-8");
             http.connect();
             OutputStream os = http.getOutputStream();
+            ProtocolRecorder.record(ProtocolRecorder.Source.HTTP, ProtocolRecorder.Direction.OUT, url + json);
             os.write(out);
             os.flush();
-            Logging.info(this, "DCP AppCommand POST request: " + url + json);
+            Logging.info(this, "DCP AppCommand POST request: {}{}", url, json);
+            if (ProtocolRecorder.isActive())
+            {
+                // The response is only awaited if it is captured
+                ProtocolRecorder.record(ProtocolRecorder.Source.HTTP, ProtocolRecorder.Direction.IN,
+                        Utils.streamToByteArray(http.getInputStream()));
+            }
         }
         catch (Exception ex)
         {
-            Logging.info(this, "DCP AppCommand error: " + ex.getLocalizedMessage());
+            Logging.info(this, "DCP AppCommand error: {}", ex.getLocalizedMessage());
         }
     }
 
@@ -284,17 +404,18 @@ public class MessageChannelDcp extends AppTask implements Runnable, MessageChann
         }
         try
         {
-            Logging.info(this, ">> DCP HEOS sending: " + msg + " to " + heosSocket.getHostAndPort());
+            Logging.trace(this, ">> DCP HEOS sending: {} to {}", msg, heosSocket.getHostAndPort());
             byte[] msgBin = msg.getBytes(Utils.UTF_8);
             final byte[] bytes = new byte[msgBin.length + 2];
             System.arraycopy(msgBin, 0, bytes, 0, msgBin.length);
             bytes[msgBin.length] = (byte) CR;
             bytes[msgBin.length + 1] = (byte) LF;
+            ProtocolRecorder.record(ProtocolRecorder.Source.HEOS, ProtocolRecorder.Direction.OUT, bytes);
             heosSocket.getSocket().write(ByteBuffer.wrap(bytes));
         }
         catch (Exception ex)
         {
-            Logging.info(this, "DCP HEOS error: " + ex.getLocalizedMessage());
+            Logging.info(this, "DCP HEOS error: {}", ex.getLocalizedMessage());
         }
     }
 
@@ -306,11 +427,12 @@ public class MessageChannelDcp extends AppTask implements Runnable, MessageChann
             final byte[] bytes = new byte[msgBin.length + 1];
             System.arraycopy(msgBin, 0, bytes, 0, msgBin.length);
             bytes[msgBin.length] = (byte) CR;
+            ProtocolRecorder.record(ProtocolRecorder.Source.DCP, ProtocolRecorder.Direction.OUT, bytes);
             dcpSocket.getSocket().write(ByteBuffer.wrap(bytes));
         }
         catch (Exception ex)
         {
-            Logging.info(this, "DCP error: " + ex.getLocalizedMessage());
+            Logging.info(this, "DCP error: {}", ex.getLocalizedMessage());
         }
     }
 
@@ -318,75 +440,40 @@ public class MessageChannelDcp extends AppTask implements Runnable, MessageChann
     public boolean connectToServer(@NonNull String host, int port)
     {
         // Optional connection to HEOS port
-        if (heosSocket.open(host, DCP_HEOS_PORT, connectionState.getContext(), false))
-        {
-            sendDcpHeosRequest("heos://player/get_players");
-        }
+        heosSocket.open(host, DCP_HEOS_PORT, networkState, false);
         // Mandatory connection to AVR port
-        return dcpSocket.open(host, port, connectionState.getContext(), true);
+        return dcpSocket.open(host, port, networkState, true);
     }
 
-    private void processInputData(ByteBuffer buffer, @NonNull final OnpcSocket socket)
+    /**
+     * Only the mandatory AVR port is attached, the optional HEOS port is attached by attachHeos
+     */
+    @Override
+    public void attachToServer(@NonNull SocketChannel socket)
     {
-        byte[] bytes = socket.joinBuffer(buffer);
-        int remaining = bytes.length;
-        while (remaining > 0)
-        {
-            remaining = processDcpData(bytes, socket);
-            if (remaining < 0)
-            {
-                // An error, nothing to process
-                return;
-            }
-
-            if (remaining > 0)
-            {
-                bytes = Utils.catBuffer(bytes, bytes.length - remaining, remaining);
-            }
-        }
+        dcpSocket.attach(socket);
     }
 
-    private int processDcpData(byte[] bytes, @NonNull final OnpcSocket onpcSocket)
+    public void attachHeos(@NonNull SocketChannel socket)
     {
-        int expectedSize = -1;
-        for (int i = 0; i < bytes.length; i++)
-        {
-            if (bytes[i] == CR)
-            {
-                expectedSize = i;
-                break;
-            }
-        }
-        if (expectedSize <= 0)
-        {
-            final String logMsg = new String(bytes, Utils.UTF_8);
-            if (logMsg.startsWith(DcpReceiverInformationMsg.DCP_COMMAND_PRESET))
-            {
-                // A corner case: OPTPN has some time no end of message symbol
-                Logging.info(this, "<< DCP warning: end of message not found: " + logMsg);
-                expectedSize = logMsg.length();
-            }
-            else
-            {
-                onpcSocket.setBuffer(bytes);
-                return -1;
-            }
-        }
+        heosSocket.attach(socket);
+    }
 
-        if (expectedSize + 1 < bytes.length &&
-                bytes[expectedSize] == CR &&
-                bytes[expectedSize + 1] == LF)
+    private void processInputData(ByteBuffer buffer, @NonNull final OnpcSocket socket)
+    {
+        final boolean isHeos = socket == heosSocket;
+        if (ProtocolRecorder.isActive())
         {
-            // Consider possible LF after CR
-            expectedSize++;
+            ProtocolRecorder.record(isHeos ? ProtocolRecorder.Source.HEOS : ProtocolRecorder.Source.DCP,
+                    ProtocolRecorder.Direction.IN, buffer.array(), buffer.arrayOffset(), buffer.position());
         }
+        final DcpFrameDecoder frameDecoder = isHeos ? heosFrameDecoder : dcpFrameDecoder;
+        frameDecoder.decode(buffer.array(), buffer.arrayOffset(), buffer.position(),
+                (dcpMsg, remaining) -> processDcpMessage(dcpMsg, remaining, socket));
+    }
 
-        final byte[] stringBytes = expectedSize + 1 == bytes.length ?
-                bytes : Utils.catBuffer(bytes, 0, expectedSize);
-
-        final String dcpMsg = new String(stringBytes, Utils.UTF_8).trim();
-        final int remaining = Math.max(0, bytes.length - expectedSize - 1);
-
+    private void processDcpMessage(@NonNull final String dcpMsg, int remaining, @NonNull final OnpcSocket onpcSocket)
+    {
         boolean processed = false;
         if (dcpMsg.startsWith(DCP_HEOS_RESPONSE))
         {
@@ -396,17 +483,13 @@ public class MessageChannelDcp extends AppTask implements Runnable, MessageChann
         final ArrayList<ISCPMessage> messages = dcpMessageFactory.convertInputMsg(dcpMsg, heosPid);
         final boolean logIgnored = messages.size() == 1 && messages.get(0) instanceof TimeInfoMsg;
 
-        if (!logIgnored)
+        if (Logging.isTraceEnabled() && !logIgnored)
         {
-            final String resStr = processed ? " -> Processed" :
-                    (messages.isEmpty() ? " -> Ignored" :
-                            (messages.size() == 1 ? " -> " + messages.get(0) :
-                                    " -> " + messages.size() + "msg"));
-            Logging.info(this, "<< new DCP message " + dcpMsg
-                    + " from " + onpcSocket.getHostAndPort()
-                    + ", size=" + dcpMsg.length()
-                    + "B, remaining=" + remaining + "B"
-                    + resStr);
+            final Object res = processed ? "Processed" :
+                    (messages.isEmpty() ? "Ignored" :
+                            (messages.size() == 1 ? messages.get(0) : messages.size() + "msg"));
+            Logging.trace(this, "<< new DCP message {} from {}, size={}B, remaining={}B -> {}",
+                    dcpMsg, onpcSocket.getHostAndPort(), dcpMsg.length(), remaining, res);
         }
 
         for (ISCPMessage m : messages)
@@ -414,7 +497,6 @@ public class MessageChannelDcp extends AppTask implements Runnable, MessageChann
             m.setHostAndPort(this);
             inputQueue.add(m);
         }
-        return remaining;
     }
 
     private boolean processHeosMsg(String heosMsg)
@@ -428,7 +510,7 @@ public class MessageChannelDcp extends AppTask implements Runnable, MessageChann
                 if ("player/get_players".equals(cmd))
                 {
                     heosPid = JsonPath.read(heosMsg, "$.payload[0].pid");
-                    Logging.info(this, "DCP HEOS PID received: " + heosPid);
+                    Logging.info(this, "DCP HEOS PID received: {}", heosPid);
                     return true;
                 }
             }
@@ -447,7 +529,7 @@ public class MessageChannelDcp extends AppTask implements Runnable, MessageChann
         }
         catch (Exception ex)
         {
-            Logging.info(this, "DCP HEOS error: " + ex.getLocalizedMessage());
+            Logging.info(this, "DCP HEOS error: {}", ex.getLocalizedMessage());
         }
         return false;
     }
@@ -0,0 +1,364 @@
+/*
+ * Enhanced Music Controller
+ * Copyright (C) 2018-2023 by Mikhail Kulesh
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with this program.
+ */
+
+package com.mkulesh.onpc.iscp;
+
+import com.mkulesh.onpc.iscp.messages.MessageFactory;
+import com.mkulesh.onpc.iscp.messages.OperationCommandMsg;
+import com.mkulesh.onpc.utils.AppTask;
+import com.mkulesh.onpc.utils.Logging;
+import com.mkulesh.onpc.utils.Utils;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+public class MessageChannelIscp extends AppTask implements Runnable, MessageChannel
+{
+    private final static long CONNECTION_TIMEOUT = 5000;
+    private final static int SOCKET_BUFFER = 4 * 1024;
+
+    // thread implementation
+    private final AtomicBoolean threadCancelled = new AtomicBoolean();
+    private final CountDownLatch threadTerminated = new CountDownLatch(1);
+
+    // connection state
+    private final NetworkStateIf networkState;
+    private SocketChannel socket = null;
+    private ReconnectPolicy reconnectPolicy = null;
+
+    // connected host (ConnectionIf)
+    private String host = ConnectionIf.EMPTY_HOST;
+    private int port = ConnectionIf.EMPTY_PORT;
+
+    // input-output queues
+    private final BlockingQueue<EISCPMessage> outputQueue = new ArrayBlockingQueue<>(QUEUE_SIZE, true);
+    private final BlockingQueue<ISCPMessage> inputQueue;
+
+    // message handling
+    private final IscpFrameDecoder frameDecoder = new IscpFrameDecoder();
+    // allowed messages can be extended while the channel is running
+    private final Set<String> allowedMessages = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    public MessageChannelIscp(final NetworkStateIf networkState, final BlockingQueue<ISCPMessage> inputQueue)
+    {
+        super(false);
+        this.networkState = networkState;
+        this.inputQueue = inputQueue;
+    }
+
+    @Override
+    public void start()
+    {
+        if (isActive())
+        {
+            return;
+        }
+        super.start();
+        final Thread thread = new Thread(this, this.getClass().getSimpleName());
+        threadCancelled.set(false);
+        thread.start();
+    }
+
+    @Override
+    public void stop()
+    {
+        synchronized (threadCancelled)
+        {
+            threadCancelled.set(true);
+            threadCancelled.notifyAll();
+        }
+    }
+
+    @Override
+    public void setReconnectPolicy(@Nullable final ReconnectPolicy reconnectPolicy)
+    {
+        this.reconnectPolicy = reconnectPolicy;
+    }
+
+    @NonNull
+    @Override
+    public String getHost()
+    {
+        return host;
+    }
+
+    @Override
+    public int getPort()
+    {
+        return port;
+    }
+
+    @NonNull
+    @Override
+    public String getHostAndPort()
+    {
+        return Utils.ipToString(host, port);
+    }
+
+    @Override
+    public void addAllowedMessage(final String code)
+    {
+        allowedMessages.add(code);
+    }
+
+    @Override
+    public void removeAllowedMessage(final String code)
+    {
+        allowedMessages.remove(code);
+    }
+
+    @Override
+    public ProtoType getProtoType()
+    {
+        return ConnectionIf.ProtoType.ISCP;
+    }
+
+    @Override
+    public void run()
+    {
+        Logging.info(this, "started {}:{}", getHostAndPort(), this);
+
+        final ByteBuffer buffer = ByteBuffer.allocate(SOCKET_BUFFER);
+        do
+        {
+            processConnection(buffer);
+            try
+            {
+                socket.close();
+            }
+            catch (IOException e)
+            {
+                // nothing to do
+            }
+        }
+        while (reconnect());
+
+        super.stop();
+        Logging.info(this, "stopped {}:{}", getHostAndPort(), this);
+        inputQueue.add(new OperationCommandMsg(OperationCommandMsg.Command.DOWN));
+        threadTerminated.countDown();
+    }
+
+    /**
+     * Procedure processes the input and output messages until the connection is broken
+     * or the channel is cancelled
+     */
+    private void processConnection(@NonNull final ByteBuffer buffer)
+    {
+        EISCPMessage inFlight = null;
+        while (true)
+        {
+            try
+            {
+                synchronized (threadCancelled)
+                {
+                    if (threadCancelled.get())
+                    {
+                        Logging.info(this, "cancelled {}", getHostAndPort());
+                        break;
+                    }
+                }
+
+                if (!networkState.isNetwork())
+                {
+                    Logging.info(this, "no network");
+                    break;
+                }
+
+                // process input messages
+                buffer.clear();
+                int readedSize = socket.read(buffer);
+                if (readedSize < 0)
+                {
+                    Logging.info(this, "host {} disconnected", getHostAndPort());
+                    break;
+                }
+                else if (readedSize > 0)
+                {
+                    ProtocolRecorder.record(ProtocolRecorder.Source.ISCP, ProtocolRecorder.Direction.IN,
+                            buffer.array(), buffer.arrayOffset(), readedSize);
+                    try
+                    {
+                        processInputData(buffer);
+                    }
+                    catch (Exception e)
+                    {
+                        Logging.info(this, "error: process input data: {}", e.getLocalizedMessage());
+                        break;
+                    }
+                }
+
+                // process output messages
+                inFlight = outputQueue.poll();
+                if (inFlight != null)
+                {
+                    final byte[] bytes = inFlight.getBytes();
+                    if (bytes != null)
+                    {
+                        final ByteBuffer messageBuffer = ByteBuffer.wrap(bytes);
+                        Logging.trace(this, ">> sending: {} to {}", inFlight, getHostAndPort());
+                        ProtocolRecorder.record(ProtocolRecorder.Source.ISCP, ProtocolRecorder.Direction.OUT, bytes);
+                        socket.write(messageBuffer);
+                    }
+                    inFlight = null;
+                }
+            }
+            catch (Exception e)
+            {
+                Logging.info(this, "interrupted {}: {}", getHostAndPort(), e.getLocalizedMessage());
+                if (inFlight != null)
+                {
+                    Logging.info(this, "message not sent before disconnect: {}", inFlight);
+                }
+                break;
+            }
+        }
+    }
+
+    /**
+     * Procedure re-establishes a broken connection if a reconnect policy is set.
+     * Only the message that was being written when the connection was broken is lost;
+     * the queued messages are sent after the connection is re-established.
+     *
+     * @return true if the connection is re-established
+     */
+    private boolean reconnect()
+    {
+        synchronized (threadCancelled)
+        {
+            if (reconnectPolicy == null || threadCancelled.get())
+            {
+                return false;
+            }
+        }
+        inputQueue.add(new ReconnectPolicy.ReconnectingMsg(this));
+        final SocketChannel s = reconnectPolicy.reconnect(host, port, networkState, threadCancelled);
+        if (s == null)
+        {
+            return false;
+        }
+        socket = s;
+        frameDecoder.reset();
+        if (!outputQueue.isEmpty())
+        {
+            Logging.info(this, "{} queued messages will be sent after reconnect", outputQueue.size());
+        }
+        inputQueue.add(new ReconnectPolicy.ResumedMsg(this,
+                reconnectPolicy.getReconnectCount(), reconnectPolicy.getDowntime()));
+        return true;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout)
+    {
+        if (!isActive())
+        {
+            return true;
+        }
+        try
+        {
+            return threadTerminated.await(timeout, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            return !isActive();
+        }
+    }
+
+    @Override
+    public boolean connectToServer(@NonNull String host, int port)
+    {
+        this.host = host;
+        this.port = port;
+        try
+        {
+            socket = SocketConnector.getInstance().connectAndWait(host, port, CONNECTION_TIMEOUT);
+            if (socket.socket().getInetAddress() != null
+                    && socket.socket().getInetAddress().getHostAddress() != null)
+            {
+                this.host = socket.socket().getInetAddress().getHostAddress();
+            }
+            Logging.info(this, "connected to {}", getHostAndPort());
+            return true;
+        }
+        catch (Exception e)
+        {
+            Logging.info(this, "no response from {}: {}", getHostAndPort(), e.getLocalizedMessage());
+            for (StackTraceElement t : e.getStackTrace())
+            {
+                Logging.info(this, t.toString());
+            }
+            networkState.showConnectionError(getHostAndPort());
+        }
+        return false;
+    }
+
+    @Override
+    public void attachToServer(@NonNull SocketChannel socket)
+    {
+        this.socket = socket;
+        final InetSocketAddress address = (InetSocketAddress) socket.socket().getRemoteSocketAddress();
+        if (address != null && address.getAddress() != null)
+        {
+            this.host = address.getAddress().getHostAddress();
+            this.port = address.getPort();
+        }
+        Logging.info(this, "attached to {}", getHostAndPort());
+    }
+
+    private void processInputData(ByteBuffer buffer)
+    {
+        frameDecoder.decode(buffer.array(), buffer.arrayOffset(), buffer.position(), (raw, remaining) ->
+        {
+            try
+            {
+                final boolean ignored = !allowedMessages.isEmpty() && !allowedMessages.contains(raw.getCode());
+                if (!ignored)
+                {
+                    if (Logging.isTraceEnabled() && !"NTM".equals(raw.getCode()))
+                    {
+                        Logging.trace(this, "<< new message {} from {}, size={}B, remaining={}B",
+                                raw.getCode(), getHostAndPort(), raw.getMsgSize(), remaining);
+                    }
+                    ISCPMessage msg = MessageFactory.create(raw);
+                    msg.setHostAndPort(this);
+                    inputQueue.add(msg);
+                }
+            }
+            catch (Exception e)
+            {
+                Logging.info(this, "<< error: ignored: {}: {}", e.getLocalizedMessage(), raw);
+            }
+        });
+    }
+
+    @Override
+    public void sendMessage(EISCPMessage eiscpMessage)
+    {
+        outputQueue.add(eiscpMessage);
+    }
+}
@@ -29,7 +29,7 @@ import com.mkulesh.onpc.utils.Logging;
 
 class MockupState extends State
 {
-    MockupState(int zone)
+    public MockupState(int zone)
     {
         super(ConnectionIf.ProtoType.ISCP, "192.168.1.10", ConnectionIf.ISCP_PORT, zone);
         Logging.info(this, "Used mockup state");
@@ -86,5 +86,7 @@ class MockupState extends State
         serviceItems.add(new NetworkServiceMsg(ServiceType.CHROMECAST));
         serviceItems.add(new NetworkServiceMsg(ServiceType.FLARECONNECT));
         serviceItems.add(new NetworkServiceMsg(ServiceType.PLAYQUEUE));
+        publishItems();
+        publishSnapshot();
     }
 }
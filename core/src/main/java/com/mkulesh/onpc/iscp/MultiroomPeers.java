@@ -0,0 +1,279 @@
+/*
+ * Enhanced Music Controller
+ * Copyright (C) 2018-2023 by Mikhail Kulesh
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with this program.
+ */
+
+package com.mkulesh.onpc.iscp;
+
+import com.mkulesh.onpc.iscp.messages.BroadcastResponseMsg;
+import com.mkulesh.onpc.iscp.messages.ReceiverInformationMsg;
+import com.mkulesh.onpc.utils.Logging;
+
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Connections to the multiroom peers of a device. The peers are connected concurrently
+ * by the socket connector, i.e. the caller is never blocked. A connected peer delivers
+ * the allowed messages into the input queue of the device. A peer that cannot be connected
+ * or that disconnected is retried with an exponential back-off.
+ */
+public class MultiroomPeers
+{
+    private final static long CONNECTION_TIMEOUT = 5000;
+    private final static long FIRST_RETRY_DELAY = 5000;
+    private final static long MAX_RETRY_DELAY = 5 * 60 * 1000;
+
+    private static class Peer
+    {
+        final String hostAndPort;
+        boolean connecting = false;
+        MessageChannel channel = null;
+        int failures = 0;
+        long retryTime = 0;
+
+        Peer(@NonNull final String hostAndPort)
+        {
+            this.hostAndPort = hostAndPort;
+        }
+    }
+
+    private final NetworkStateIf networkState;
+    private final BlockingQueue<ISCPMessage> inputQueue;
+    private final String[] queries;
+    private final Map<String, Peer> peers = new HashMap<>();
+    private final Set<String> allowedMessages = new HashSet<>();
+    private boolean stopped = false;
+
+    public MultiroomPeers(@NonNull final NetworkStateIf networkState,
+                          @NonNull final BlockingQueue<ISCPMessage> inputQueue,
+                          @NonNull final String[] queries)
+    {
+        this.networkState = networkState;
+        this.inputQueue = inputQueue;
+        this.queries = queries;
+    }
+
+    /**
+     * Procedure starts the connection to the given peer unless it is already connected,
+     * the connection is in progress or the back-off time of the peer is not yet expired.
+     * The method returns immediately.
+     */
+    public void connect(@NonNull final BroadcastResponseMsg msg)
+    {
+        if (!msg.isValidConnection())
+        {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        final Peer peer;
+        synchronized (peers)
+        {
+            if (stopped)
+            {
+                return;
+            }
+            final String key = msg.getHostAndPort();
+            Peer p = peers.get(key);
+            if (p == null)
+            {
+                p = new Peer(key);
+                peers.put(key, p);
+            }
+            if (p.connecting || (p.channel != null && p.channel.isActive()) || now < p.retryTime)
+            {
+                return;
+            }
+            if (p.channel != null)
+            {
+                // The peer was disconnected
+                Logging.info(this, "multiroom device disconnected: {}", key);
+                p.channel = null;
+                onFailure(p, now);
+                if (now < p.retryTime)
+                {
+                    return;
+                }
+            }
+            p.connecting = true;
+            peer = p;
+        }
+
+        Logging.info(this, "connecting to multiroom device: {}", peer.hostAndPort);
+        final boolean isDcp = msg.getPort() == ConnectionIf.DCP_PORT;
+        SocketConnector.getInstance().connect(msg.getHost(), msg.getPort(), CONNECTION_TIMEOUT,
+                new SocketConnector.Callback()
+                {
+                    @Override
+                    public void onConnected(@NonNull SocketChannel socket)
+                    {
+                        final MessageChannel m = isDcp ?
+                                new MessageChannelDcp(ReceiverInformationMsg.DEFAULT_ACTIVE_ZONE, networkState, inputQueue) :
+                                new MessageChannelIscp(networkState, inputQueue);
+                        for (String code : queries)
+                        {
+                            m.addAllowedMessage(code);
+                            m.sendMessage(new EISCPMessage(code, EISCPMessage.QUERY));
+                        }
+                        m.attachToServer(socket);
+                        synchronized (peers)
+                        {
+                            for (String code : allowedMessages)
+                            {
+                                m.addAllowedMessage(code);
+                            }
+                            peer.connecting = false;
+                            if (stopped)
+                            {
+                                try
+                                {
+                                    socket.close();
+                                }
+                                catch (Exception e)
+                                {
+                                    // nothing to do
+                                }
+                                return;
+                            }
+                            peer.channel = m;
+                            peer.failures = 0;
+                            m.start();
+                        }
+                    }
+
+                    @Override
+                    public void onFailed(@NonNull String reason)
+                    {
+                        synchronized (peers)
+                        {
+                            peer.connecting = false;
+                            onFailure(peer, System.currentTimeMillis());
+                        }
+                    }
+                });
+    }
+
+    private void onFailure(@NonNull final Peer p, final long now)
+    {
+        p.failures++;
+        final long delay = Math.min(MAX_RETRY_DELAY, FIRST_RETRY_DELAY << Math.min(p.failures - 1, 16));
+        p.retryTime = now + delay;
+        Logging.info(this, "multiroom device " + p.hostAndPort + " failed " + p.failures
+                + " time(s), next attempt in " + delay / 1000 + "s");
+    }
+
+    /**
+     * Procedure allows the given message for all current and future peer channels
+     */
+    public void addAllowedMessage(@NonNull final String code)
+    {
+        synchronized (peers)
+        {
+            if (allowedMessages.add(code))
+            {
+                for (Peer p : peers.values())
+                {
+                    if (p.channel != null)
+                    {
+                        p.channel.addAllowedMessage(code);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Procedure withdraws the given message from all peer channels unless it is one of the queries
+     */
+    public void removeAllowedMessage(@NonNull final String code)
+    {
+        synchronized (peers)
+        {
+            if (allowedMessages.remove(code) && !Arrays.asList(queries).contains(code))
+            {
+                for (Peer p : peers.values())
+                {
+                    if (p.channel != null)
+                    {
+                        p.channel.removeAllowedMessage(code);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Procedure returns the channels of all connected peers
+     */
+    @NonNull
+    public Collection<MessageChannel> getChannels()
+    {
+        final List<MessageChannel> retValue = new ArrayList<>();
+        synchronized (peers)
+        {
+            for (Peer p : peers.values())
+            {
+                if (p.channel != null)
+                {
+                    retValue.add(p.channel);
+                }
+            }
+        }
+        return retValue;
+    }
+
+    /**
+     * Procedure waits until the threads of all peer channels are finished
+     *
+     * @return false if a channel is still running after the given timeout in milliseconds
+     */
+    public boolean awaitTermination(final long timeout)
+    {
+        final long deadline = System.currentTimeMillis() + timeout;
+        for (MessageChannel m : getChannels())
+        {
+            if (!m.awaitTermination(Math.max(0, deadline - System.currentTimeMillis())))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Procedure stops all peer channels; the connections that are still in progress are
+     * closed as soon as they are established.
+     */
+    public void stop()
+    {
+        final Collection<MessageChannel> channels;
+        synchronized (peers)
+        {
+            stopped = true;
+            channels = getChannels();
+        }
+        for (MessageChannel m : channels)
+        {
+            m.stop();
+        }
+    }
+}
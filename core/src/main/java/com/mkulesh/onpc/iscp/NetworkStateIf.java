@@ -11,26 +11,20 @@
  * GNU General Public License for more details. You should have received a copy of the GNU General
  * Public License along with this program.
  */
-
 package com.mkulesh.onpc.iscp;
 
 import androidx.annotation.NonNull;
 
-public interface MessageChannel extends ConnectionIf
+/**
+ * Platform-dependent network state used by the message channels.
+ * On Android, it is implemented by the ConnectionState.
+ */
+public interface NetworkStateIf
 {
-    int QUEUE_SIZE = 4 * 1024;
-
-    void start();
-
-    void stop();
-
-    boolean isActive();
-
-    void addAllowedMessage(final String code);
-
-    ProtoType getProtoType();
-
-    boolean connectToServer(@NonNull String host, int port);
+    boolean isNetwork();
 
-    void sendMessage(EISCPMessage eiscpMessage);
+    /**
+     * Procedure informs the user that the device given by host and port does not respond
+     */
+    void showConnectionError(@NonNull final String hostAndPort);
 }
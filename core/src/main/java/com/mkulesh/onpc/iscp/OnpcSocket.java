@@ -14,10 +14,6 @@
 
 package com.mkulesh.onpc.iscp;
 
-import android.content.Context;
-import android.widget.Toast;
-
-import com.mkulesh.onpc.R;
 import com.mkulesh.onpc.utils.Logging;
 import com.mkulesh.onpc.utils.Utils;
 
@@ -25,7 +21,6 @@ import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
-import java.util.Calendar;
 
 import androidx.annotation.NonNull;
 
@@ -42,7 +37,6 @@ public class OnpcSocket implements ConnectionIf
     private SocketChannel socket = null;
 
     // data handling
-    private byte[] packetJoinBuffer = null;
     private final ByteBuffer rawBuffer = ByteBuffer.allocate(SOCKET_BUFFER);
 
     interface DataListener
@@ -75,68 +69,56 @@ public class OnpcSocket implements ConnectionIf
         return socket;
     }
 
-    public boolean open(String host, int port, final Context context, boolean showInfo)
+    public boolean open(String host, int port, final NetworkStateIf networkState, boolean showInfo)
     {
         this.host = host;
         this.port = port;
         try
         {
-            socket = SocketChannel.open();
-            socket.configureBlocking(false);
-            socket.connect(new InetSocketAddress(host, port));
-            final long startTime = Calendar.getInstance().getTimeInMillis();
-            while (!socket.finishConnect())
-            {
-                final long currTime = Calendar.getInstance().getTimeInMillis();
-                if (currTime > startTime + CONNECTION_TIMEOUT)
-                {
-                    throw new Exception("connection timeout");
-                }
-            }
+            socket = SocketConnector.getInstance().connectAndWait(host, port, CONNECTION_TIMEOUT);
             if (socket.socket().getInetAddress() != null
                     && socket.socket().getInetAddress().getHostAddress() != null)
             {
                 this.host = socket.socket().getInetAddress().getHostAddress();
             }
-            Logging.info(this, "connected to " + getHostAndPort());
+            Logging.info(this, "connected to {}", getHostAndPort());
             return true;
         }
         catch (Exception e)
         {
-            String message = String.format(context.getResources().getString(
-                    R.string.error_connection_no_response), getHostAndPort());
-            Logging.info(this, message + ": " + e.getLocalizedMessage());
+            Logging.info(this, "no response from {}: {}", getHostAndPort(), e.getLocalizedMessage());
             if (showInfo)
             {
                 for (StackTraceElement t : e.getStackTrace())
                 {
                     Logging.info(this, t.toString());
                 }
-            }
-
-            try
-            {
-                // An exception is possible here:
-                // Can't toast on a thread that has not called Looper.prepare()
-                if (showInfo)
-                {
-                    Toast.makeText(context, message, Toast.LENGTH_LONG).show();
-                }
-            }
-            catch (Exception e1)
-            {
-                // nothing to do
+                networkState.showConnectionError(getHostAndPort());
             }
         }
         socket = null;
         return false;
     }
 
+    public void attach(@NonNull final SocketChannel socket)
+    {
+        this.socket = socket;
+        final InetSocketAddress address = (InetSocketAddress) socket.socket().getRemoteSocketAddress();
+        if (address != null && address.getAddress() != null)
+        {
+            this.host = address.getAddress().getHostAddress();
+            this.port = address.getPort();
+        }
+        Logging.info(this, "attached to {}", getHostAndPort());
+    }
+
     public void close() throws IOException
     {
         if (socket != null)
         {
-            socket.close();
+            final SocketChannel s = socket;
+            socket = null;
+            s.close();
         }
     }
 
@@ -146,7 +128,7 @@ public class OnpcSocket implements ConnectionIf
         final int readSize = socket.read(rawBuffer);
         if (readSize < 0)
         {
-            Logging.info(this, "host " + getHostAndPort() + " disconnected");
+            Logging.info(this, "host {} disconnected", getHostAndPort());
             return readSize;
         }
         else if (readSize > 0)
@@ -157,39 +139,10 @@ public class OnpcSocket implements ConnectionIf
             }
             catch (Exception e)
             {
-                Logging.info(this, "error: process input data: " + e.getLocalizedMessage());
+                Logging.info(this, "error: process input data: {}", e.getLocalizedMessage());
                 return -1;
             }
         }
         return readSize;
     }
-
-    public byte[] joinBuffer(ByteBuffer buffer)
-    {
-        buffer.flip();
-        final int incoming = buffer.remaining();
-        byte[] bytes;
-
-        if (packetJoinBuffer == null)
-        {
-            // A new buffer - just copy it
-            bytes = new byte[incoming];
-            buffer.get(bytes);
-        }
-        else
-        {
-            // Remaining part of existing buffer - join it
-            final int s1 = packetJoinBuffer.length;
-            bytes = new byte[s1 + incoming];
-            System.arraycopy(packetJoinBuffer, 0, bytes, 0, s1);
-            buffer.get(bytes, s1, incoming);
-            packetJoinBuffer = null;
-        }
-        return bytes;
-    }
-
-    public void setBuffer(byte[] bytes)
-    {
-        packetJoinBuffer = bytes;
-    }
 }
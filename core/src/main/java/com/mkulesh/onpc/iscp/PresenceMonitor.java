@@ -0,0 +1,463 @@
+/*
+ * Enhanced Music Controller
+ * Copyright (C) 2018-2023 by Mikhail Kulesh
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with this program.
+ */
+
+package com.mkulesh.onpc.iscp;
+
+import com.jayway.jsonpath.JsonPath;
+import com.mkulesh.onpc.iscp.messages.DCPMessageFactory;
+import com.mkulesh.onpc.iscp.messages.FriendlyNameMsg;
+import com.mkulesh.onpc.iscp.messages.MessageFactory;
+import com.mkulesh.onpc.iscp.messages.MultiroomDeviceInformationMsg;
+import com.mkulesh.onpc.iscp.messages.PowerStatusMsg;
+import com.mkulesh.onpc.utils.Logging;
+import com.mkulesh.onpc.utils.Utils;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Lightweight presence sessions for devices that are known but not actively controlled.
+ * A presence session only keeps a socket, a frame decoder and a State that is updated with
+ * the power status, the friendly name and the multiroom information. All sessions are
+ * served by one selector thread, i.e. the number of threads does not depend on the number
+ * of devices. Each device is watched for its own zone. Lost connections are re-established
+ * after RETRY_PERIOD.
+ * Denon AVRs accept only one client on the DCP port: the presence of a DCP device is
+ * therefore watched using its HEOS port that accepts several clients. Since HEOS does
+ * not report the power status of the AVR, only the connection and the name are known.
+ */
+public class PresenceMonitor implements Runnable
+{
+    private final static long CONNECTION_TIMEOUT = 5000;
+    private final static long RETRY_PERIOD = 30000;
+    private final static long SELECT_PERIOD = 1000;
+    private final static int BUFFER_SIZE = 4096;
+
+    public interface Listener
+    {
+        /**
+         * Called in the thread of the monitor if the connection or the state of a device is changed
+         */
+        void onPresenceChanged(@NonNull Presence presence);
+    }
+
+    public final static class Presence implements ConnectionIf
+    {
+        private final String host;
+        private final int port;
+        private final State state;
+        private final IscpFrameDecoder iscpDecoder;
+        private final DcpFrameDecoder dcpDecoder;
+        private final DCPMessageFactory dcpMessageFactory;
+        private final Set<String> allowedMessages;
+        private final int connectPort;
+        private Integer heosPid = null;
+        private SocketChannel channel = null;
+        private long connectTime = 0;
+        private long retryTime = 0;
+        private volatile boolean connected = false;
+
+        Presence(@NonNull final String host, final int port, final int zone)
+        {
+            this.host = host;
+            this.port = port;
+            this.state = new State(port == DCP_PORT ? ProtoType.DCP : ProtoType.ISCP, host, port, zone);
+            this.allowedMessages = new HashSet<>(Arrays.asList(
+                    PowerStatusMsg.ZONE_COMMANDS[zone], FriendlyNameMsg.CODE, MultiroomDeviceInformationMsg.CODE));
+            if (state.protoType == ProtoType.ISCP)
+            {
+                iscpDecoder = new IscpFrameDecoder();
+                dcpDecoder = null;
+                dcpMessageFactory = null;
+                connectPort = port;
+            }
+            else
+            {
+                iscpDecoder = null;
+                connectPort = DCP_HEOS_PORT;
+                dcpDecoder = new DcpFrameDecoder();
+                dcpMessageFactory = new DCPMessageFactory();
+                dcpMessageFactory.prepare(zone);
+            }
+        }
+
+        @NonNull
+        @Override
+        public String getHost()
+        {
+            return host;
+        }
+
+        @Override
+        public int getPort()
+        {
+            return port;
+        }
+
+        @NonNull
+        @Override
+        public String getHostAndPort()
+        {
+            return Utils.ipToString(host, port);
+        }
+
+        /**
+         * The state is only updated by the monitor thread
+         */
+        @NonNull
+        public State getState()
+        {
+            return state;
+        }
+
+        public boolean isConnected()
+        {
+            return connected;
+        }
+
+        public long getMemoryEstimate()
+        {
+            return BUFFER_SIZE + state.getMemoryEstimate();
+        }
+    }
+
+    private final Listener listener;
+    private final Map<String, Presence> sessions = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Presence> added = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Presence> removed = new ConcurrentLinkedQueue<>();
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final AtomicBoolean stopped = new AtomicBoolean();
+    private Selector selector = null;
+
+    public PresenceMonitor(@NonNull final Listener listener)
+    {
+        this.listener = listener;
+    }
+
+    public void start()
+    {
+        try
+        {
+            selector = Selector.open();
+        }
+        catch (IOException e)
+        {
+            Logging.info(this, "cannot open selector: {}", e.getLocalizedMessage());
+            return;
+        }
+        final Thread thread = new Thread(this, PresenceMonitor.class.getSimpleName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop()
+    {
+        stopped.set(true);
+        if (selector != null)
+        {
+            selector.wakeup();
+        }
+    }
+
+    public void add(@NonNull final String host, final int port, final int zone)
+    {
+        final Presence p = new Presence(host, port, zone);
+        if (sessions.putIfAbsent(p.getHostAndPort(), p) == null)
+        {
+            added.add(p);
+            if (selector != null)
+            {
+                selector.wakeup();
+            }
+        }
+    }
+
+    public void remove(@NonNull final String host, final int port)
+    {
+        final Presence p = sessions.remove(Utils.ipToString(host, port));
+        if (p != null)
+        {
+            removed.add(p);
+            if (selector != null)
+            {
+                selector.wakeup();
+            }
+        }
+    }
+
+    @Nullable
+    public Presence get(@NonNull final String host, final int port)
+    {
+        return get(Utils.ipToString(host, port));
+    }
+
+    @Nullable
+    public Presence get(@NonNull final String hostAndPort)
+    {
+        return sessions.get(hostAndPort);
+    }
+
+    @NonNull
+    public List<Presence> getSessions()
+    {
+        return new ArrayList<>(sessions.values());
+    }
+
+    @Override
+    public void run()
+    {
+        Logging.info(this, "started");
+        final List<Presence> active = new ArrayList<>();
+        while (!stopped.get())
+        {
+            Presence p;
+            while ((p = added.poll()) != null)
+            {
+                active.add(p);
+            }
+            while ((p = removed.poll()) != null)
+            {
+                active.remove(p);
+                disconnect(p, false);
+            }
+
+            final long now = System.currentTimeMillis();
+            for (Presence s : active)
+            {
+                if (s.channel == null && now >= s.retryTime)
+                {
+                    connect(s);
+                }
+                else if (s.channel != null && !s.connected && now > s.connectTime + CONNECTION_TIMEOUT)
+                {
+                    Logging.info(this, "connection timeout: {}", s.getHostAndPort());
+                    disconnect(s, true);
+                }
+            }
+
+            try
+            {
+                selector.select(SELECT_PERIOD);
+            }
+            catch (IOException e)
+            {
+                Logging.info(this, "selector error: {}", e.getLocalizedMessage());
+                break;
+            }
+            for (SelectionKey key : selector.selectedKeys())
+            {
+                final Presence s = (Presence) key.attachment();
+                try
+                {
+                    if (key.isValid() && key.isConnectable())
+                    {
+                        onConnected(s);
+                    }
+                    else if (key.isValid() && key.isReadable())
+                    {
+                        read(s);
+                    }
+                }
+                catch (Exception e)
+                {
+                    Logging.info(this, "connection lost: {}: {}", s.getHostAndPort(), e.getLocalizedMessage());
+                    disconnect(s, true);
+                }
+            }
+            selector.selectedKeys().clear();
+        }
+
+        for (Presence s : active)
+        {
+            disconnect(s, false);
+        }
+        try
+        {
+            selector.close();
+        }
+        catch (IOException e)
+        {
+            // nothing to do
+        }
+        Logging.info(this, "stopped");
+    }
+
+    private void connect(@NonNull final Presence s)
+    {
+        try
+        {
+            s.channel = SocketChannel.open();
+            s.channel.configureBlocking(false);
+            s.connectTime = System.currentTimeMillis();
+            s.channel.connect(new InetSocketAddress(s.host, s.connectPort));
+            s.channel.register(selector, SelectionKey.OP_CONNECT, s);
+        }
+        catch (Exception e)
+        {
+            Logging.info(this, "cannot connect to {}: {}", s.getHostAndPort(), e.getLocalizedMessage());
+            disconnect(s, true);
+        }
+    }
+
+    private void onConnected(@NonNull final Presence s) throws Exception
+    {
+        s.channel.finishConnect();
+        s.channel.keyFor(selector).interestOps(SelectionKey.OP_READ);
+        s.connected = true;
+        Logging.info(this, "connected to {}", Utils.ipToString(s.host, s.connectPort));
+        if (s.state.protoType == ConnectionIf.ProtoType.ISCP)
+        {
+            for (String code : s.allowedMessages)
+            {
+                write(s, new EISCPMessage(code, EISCPMessage.QUERY).getBytes());
+            }
+        }
+        else
+        {
+            // The name is requested when the player ID is known
+            writeHeos(s, "heos://player/get_players");
+        }
+        listener.onPresenceChanged(s);
+    }
+
+    private void write(@NonNull final Presence s, @Nullable final byte[] bytes) throws IOException
+    {
+        if (bytes != null)
+        {
+            // Queries are short: they fit into the socket buffer of a new connection
+            s.channel.write(ByteBuffer.wrap(bytes));
+        }
+    }
+
+    private void writeHeos(@NonNull final Presence s, @NonNull final String msg) throws IOException
+    {
+        write(s, (msg + "\r\n").getBytes(Utils.UTF_8));
+    }
+
+    private void read(@NonNull final Presence s) throws IOException
+    {
+        buffer.clear();
+        if (s.channel.read(buffer) < 0)
+        {
+            throw new IOException("disconnected");
+        }
+        final List<ISCPMessage> messages = new ArrayList<>();
+        if (s.iscpDecoder != null)
+        {
+            s.iscpDecoder.decode(buffer.array(), 0, buffer.position(), (raw, remaining) ->
+            {
+                if (s.allowedMessages.contains(raw.getCode()))
+                {
+                    try
+                    {
+                        messages.add(MessageFactory.create(raw));
+                    }
+                    catch (Exception e)
+                    {
+                        Logging.info(this, "<< error: ignored: {}: {}", e.getLocalizedMessage(), raw);
+                    }
+                }
+            });
+        }
+        else
+        {
+            final List<String> heosMessages = new ArrayList<>();
+            s.dcpDecoder.decode(buffer.array(), 0, buffer.position(),
+                    (dcpMsg, remaining) -> heosMessages.add(dcpMsg));
+            for (String heosMsg : heosMessages)
+            {
+                if (s.heosPid == null && heosMsg.contains("player/get_players"))
+                {
+                    try
+                    {
+                        s.heosPid = JsonPath.read(heosMsg, "$.payload[0].pid");
+                        writeHeos(s, "heos://player/get_player_info?pid=" + s.heosPid);
+                    }
+                    catch (Exception e)
+                    {
+                        Logging.info(this, "HEOS player not found: {}", s.getHostAndPort());
+                    }
+                    continue;
+                }
+                for (ISCPMessage m : s.dcpMessageFactory.convertInputMsg(heosMsg, s.heosPid))
+                {
+                    if (m instanceof FriendlyNameMsg)
+                    {
+                        messages.add(m);
+                    }
+                }
+            }
+        }
+        boolean changed = false;
+        for (ISCPMessage m : messages)
+        {
+            m.setHostAndPort(s);
+            changed |= s.state.update(m) != State.ChangeType.NONE;
+        }
+        if (changed)
+        {
+            listener.onPresenceChanged(s);
+        }
+    }
+
+    private void disconnect(@NonNull final Presence s, boolean retry)
+    {
+        if (s.channel != null)
+        {
+            try
+            {
+                s.channel.close();
+            }
+            catch (IOException e)
+            {
+                // nothing to do
+            }
+            s.channel = null;
+        }
+        if (s.dcpDecoder != null)
+        {
+            s.dcpDecoder.reset();
+            s.heosPid = null;
+        }
+        if (s.iscpDecoder != null)
+        {
+            s.iscpDecoder.reset();
+        }
+        s.retryTime = System.currentTimeMillis() + RETRY_PERIOD;
+        if (s.connected)
+        {
+            s.connected = false;
+            if (retry)
+            {
+                listener.onPresenceChanged(s);
+            }
+        }
+    }
+}
@@ -0,0 +1,355 @@
+/*
+ * Enhanced Music Controller
+ * Copyright (C) 2018-2023 by Mikhail Kulesh
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with this program.
+ */
+
+package com.mkulesh.onpc.iscp;
+
+import com.mkulesh.onpc.utils.Logging;
+import com.mkulesh.onpc.utils.Utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Optional recorder of raw protocol traffic. Every inbound and outbound frame is appended
+ * to a compact binary log that is backed by a memory-mapped file. If the file reaches
+ * its size limit, it is rotated: the previous capture is kept as a second file.
+ *
+ * File layout (big-endian): the header consisting of the magic "ONPCCAP1", the wall-clock
+ * start time in milliseconds and the nanosecond time base, followed by records:
+ * [long nanoseconds since start][byte source][byte direction][int length][data].
+ * A record with source 0 marks the end of the data.
+ *
+ * The recording threads only append a copy of the data to a lock-free queue; the file
+ * is written by a separate writer thread. If the writer falls behind, the records beyond
+ * the queue limit are dropped and counted.
+ */
+public class ProtocolRecorder
+{
+    private final static String CAPTURE_DIR = "capture";
+    private final static String CAPTURE_FILE = "capture.bin";
+    private final static String PREVIOUS_FILE = "capture-1.bin";
+    private final static String EXPORT_DIR = "export";
+    private final static String EXPORT_FILE = "onpc-capture.bin";
+    final static byte[] MAGIC = "ONPCCAP1".getBytes(Utils.UTF_8);
+    final static int HEADER_SIZE = MAGIC.length + 16;
+    final static int RECORD_HEADER_SIZE = 14;
+    private final static int FILE_SIZE = 4 * 1024 * 1024;
+    private final static int MAX_QUEUED_BYTES = 1024 * 1024;
+    private final static long WRITE_PERIOD = 100;
+
+    public enum Source
+    {
+        NONE, ISCP, DCP, HEOS, HTTP
+    }
+
+    public enum Direction
+    {
+        IN, OUT
+    }
+
+    private static class Record
+    {
+        final long time;
+        final Source source;
+        final Direction direction;
+        final byte[] data;
+
+        Record(final long time, @NonNull final Source source, @NonNull final Direction direction,
+               @NonNull final byte[] data)
+        {
+            this.time = time;
+            this.source = source;
+            this.direction = direction;
+            this.data = data;
+        }
+    }
+
+    private static volatile boolean active = false;
+    private final static ConcurrentLinkedQueue<Record> records = new ConcurrentLinkedQueue<>();
+    private final static AtomicInteger queuedBytes = new AtomicInteger();
+    private final static AtomicInteger droppedRecords = new AtomicInteger();
+
+    // Guarded by the class lock; recording threads never take it
+    private static Thread writer = null;
+    private static File captureDir = null;
+    private static MappedByteBuffer buffer = null;
+    private static long startTime = 0;
+
+    private ProtocolRecorder()
+    {
+        // only static methods
+    }
+
+    public static boolean isActive()
+    {
+        return active;
+    }
+
+    public static void setEnabled(@NonNull final File cacheDir, boolean enabled)
+    {
+        final Thread stoppedWriter;
+        synchronized (ProtocolRecorder.class)
+        {
+            if (enabled && !active)
+            {
+                captureDir = new File(cacheDir, CAPTURE_DIR);
+                if (!captureDir.exists() && !captureDir.mkdirs())
+                {
+                    Logging.info(ProtocolRecorder.class, "can not create capture directory {}", captureDir);
+                    return;
+                }
+                // A previous capture of an earlier session does not belong to the new capture
+                //noinspection ResultOfMethodCallIgnored
+                new File(captureDir, PREVIOUS_FILE).delete();
+                // late records of a previous capture are discarded
+                records.clear();
+                queuedBytes.set(0);
+                active = openFile();
+                if (active)
+                {
+                    writer = new Thread(ProtocolRecorder::writeRecords, ProtocolRecorder.class.getSimpleName());
+                    writer.setDaemon(true);
+                    writer.start();
+                }
+                return;
+            }
+            if (enabled || !active)
+            {
+                return;
+            }
+            active = false;
+            stoppedWriter = writer;
+            writer = null;
+        }
+        // The writer stores the queued records and finishes the file
+        LockSupport.unpark(stoppedWriter);
+        try
+        {
+            stoppedWriter.join();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (ProtocolRecorder.class)
+        {
+            finishFile();
+            buffer = null;
+        }
+        Logging.info(ProtocolRecorder.class, "capture stopped, dropped records: {}", droppedRecords.getAndSet(0));
+    }
+
+    public static void record(@NonNull final Source source, @NonNull final Direction direction,
+                              @NonNull final byte[] data, final int offset, final int length)
+    {
+        if (!active || length <= 0)
+        {
+            return;
+        }
+        enqueue(source, direction, Arrays.copyOfRange(data, offset, offset + length));
+    }
+
+    public static void record(@NonNull final Source source, @NonNull final Direction direction,
+                              @Nullable final byte[] data)
+    {
+        if (active && data != null && data.length > 0)
+        {
+            enqueue(source, direction, data.clone());
+        }
+    }
+
+    public static void record(@NonNull final Source source, @NonNull final Direction direction,
+                              @NonNull final String data)
+    {
+        if (active && !data.isEmpty())
+        {
+            enqueue(source, direction, data.getBytes(Utils.UTF_8));
+        }
+    }
+
+    private static void enqueue(@NonNull final Source source, @NonNull final Direction direction,
+                                @NonNull final byte[] data)
+    {
+        if (queuedBytes.addAndGet(data.length) > MAX_QUEUED_BYTES)
+        {
+            queuedBytes.addAndGet(-data.length);
+            droppedRecords.incrementAndGet();
+            return;
+        }
+        records.add(new Record(System.nanoTime(), source, direction, data));
+    }
+
+    private static void writeRecords()
+    {
+        while (active)
+        {
+            LockSupport.parkNanos(WRITE_PERIOD * 1000000L);
+            drain();
+        }
+        drain();
+    }
+
+    private static synchronized void drain()
+    {
+        Record r;
+        while ((r = records.poll()) != null)
+        {
+            queuedBytes.addAndGet(-r.data.length);
+            write(r);
+        }
+    }
+
+    private static void write(@NonNull final Record r)
+    {
+        if (buffer == null)
+        {
+            return;
+        }
+        final int length = r.data.length;
+        // The end marker shall always fit into the file
+        if (buffer.remaining() < RECORD_HEADER_SIZE + length + RECORD_HEADER_SIZE)
+        {
+            finishFile();
+            if (RECORD_HEADER_SIZE + length + RECORD_HEADER_SIZE > FILE_SIZE - HEADER_SIZE || !rotateFile())
+            {
+                return;
+            }
+        }
+        // A record that was queued before the rotation belongs to the start of the new file
+        buffer.putLong(Math.max(0, r.time - startTime));
+        buffer.put((byte) r.source.ordinal());
+        buffer.put((byte) r.direction.ordinal());
+        buffer.putInt(length);
+        buffer.put(r.data);
+    }
+
+    private static boolean openFile()
+    {
+        final File f = new File(captureDir, CAPTURE_FILE);
+        try
+        {
+            final RandomAccessFile raf = new RandomAccessFile(f, "rw");
+            raf.setLength(0);
+            raf.setLength(FILE_SIZE);
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, FILE_SIZE);
+            // the mapping remains valid after the channel is closed
+            raf.close();
+            buffer.order(ByteOrder.BIG_ENDIAN);
+            startTime = System.nanoTime();
+            buffer.put(MAGIC);
+            buffer.putLong(System.currentTimeMillis());
+            buffer.putLong(startTime);
+            Logging.info(ProtocolRecorder.class, "capture started: {}", f);
+            return true;
+        }
+        catch (Exception e)
+        {
+            Logging.info(ProtocolRecorder.class, "can not open capture file: {}", e.getLocalizedMessage());
+            buffer = null;
+            return false;
+        }
+    }
+
+    private static void finishFile()
+    {
+        if (buffer != null)
+        {
+            // The remaining part of the mapped file is filled with zeros, i.e. the end marker
+            buffer.force();
+        }
+    }
+
+    private static boolean rotateFile()
+    {
+        buffer = null;
+        final File current = new File(captureDir, CAPTURE_FILE);
+        final File previous = new File(captureDir, PREVIOUS_FILE);
+        //noinspection ResultOfMethodCallIgnored
+        previous.delete();
+        if (!current.renameTo(previous))
+        {
+            Logging.info(ProtocolRecorder.class, "can not rotate capture file");
+        }
+        return openFile();
+    }
+
+    /**
+     * Procedure writes the previous and the current capture into a single file that
+     * consists of the written parts of both files. The file is placed into the given cache
+     * directory: on Android, this directory is shared using the file provider.
+     *
+     * @return the exported file or null if no capture is available
+     */
+    @Nullable
+    public static synchronized File export(@NonNull final File cacheDir)
+    {
+        if (captureDir == null)
+        {
+            return null;
+        }
+        drain();
+        finishFile();
+        final File dir = new File(cacheDir, EXPORT_DIR);
+        if (!dir.exists() && !dir.mkdirs())
+        {
+            return null;
+        }
+        final File out = new File(dir, EXPORT_FILE);
+        try
+        {
+            final FileOutputStream os = new FileOutputStream(out);
+            for (String name : new String[]{ PREVIOUS_FILE, CAPTURE_FILE })
+            {
+                final File f = new File(captureDir, name);
+                if (f.exists())
+                {
+                    final byte[] data = Utils.streamToByteArray(new FileInputStream(f));
+                    os.write(data, 0, getDataSize(data));
+                }
+            }
+            os.close();
+            Logging.info(ProtocolRecorder.class, "capture exported: {}, size={}B", out, out.length());
+            return out;
+        }
+        catch (Exception e)
+        {
+            Logging.info(ProtocolRecorder.class, "can not export capture: {}", e.getLocalizedMessage());
+            return null;
+        }
+    }
+
+    private static int getDataSize(@NonNull final byte[] data)
+    {
+        int pos = HEADER_SIZE;
+        while (pos + RECORD_HEADER_SIZE <= data.length && data[pos + 8] != Source.NONE.ordinal())
+        {
+            final int length = ((data[pos + 10] & 0xFF) << 24) | ((data[pos + 11] & 0xFF) << 16)
+                    | ((data[pos + 12] & 0xFF) << 8) | (data[pos + 13] & 0xFF);
+            pos += RECORD_HEADER_SIZE + length;
+        }
+        return Math.min(pos, data.length);
+    }
+}
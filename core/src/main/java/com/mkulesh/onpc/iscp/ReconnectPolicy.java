@@ -0,0 +1,273 @@
+/*
+ * Enhanced Music Controller
+ * Copyright (C) 2018-2023 by Mikhail Kulesh
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with this program.
+ */
+
+package com.mkulesh.onpc.iscp;
+
+import com.mkulesh.onpc.utils.Logging;
+import com.mkulesh.onpc.utils.Utils;
+
+import java.nio.channels.SocketChannel;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Reconnect policy of a message channel: a broken connection is re-established with an exponential
+ * back-off with jitter, i.e. the delay before the attempt n is a random value between the half and
+ * the full value of min(MAX_DELAY, BASE_DELAY * 2^n). The channel gives up if the device is not
+ * reachable within MAX_DOWNTIME. The policy also collects the reconnect statistics of a session.
+ */
+public class ReconnectPolicy
+{
+    private final static long BASE_DELAY = 500;
+    private final static long MAX_DELAY = 30000;
+    private final static long MAX_DOWNTIME = 120000;
+    private final static long CONNECT_TIMEOUT = 5000;
+
+    /**
+     * The message is put into the input queue of a channel when its connection is broken
+     * and the channel starts to re-establish it
+     */
+    public static class ReconnectingMsg extends ISCPMessage
+    {
+        ReconnectingMsg(@NonNull final ConnectionIf connection)
+        {
+            super(0, "");
+            setHostAndPort(connection);
+        }
+
+        @NonNull
+        @Override
+        public String toString()
+        {
+            return "RECONNECTING[" + getHostAndPort() + "]";
+        }
+    }
+
+    /**
+     * The message is put into the input queue of a channel when its connection is re-established
+     */
+    public static class ResumedMsg extends ISCPMessage
+    {
+        private final int reconnectCount;
+        private final long downtime;
+
+        ResumedMsg(@NonNull final ConnectionIf connection, final int reconnectCount, final long downtime)
+        {
+            super(0, "");
+            this.reconnectCount = reconnectCount;
+            this.downtime = downtime;
+            setHostAndPort(connection);
+        }
+
+        public int getReconnectCount()
+        {
+            return reconnectCount;
+        }
+
+        public long getDowntime()
+        {
+            return downtime;
+        }
+
+        @NonNull
+        @Override
+        public String toString()
+        {
+            return "RESUMED[" + getHostAndPort() + "; RECONNECT=" + reconnectCount + "; DOWNTIME=" + downtime + "ms]";
+        }
+    }
+
+    private final Random random = new Random();
+    private final AtomicInteger reconnectCount = new AtomicInteger();
+    private final AtomicLong downtime = new AtomicLong();
+    private final AtomicLong disconnectTime = new AtomicLong();
+
+    public int getReconnectCount()
+    {
+        return reconnectCount.get();
+    }
+
+    /**
+     * Total time in milliseconds the session was disconnected, including the current outage, if any
+     */
+    public long getDowntime()
+    {
+        final long t = disconnectTime.get();
+        return downtime.get() + (t > 0 ? System.currentTimeMillis() - t : 0);
+    }
+
+    @NonNull
+    public String getMetrics()
+    {
+        return "reconnects: " + getReconnectCount() + ", downtime: " + getDowntime() + "ms";
+    }
+
+    /**
+     * Procedure re-establishes the connection to the given host and port.
+     * The method blocks the calling channel thread until the connection is re-established,
+     * the channel is cancelled or the policy gives up.
+     * The channel shall notify all threads waiting on the cancelled flag when it is set.
+     *
+     * @return the connected socket in non-blocking mode or null if the policy gave up
+     */
+    @Nullable
+    public SocketChannel reconnect(@NonNull final String host, final int port,
+                                   @NonNull final NetworkStateIf networkState,
+                                   @NonNull final AtomicBoolean cancelled)
+    {
+        final String hostAndPort = Utils.ipToString(host, port);
+        final long startTime = System.currentTimeMillis();
+        disconnectTime.set(startTime);
+        SocketChannel socket = null;
+        for (int attempt = 0; socket == null; attempt++)
+        {
+            final long delay = getDelay(attempt);
+            if (System.currentTimeMillis() + delay - startTime > MAX_DOWNTIME)
+            {
+                Logging.info(this, "gave up to reconnect to {} after {} attempts", hostAndPort, attempt);
+                break;
+            }
+            Logging.info(this, "reconnecting to {} in {}ms, attempt {}", hostAndPort, delay, (attempt + 1));
+            if (!await(cancelled, delay))
+            {
+                break;
+            }
+            socket = networkState.isNetwork() ? connect(host, port, cancelled) : null;
+        }
+
+        final long outage = System.currentTimeMillis() - startTime;
+        downtime.addAndGet(outage);
+        disconnectTime.set(0);
+        if (socket != null)
+        {
+            reconnectCount.incrementAndGet();
+            Logging.info(this, "reconnected to {} after {}ms, {}", hostAndPort, outage, getMetrics());
+        }
+        return socket;
+    }
+
+    private long getDelay(final int attempt)
+    {
+        final long delay = Math.min(MAX_DELAY, BASE_DELAY << Math.min(attempt, 16));
+        return delay / 2 + (long) (random.nextDouble() * delay / 2);
+    }
+
+    /**
+     * Procedure waits the given time unless the channel is cancelled
+     *
+     * @return false if the channel is cancelled
+     */
+    private static boolean await(@NonNull final AtomicBoolean cancelled, final long delay)
+    {
+        final long endTime = System.currentTimeMillis() + delay;
+        synchronized (cancelled)
+        {
+            long remaining = delay;
+            while (!cancelled.get() && remaining > 0)
+            {
+                try
+                {
+                    cancelled.wait(remaining);
+                }
+                catch (InterruptedException e)
+                {
+                    return false;
+                }
+                remaining = endTime - System.currentTimeMillis();
+            }
+            return !cancelled.get();
+        }
+    }
+
+    /**
+     * Procedure connects the socket once using SocketConnector and waits for the result unless
+     * the channel is cancelled. Late sockets of a cancelled channel are closed.
+     *
+     * @return the connected socket in non-blocking mode or null if the connection failed
+     */
+    @Nullable
+    public SocketChannel connect(@NonNull final String host, final int port, @NonNull final AtomicBoolean cancelled)
+    {
+        final SocketChannel[] result = new SocketChannel[1];
+        final AtomicBoolean finished = new AtomicBoolean();
+        final SocketConnector.Callback callback = new SocketConnector.Callback()
+        {
+            @Override
+            public void onConnected(@NonNull SocketChannel socket)
+            {
+                synchronized (cancelled)
+                {
+                    if (finished.get())
+                    {
+                        close(socket);
+                        return;
+                    }
+                    result[0] = socket;
+                    finished.set(true);
+                    cancelled.notifyAll();
+                }
+            }
+
+            @Override
+            public void onFailed(@NonNull String reason)
+            {
+                Logging.info(ReconnectPolicy.this, "reconnect failed: {}", reason);
+                synchronized (cancelled)
+                {
+                    finished.set(true);
+                    cancelled.notifyAll();
+                }
+            }
+        };
+        SocketConnector.getInstance().connect(host, port, CONNECT_TIMEOUT, callback);
+        synchronized (cancelled)
+        {
+            try
+            {
+                while (!finished.get() && !cancelled.get())
+                {
+                    cancelled.wait();
+                }
+            }
+            catch (InterruptedException e)
+            {
+                // nothing to do
+            }
+            if (finished.get())
+            {
+                return result[0];
+            }
+            finished.set(true);
+        }
+        SocketConnector.getInstance().cancel(callback);
+        return null;
+    }
+
+    private static void close(@NonNull final SocketChannel socket)
+    {
+        try
+        {
+            socket.close();
+        }
+        catch (Exception e)
+        {
+            // nothing to do
+        }
+    }
+}
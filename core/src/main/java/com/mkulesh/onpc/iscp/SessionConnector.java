@@ -0,0 +1,292 @@
+/*
+ * Enhanced Music Controller
+ * Copyright (C) 2018-2023 by Mikhail Kulesh
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with this program.
+ */
+
+package com.mkulesh.onpc.iscp;
+
+import com.mkulesh.onpc.utils.Logging;
+import com.mkulesh.onpc.utils.Utils;
+
+import java.net.InetAddress;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Asynchronous connection of a new session, i.e. the caller never blocks on the network.
+ * At first, the candidate hosts of the device are resolved in a background thread. After that,
+ * the device port is raced across all candidate hosts by the endpoint racer and, for a DCP
+ * device, the optional HEOS port is connected concurrently. The latency of each phase is logged.
+ * The listener is called exactly once, in the resolver or in the connector thread.
+ */
+public class SessionConnector
+{
+    private final static long CONNECTION_TIMEOUT = 5000;
+
+    public interface Listener
+    {
+        void onConnected(@NonNull final SessionConnector session);
+
+        void onFailed(@NonNull final SessionConnector session);
+    }
+
+    private final List<String> hosts;
+    private final int port;
+    private final Listener listener;
+
+    // connection result
+    private String address;
+    private String preferredAddress = null;
+    private String heosAddress = null;
+    private SocketChannel socket = null;
+    private SocketChannel heosSocket = null;
+    private String failure = null;
+    private int pending = 0;
+
+    // phase latencies
+    private long startTime = 0;
+    private long resolveTime = 0;
+    private long connectTime = 0;
+    private long heosConnectTime = 0;
+
+    /**
+     * @param hosts the candidate hosts of the device, the preferred host first
+     */
+    public SessionConnector(@NonNull final List<String> hosts, final int port, @NonNull final Listener listener)
+    {
+        this.hosts = hosts;
+        this.port = port;
+        this.listener = listener;
+        this.address = hosts.isEmpty() ? ConnectionIf.EMPTY_HOST : hosts.get(0);
+    }
+
+    public void start()
+    {
+        startTime = System.currentTimeMillis();
+        final Thread t = new Thread(this::resolve, SessionConnector.class.getSimpleName());
+        t.setDaemon(true);
+        t.start();
+    }
+
+    public boolean isDcp()
+    {
+        return port == ConnectionIf.DCP_PORT;
+    }
+
+    /**
+     * Procedure returns the resolved address of the connected host
+     */
+    @NonNull
+    public String getHost()
+    {
+        return address;
+    }
+
+    public int getPort()
+    {
+        return port;
+    }
+
+    @NonNull
+    public String getHostAndPort()
+    {
+        return Utils.ipToString(address, port);
+    }
+
+    /**
+     * Procedure returns true if the device was connected on an other host than the preferred one
+     */
+    public boolean isMoved()
+    {
+        return socket != null && !address.equals(preferredAddress);
+    }
+
+    /**
+     * Procedure returns the connected socket of the device port
+     */
+    @NonNull
+    public SocketChannel getSocket()
+    {
+        return socket;
+    }
+
+    /**
+     * Procedure returns the connected socket of the HEOS port, if any
+     */
+    @Nullable
+    public SocketChannel getHeosSocket()
+    {
+        return heosSocket;
+    }
+
+    /**
+     * Procedure closes the sockets of a session that is not used
+     */
+    public void close()
+    {
+        close(socket);
+        close(heosSocket);
+        socket = null;
+        heosSocket = null;
+    }
+
+    private void resolve()
+    {
+        final List<String> addresses = new ArrayList<>();
+        for (String h : hosts)
+        {
+            try
+            {
+                final String a = InetAddress.getByName(h).getHostAddress();
+                if (h.equals(hosts.get(0)))
+                {
+                    preferredAddress = a;
+                }
+                if (!addresses.contains(a))
+                {
+                    addresses.add(a);
+                }
+            }
+            catch (Exception e)
+            {
+                failure = "cannot resolve " + h + ": " + e.getLocalizedMessage();
+                Logging.info(this, failure);
+            }
+        }
+        if (addresses.isEmpty())
+        {
+            finish();
+            return;
+        }
+        address = addresses.get(0);
+        resolveTime = System.currentTimeMillis() - startTime;
+        final long timeout = Math.max(1, CONNECTION_TIMEOUT - resolveTime);
+
+        synchronized (this)
+        {
+            pending = isDcp() ? 2 : 1;
+        }
+        final EndpointRacer racer = new EndpointRacer(Utils.ipToString(hosts.get(0), port));
+        for (String a : addresses)
+        {
+            racer.add(a, port);
+        }
+        racer.start(timeout, new EndpointRacer.Callback()
+        {
+            @Override
+            public void onConnected(@NonNull SocketChannel s, @NonNull String host, int p)
+            {
+                socket = s;
+                address = host;
+                connectTime = System.currentTimeMillis() - startTime;
+                onPhaseFinished();
+            }
+
+            @Override
+            public void onFailed(@NonNull String reason)
+            {
+                failure = reason;
+                onPhaseFinished();
+            }
+        });
+        if (isDcp())
+        {
+            // Optional connection to HEOS port of the preferred host
+            connectHeos(addresses.get(0), timeout);
+        }
+    }
+
+    private void connectHeos(@NonNull final String host, final long timeout)
+    {
+        heosAddress = host;
+        SocketConnector.getInstance().connect(host, ConnectionIf.DCP_HEOS_PORT, timeout,
+                new SocketConnector.Callback()
+                {
+                    @Override
+                    public void onConnected(@NonNull SocketChannel s)
+                    {
+                        heosSocket = s;
+                        heosConnectTime = System.currentTimeMillis() - startTime;
+                        onPhaseFinished();
+                    }
+
+                    @Override
+                    public void onFailed(@NonNull String reason)
+                    {
+                        onPhaseFinished();
+                    }
+                });
+    }
+
+    private void onPhaseFinished()
+    {
+        synchronized (this)
+        {
+            pending--;
+            if (pending > 0)
+            {
+                return;
+            }
+            if (isDcp() && socket != null && !address.equals(heosAddress))
+            {
+                // An other host won the race: the HEOS port is connected on this host
+                // within the time that is left until the common deadline
+                close(heosSocket);
+                heosSocket = null;
+                final long timeout = CONNECTION_TIMEOUT - (System.currentTimeMillis() - startTime);
+                if (timeout > 0)
+                {
+                    pending = 1;
+                    connectHeos(address, timeout);
+                    return;
+                }
+            }
+        }
+        finish();
+    }
+
+    private void finish()
+    {
+        final long totalTime = System.currentTimeMillis() - startTime;
+        if (socket == null)
+        {
+            close();
+            Logging.info(this, "no response from {} after {}ms: {}", getHostAndPort(), totalTime, failure);
+            listener.onFailed(this);
+            return;
+        }
+        Logging.info(this, "connected to " + getHostAndPort() + " in " + totalTime + "ms: "
+                + "resolve " + resolveTime + "ms, "
+                + (isDcp() ? "DCP " : "ISCP ") + connectTime + "ms"
+                + (isDcp() ? ", HEOS " + (heosSocket != null ? heosConnectTime + "ms" : "not available") : ""));
+        listener.onConnected(this);
+    }
+
+    private static void close(@Nullable final SocketChannel s)
+    {
+        if (s != null)
+        {
+            try
+            {
+                s.close();
+            }
+            catch (Exception e)
+            {
+                // nothing to do
+            }
+        }
+    }
+}
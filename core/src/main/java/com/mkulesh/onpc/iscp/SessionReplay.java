@@ -0,0 +1,389 @@
+/*
+ * Enhanced Music Controller
+ * Copyright (C) 2018-2023 by Mikhail Kulesh
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with this program.
+ */
+
+package com.mkulesh.onpc.iscp;
+
+import com.jayway.jsonpath.JsonPath;
+import com.mkulesh.onpc.iscp.messages.DCPMessageFactory;
+import com.mkulesh.onpc.iscp.messages.MessageFactory;
+import com.mkulesh.onpc.utils.Logging;
+import com.mkulesh.onpc.utils.Utils;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Deterministic replay of a captured protocol session. Inbound ISCP, DCP and HEOS data
+ * is passed through the same frame decoders and message factories as used by the message
+ * channels, and the resulting messages are applied to a new State like the state manager
+ * does. Outbound data and HTTP responses are not replayed: the answers of the device are
+ * already part of the capture.
+ *
+ * The replay is a part of the protocol core and can be started on a plain JVM. No cover
+ * loader is set, i.e. cover images are not loaded. The resource IDs are only needed
+ * on the class path:
+ * java -cp core.jar:core-resource-ids.jar:libs com.mkulesh.onpc.iscp.SessionReplay capture.bin [--fast] [--runs N]
+ */
+public class SessionReplay
+{
+    public enum Timing
+    {
+        RECORDED, // records are processed at the time they were captured
+        FAST      // records are processed as fast as possible
+    }
+
+    public static class Report
+    {
+        public int records, messages, errors;
+        public final Map<State.ChangeType, Integer> changes = new EnumMap<>(State.ChangeType.class);
+        public long elapsedNanos, allocatedBytes = -1;
+        public long p50, p90, p99, maxLatency;
+        public String digest;
+
+        public double getMessagesPerSecond()
+        {
+            return elapsedNanos > 0 ? messages * 1.0e9 / elapsedNanos : 0;
+        }
+
+        @NonNull
+        @Override
+        public String toString()
+        {
+            return String.format(Locale.ENGLISH,
+                    "records=%d, messages=%d, errors=%d, time=%.1fms, rate=%.0f msg/s%n"
+                            + "latency: p50=%.1fus, p90=%.1fus, p99=%.1fus, max=%.1fus%n"
+                            + "allocated=%s, changes=%s%n"
+                            + "state digest=%s",
+                    records, messages, errors, elapsedNanos / 1.0e6, getMessagesPerSecond(),
+                    p50 / 1.0e3, p90 / 1.0e3, p99 / 1.0e3, maxLatency / 1.0e3,
+                    allocatedBytes < 0 ? "n/a" : allocatedBytes + "B", changes, digest);
+        }
+    }
+
+    private interface MessageListener
+    {
+        void onMessage(@NonNull ISCPMessage msg, long start);
+    }
+
+    private final List<CaptureReader.Record> records;
+    private final int zone;
+
+    // replay state, reset for every run
+    private State state;
+    private IscpFrameDecoder iscpDecoder;
+    private DcpFrameDecoder dcpDecoder, heosDecoder;
+    private DCPMessageFactory dcpMessageFactory;
+    private Integer heosPid;
+    private Report report;
+    private long[] latencies;
+
+    public SessionReplay(@NonNull final File capture, final int zone) throws Exception
+    {
+        this.records = CaptureReader.read(capture);
+        this.zone = zone;
+    }
+
+    @NonNull
+    public Report run(@NonNull final Timing timing) throws InterruptedException
+    {
+        reset();
+        state = newState();
+        latencies = new long[Math.max(16, records.size())];
+
+        final long allocatedStart = getAllocatedBytes();
+        final long startTime = System.nanoTime();
+        for (CaptureReader.Record r : records)
+        {
+            if (r.direction != ProtocolRecorder.Direction.IN)
+            {
+                continue;
+            }
+            if (timing == Timing.RECORDED)
+            {
+                final long delay = r.time - (System.nanoTime() - startTime);
+                if (delay > 0)
+                {
+                    Thread.sleep(delay / 1000000, (int) (delay % 1000000));
+                }
+            }
+            report.records++;
+            processRecord(r, this::processMessage);
+        }
+        report.elapsedNanos = System.nanoTime() - startTime;
+        final long allocatedEnd = getAllocatedBytes();
+        if (allocatedStart >= 0 && allocatedEnd >= 0)
+        {
+            report.allocatedBytes = allocatedEnd - allocatedStart;
+        }
+
+        final long[] sorted = Arrays.copyOf(latencies, report.messages);
+        Arrays.sort(sorted);
+        report.p50 = getPercentile(sorted, 50);
+        report.p90 = getPercentile(sorted, 90);
+        report.p99 = getPercentile(sorted, 99);
+        report.maxLatency = sorted.length > 0 ? sorted[sorted.length - 1] : 0;
+        report.digest = getStateDigest(state);
+        return report;
+    }
+
+    /**
+     * Decodes the inbound records without applying the messages to a state. The messages
+     * can be applied to a new state (see newState) in order to measure State.update
+     * separately from the frame decoding.
+     */
+    @NonNull
+    public List<ISCPMessage> decodeMessages()
+    {
+        reset();
+        final List<ISCPMessage> messages = new ArrayList<>();
+        for (CaptureReader.Record r : records)
+        {
+            if (r.direction == ProtocolRecorder.Direction.IN)
+            {
+                processRecord(r, (msg, start) -> messages.add(msg));
+            }
+        }
+        return messages;
+    }
+
+    @NonNull
+    public State newState()
+    {
+        final ConnectionIf.ProtoType protoType = getProtoType();
+        return new State(protoType, "replay",
+                protoType == ConnectionIf.ProtoType.DCP ? ConnectionIf.DCP_PORT : ConnectionIf.ISCP_PORT, zone);
+    }
+
+    private void reset()
+    {
+        iscpDecoder = new IscpFrameDecoder();
+        dcpDecoder = new DcpFrameDecoder();
+        heosDecoder = new DcpFrameDecoder();
+        dcpMessageFactory = new DCPMessageFactory();
+        dcpMessageFactory.prepare(zone);
+        heosPid = null;
+        report = new Report();
+    }
+
+    @NonNull
+    private ConnectionIf.ProtoType getProtoType()
+    {
+        for (CaptureReader.Record r : records)
+        {
+            if (r.source == ProtocolRecorder.Source.DCP || r.source == ProtocolRecorder.Source.HEOS)
+            {
+                return ConnectionIf.ProtoType.DCP;
+            }
+        }
+        return ConnectionIf.ProtoType.ISCP;
+    }
+
+    private void processRecord(@NonNull final CaptureReader.Record r, @NonNull final MessageListener listener)
+    {
+        switch (r.source)
+        {
+        case ISCP:
+            iscpDecoder.decode(r.data, 0, r.data.length, (raw, remaining) ->
+            {
+                final long start = System.nanoTime();
+                try
+                {
+                    listener.onMessage(MessageFactory.create(raw), start);
+                }
+                catch (Exception e)
+                {
+                    report.errors++;
+                }
+            });
+            break;
+        case DCP:
+        case HEOS:
+            final DcpFrameDecoder decoder = r.source == ProtocolRecorder.Source.HEOS ? heosDecoder : dcpDecoder;
+            decoder.decode(r.data, 0, r.data.length, (dcpMsg, remaining) ->
+            {
+                final long start = System.nanoTime();
+                if (heosPid == null && dcpMsg.startsWith(MessageChannelDcp.DCP_HEOS_RESPONSE)
+                        && dcpMsg.contains("player/get_players"))
+                {
+                    try
+                    {
+                        heosPid = JsonPath.read(dcpMsg, "$.payload[0].pid");
+                    }
+                    catch (Exception e)
+                    {
+                        report.errors++;
+                    }
+                }
+                for (ISCPMessage msg : dcpMessageFactory.convertInputMsg(dcpMsg, heosPid))
+                {
+                    listener.onMessage(msg, start);
+                }
+            });
+            break;
+        default:
+            break;
+        }
+    }
+
+    private void processMessage(@NonNull final ISCPMessage msg, final long start)
+    {
+        try
+        {
+            final State.ChangeType changed = state.update(msg);
+            final Integer count = report.changes.get(changed);
+            report.changes.put(changed, count == null ? 1 : count + 1);
+        }
+        catch (Exception e)
+        {
+            report.errors++;
+        }
+        if (report.messages == latencies.length)
+        {
+            latencies = Arrays.copyOf(latencies, 2 * latencies.length);
+        }
+        latencies[report.messages++] = System.nanoTime() - start;
+    }
+
+    private static long getPercentile(@NonNull final long[] sorted, int percentile)
+    {
+        if (sorted.length == 0)
+        {
+            return 0;
+        }
+        final int idx = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, idx))];
+    }
+
+    /**
+     * The allocated bytes of the current thread are only available on a JVM that provides
+     * com.sun.management.ThreadMXBean. Otherwise, -1 is returned.
+     */
+    private static long getAllocatedBytes()
+    {
+        try
+        {
+            final Object bean = Class.forName("java.lang.management.ManagementFactory")
+                    .getMethod("getThreadMXBean").invoke(null);
+            final Method m = Class.forName("com.sun.management.ThreadMXBean")
+                    .getMethod("getThreadAllocatedBytes", long.class);
+            return (Long) m.invoke(bean, Thread.currentThread().getId());
+        }
+        catch (Throwable e)
+        {
+            return -1;
+        }
+    }
+
+    /**
+     * The digest covers all scalar fields of the state and the sizes of its collections.
+     * Two replays of the same capture shall result in the same digest.
+     */
+    @NonNull
+    static String getStateDigest(@NonNull final State state)
+    {
+        final Field[] fields = State.class.getDeclaredFields();
+        Arrays.sort(fields, (lhs, rhs) -> lhs.getName().compareTo(rhs.getName()));
+        final StringBuilder str = new StringBuilder();
+        for (Field f : fields)
+        {
+            if (Modifier.isStatic(f.getModifiers()))
+            {
+                continue;
+            }
+            try
+            {
+                f.setAccessible(true);
+                final Object value = f.get(state);
+                final Class<?> type = f.getType();
+                if (type.isPrimitive() || type.isEnum() || value instanceof String || value instanceof Number
+                        || value instanceof Boolean)
+                {
+                    str.append(f.getName()).append('=').append(value).append(';');
+                }
+                else if (value instanceof Collection)
+                {
+                    str.append(f.getName()).append('#').append(((Collection<?>) value).size()).append(';');
+                }
+                else if (value instanceof Map)
+                {
+                    str.append(f.getName()).append('#').append(((Map<?, ?>) value).size()).append(';');
+                }
+            }
+            catch (Exception e)
+            {
+                // field is not accessible: not part of the digest
+            }
+        }
+        try
+        {
+            final MessageDigest md = MessageDigest.getInstance("MD5");
+            final StringBuilder hex = new StringBuilder();
+            for (byte b : md.digest(str.toString().getBytes(Utils.UTF_8)))
+            {
+                hex.append(Integer.toHexString((b & 0xFF) | 0x100).substring(1));
+            }
+            return hex.toString();
+        }
+        catch (Exception e)
+        {
+            return Integer.toHexString(str.toString().hashCode());
+        }
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length == 0)
+        {
+            System.out.println("Usage: SessionReplay <capture file> [--fast] [--zone N] [--runs N]");
+            return;
+        }
+        Timing timing = Timing.RECORDED;
+        int zone = 0, runs = 1;
+        for (int i = 1; i < args.length; i++)
+        {
+            if ("--fast".equals(args[i]))
+            {
+                timing = Timing.FAST;
+            }
+            else if ("--zone".equals(args[i]) && i + 1 < args.length)
+            {
+                zone = Integer.parseInt(args[++i]);
+            }
+            else if ("--runs".equals(args[i]) && i + 1 < args.length)
+            {
+                runs = Integer.parseInt(args[++i]);
+            }
+        }
+        // The logging of every message would distort the replay time
+        Logging.setLevel(Logging.Level.NONE);
+        final SessionReplay replay = new SessionReplay(new File(args[0]), zone);
+        for (int i = 1; i <= runs; i++)
+        {
+            System.out.println("Run " + i + "/" + runs + " (" + timing + "):");
+            System.out.println(replay.run(timing));
+        }
+    }
+}
@@ -0,0 +1,453 @@
+/*
+ * Enhanced Music Controller
+ * Copyright (C) 2018-2023 by Mikhail Kulesh
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with this program.
+ */
+
+package com.mkulesh.onpc.iscp;
+
+import com.mkulesh.onpc.utils.Logging;
+import com.mkulesh.onpc.utils.Utils;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Non-blocking TCP connects with a timeout. All connects share one selector thread,
+ * i.e. any number of hosts are connected concurrently without blocking the caller.
+ * A connect can be started with a delay and can be cancelled. Host names are resolved
+ * by resolver threads, i.e. a slow lookup never blocks the selector thread.
+ * The callbacks are called in the connector thread and shall return quickly.
+ */
+public final class SocketConnector implements Runnable
+{
+    public interface Callback
+    {
+        void onConnected(@NonNull final SocketChannel socket);
+
+        void onFailed(@NonNull final String reason);
+    }
+
+    private static class Request
+    {
+        final String host;
+        final int port;
+        long startTime;
+        final long timeout;
+        final Callback callback;
+        long deadline;
+        SocketChannel socket = null;
+        // Set by the resolver before resolved is set
+        volatile InetAddress address = null;
+        volatile String error = null;
+        volatile boolean resolved = false;
+
+        Request(@NonNull final String host, final int port, final long delay, final long timeout,
+                @NonNull final Callback callback)
+        {
+            this.host = host;
+            this.port = port;
+            this.startTime = System.currentTimeMillis() + delay;
+            this.timeout = timeout;
+            this.callback = callback;
+        }
+    }
+
+    private final static int RESOLVER_THREADS = 2;
+    private final static Pattern IPV4_ADDRESS = Pattern.compile("\\d{1,3}(\\.\\d{1,3}){3}");
+
+    private static SocketConnector instance = null;
+
+    // Host names are resolved outside of the selector thread: a slow lookup delays only its own connect
+    private final ExecutorService resolver = Executors.newFixedThreadPool(RESOLVER_THREADS, r ->
+    {
+        final Thread t = new Thread(r, SocketConnector.class.getSimpleName() + "-resolver");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final ConcurrentLinkedQueue<Request> requests = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Callback> cancelled = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Callback> expedited = new ConcurrentLinkedQueue<>();
+    private final List<Request> delayed = new ArrayList<>();
+    private final List<Request> pending = new ArrayList<>();
+    private Selector selector = null;
+
+    private SocketConnector()
+    {
+        // use getInstance
+    }
+
+    @NonNull
+    public static synchronized SocketConnector getInstance()
+    {
+        if (instance == null)
+        {
+            instance = new SocketConnector();
+            final Thread t = new Thread(instance, SocketConnector.class.getSimpleName());
+            t.setDaemon(true);
+            t.start();
+        }
+        return instance;
+    }
+
+    /**
+     * Procedure starts a connection. The callback is called exactly once: with the connected
+     * non-blocking socket or with the failure reason if the connection is refused or is not
+     * established within the timeout.
+     */
+    public void connect(@NonNull final String host, final int port, final long timeout, @NonNull final Callback callback)
+    {
+        connect(host, port, 0, timeout, callback);
+    }
+
+    /**
+     * Procedure connects the socket and blocks the calling thread until the connection is
+     * established or failed. The calling thread waits on the callback, i.e. it does not poll.
+     *
+     * @return the connected socket in non-blocking mode
+     * @throws IOException if the connection is refused, is not established within the timeout
+     * or the calling thread is interrupted
+     */
+    @NonNull
+    public SocketChannel connectAndWait(@NonNull final String host, final int port, final long timeout)
+            throws IOException
+    {
+        final SocketChannel[] result = new SocketChannel[1];
+        final String[] error = new String[1];
+        final boolean[] abandoned = new boolean[]{ false };
+        final CountDownLatch finished = new CountDownLatch(1);
+        final Callback callback = new Callback()
+        {
+            @Override
+            public void onConnected(@NonNull SocketChannel socket)
+            {
+                synchronized (result)
+                {
+                    if (abandoned[0])
+                    {
+                        try
+                        {
+                            socket.close();
+                        }
+                        catch (IOException e)
+                        {
+                            // nothing to do
+                        }
+                        return;
+                    }
+                    result[0] = socket;
+                }
+                finished.countDown();
+            }
+
+            @Override
+            public void onFailed(@NonNull String reason)
+            {
+                error[0] = reason;
+                finished.countDown();
+            }
+        };
+        connect(host, port, timeout, callback);
+        try
+        {
+            // The connector enforces the timeout: the additional time covers the selector delay
+            if (finished.await(timeout + 1000, TimeUnit.MILLISECONDS))
+            {
+                if (result[0] != null)
+                {
+                    return result[0];
+                }
+                throw new IOException(error[0]);
+            }
+        }
+        catch (InterruptedException e)
+        {
+            // the caller shall see that it was interrupted
+            Thread.currentThread().interrupt();
+        }
+        cancel(callback);
+        synchronized (result)
+        {
+            if (result[0] != null)
+            {
+                return result[0];
+            }
+            abandoned[0] = true;
+        }
+        throw new IOException("connection interrupted");
+    }
+
+    /**
+     * Procedure starts a connection after the given delay. The timeout is counted from the start.
+     */
+    public void connect(@NonNull final String host, final int port, final long delay, final long timeout,
+                        @NonNull final Callback callback)
+    {
+        final Request r = new Request(host, port, delay, timeout, callback);
+        requests.add(r);
+        if (IPV4_ADDRESS.matcher(host).matches() || host.indexOf(':') >= 0)
+        {
+            // an address literal is converted without a lookup
+            resolve(r);
+        }
+        else
+        {
+            resolver.submit(() -> resolve(r));
+        }
+    }
+
+    private void resolve(@NonNull final Request r)
+    {
+        try
+        {
+            r.address = InetAddress.getByName(r.host);
+        }
+        catch (Exception e)
+        {
+            r.error = "cannot resolve " + r.host + ": " + e.getLocalizedMessage();
+        }
+        r.resolved = true;
+        wakeup();
+    }
+
+    /**
+     * Procedure cancels all connections of the given callback that are not finished yet.
+     * The callback is not called for cancelled connections.
+     */
+    public void cancel(@NonNull final Callback callback)
+    {
+        cancelled.add(callback);
+        wakeup();
+    }
+
+    /**
+     * Procedure starts the delayed connections of the given callback immediately
+     */
+    public void expedite(@NonNull final Callback callback)
+    {
+        expedited.add(callback);
+        wakeup();
+    }
+
+    private void wakeup()
+    {
+        synchronized (this)
+        {
+            if (selector != null)
+            {
+                selector.wakeup();
+            }
+        }
+    }
+
+    @Override
+    public void run()
+    {
+        try
+        {
+            synchronized (this)
+            {
+                selector = Selector.open();
+            }
+        }
+        catch (IOException e)
+        {
+            Logging.info(this, "Can not open selector: {}", e);
+            return;
+        }
+
+        while (true)
+        {
+            try
+            {
+                Request r;
+                while ((r = requests.poll()) != null)
+                {
+                    delayed.add(r);
+                }
+                Callback c;
+                while ((c = cancelled.poll()) != null)
+                {
+                    cancel(delayed, c);
+                    cancel(pending, c);
+                }
+                while ((c = expedited.poll()) != null)
+                {
+                    for (Request d : delayed)
+                    {
+                        if (d.callback == c)
+                        {
+                            d.startTime = 0;
+                        }
+                    }
+                }
+
+                long timeout = 0;
+                final long now = System.currentTimeMillis();
+                for (Request d : new ArrayList<>(delayed))
+                {
+                    if (!d.resolved)
+                    {
+                        // the resolver wakes up the selector
+                        continue;
+                    }
+                    if (now >= d.startTime)
+                    {
+                        delayed.remove(d);
+                        start(d);
+                        continue;
+                    }
+                    final long t = d.startTime - now;
+                    timeout = timeout == 0 ? t : Math.min(timeout, t);
+                }
+                for (Request p : pending)
+                {
+                    final long t = Math.max(1, p.deadline - now);
+                    timeout = timeout == 0 ? t : Math.min(timeout, t);
+                }
+                selector.select(timeout);
+
+                for (SelectionKey key : selector.selectedKeys())
+                {
+                    final Request p = (Request) key.attachment();
+                    try
+                    {
+                        if (p.socket.finishConnect())
+                        {
+                            pending.remove(p);
+                            finish(p, null);
+                        }
+                    }
+                    catch (IOException e)
+                    {
+                        pending.remove(p);
+                        finish(p, e.getLocalizedMessage());
+                    }
+                }
+                selector.selectedKeys().clear();
+
+                final long currTime = System.currentTimeMillis();
+                final List<Request> expired = new ArrayList<>();
+                for (Request p : pending)
+                {
+                    if (currTime >= p.deadline)
+                    {
+                        expired.add(p);
+                    }
+                }
+                for (Request p : expired)
+                {
+                    pending.remove(p);
+                    finish(p, "connection timeout");
+                }
+            }
+            catch (Exception e)
+            {
+                Logging.info(this, "error: {}", e.getLocalizedMessage());
+            }
+        }
+    }
+
+    private void cancel(@NonNull final List<Request> list, @NonNull final Callback callback)
+    {
+        for (Request r : new ArrayList<>(list))
+        {
+            if (r.callback != callback)
+            {
+                continue;
+            }
+            list.remove(r);
+            if (r.socket != null)
+            {
+                try
+                {
+                    r.socket.close();
+                }
+                catch (IOException e)
+                {
+                    // nothing to do
+                }
+            }
+            Logging.info(this, "cancelled {}", Utils.ipToString(r.host, r.port));
+        }
+    }
+
+    private void start(@NonNull final Request r)
+    {
+        if (r.error != null)
+        {
+            finish(r, r.error);
+            return;
+        }
+        try
+        {
+            r.deadline = System.currentTimeMillis() + r.timeout;
+            r.socket = SocketChannel.open();
+            r.socket.configureBlocking(false);
+            if (r.socket.connect(new InetSocketAddress(r.address, r.port)))
+            {
+                finish(r, null);
+                return;
+            }
+            r.socket.register(selector, SelectionKey.OP_CONNECT, r);
+            pending.add(r);
+        }
+        catch (Exception e)
+        {
+            finish(r, e.getLocalizedMessage());
+        }
+    }
+
+    private void finish(@NonNull final Request r, final String error)
+    {
+        if (error == null)
+        {
+            // The socket is handed over in non-blocking mode; its key is cancelled
+            // and deregistered with the next selection
+            final SelectionKey key = r.socket.keyFor(selector);
+            if (key != null)
+            {
+                key.cancel();
+            }
+            Logging.info(this, "connected to {}", Utils.ipToString(r.host, r.port));
+            r.callback.onConnected(r.socket);
+            return;
+        }
+        Logging.info(this, "no response from {}: {}", Utils.ipToString(r.host, r.port), error);
+        if (r.socket != null)
+        {
+            try
+            {
+                r.socket.close();
+            }
+            catch (IOException e)
+            {
+                // nothing to do
+            }
+        }
+        r.callback.onFailed(error == null ? "unknown error" : error);
+    }
+}
@@ -14,10 +14,6 @@
 
 package com.mkulesh.onpc.iscp;
 
-import android.annotation.SuppressLint;
-import android.content.Context;
-import android.graphics.Bitmap;
-
 import com.mkulesh.onpc.R;
 import com.mkulesh.onpc.iscp.messages.AlbumNameMsg;
 import com.mkulesh.onpc.iscp.messages.ArtistNameMsg;
@@ -77,9 +73,10 @@ import com.mkulesh.onpc.iscp.messages.VideoInformationMsg;
 import com.mkulesh.onpc.iscp.messages.XmlListInfoMsg;
 import com.mkulesh.onpc.iscp.messages.XmlListItemMsg;
 import com.mkulesh.onpc.utils.Logging;
+import com.mkulesh.onpc.utils.Pair;
+import com.mkulesh.onpc.utils.StringResourceIf;
 import com.mkulesh.onpc.utils.Utils;
 
-import java.io.ByteArrayOutputStream;
 import java.net.URL;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
@@ -90,12 +87,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.concurrent.atomic.AtomicReference;
 
 import androidx.annotation.DrawableRes;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
-import androidx.core.util.Pair;
 
 public class State implements ConnectionIf
 {
@@ -114,11 +111,90 @@ public class State implements ConnectionIf
         MULTIROOM_INFO
     }
 
+    // Fields that are rendered separately. Each field has a version that is incremented
+    // on every change, so a view can compare the version it has rendered with the actual one.
+    // OTHER covers all state fields that are not listed separately.
+    public enum Field
+    {
+        VOLUME,
+        TRACK,
+        COVER,
+        TIME,
+        MEDIA_LIST,
+        PRESETS,
+        OTHER;
+
+        public int getMask()
+        {
+            return 1 << ordinal();
+        }
+    }
+
+    public final static int ALL_FIELDS = (1 << Field.values().length) - 1;
+    private final AtomicIntegerArray fieldVersions = new AtomicIntegerArray(Field.values().length);
+
+    /**
+     * An immutable copy of the scalar fields that the GUI reads: connection, power, input, volume,
+     * track and playback status. The state manager thread publishes a new snapshot after each message
+     * that changed the state, so that the GUI thread sees the fields of one message together.
+     */
+    public static final class Snapshot
+    {
+        public final boolean reconnecting;
+        public final PowerStatusMsg.PowerStatus powerStatus;
+        public final InputSelectorMsg.InputType inputType;
+        public final int volumeLevel;
+        public final AudioMutingMsg.Status audioMuting;
+        public final ListeningModeMsg.Mode listeningMode;
+        public final String album, artist, title, fileFormat, stationName;
+        public final String currentTime, maxTime;
+        public final PlayStatusMsg.PlayStatus playStatus;
+        public final PlayStatusMsg.RepeatStatus repeatStatus;
+        public final PlayStatusMsg.ShuffleStatus shuffleStatus;
+        public final MenuStatusMsg.TimeSeek timeSeek;
+
+        private Snapshot(@NonNull final State s)
+        {
+            reconnecting = s.reconnecting;
+            powerStatus = s.powerStatus;
+            inputType = s.inputType;
+            volumeLevel = s.volumeLevel;
+            audioMuting = s.audioMuting;
+            listeningMode = s.listeningMode;
+            album = s.album;
+            artist = s.artist;
+            title = s.title;
+            fileFormat = s.fileFormat;
+            stationName = s.stationName;
+            currentTime = s.currentTime;
+            maxTime = s.maxTime;
+            playStatus = s.playStatus;
+            repeatStatus = s.repeatStatus;
+            shuffleStatus = s.shuffleStatus;
+            timeSeek = s.timeSeek;
+        }
+
+        public boolean isOn()
+        {
+            return powerStatus == PowerStatusMsg.PowerStatus.ON;
+        }
+
+        public boolean isPlaying()
+        {
+            return playStatus != PlayStatusMsg.PlayStatus.STOP;
+        }
+    }
+
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+
     // connected host (ConnectionIf)
     public final ProtoType protoType;
     private final String host;
     private final int port;
 
+    // The connection is broken and is being re-established
+    private boolean reconnecting = false;
+
     // Receiver Information
     public String receiverInformation = "";
     String friendlyName = null;
@@ -127,6 +203,8 @@ public class State implements ConnectionIf
     private final int activeZone;
     private List<ReceiverInformationMsg.Zone> zones = new ArrayList<>();
     private final List<ReceiverInformationMsg.Selector> deviceSelectors = new ArrayList<>();
+    private final AtomicReference<List<ReceiverInformationMsg.Selector>> deviceSelectorsSnapshot =
+            new AtomicReference<>(Collections.emptyList());
     private Set<String> controlList = new HashSet<>();
     private HashMap<String, ReceiverInformationMsg.ToneControl> toneControls = new HashMap<>();
 
@@ -176,11 +254,13 @@ public class State implements ConnectionIf
     private String privacyPolicy = PrivacyPolicyStatusMsg.Status.NONE.getCode();
 
     // Track info (default values are set in clearTrackInfo method)
-    public Bitmap cover;
+    public Object cover; // platform-dependent image, a Bitmap on Android
     private URL coverUrl = null;
+    private int coverRequest = 0;
+    private CoverLoaderIf coverLoader = null; // covers are not loaded if not set
     public String album, artist, title, currentTime, maxTime, fileFormat;
     Integer currentTrack = null, maxTrack = null;
-    private ByteArrayOutputStream coverBuffer = null;
+    private final CoverBuffer coverBuffer = new CoverBuffer();
 
     // Radio
     public DcpTunerModeMsg.TunerMode dcpTunerMode = DcpTunerModeMsg.TunerMode.NONE;
@@ -207,8 +287,14 @@ public class State implements ConnectionIf
     public int numberOfItems = 0;
     private int currentCursorPosition = 0;
     public String titleBar = "";
+    // The lists below are only modified by the state manager thread. Other threads
+    // read the immutable snapshots that are published after each modification.
     private final List<XmlListItemMsg> mediaItems = new ArrayList<>();
+    private final AtomicReference<List<XmlListItemMsg>> mediaItemsSnapshot =
+            new AtomicReference<>(Collections.emptyList());
     final List<NetworkServiceMsg> serviceItems = new ArrayList<>();
+    private final AtomicReference<List<NetworkServiceMsg>> serviceItemsSnapshot =
+            new AtomicReference<>(Collections.emptyList());
     private final List<String> listInfoItems = new ArrayList<>();
 
     // Path used for shortcuts
@@ -247,13 +333,14 @@ public class State implements ConnectionIf
     private static final ReceiverInformationMsg.ToneControl DEFAULT_TREBLE_CONTROL =
             new ReceiverInformationMsg.ToneControl(ToneCommandMsg.TREBLE_KEY, -10, 10, 2);
 
-    State(final ProtoType protoType, final String host, int port, int activeZone)
+    public State(final ProtoType protoType, final String host, int port, int activeZone)
     {
         this.protoType = protoType;
         this.host = host;
         this.port = port;
         this.activeZone = activeZone;
         clearTrackInfo();
+        publishSnapshot();
     }
 
     @NonNull
@@ -269,6 +356,11 @@ public class State implements ConnectionIf
         return port;
     }
 
+    public void setCoverLoader(@Nullable final CoverLoaderIf coverLoader)
+    {
+        this.coverLoader = coverLoader;
+    }
+
     @NonNull
     @Override
     public String getHostAndPort()
@@ -390,7 +482,7 @@ public class State implements ConnectionIf
         return "";
     }
 
-    public void createDefaultReceiverInfo(final Context context, final boolean forceAudioControl)
+    public void createDefaultReceiverInfo(final StringResourceIf strings, final boolean forceAudioControl)
     {
         // By default, add all possible device selectors
         synchronized (deviceSelectors)
@@ -409,11 +501,12 @@ public class State implements ConnectionIf
                     final int zones = it == InputSelectorMsg.InputType.SOURCE ?
                             ReceiverInformationMsg.EXT_ZONES : ReceiverInformationMsg.ALL_ZONES;
                     final ReceiverInformationMsg.Selector s = new ReceiverInformationMsg.Selector(
-                            it.getCode(), context.getString(it.getDescriptionId()),
+                            it.getCode(), strings.getString(it.getDescriptionId()),
                             zones, it.getCode(), false);
                     deviceSelectors.add(s);
                 }
             }
+            publish(deviceSelectors, deviceSelectorsSnapshot);
         }
         // Add default bass and treble limits
         toneControls.clear();
@@ -486,6 +579,8 @@ public class State implements ConnectionIf
     {
         cover = null;
         coverUrl = null;
+        // an image that is still loading is outdated
+        coverRequest++;
         album = "";
         artist = "";
         title = "";
@@ -497,255 +592,230 @@ public class State implements ConnectionIf
         titleBar = "";
     }
 
-    public ChangeType update(ISCPMessage msg)
+    // Message handlers: each handler processes a message of the given class and returns the change type.
+    // In addition, the handler defines the state fields that can be affected by its message.
+    private interface MessageHandler<T extends ISCPMessage>
     {
-        if (!(msg instanceof TimeInfoMsg) && !(msg instanceof JacketArtMsg))
-        {
-            Logging.info(msg, "<< " + msg.toString());
-            if (msg.isMultiline())
-            {
-                msg.logParameters();
-            }
-        }
-        else if (msg instanceof TimeInfoMsg && Logging.isTimeMsgEnabled())
-        {
-            Logging.info(msg, "<< " + msg);
-        }
+        ChangeType process(@NonNull State state, @NonNull T msg);
+    }
 
-        //Common
-        if (msg instanceof PowerStatusMsg)
-        {
-            return isCommonChange(process((PowerStatusMsg) msg));
-        }
-        if (msg instanceof FirmwareUpdateMsg)
-        {
-            return isCommonChange(process((FirmwareUpdateMsg) msg));
-        }
-        if (msg instanceof ReceiverInformationMsg)
-        {
-            return process((ReceiverInformationMsg) msg, true) ? ChangeType.RECEIVER_INFO : ChangeType.NONE;
-        }
-        if (msg instanceof FriendlyNameMsg)
+    private static class Handler
+    {
+        final int fields;
+        final MessageHandler<ISCPMessage> handler;
+
+        Handler(int fields, MessageHandler<ISCPMessage> handler)
         {
-            return isCommonChange(process((FriendlyNameMsg) msg));
+            this.fields = fields;
+            this.handler = handler;
         }
+    }
+
+    private final static Map<Class<? extends ISCPMessage>, Handler> handlers = new HashMap<>();
+
+    @SuppressWarnings("unchecked")
+    private static <T extends ISCPMessage> void addHandler(
+            @NonNull final Class<T> c, final int fields, @NonNull final MessageHandler<T> handler)
+    {
+        handlers.put(c, new Handler(fields, (MessageHandler<ISCPMessage>) handler));
+    }
+
+    static
+    {
+        addHandler(PowerStatusMsg.class, ALL_FIELDS,
+                (s, msg) -> s.isCommonChange(s.process(msg)));
+        addHandler(FirmwareUpdateMsg.class, Field.OTHER.getMask(),
+                (s, msg) -> s.isCommonChange(s.process(msg)));
+        addHandler(ReceiverInformationMsg.class, ALL_FIELDS,
+                (s, msg) -> s.process(msg, true) ? ChangeType.RECEIVER_INFO : ChangeType.NONE);
+        addHandler(FriendlyNameMsg.class, Field.OTHER.getMask(),
+                (s, msg) -> s.isCommonChange(s.process(msg)));
+        addHandler(ReconnectPolicy.ReconnectingMsg.class, Field.OTHER.getMask(),
+                (s, msg) -> s.isCommonChange(s.setReconnecting(true)));
+        addHandler(ReconnectPolicy.ResumedMsg.class, Field.OTHER.getMask(),
+                (s, msg) -> s.isCommonChange(s.setReconnecting(false)));
 
         // Settings
-        if (msg instanceof DimmerLevelMsg)
-        {
-            return isCommonChange(process((DimmerLevelMsg) msg));
-        }
-        if (msg instanceof DigitalFilterMsg)
-        {
-            return isCommonChange(process((DigitalFilterMsg) msg));
-        }
-        if (msg instanceof AudioMutingMsg)
-        {
-            return isCommonChange(process((AudioMutingMsg) msg));
-        }
-        if (msg instanceof MusicOptimizerMsg)
-        {
-            return isCommonChange(process((MusicOptimizerMsg) msg));
-        }
-        if (msg instanceof AutoPowerMsg)
-        {
-            return isCommonChange(process((AutoPowerMsg) msg));
-        }
-        if (msg instanceof PhaseMatchingBassMsg)
-        {
-            return isCommonChange(process((PhaseMatchingBassMsg) msg));
-        }
-        if (msg instanceof SleepSetCommandMsg)
-        {
-            return isCommonChange(process((SleepSetCommandMsg) msg));
-        }
-        if (msg instanceof HdmiCecMsg)
-        {
-            return isCommonChange(process((HdmiCecMsg) msg));
-        }
-        if (msg instanceof SpeakerACommandMsg)
-        {
-            return isCommonChange(process((SpeakerACommandMsg) msg));
-        }
-        if (msg instanceof SpeakerBCommandMsg)
-        {
-            return isCommonChange(process((SpeakerBCommandMsg) msg));
-        }
-        if (msg instanceof LateNightCommandMsg)
-        {
-            return isCommonChange(process((LateNightCommandMsg) msg));
-        }
-        if (msg instanceof NetworkStandByMsg)
-        {
-            return isCommonChange(process((NetworkStandByMsg) msg));
-        }
+        addHandler(DimmerLevelMsg.class, Field.OTHER.getMask(),
+                (s, msg) -> s.isCommonChange(s.process(msg)));
+        addHandler(DigitalFilterMsg.class, Field.OTHER.getMask(),
+                (s, msg) -> s.isCommonChange(s.process(msg)));
+        addHandler(AudioMutingMsg.class, Field.VOLUME.getMask(),
+                (s, msg) -> s.isCommonChange(s.process(msg)));
+        addHandler(MusicOptimizerMsg.class, Field.OTHER.getMask(),
+                (s, msg) -> s.isCommonChange(s.process(msg)));
+        addHandler(AutoPowerMsg.class, Field.OTHER.getMask(),
+                (s, msg) -> s.isCommonChange(s.process(msg)));
+        addHandler(PhaseMatchingBassMsg.class, Field.OTHER.getMask(),
+                (s, msg) -> s.isCommonChange(s.process(msg)));
+        addHandler(SleepSetCommandMsg.class, Field.OTHER.getMask(),
+                (s, msg) -> s.isCommonChange(s.process(msg)));
+        addHandler(HdmiCecMsg.class, Field.OTHER.getMask(),
+                (s, msg) -> s.isCommonChange(s.process(msg)));
+        addHandler(SpeakerACommandMsg.class, Field.OTHER.getMask(),
+                (s, msg) -> s.isCommonChange(s.process(msg)));
+        addHandler(SpeakerBCommandMsg.class, Field.OTHER.getMask(),
+                (s, msg) -> s.isCommonChange(s.process(msg)));
+        addHandler(LateNightCommandMsg.class, Field.OTHER.getMask(),
+                (s, msg) -> s.isCommonChange(s.process(msg)));
+        addHandler(NetworkStandByMsg.class, Field.OTHER.getMask(),
+                (s, msg) -> s.isCommonChange(s.process(msg)));
 
         // Sound control
-        if (msg instanceof ListeningModeMsg)
-        {
-            return process((ListeningModeMsg) msg) ? ChangeType.AUDIO_CONTROL : ChangeType.NONE;
-        }
-        if (msg instanceof MasterVolumeMsg)
-        {
-            return process((MasterVolumeMsg) msg) ? ChangeType.AUDIO_CONTROL : ChangeType.NONE;
-        }
-        if (msg instanceof DirectCommandMsg)
-        {
-            return process((DirectCommandMsg) msg) ? ChangeType.AUDIO_CONTROL : ChangeType.NONE;
-        }
-        if (msg instanceof ToneCommandMsg)
-        {
-            return process((ToneCommandMsg) msg) ? ChangeType.AUDIO_CONTROL : ChangeType.NONE;
-        }
-        if (msg instanceof SubwooferLevelCommandMsg)
-        {
-            return process((SubwooferLevelCommandMsg) msg) ? ChangeType.AUDIO_CONTROL : ChangeType.NONE;
-        }
-        if (msg instanceof CenterLevelCommandMsg)
-        {
-            return process((CenterLevelCommandMsg) msg) ? ChangeType.AUDIO_CONTROL : ChangeType.NONE;
-        }
+        addHandler(ListeningModeMsg.class, Field.VOLUME.getMask(),
+                (s, msg) -> s.process(msg) ? ChangeType.AUDIO_CONTROL : ChangeType.NONE);
+        addHandler(MasterVolumeMsg.class, Field.VOLUME.getMask(),
+                (s, msg) -> s.process(msg) ? ChangeType.AUDIO_CONTROL : ChangeType.NONE);
+        addHandler(DirectCommandMsg.class, Field.VOLUME.getMask(),
+                (s, msg) -> s.process(msg) ? ChangeType.AUDIO_CONTROL : ChangeType.NONE);
+        addHandler(ToneCommandMsg.class, Field.VOLUME.getMask(),
+                (s, msg) -> s.process(msg) ? ChangeType.AUDIO_CONTROL : ChangeType.NONE);
+        addHandler(SubwooferLevelCommandMsg.class, Field.VOLUME.getMask(),
+                (s, msg) -> s.process(msg) ? ChangeType.AUDIO_CONTROL : ChangeType.NONE);
+        addHandler(CenterLevelCommandMsg.class, Field.VOLUME.getMask(),
+                (s, msg) -> s.process(msg) ? ChangeType.AUDIO_CONTROL : ChangeType.NONE);
 
         // Google cast
-        if (msg instanceof GoogleCastVersionMsg)
-        {
-            return isCommonChange(process((GoogleCastVersionMsg) msg));
-        }
-        if (msg instanceof GoogleCastAnalyticsMsg)
-        {
-            return isCommonChange(process((GoogleCastAnalyticsMsg) msg));
-        }
-        if (msg instanceof PrivacyPolicyStatusMsg)
-        {
-            return isCommonChange(process((PrivacyPolicyStatusMsg) msg));
-        }
+        addHandler(GoogleCastVersionMsg.class, Field.OTHER.getMask(),
+                (s, msg) -> s.isCommonChange(s.process(msg)));
+        addHandler(GoogleCastAnalyticsMsg.class, Field.OTHER.getMask(),
+                (s, msg) -> s.isCommonChange(s.process(msg)));
+        addHandler(PrivacyPolicyStatusMsg.class, Field.OTHER.getMask(),
+                (s, msg) -> s.isCommonChange(s.process(msg)));
 
         // Track info
-        if (msg instanceof JacketArtMsg)
-        {
-            return isCommonChange(process((JacketArtMsg) msg));
-        }
-        if (msg instanceof AlbumNameMsg)
-        {
-            return isCommonChange(process((AlbumNameMsg) msg));
-        }
-        if (msg instanceof ArtistNameMsg)
-        {
-            return isCommonChange(process((ArtistNameMsg) msg));
-        }
-        if (msg instanceof TitleNameMsg)
-        {
-            return isCommonChange(process((TitleNameMsg) msg));
-        }
-        if (msg instanceof FileFormatMsg)
-        {
-            return isCommonChange(process((FileFormatMsg) msg));
-        }
-        if (msg instanceof TimeInfoMsg)
-        {
-            return process((TimeInfoMsg) msg) ? ChangeType.TIME_SEEK : ChangeType.NONE;
-        }
-        if (msg instanceof TrackInfoMsg)
-        {
-            return isCommonChange(process((TrackInfoMsg) msg));
-        }
+        addHandler(JacketArtMsg.class, Field.COVER.getMask(),
+                (s, msg) -> s.isCommonChange(s.process(msg)));
+        addHandler(AlbumNameMsg.class, Field.TRACK.getMask(),
+                (s, msg) -> s.isCommonChange(s.process(msg)));
+        addHandler(ArtistNameMsg.class, Field.TRACK.getMask(),
+                (s, msg) -> s.isCommonChange(s.process(msg)));
+        addHandler(TitleNameMsg.class, Field.TRACK.getMask(),
+                (s, msg) -> s.isCommonChange(s.process(msg)));
+        addHandler(FileFormatMsg.class, Field.TRACK.getMask(),
+                (s, msg) -> s.isCommonChange(s.process(msg)));
+        addHandler(TimeInfoMsg.class, Field.TIME.getMask(),
+                (s, msg) -> s.process(msg) ? ChangeType.TIME_SEEK : ChangeType.NONE);
+        addHandler(TrackInfoMsg.class, Field.TRACK.getMask(),
+                (s, msg) -> s.isCommonChange(s.process(msg)));
 
         // Radio
-        if (msg instanceof PresetCommandMsg)
-        {
-            return process((PresetCommandMsg) msg) ? ChangeType.MEDIA_ITEMS : ChangeType.NONE;
-        }
-        if (msg instanceof TuningCommandMsg)
-        {
-            return isCommonChange(process((TuningCommandMsg) msg));
-        }
-        if (msg instanceof RadioStationNameMsg)
-        {
-            return isCommonChange(process((RadioStationNameMsg) msg));
-        }
+        addHandler(PresetCommandMsg.class, Field.PRESETS.getMask() | Field.TRACK.getMask(),
+                (s, msg) -> s.process(msg) ? ChangeType.MEDIA_ITEMS : ChangeType.NONE);
+        addHandler(TuningCommandMsg.class, Field.TRACK.getMask(),
+                (s, msg) -> s.isCommonChange(s.process(msg)));
+        addHandler(RadioStationNameMsg.class, Field.TRACK.getMask(),
+                (s, msg) -> s.isCommonChange(s.process(msg)));
 
         // Playback
-        if (msg instanceof PlayStatusMsg)
-        {
-            return isCommonChange(process((PlayStatusMsg) msg));
-        }
-        if (msg instanceof MenuStatusMsg)
-        {
-            return isCommonChange(process((MenuStatusMsg) msg));
-        }
+        addHandler(PlayStatusMsg.class, Field.OTHER.getMask(),
+                (s, msg) -> s.isCommonChange(s.process(msg)));
+        addHandler(MenuStatusMsg.class, Field.OTHER.getMask(),
+                (s, msg) -> s.isCommonChange(s.process(msg)));
 
         // Navigation
-        if (msg instanceof CustomPopupMsg)
-        {
-            return isCommonChange(process((CustomPopupMsg) msg));
-        }
-        if (msg instanceof InputSelectorMsg)
-        {
-            return process((InputSelectorMsg) msg) ? ChangeType.MEDIA_ITEMS : ChangeType.NONE;
-        }
-        if (msg instanceof ListTitleInfoMsg)
-        {
-            return process((ListTitleInfoMsg) msg) ? ChangeType.MEDIA_ITEMS : ChangeType.NONE;
-        }
-        if (msg instanceof XmlListInfoMsg)
-        {
-            return process((XmlListInfoMsg) msg) ? ChangeType.MEDIA_ITEMS : ChangeType.NONE;
-        }
-        if (msg instanceof ListInfoMsg)
-        {
-            return process((ListInfoMsg) msg) ? ChangeType.MEDIA_ITEMS : ChangeType.NONE;
-        }
+        addHandler(CustomPopupMsg.class, Field.OTHER.getMask(),
+                (s, msg) -> s.isCommonChange(s.process(msg)));
+        addHandler(InputSelectorMsg.class, ALL_FIELDS,
+                (s, msg) -> s.process(msg) ? ChangeType.MEDIA_ITEMS : ChangeType.NONE);
+        addHandler(ListTitleInfoMsg.class, Field.MEDIA_LIST.getMask() | Field.OTHER.getMask(),
+                (s, msg) -> s.process(msg) ? ChangeType.MEDIA_ITEMS : ChangeType.NONE);
+        addHandler(XmlListInfoMsg.class, Field.MEDIA_LIST.getMask(),
+                (s, msg) -> s.process(msg) ? ChangeType.MEDIA_ITEMS : ChangeType.NONE);
+        addHandler(ListInfoMsg.class, Field.MEDIA_LIST.getMask(),
+                (s, msg) -> s.process(msg) ? ChangeType.MEDIA_ITEMS : ChangeType.NONE);
 
         // Multiroom
-        if (msg instanceof MultiroomDeviceInformationMsg)
-        {
-            return process((MultiroomDeviceInformationMsg) msg) ? ChangeType.MULTIROOM_INFO : ChangeType.NONE;
-        }
-        if (msg instanceof MultiroomChannelSettingMsg)
-        {
-            return isCommonChange(process((MultiroomChannelSettingMsg) msg));
-        }
+        addHandler(MultiroomDeviceInformationMsg.class, Field.OTHER.getMask(),
+                (s, msg) -> s.process(msg) ? ChangeType.MULTIROOM_INFO : ChangeType.NONE);
+        addHandler(MultiroomChannelSettingMsg.class, Field.OTHER.getMask(),
+                (s, msg) -> s.isCommonChange(s.process(msg)));
 
         // Audio/Video information dialog
-        if (msg instanceof AudioInformationMsg)
-        {
-            return isCommonChange(process((AudioInformationMsg) msg));
-        }
-        if (msg instanceof VideoInformationMsg)
-        {
-            return isCommonChange(process((VideoInformationMsg) msg));
-        }
+        addHandler(AudioInformationMsg.class, Field.OTHER.getMask(),
+                (s, msg) -> s.isCommonChange(s.process(msg)));
+        addHandler(VideoInformationMsg.class, Field.OTHER.getMask(),
+                (s, msg) -> s.isCommonChange(s.process(msg)));
 
         // Denon-specific messages
-        if (msg instanceof DcpReceiverInformationMsg)
-        {
-            return process((DcpReceiverInformationMsg) msg);
-        }
-        if (msg instanceof DcpTunerModeMsg)
-        {
-            return process((DcpTunerModeMsg) msg) ? ChangeType.MEDIA_ITEMS : ChangeType.NONE;
-        }
-        if (msg instanceof DcpEcoModeMsg)
+        addHandler(DcpReceiverInformationMsg.class, ALL_FIELDS,
+                (s, msg) -> s.process(msg));
+        addHandler(DcpTunerModeMsg.class, ALL_FIELDS,
+                (s, msg) -> s.process(msg) ? ChangeType.MEDIA_ITEMS : ChangeType.NONE);
+        addHandler(DcpEcoModeMsg.class, Field.OTHER.getMask(),
+                (s, msg) -> s.isCommonChange(s.process(msg)));
+        addHandler(DcpAudioRestorerMsg.class, Field.OTHER.getMask(),
+                (s, msg) -> s.isCommonChange(s.process(msg)));
+        addHandler(DcpMediaContainerMsg.class, Field.MEDIA_LIST.getMask(),
+                (s, msg) -> s.process(msg) ? ChangeType.MEDIA_ITEMS : ChangeType.NONE);
+        addHandler(DcpMediaItemMsg.class, Field.MEDIA_LIST.getMask() | Field.TIME.getMask() | Field.OTHER.getMask(),
+                (s, msg) -> s.process(msg) ? ChangeType.MEDIA_ITEMS : ChangeType.NONE);
+        addHandler(DcpSearchCriteriaMsg.class, Field.MEDIA_LIST.getMask(),
+                (s, msg) -> s.process(msg) ? ChangeType.MEDIA_ITEMS : ChangeType.NONE);
+    }
+
+    public ChangeType update(ISCPMessage msg)
+    {
+        if (!(msg instanceof TimeInfoMsg) && !(msg instanceof JacketArtMsg))
         {
-            return isCommonChange(process((DcpEcoModeMsg) msg));
+            if (Logging.isTraceEnabled())
+            {
+                Logging.trace(msg, "<< {}", msg);
+                if (msg.isMultiline())
+                {
+                    msg.logParameters();
+                }
+            }
         }
-        if (msg instanceof DcpAudioRestorerMsg)
+        else if (msg instanceof TimeInfoMsg && Logging.isTimeMsgEnabled())
         {
-            return isCommonChange(process((DcpAudioRestorerMsg) msg));
+            Logging.info(msg, "<< {}", msg);
         }
-        if (msg instanceof DcpMediaContainerMsg)
+
+        final Handler h = handlers.get(msg.getClass());
+        if (h == null)
         {
-            return process((DcpMediaContainerMsg) msg) ? ChangeType.MEDIA_ITEMS : ChangeType.NONE;
+            return ChangeType.NONE;
         }
-        if (msg instanceof DcpMediaItemMsg)
+        final ChangeType changed = h.handler.process(this, msg);
+        // Only the handlers that affect the media list can modify the list items
+        if ((h.fields & Field.MEDIA_LIST.getMask()) != 0)
         {
-            return process((DcpMediaItemMsg) msg) ? ChangeType.MEDIA_ITEMS : ChangeType.NONE;
+            publishItems();
         }
-        else if (msg instanceof DcpSearchCriteriaMsg)
+        if (changed != ChangeType.NONE)
         {
-            return process((DcpSearchCriteriaMsg) msg) ? ChangeType.MEDIA_ITEMS : ChangeType.NONE;
+            publishSnapshot();
+            for (Field f : Field.values())
+            {
+                if ((h.fields & f.getMask()) != 0)
+                {
+                    fieldVersions.incrementAndGet(f.ordinal());
+                }
+            }
         }
-        return ChangeType.NONE;
+        return changed;
+    }
+
+    public int getVersion(@NonNull final Field f)
+    {
+        return fieldVersions.get(f.ordinal());
+    }
+
+    /**
+     * Procedure returns a rough estimation of the heap used by this state in bytes:
+     * the receiver information XML, the lists and the cover buffer. List entries are
+     * counted with a fixed size. The platform-dependent cover image is not included.
+     */
+    public long getMemoryEstimate()
+    {
+        final int ITEM_SIZE = 256;
+        long size = 2L * receiverInformation.length();
+        size += (long) ITEM_SIZE * (getMediaItems().size() + getServiceItems().size()
+                + getDeviceSelectors().size() + presetList.size() + networkServices.size()
+                + deviceProperties.size() + multiroomLayout.size() + pathItems.size());
+        size += coverBuffer.getAllocatedSize();
+        return size;
     }
 
     private ChangeType isCommonChange(boolean change)
@@ -794,6 +864,7 @@ public class State implements ConnectionIf
                         deviceSelectors.add(s);
                     }
                 }
+                publish(deviceSelectors, deviceSelectorsSnapshot);
             }
             controlList = msg.getControlList();
             toneControls = msg.getToneControls();
@@ -803,17 +874,25 @@ public class State implements ConnectionIf
         }
         catch (Exception e)
         {
-            Logging.info(msg, "Can not parse XML: " + e.getLocalizedMessage());
+            Logging.info(msg, "Can not parse XML: {}", e.getLocalizedMessage());
         }
         return false;
     }
 
-    public List<ReceiverInformationMsg.Selector> cloneDeviceSelectors()
+    /**
+     * Returns an immutable snapshot of device selectors
+     */
+    @NonNull
+    public List<ReceiverInformationMsg.Selector> getDeviceSelectors()
     {
-        synchronized (deviceSelectors)
-        {
-            return new ArrayList<>(deviceSelectors);
-        }
+        return deviceSelectorsSnapshot.get();
+    }
+
+    private boolean setReconnecting(final boolean reconnecting)
+    {
+        final boolean changed = this.reconnecting != reconnecting;
+        this.reconnecting = reconnecting;
+        return changed;
     }
 
     private boolean process(FriendlyNameMsg msg)
@@ -1071,6 +1150,17 @@ public class State implements ConnectionIf
 
     private boolean process(JacketArtMsg msg)
     {
+        if (msg.isLoaded())
+        {
+            if (msg.getLoadRequest() != coverRequest)
+            {
+                Logging.info(msg, "Cover image is outdated, ignored");
+                return false;
+            }
+            Logging.info(msg, "<< {}", msg);
+            cover = msg.getCover();
+            return true;
+        }
         if (msg.getImageType() == JacketArtMsg.ImageType.URL)
         {
             if (protoType == ConnectionIf.ProtoType.DCP && coverUrl != null && coverUrl.equals(msg.getUrl()))
@@ -1078,34 +1168,55 @@ public class State implements ConnectionIf
                 Logging.info(msg, "Cover image already loaded, reload skipped");
                 return false;
             }
-            Logging.info(msg, "<< " + msg);
-            cover = msg.loadFromUrl();
+            Logging.info(msg, "<< {}", msg);
             coverUrl = msg.getUrl();
-            return true;
+            if (coverLoader == null)
+            {
+                cover = null;
+                return true;
+            }
+            return setCover(coverLoader.load(msg, ++coverRequest, host));
         }
-        else if (msg.getRawData() != null)
+        else if (msg.getRawDataSize() > 0)
         {
-            final byte[] in = msg.getRawData();
             if (msg.getPacketFlag() == JacketArtMsg.PacketFlag.START)
             {
-                Logging.info(msg, "<< " + msg);
-                coverBuffer = new ByteArrayOutputStream();
-            }
-            if (coverBuffer != null)
-            {
-                coverBuffer.write(in, 0, in.length);
+                Logging.info(msg, "<< {}", msg);
+                coverBuffer.start();
             }
+            coverBuffer.append(msg);
             if (msg.getPacketFlag() == JacketArtMsg.PacketFlag.END)
             {
-                Logging.info(msg, "<< " + msg);
-                cover = msg.loadFromBuffer(coverBuffer);
-                coverBuffer = null;
-                return true;
+                Logging.info(msg, "<< {}", msg);
+                if (!coverBuffer.isStarted())
+                {
+                    Logging.info(msg, "can not open image: no start packet");
+                    cover = null;
+                    return true;
+                }
+                coverBuffer.finish();
+                if (coverLoader == null)
+                {
+                    cover = null;
+                    return true;
+                }
+                return setCover(coverLoader.decode(msg, ++coverRequest, coverBuffer));
             }
         }
         else
         {
-            Logging.info(msg, "<< " + msg);
+            Logging.info(msg, "<< {}", msg);
+        }
+        return false;
+    }
+
+    private boolean setCover(@Nullable final Object cachedCover)
+    {
+        // If the image is not cached, the current one is kept until the new one is loaded
+        if (cachedCover != null)
+        {
+            cover = cachedCover;
+            return true;
         }
         return false;
     }
@@ -1288,7 +1399,7 @@ public class State implements ConnectionIf
                     pathItems.remove(pathItems.size() - 1);
                 }
             }
-            Logging.info(this, "media list path = " + pathItems + "(offset = " + pathIndexOffset + ")");
+            Logging.info(this, "media list path = {}(offset = {})", pathItems, pathIndexOffset);
         }
         return changed;
     }
@@ -1305,12 +1416,13 @@ public class State implements ConnectionIf
         }
     }
 
-    public List<XmlListItemMsg> cloneMediaItems()
+    /**
+     * Returns an immutable snapshot of media items
+     */
+    @NonNull
+    public List<XmlListItemMsg> getMediaItems()
     {
-        synchronized (mediaItems)
-        {
-            return new ArrayList<>(mediaItems);
-        }
+        return mediaItemsSnapshot.get();
     }
 
     private boolean process(XmlListInfoMsg msg)
@@ -1324,7 +1436,7 @@ public class State implements ConnectionIf
             if (isSimpleInput())
             {
                 mediaItems.clear();
-                Logging.info(msg, "skipped: input channel " + inputType.toString() + " is not a media list");
+                Logging.info(msg, "skipped: input channel {} is not a media list", inputType);
                 return true;
             }
             if (isPopupMode())
@@ -1347,7 +1459,7 @@ public class State implements ConnectionIf
             catch (Exception e)
             {
                 mediaItems.clear();
-                Logging.info(msg, "Can not parse XML: " + e.getLocalizedMessage());
+                Logging.info(msg, "Can not parse XML: {}", e.getLocalizedMessage());
             }
         }
         return false;
@@ -1367,11 +1479,66 @@ public class State implements ConnectionIf
         }
     }
 
-    public List<NetworkServiceMsg> cloneServiceItems()
+    /**
+     * Returns an immutable snapshot of network services
+     */
+    @NonNull
+    public List<NetworkServiceMsg> getServiceItems()
+    {
+        return serviceItemsSnapshot.get();
+    }
+
+    /**
+     * Procedure returns the latest published snapshot of the scalar fields.
+     * Can be called from any thread.
+     */
+    @NonNull
+    public Snapshot getSnapshot()
+    {
+        return snapshot.get();
+    }
+
+    /**
+     * Procedure publishes a new snapshot of the scalar fields.
+     * Shall be called by the state manager thread after these fields are modified.
+     */
+    void publishSnapshot()
+    {
+        snapshot.set(new Snapshot(this));
+    }
+
+    /**
+     * Procedure publishes the snapshots of media items and network services, if these lists are changed.
+     * Shall be called by the state manager thread after the lists are modified.
+     */
+    void publishItems()
+    {
+        synchronized (mediaItems)
+        {
+            publish(mediaItems, mediaItemsSnapshot);
+        }
+        publishServiceItems();
+    }
+
+    private void publishServiceItems()
     {
         synchronized (serviceItems)
         {
-            return new ArrayList<>(serviceItems);
+            publish(serviceItems, serviceItemsSnapshot);
+        }
+    }
+
+    private static <E> void publish(@NonNull final List<E> items, @NonNull final AtomicReference<List<E>> snapshot)
+    {
+        final List<E> current = snapshot.get();
+        boolean changed = current.size() != items.size();
+        for (int i = 0; !changed && i < items.size(); i++)
+        {
+            changed = current.get(i) != items.get(i);
+        }
+        if (changed)
+        {
+            snapshot.set(Collections.unmodifiableList(new ArrayList<>(items)));
         }
     }
 
@@ -1464,15 +1631,19 @@ public class State implements ConnectionIf
 
     public void createServiceItems()
     {
-        serviceItems.clear();
-        for (final String code : networkServices.keySet())
+        synchronized (serviceItems)
         {
-            final ServiceType service =
-                    (ServiceType) ISCPMessage.searchParameter(code, ServiceType.values(), ServiceType.UNKNOWN);
-            if (service != ServiceType.UNKNOWN)
+            serviceItems.clear();
+            for (final String code : networkServices.keySet())
             {
-                serviceItems.add(new NetworkServiceMsg(service));
+                final ServiceType service =
+                        (ServiceType) ISCPMessage.searchParameter(code, ServiceType.values(), ServiceType.UNKNOWN);
+                if (service != ServiceType.UNKNOWN)
+                {
+                    serviceItems.add(new NetworkServiceMsg(service));
+                }
             }
+            publishServiceItems();
         }
     }
 
@@ -1484,14 +1655,11 @@ public class State implements ConnectionIf
 
     public ReceiverInformationMsg.Selector getActualSelector()
     {
-        synchronized (deviceSelectors)
+        for (ReceiverInformationMsg.Selector s : deviceSelectorsSnapshot.get())
         {
-            for (ReceiverInformationMsg.Selector s : deviceSelectors)
+            if (s.getId().equals(inputType.getCode()))
             {
-                if (s.getId().equals(inputType.getCode()))
-                {
-                    return s;
-                }
+                return s;
             }
         }
         return null;
@@ -1573,7 +1741,7 @@ public class State implements ConnectionIf
 
     public boolean isMediaEmpty()
     {
-        return mediaItems.isEmpty() && serviceItems.isEmpty();
+        return mediaItemsSnapshot.get().isEmpty() && serviceItemsSnapshot.get().isEmpty();
     }
 
     boolean listInfoConsistent()
@@ -1598,7 +1766,7 @@ public class State implements ConnectionIf
         return false;
     }
 
-    @SuppressLint("SetTextI18n")
+    @SuppressWarnings("SetTextI18n")
     public static String getVolumeLevelStr(int volumeLevel, ReceiverInformationMsg.Zone zone)
     {
         if (zone != null && zone.getVolumeStep() == 0)
@@ -1625,10 +1793,10 @@ public class State implements ConnectionIf
         return null;
     }
 
-    public String getTrackInfo(final Context context)
+    public String getTrackInfo(final StringResourceIf strings)
     {
         final StringBuilder str = new StringBuilder();
-        final String dashedString = context.getString(R.string.dashed_string);
+        final String dashedString = strings.getString(R.string.dashed_string);
         if (isRadioInput())
         {
             str.append(preset != PresetCommandMsg.NO_PRESET ? Integer.toString(preset) : dashedString);
@@ -1645,9 +1813,9 @@ public class State implements ConnectionIf
     }
 
     @NonNull
-    public String getFrequencyInfo(final Context context)
+    public String getFrequencyInfo(final StringResourceIf strings)
     {
-        final String dashedString = context.getString(R.string.dashed_string);
+        final String dashedString = strings.getString(R.string.dashed_string);
         if (frequency == null)
         {
             return dashedString;
@@ -1706,7 +1874,7 @@ public class State implements ConnectionIf
         }
         catch (Exception e)
         {
-            Logging.info(msg, "Can not parse XML: " + e.getLocalizedMessage());
+            Logging.info(msg, "Can not parse XML: {}", e.getLocalizedMessage());
         }
         return false;
     }
@@ -1851,9 +2019,10 @@ public class State implements ConnectionIf
                     final ReceiverInformationMsg.Selector newSelector =
                             new ReceiverInformationMsg.Selector(
                                     oldSelector, msg.getSelector().getName());
-                    Logging.info(this, "    DCP selector " + newSelector);
+                    Logging.info(this, "    DCP selector {}", newSelector);
                     deviceSelectors.remove(oldSelector);
                     deviceSelectors.add(newSelector);
+                    publish(deviceSelectors, deviceSelectorsSnapshot);
                     changed = ChangeType.MEDIA_ITEMS;
                 }
             }
@@ -1869,7 +2038,7 @@ public class State implements ConnectionIf
                 if (zones.get(i).getVolMax() != msg.getMaxVolumeZone().getVolMax())
                 {
                     zones.get(i).setVolMax(msg.getMaxVolumeZone().getVolMax());
-                    Logging.info(this, "    DCP zone " + zones.get(i));
+                    Logging.info(this, "    DCP zone {}", zones.get(i));
                     changed = ChangeType.COMMON;
                 }
             }
@@ -1882,7 +2051,7 @@ public class State implements ConnectionIf
         {
             boolean changed = !toneControl.equals(toneControls.get(toneControl.getId()));
             toneControls.put(toneControl.getId(), toneControl);
-            Logging.info(this, "    DCP tone control " + toneControl);
+            Logging.info(this, "    DCP tone control {}", toneControl);
             return changed ? ChangeType.COMMON : ChangeType.NONE;
         }
 
@@ -1904,13 +2073,13 @@ public class State implements ConnectionIf
             {
                 changed = !preset.equals(presetList.get(oldPresetIdx));
                 presetList.set(oldPresetIdx, preset);
-                Logging.info(this, "    DCP Preset " + preset);
+                Logging.info(this, "    DCP Preset {}", preset);
             }
             else if (presetList.isEmpty() || !preset.equals(presetList.get(presetList.size() - 1)))
             {
                 changed = true;
                 presetList.add(preset);
-                Logging.info(this, "    DCP Preset " + preset);
+                Logging.info(this, "    DCP Preset {}", preset);
             }
             return changed ? ChangeType.MEDIA_ITEMS : ChangeType.NONE;
         }
@@ -1920,13 +2089,13 @@ public class State implements ConnectionIf
         {
             if (networkServices.isEmpty())
             {
-                Logging.info(this, "    Updating network services: " + networkServices.size());
+                Logging.info(this, "    Updating network services: {}", networkServices.size());
                 networkServices = msg.getNetworkServices();
                 return ChangeType.RECEIVER_INFO;
             }
             else
             {
-                Logging.info(this, "    Set network top layer: " + networkServices.size());
+                Logging.info(this, "    Set network top layer: {}", networkServices.size());
                 clearItems();
                 setDcpNetTopLayer();
                 return ChangeType.MEDIA_ITEMS;
@@ -1937,7 +2106,7 @@ public class State implements ConnectionIf
         if (msg.updateType == DcpReceiverInformationMsg.UpdateType.FIRMWARE_VER && msg.getFirmwareVer() != null)
         {
             deviceProperties.put("firmwareversion", msg.getFirmwareVer());
-            Logging.info(this, "    DCP firmware " + msg.getFirmwareVer());
+            Logging.info(this, "    DCP firmware {}", msg.getFirmwareVer());
             return ChangeType.COMMON;
         }
 
@@ -1986,7 +2155,7 @@ public class State implements ConnectionIf
                 tmpPath.add(new DcpMediaContainerMsg(msg));
                 dcpMediaPath.clear();
                 dcpMediaPath.addAll(tmpPath);
-                Logging.info(this, "Dcp media path: " + dcpMediaPath);
+                Logging.info(this, "Dcp media path: {}", dcpMediaPath);
                 // Info
                 serviceType = (ServiceType) ISCPMessage.searchDcpParameter(
                         "HS" + msg.getSid(), ServiceType.values(), ServiceType.UNKNOWN);
@@ -2036,7 +2205,7 @@ public class State implements ConnectionIf
             dcpTrackMenuItems.addAll(msg.getOptions());
             for (XmlListItemMsg m : dcpTrackMenuItems)
             {
-                Logging.info(this, "DCP menu: " + m.toString());
+                Logging.info(this, "DCP menu: {}", m);
             }
         }
         return true;
@@ -2072,6 +2241,7 @@ public class State implements ConnectionIf
         numberOfItems = serviceItems.size();
         mediaListSid = "";
         dcpMediaPath.clear();
+        publishItems();
     }
 
     private boolean process(DcpMediaItemMsg msg)
@@ -2097,7 +2267,7 @@ public class State implements ConnectionIf
         dcpSearchCriteria.put(msg.getSid(), msg.getCriteria());
         for (Map.Entry<String, List<Pair<String, Integer>>> entry : dcpSearchCriteria.entrySet())
         {
-            Logging.info(this, "DCP search criteria: sid=" + entry.getKey() + ", value=" + entry.getValue());
+            Logging.info(this, "DCP search criteria: sid={}, value={}", entry.getKey(), entry.getValue());
         }
         return true;
     }
@@ -2120,7 +2290,7 @@ public class State implements ConnectionIf
             final DcpMediaContainerMsg last = dcpMediaPath.get(dcpMediaPath.size() - 1);
             last.getItems().clear();
             last.getItems().add(rowMsg);
-            Logging.info(this, "Stored selected DCP item: " + rowMsg.toString() + " in container " + last);
+            Logging.info(this, "Stored selected DCP item: {} in container {}", rowMsg, last);
         }
     }
 
@@ -0,0 +1,455 @@
+/*
+ * Enhanced Music Controller
+ * Copyright (C) 2018-2023 by Mikhail Kulesh
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with this program.
+ */
+
+package com.mkulesh.onpc.iscp;
+
+import com.mkulesh.onpc.iscp.messages.BroadcastResponseMsg;
+import com.mkulesh.onpc.utils.Logging;
+import com.mkulesh.onpc.utils.Utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.InterfaceAddress;
+import java.net.NetworkInterface;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Fallback device search for networks that drop UDP broadcast and SSDP multicast
+ * (mesh WiFi, VLANs, guest networks, VPN): the given IPv4 networks are swept with
+ * non-blocking TCP connects to the ISCP port and the Denon HTTP port.
+ * The number of probes in flight is bounded. An open port is only reported
+ * as a device if the device answers an ECN query (ISCP) or delivers
+ * Deviceinfo.xml (DCP).
+ */
+public class SubnetSweep
+{
+    // Limits of a sweep: probes in flight, hosts per sweep
+    private final static int MAX_IN_FLIGHT = 128;
+    private final static int MAX_HOSTS = 4096;
+    // Time to establish a connection and to get the verification response
+    private final static long CONNECT_TIMEOUT = 400;
+    private final static long VERIFY_TIMEOUT = 1500;
+    private final static int MAX_RESPONSE_SIZE = 16 * 1024;
+
+    private final static int[] PORTS = new int[]{ ConnectionIf.ISCP_PORT, ConnectionIf.DCP_HTTP_PORT };
+
+    private static class Probe
+    {
+        final String host;
+        final int port;
+        final SocketChannel channel;
+        long deadline;
+        ByteBuffer request = null;
+        final ByteArrayOutputStream response = new ByteArrayOutputStream();
+        IscpFrameDecoder decoder = null;
+
+        Probe(@NonNull final String host, final int port, @NonNull final SocketChannel channel, final long deadline)
+        {
+            this.host = host;
+            this.port = port;
+            this.channel = channel;
+            this.deadline = deadline;
+        }
+    }
+
+    private final DeviceDiscovery.Listener listener;
+    private final ByteBuffer buffer = ByteBuffer.allocate(4096);
+    private int probes = 0, openPorts = 0, devices = 0;
+
+    public SubnetSweep(@NonNull final DeviceDiscovery.Listener listener)
+    {
+        this.listener = listener;
+    }
+
+    /**
+     * Procedure returns the /24 networks of all active IPv4 interfaces in CIDR notation.
+     * Larger networks are reduced to the /24 network of the interface address.
+     */
+    @NonNull
+    public static List<String> getLocalNetworks()
+    {
+        final List<String> retValue = new ArrayList<>();
+        try
+        {
+            for (NetworkInterface ni : Collections.list(NetworkInterface.getNetworkInterfaces()))
+            {
+                if (!ni.isUp() || ni.isLoopback())
+                {
+                    continue;
+                }
+                for (InterfaceAddress ia : ni.getInterfaceAddresses())
+                {
+                    if (!(ia.getAddress() instanceof Inet4Address))
+                    {
+                        continue;
+                    }
+                    final int prefix = Math.max(24, ia.getNetworkPrefixLength());
+                    final String cidr = ia.getAddress().getHostAddress() + "/" + prefix;
+                    if (!retValue.contains(cidr))
+                    {
+                        retValue.add(cidr);
+                    }
+                }
+            }
+        }
+        catch (Exception e)
+        {
+            Logging.info(SubnetSweep.class, "Can not get network interfaces: {}", e);
+        }
+        return retValue;
+    }
+
+    /**
+     * Procedure parses a comma-separated list of networks in CIDR notation,
+     * for example "192.168.1.0/24, 10.0.0.0/22". An empty list means local networks.
+     */
+    @NonNull
+    public static List<String> parseNetworks(@Nullable final String networks)
+    {
+        final List<String> retValue = new ArrayList<>();
+        if (networks != null)
+        {
+            for (String n : networks.split(","))
+            {
+                if (!n.trim().isEmpty())
+                {
+                    retValue.add(n.trim());
+                }
+            }
+        }
+        return retValue.isEmpty() ? getLocalNetworks() : retValue;
+    }
+
+    /**
+     * Sweeps the given networks once. The method blocks the calling thread until
+     * all probes are finished or the stop condition is fulfilled.
+     */
+    public void run(@NonNull final List<String> networks, @NonNull final DeviceDiscovery.StopCondition stopCondition)
+    {
+        final long startTime = System.currentTimeMillis();
+        final List<String> hosts = getHosts(networks);
+        Logging.info(this, "sweep started: {}, {} hosts", networks, hosts.size());
+
+        Selector selector = null;
+        final Set<Probe> active = new HashSet<>();
+        try
+        {
+            selector = Selector.open();
+            int next = 0;
+            final int total = hosts.size() * PORTS.length;
+            while (!stopCondition.isStopped() && (next < total || !active.isEmpty()))
+            {
+                // Fill the in-flight window
+                while (next < total && active.size() < MAX_IN_FLIGHT)
+                {
+                    final Probe p = connect(selector, hosts.get(next / PORTS.length), PORTS[next % PORTS.length]);
+                    next++;
+                    if (p != null)
+                    {
+                        active.add(p);
+                    }
+                }
+
+                selector.select(CONNECT_TIMEOUT / 4);
+                for (SelectionKey key : selector.selectedKeys())
+                {
+                    final Probe p = (Probe) key.attachment();
+                    if (!process(key, p))
+                    {
+                        close(p);
+                        active.remove(p);
+                    }
+                }
+                selector.selectedKeys().clear();
+
+                // Drop expired probes
+                final long now = System.currentTimeMillis();
+                final List<Probe> expired = new ArrayList<>();
+                for (Probe p : active)
+                {
+                    if (now > p.deadline)
+                    {
+                        expired.add(p);
+                    }
+                }
+                for (Probe p : expired)
+                {
+                    close(p);
+                    active.remove(p);
+                }
+            }
+        }
+        catch (Exception e)
+        {
+            Logging.info(this, "Can not open selector: {}", e);
+        }
+        finally
+        {
+            for (Probe p : active)
+            {
+                close(p);
+            }
+            if (selector != null)
+            {
+                try
+                {
+                    selector.close();
+                }
+                catch (IOException e)
+                {
+                    // nothing to do
+                }
+            }
+        }
+        Logging.info(this, "sweep finished in " + (System.currentTimeMillis() - startTime) + "ms: "
+                + probes + " probes, " + openPorts + " open ports, " + devices + " devices");
+    }
+
+    @NonNull
+    private List<String> getHosts(@NonNull final List<String> networks)
+    {
+        final Set<String> own = new HashSet<>();
+        for (String n : getLocalNetworks())
+        {
+            own.add(n.split("/")[0]);
+        }
+        // overlapping networks produce duplicates: the set keeps the order of the first occurrence
+        final Set<String> hosts = new LinkedHashSet<>();
+        for (String n : networks)
+        {
+            try
+            {
+                final String[] tokens = n.split("/");
+                final int prefix = tokens.length > 1 ? Integer.parseInt(tokens[1].trim(), 10) : 32;
+                final byte[] a = InetAddress.getByName(tokens[0].trim()).getAddress();
+                if (a.length != 4 || prefix < 0 || prefix > 32)
+                {
+                    throw new Exception("IPv4 network expected");
+                }
+                final long mask = prefix == 0 ? 0 : (0xFFFFFFFFL << (32 - prefix)) & 0xFFFFFFFFL;
+                final long base = (((a[0] & 0xFFL) << 24) | ((a[1] & 0xFFL) << 16) | ((a[2] & 0xFFL) << 8) | (a[3] & 0xFFL)) & mask;
+                final long size = 1L << (32 - prefix);
+                // The network and broadcast addresses are skipped for networks with host addresses
+                final long first = size > 2 ? 1 : 0;
+                final long last = size > 2 ? size - 2 : size - 1;
+                for (long i = first; i <= last && hosts.size() < MAX_HOSTS; i++)
+                {
+                    final long ip = base + i;
+                    final String host = ((ip >> 24) & 0xFF) + "." + ((ip >> 16) & 0xFF) + "."
+                            + ((ip >> 8) & 0xFF) + "." + (ip & 0xFF);
+                    if (!own.contains(host))
+                    {
+                        hosts.add(host);
+                    }
+                }
+            }
+            catch (Exception e)
+            {
+                Logging.info(this, "Invalid network {}: {}", n, e.getLocalizedMessage());
+            }
+        }
+        return new ArrayList<>(hosts);
+    }
+
+    @Nullable
+    private Probe connect(@NonNull final Selector selector, @NonNull final String host, final int port)
+    {
+        SocketChannel channel = null;
+        try
+        {
+            probes++;
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            final Probe p = new Probe(host, port, channel, System.currentTimeMillis() + CONNECT_TIMEOUT);
+            if (channel.connect(new InetSocketAddress(InetAddress.getByName(host), port)))
+            {
+                channel.register(selector, SelectionKey.OP_WRITE, p);
+                onConnected(p);
+            }
+            else
+            {
+                channel.register(selector, SelectionKey.OP_CONNECT, p);
+            }
+            return p;
+        }
+        catch (Exception e)
+        {
+            if (channel != null)
+            {
+                try
+                {
+                    channel.close();
+                }
+                catch (IOException ex)
+                {
+                    // nothing to do
+                }
+            }
+            return null;
+        }
+    }
+
+    private void onConnected(@NonNull final Probe p) throws IOException
+    {
+        openPorts++;
+        p.deadline = System.currentTimeMillis() + VERIFY_TIMEOUT;
+        if (p.port == ConnectionIf.ISCP_PORT)
+        {
+            p.decoder = new IscpFrameDecoder();
+            p.request = ByteBuffer.wrap(new EISCPMessage('x', "ECN", "QSTN").getBytes());
+        }
+        else
+        {
+            final String request = "GET /goform/Deviceinfo.xml HTTP/1.1\r\n"
+                    + "Host: " + p.host + ":" + p.port + "\r\n"
+                    + "Connection: close\r\n\r\n";
+            p.request = ByteBuffer.wrap(request.getBytes(Utils.UTF_8));
+        }
+    }
+
+    /**
+     * Procedure handles a selected key of a probe.
+     *
+     * @return false if the probe is finished
+     */
+    private boolean process(@NonNull final SelectionKey key, @NonNull final Probe p)
+    {
+        try
+        {
+            if (key.isConnectable())
+            {
+                if (!p.channel.finishConnect())
+                {
+                    return true;
+                }
+                onConnected(p);
+                key.interestOps(SelectionKey.OP_WRITE);
+                return true;
+            }
+            if (key.isWritable())
+            {
+                p.channel.write(p.request);
+                if (!p.request.hasRemaining())
+                {
+                    key.interestOps(SelectionKey.OP_READ);
+                }
+                return true;
+            }
+            if (key.isReadable())
+            {
+                buffer.clear();
+                final int n = p.channel.read(buffer);
+                if (n > 0)
+                {
+                    p.response.write(buffer.array(), 0, n);
+                }
+                final BroadcastResponseMsg msg = verify(p, n < 0 || p.response.size() >= MAX_RESPONSE_SIZE);
+                if (msg != null)
+                {
+                    devices++;
+                    Logging.info(this, "  -> device found: {}", msg);
+                    listener.onDeviceFound(msg);
+                    return false;
+                }
+                return n >= 0 && p.response.size() < MAX_RESPONSE_SIZE;
+            }
+        }
+        catch (Exception e)
+        {
+            // connection refused or reset: no device
+            return false;
+        }
+        return true;
+    }
+
+    @Nullable
+    private BroadcastResponseMsg verify(@NonNull final Probe p, final boolean finished) throws Exception
+    {
+        final byte[] bytes = p.response.toByteArray();
+        if (p.decoder != null)
+        {
+            final BroadcastResponseMsg[] found = new BroadcastResponseMsg[1];
+            p.response.reset();
+            p.decoder.decode(bytes, 0, bytes.length, (raw, remaining) ->
+            {
+                if (found[0] == null && "ECN".equals(raw.getCode()) && !EISCPMessage.QUERY.equals(raw.getParameters()))
+                {
+                    try
+                    {
+                        found[0] = new BroadcastResponseMsg(InetAddress.getByName(p.host), raw);
+                    }
+                    catch (Exception e)
+                    {
+                        // nothing to do
+                    }
+                }
+            });
+            return found[0] != null && found[0].isValidConnection() ? found[0] : null;
+        }
+
+        // Only the beginning of Deviceinfo.xml is needed: the document is accepted
+        // as soon as the model name is received
+        final String response = new String(bytes, Utils.UTF_8);
+        if (!response.startsWith("HTTP/1.") || !response.contains("<Device_Info"))
+        {
+            return null;
+        }
+        final String model = getTag(response, "ModelName");
+        if (model == null && !finished && !response.contains("</Device_Info>"))
+        {
+            return null;
+        }
+        return new BroadcastResponseMsg(p.host, ConnectionIf.DCP_PORT, model == null ? "Denon-Heos AVR" : model);
+    }
+
+    @Nullable
+    private static String getTag(@NonNull final String xml, @NonNull final String tag)
+    {
+        final int start = xml.indexOf("<" + tag + ">");
+        final int end = start < 0 ? -1 : xml.indexOf("</" + tag + ">", start);
+        if (end < 0)
+        {
+            return null;
+        }
+        final String value = xml.substring(start + tag.length() + 2, end).trim();
+        return value.isEmpty() ? null : value;
+    }
+
+    private static void close(@NonNull final Probe p)
+    {
+        try
+        {
+            p.channel.close();
+        }
+        catch (IOException e)
+        {
+            // nothing to do
+        }
+    }
+}
@@ -39,6 +39,11 @@ public abstract class ZonedMessage extends ISCPMessage
         this.zoneIndex = zoneIndex;
     }
 
+    public int getZoneIndex()
+    {
+        return zoneIndex;
+    }
+
     @SuppressWarnings("unused")
     abstract public String getZoneCommand();
 }
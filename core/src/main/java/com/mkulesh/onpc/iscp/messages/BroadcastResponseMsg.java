@@ -36,12 +36,13 @@ import androidx.annotation.Nullable;
  */
 public class BroadcastResponseMsg extends ISCPMessage
 {
-    private final static String CODE = "ECN";
+    public final static String CODE = "ECN";
 
     private String model = null;
     private String destinationArea = null;
     private String identifier = null;
     private String alias = null;
+    private String friendlyName = null;
 
     public BroadcastResponseMsg(InetAddress hostAddress, EISCPMessage raw) throws Exception
     {
@@ -74,6 +75,7 @@ public class BroadcastResponseMsg extends ISCPMessage
         this.destinationArea = other.destinationArea;
         this.identifier = other.identifier;
         this.alias = other.alias;
+        this.friendlyName = other.friendlyName;
     }
 
     public BroadcastResponseMsg(@NonNull final String host, final int port,
@@ -97,6 +99,14 @@ public class BroadcastResponseMsg extends ISCPMessage
         // all other fields still be null
     }
 
+    public BroadcastResponseMsg(@NonNull final String host, final int port, @NonNull final String model,
+                                @Nullable final String friendlyName, @Nullable final String identifier)
+    {
+        this(host, port, model);
+        this.friendlyName = friendlyName;
+        this.identifier = identifier;
+    }
+
     @NonNull
     @Override
     public String toString()
@@ -107,13 +117,15 @@ public class BroadcastResponseMsg extends ISCPMessage
                 + (model != null ? "; MODEL=" + model : "")
                 + (destinationArea != null ? "; DST=" + destinationArea : "")
                 + (identifier != null ? "; ID=" + identifier : "")
+                + (friendlyName != null ? "; NAME=" + friendlyName : "")
                 + (alias != null ? "; ALIAS=" + alias : "") + "]";
     }
 
     @NonNull
     public String getDescription()
     {
-        final String d = alias != null ? alias : (model != null ? model : "unknown");
+        final String d = alias != null ? alias :
+                (friendlyName != null ? friendlyName : (model != null ? model : "unknown"));
         return getHost() + "/" + d;
     }
 
@@ -123,6 +135,18 @@ public class BroadcastResponseMsg extends ISCPMessage
         return identifier == null ? "" : identifier;
     }
 
+    @Nullable
+    public String getModel()
+    {
+        return model;
+    }
+
+    @Nullable
+    public String getFriendlyName()
+    {
+        return friendlyName;
+    }
+
     @Nullable
     public String getAlias()
     {
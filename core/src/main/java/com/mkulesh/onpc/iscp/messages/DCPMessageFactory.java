@@ -63,7 +63,7 @@ public class DCPMessageFactory
         acceptedCodes.addAll(DcpAudioRestorerMsg.getAcceptedDcpCodes());
         acceptedCodes.addAll(HdmiCecMsg.getAcceptedDcpCodes());
 
-        Logging.info(this, "Accepted DCP codes: " + acceptedCodes);
+        Logging.info(this, "Accepted DCP codes: {}", acceptedCodes);
     }
 
     private void convertDcpMsg(@NonNull String dcpMsg)
@@ -103,7 +103,7 @@ public class DCPMessageFactory
             {
                 final Map<String, String> tokens =
                         ISCPMessage.parseHeosMessage(JsonPath.read(heosMsg, "$.heos.message"));
-                Logging.info(this, "DCP HEOS message ignored due to wrong result: " + tokens);
+                Logging.info(this, "DCP HEOS message ignored due to wrong result: {}", tokens);
                 return;
             }
         }
@@ -149,7 +149,7 @@ public class DCPMessageFactory
         }
         catch (Exception ex)
         {
-            Logging.info(this, "DCP HEOS error: " + ex.getLocalizedMessage() + ", message=" + heosMsg);
+            Logging.info(this, "DCP HEOS error: {}, message={}", ex.getLocalizedMessage(), heosMsg);
         }
     }
 
@@ -190,7 +190,7 @@ public class DCPMessageFactory
 
             if (maxIndex > 0)
             {
-                Logging.info(this, "DCP warning: detected message in the middle: " + dcpMsg + ", start index=" + maxIndex);
+                Logging.info(this, "DCP warning: detected message in the middle: {}, start index={}", dcpMsg, maxIndex);
                 final String first = dcpMsg.substring(0, maxIndex);
                 final String second = dcpMsg.substring(maxIndex);
                 final int oldSize = messages.size();
@@ -198,7 +198,7 @@ public class DCPMessageFactory
                 if (oldSize != messages.size())
                 {
                     dcpMsg = first;
-                    Logging.info(this, "DCP warning: split DCP message: " + first + "/" + second);
+                    Logging.info(this, "DCP warning: split DCP message: {}/{}", first, second);
                 }
                 else
                 {
@@ -230,7 +230,7 @@ public class DCPMessageFactory
             final String[] messages = toSend.split(ISCPMessage.DCP_MSG_SEP);
             for (String msg : messages)
             {
-                Logging.info(this, ">> DCP sending: " + raw + " => " + msg + " to " + dest);
+                Logging.trace(this, ">> DCP sending: {} => {} to {}", raw, msg, dest);
                 retValue.add(msg);
             }
 
@@ -238,7 +238,7 @@ public class DCPMessageFactory
         }
         catch (Exception e)
         {
-            Logging.info(this, ">> DCP sending error: " + e.getLocalizedMessage());
+            Logging.info(this, ">> DCP sending error: {}", e.getLocalizedMessage());
             return retValue;
         }
     }
@@ -14,8 +14,6 @@
 
 package com.mkulesh.onpc.iscp.messages;
 
-import android.annotation.SuppressLint;
-
 import com.jayway.jsonpath.JsonPath;
 import com.mkulesh.onpc.iscp.EISCPMessage;
 import com.mkulesh.onpc.iscp.ISCPMessage;
@@ -474,7 +472,7 @@ public class DcpMediaContainerMsg extends ISCPMessage
         }
     }
 
-    @SuppressLint("DefaultLocale")
+    @SuppressWarnings("DefaultLocale")
     @Nullable
     @Override
     public String buildDcpMsg(boolean isQuery)
@@ -589,7 +587,7 @@ public class DcpMediaContainerMsg extends ISCPMessage
             {
                 return (String) obj;
             }
-            Logging.info(payload, "DCP HEOS error: Cannot read element " + name + ": object type unknown: " + obj);
+            Logging.info(payload, "DCP HEOS error: Cannot read element {}: object type unknown: {}", name, obj);
         }
         return EMPTY;
     }
@@ -608,7 +606,7 @@ public class DcpMediaContainerMsg extends ISCPMessage
             {
                 return (String) obj;
             }
-            Logging.info(heosMsg, "DCP HEOS error: Cannot read path " + path + ": object type unknown: " + obj);
+            Logging.info(heosMsg, "DCP HEOS error: Cannot read path {}: object type unknown: {}", path, obj);
             return EMPTY;
         }
         catch (Exception ex)
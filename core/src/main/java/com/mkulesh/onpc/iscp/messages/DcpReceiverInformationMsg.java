@@ -59,6 +59,9 @@ public class DcpReceiverInformationMsg extends ISCPMessage
     // Get Music Sources Command: heos://browse/get_music_sources
     private final static String HEOS_COMMAND_NET = "browse/get_music_sources";
 
+    // Change events are registered per HEOS connection
+    public final static String HEOS_REGISTER_FOR_CHANGE_EVENTS = "heos://system/register_for_change_events?enable=on";
+
     @NonNull
     public static ArrayList<String> getAcceptedDcpCodes()
     {
@@ -227,7 +230,7 @@ public class DcpReceiverInformationMsg extends ISCPMessage
             final int sepIdx = par.indexOf(' ');
             if (sepIdx < 0)
             {
-                Logging.info(DcpReceiverInformationMsg.class, "DCP selector " + par + ": separator not found");
+                Logging.info(DcpReceiverInformationMsg.class, "DCP selector {}: separator not found", par);
             }
             final String code = par.substring(0, sepIdx).trim();
             final String name = par.substring(sepIdx).trim();
@@ -236,7 +239,7 @@ public class DcpReceiverInformationMsg extends ISCPMessage
                             code, InputSelectorMsg.InputType.values(), InputSelectorMsg.InputType.NONE);
             if (item == InputSelectorMsg.InputType.NONE)
             {
-                Logging.info(DcpReceiverInformationMsg.class, "DCP input selector not known: " + par);
+                Logging.info(DcpReceiverInformationMsg.class, "DCP input selector not known: {}", par);
                 return null;
             }
             return new DcpReceiverInformationMsg(
@@ -306,7 +309,7 @@ public class DcpReceiverInformationMsg extends ISCPMessage
                     // nothing to do
                 }
             }
-            Logging.info(DcpReceiverInformationMsg.class, "DCP preset invalid: " + par);
+            Logging.info(DcpReceiverInformationMsg.class, "DCP preset invalid: {}", par);
         }
 
         // Firmware version
@@ -337,7 +340,7 @@ public class DcpReceiverInformationMsg extends ISCPMessage
         }
         catch (Exception e)
         {
-            Logging.info(DcpReceiverInformationMsg.class, "Unable to parse max. volume level " + par);
+            Logging.info(DcpReceiverInformationMsg.class, "Unable to parse max. volume level {}", par);
             return null;
         }
     }
@@ -361,7 +364,7 @@ public class DcpReceiverInformationMsg extends ISCPMessage
                 final ServiceType s = (ServiceType) searchParameter(id, ServiceType.values(), null);
                 if (s == null)
                 {
-                    Logging.info(DcpReceiverInformationMsg.class, "Service " + names.get(i) + " is not supported");
+                    Logging.info(DcpReceiverInformationMsg.class, "Service {} is not supported", names.get(i));
                     continue;
                 }
                 networkServices.put(id, new ReceiverInformationMsg.NetworkService(
@@ -382,7 +385,7 @@ public class DcpReceiverInformationMsg extends ISCPMessage
         final boolean missing = nsList.get(s.getCode()) == null;
         if (missing)
         {
-            Logging.info(s, "Enforced missing network service " + s);
+            Logging.info(s, "Enforced missing network service {}", s);
             nsList.put(s.getCode(), new ReceiverInformationMsg.NetworkService(
                     s.getCode(), s.getName(), ReceiverInformationMsg.ALL_ZONES, false, false));
         }
@@ -393,7 +396,7 @@ public class DcpReceiverInformationMsg extends ISCPMessage
     public String buildDcpMsg(boolean isQuery)
     {
         final StringBuilder res = new StringBuilder();
-        res.append("heos://system/register_for_change_events?enable=on");
+        res.append(HEOS_REGISTER_FOR_CHANGE_EVENTS);
         res.append(DCP_MSG_SEP + "heos://" + HEOS_COMMAND_NET);
         res.append(DCP_MSG_SEP + DCP_COMMAND_INPUT_SEL + " ?");
         res.append(DCP_MSG_SEP + DCP_COMMAND_FIRMWARE_VER + " ?");
@@ -14,17 +14,12 @@
 
 package com.mkulesh.onpc.iscp.messages;
 
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-
 import com.jayway.jsonpath.JsonPath;
 import com.mkulesh.onpc.iscp.EISCPMessage;
 import com.mkulesh.onpc.iscp.ISCPMessage;
-import com.mkulesh.onpc.utils.Logging;
-import com.mkulesh.onpc.utils.Utils;
 
-import java.io.ByteArrayOutputStream;
 import java.net.URL;
+import java.util.Arrays;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -82,7 +77,31 @@ public class JacketArtMsg extends ISCPMessage
     private PacketFlag packetFlag = PacketFlag.NOT_USED;
 
     private URL url = null;
-    private byte[] rawData = null;
+
+    // Hex-encoded image data starts at this position and is decoded on demand
+    private final static int RAW_DATA_START = 2;
+    private int rawDataSize = 0;
+
+    private final static byte[] HEX_TABLE = new byte[128];
+
+    static
+    {
+        Arrays.fill(HEX_TABLE, (byte) -1);
+        for (int i = 0; i < 10; i++)
+        {
+            HEX_TABLE['0' + i] = (byte) i;
+        }
+        for (int i = 0; i < 6; i++)
+        {
+            HEX_TABLE['a' + i] = (byte) (10 + i);
+            HEX_TABLE['A' + i] = (byte) (10 + i);
+        }
+    }
+
+    // Image loaded by the cover loader for the given request. The image type
+    // depends on the platform: on Android, it is a Bitmap
+    private int loadRequest = -1;
+    private Object cover = null;
 
     JacketArtMsg(EISCPMessage raw) throws Exception
     {
@@ -104,7 +123,7 @@ public class JacketArtMsg extends ISCPMessage
                 break;
             case BMP:
             case JPEG:
-                rawData = convertRaw(data.substring(2));
+                rawDataSize = checkRawData();
                 break;
             case NO_IMAGE:
                 // nothing to do;
@@ -120,6 +139,16 @@ public class JacketArtMsg extends ISCPMessage
         this.url = new URL(url);
     }
 
+    public JacketArtMsg(@NonNull final JacketArtMsg other, final int loadRequest, @Nullable final Object cover)
+    {
+        super(other);
+        this.imageType = other.imageType;
+        this.packetFlag = other.packetFlag;
+        this.url = other.url;
+        this.loadRequest = loadRequest;
+        this.cover = cover;
+    }
+
     public ImageType getImageType()
     {
         return imageType;
@@ -130,9 +159,24 @@ public class JacketArtMsg extends ISCPMessage
         return packetFlag;
     }
 
-    public byte[] getRawData()
+    public int getRawDataSize()
     {
-        return rawData;
+        return rawDataSize;
+    }
+
+    /**
+     * Procedure decodes hex-encoded image data into the given array starting from the given offset.
+     * The array shall have at least getRawDataSize() free bytes.
+     *
+     * @return number of decoded bytes
+     */
+    public int decodeRawData(@NonNull final byte[] dst, final int offset)
+    {
+        for (int i = 0, j = RAW_DATA_START; i < rawDataSize; i++, j += 2)
+        {
+            dst[offset + i] = (byte) ((HEX_TABLE[data.charAt(j)] << 4) | HEX_TABLE[data.charAt(j + 1)]);
+        }
+        return rawDataSize;
     }
 
     public URL getUrl()
@@ -140,6 +184,22 @@ public class JacketArtMsg extends ISCPMessage
         return url;
     }
 
+    public boolean isLoaded()
+    {
+        return loadRequest >= 0;
+    }
+
+    public int getLoadRequest()
+    {
+        return loadRequest;
+    }
+
+    @Nullable
+    public Object getCover()
+    {
+        return cover;
+    }
+
     @NonNull
     @Override
     public String toString()
@@ -148,71 +208,23 @@ public class JacketArtMsg extends ISCPMessage
                 + "; TYPE=" + imageType.toString()
                 + "; PACKET=" + packetFlag.toString()
                 + "; URL=" + url
-                + "; RAW(" + (rawData == null ? "null" : rawData.length) + ")"
+                + "; RAW(" + rawDataSize + ")"
+                + (isLoaded() ? "; LOADED(" + loadRequest + ")" : "")
                 + "]";
     }
 
-    private byte[] convertRaw(String str)
+    private int checkRawData() throws Exception
     {
-        byte[] bytes = new byte[str.length() / 2];
-        for (int i = 0; i < bytes.length; i++)
+        final int size = (data.length() - RAW_DATA_START) / 2;
+        for (int j = RAW_DATA_START; j < RAW_DATA_START + 2 * size; j++)
         {
-            final int j1 = 2 * i;
-            final int j2 = 2 * i + 1;
-            if (j1 < str.length() && j2 < str.length())
+            final char c = data.charAt(j);
+            if (c >= HEX_TABLE.length || HEX_TABLE[c] < 0)
             {
-                bytes[i] = (byte) Integer.parseInt(str.substring(j1, j2 + 1), 16);
+                throw new Exception("Invalid image data: " + c + " at position " + j);
             }
         }
-        return bytes;
-    }
-
-    public Bitmap loadFromUrl()
-    {
-        Bitmap cover = null;
-        final byte[] bytes = Utils.getUrlData(url, true);
-        if (bytes != null)
-        {
-            final int offset = Utils.getUrlHeaderLength(bytes);
-            final int length = bytes.length - offset;
-            if (length > 0)
-            {
-                Logging.info(this, "Cover image size=" + length);
-                cover = BitmapFactory.decodeByteArray(bytes, offset, length);
-                if (cover == null)
-                {
-                    Logging.info(this, "can not open image: BitmapFactory.decodeByteArray error");
-                }
-            }
-        }
-        return cover;
-    }
-
-    public Bitmap loadFromBuffer(ByteArrayOutputStream coverBuffer)
-    {
-        if (coverBuffer == null)
-        {
-            Logging.info(this, "can not open image: empty stream");
-            return null;
-        }
-        Bitmap cover = null;
-        try
-        {
-            Logging.info(this, "loading image from stream");
-            coverBuffer.flush();
-            coverBuffer.close();
-            final byte[] out = coverBuffer.toByteArray();
-            cover = BitmapFactory.decodeByteArray(out, 0, out.length);
-        }
-        catch (Exception e)
-        {
-            Logging.info(this, "can not open image: " + e.getLocalizedMessage());
-        }
-        if (cover == null)
-        {
-            Logging.info(this, "can not open image");
-        }
-        return cover;
+        return size;
     }
 
     /*
@@ -191,7 +191,7 @@ public class MasterVolumeMsg extends ZonedMessage
                 }
                 catch (Exception e)
                 {
-                    Logging.info(MasterVolumeMsg.class, "Unable to parse volume level " + par);
+                    Logging.info(MasterVolumeMsg.class, "Unable to parse volume level {}", par);
                     return null;
                 }
             }
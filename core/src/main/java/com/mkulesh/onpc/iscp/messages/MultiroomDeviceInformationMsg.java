@@ -202,11 +202,11 @@ public class MultiroomDeviceInformationMsg extends ISCPMessage
         {
             for (Map.Entry<String, String> p : properties.entrySet())
             {
-                Logging.info(this, "    Property: " + p.getKey() + "=" + p.getValue());
+                Logging.info(this, "    Property: {}={}", p.getKey(), p.getValue());
             }
             for (MultiroomDeviceInformationMsg.Zone s : zones)
             {
-                Logging.info(this, "    Zone " + s.toString());
+                Logging.info(this, "    Zone {}", s);
             }
         }
     }
@@ -14,8 +14,6 @@
 
 package com.mkulesh.onpc.iscp.messages;
 
-import android.annotation.SuppressLint;
-
 import com.mkulesh.onpc.iscp.EISCPMessage;
 import com.mkulesh.onpc.iscp.ISCPMessage;
 
@@ -66,7 +64,7 @@ public class PlayQueueRemoveMsg extends ISCPMessage
     /*
      * Denon control protocol
      */
-    @SuppressLint("DefaultLocale")
+    @SuppressWarnings("DefaultLocale")
     @Nullable
     @Override
     public String buildDcpMsg(boolean isQuery)
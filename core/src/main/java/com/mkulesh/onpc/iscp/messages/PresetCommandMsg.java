@@ -14,8 +14,6 @@
 
 package com.mkulesh.onpc.iscp.messages;
 
-import android.annotation.SuppressLint;
-
 import com.mkulesh.onpc.R;
 import com.mkulesh.onpc.iscp.EISCPMessage;
 import com.mkulesh.onpc.iscp.ZonedMessage;
@@ -200,14 +198,14 @@ public class PresetCommandMsg extends ZonedMessage
             }
             catch (Exception e)
             {
-                Logging.info(PresetCommandMsg.class, "Unable to parse preset " + par);
+                Logging.info(PresetCommandMsg.class, "Unable to parse preset {}", par);
                 return null;
             }
         }
         return null;
     }
 
-    @SuppressLint("DefaultLocale")
+    @SuppressWarnings("DefaultLocale")
     @Nullable
     @Override
     public String buildDcpMsg(boolean isQuery)
@@ -14,8 +14,6 @@
 
 package com.mkulesh.onpc.iscp.messages;
 
-import android.annotation.SuppressLint;
-
 import com.mkulesh.onpc.iscp.EISCPMessage;
 import com.mkulesh.onpc.iscp.ISCPMessage;
 
@@ -100,7 +98,7 @@ public class PresetMemoryMsg extends ISCPMessage
         return null;
     }
 
-    @SuppressLint("DefaultLocale")
+    @SuppressWarnings("DefaultLocale")
     @Nullable
     @Override
     public String buildDcpMsg(boolean isQuery)
@@ -18,6 +18,7 @@ import com.mkulesh.onpc.R;
 import com.mkulesh.onpc.iscp.ConnectionIf;
 import com.mkulesh.onpc.iscp.EISCPMessage;
 import com.mkulesh.onpc.iscp.ISCPMessage;
+import com.mkulesh.onpc.iscp.ProtocolRecorder;
 import com.mkulesh.onpc.utils.Logging;
 import com.mkulesh.onpc.utils.Utils;
 
@@ -575,34 +576,34 @@ public class ReceiverInformationMsg extends ISCPMessage
 
         if (showInfo)
         {
-            Logging.info(this, "    deviceId=" + deviceId);
+            Logging.info(this, "    deviceId={}", deviceId);
             for (Map.Entry<String, String> p : deviceProperties.entrySet())
             {
-                Logging.info(this, "    Property: " + p.getKey() + "=" + p.getValue());
+                Logging.info(this, "    Property: {}={}", p.getKey(), p.getValue());
             }
             for (NetworkService s : networkServices.values())
             {
-                Logging.info(this, "    Service " + s.toString());
+                Logging.info(this, "    Service {}", s);
             }
             for (Zone s : zones)
             {
-                Logging.info(this, "    Zone " + s.toString());
+                Logging.info(this, "    Zone {}", s);
             }
             for (Selector s : deviceSelectors)
             {
-                Logging.info(this, "    Selector " + s.toString());
+                Logging.info(this, "    Selector {}", s);
             }
             for (Preset p : presetList)
             {
-                Logging.info(this, "    Preset " + p.toString());
+                Logging.info(this, "    Preset {}", p);
             }
             for (String s : controlList)
             {
-                Logging.info(this, "    Control: " + s);
+                Logging.info(this, "    Control: {}", s);
             }
             for (ToneControl s : toneControls.values())
             {
-                Logging.info(this, "    Tone control " + s.toString());
+                Logging.info(this, "    Tone control {}", s);
             }
         }
         else
@@ -740,7 +741,10 @@ public class ReceiverInformationMsg extends ISCPMessage
 
     private static String getDcpXmlData(final String host, final int port) throws Exception
     {
-        final byte[] bytes = Utils.getUrlData(new URL(getDcpGoformUrl(host, port, "Deviceinfo.xml")), true);
+        final String url = getDcpGoformUrl(host, port, "Deviceinfo.xml");
+        ProtocolRecorder.record(ProtocolRecorder.Source.HTTP, ProtocolRecorder.Direction.OUT, url);
+        final byte[] bytes = Utils.getUrlData(new URL(url), true);
+        ProtocolRecorder.record(ProtocolRecorder.Source.HTTP, ProtocolRecorder.Direction.IN, bytes);
         if (bytes != null)
         {
             final int offset = Utils.getUrlHeaderLength(bytes);
@@ -759,7 +763,10 @@ public class ReceiverInformationMsg extends ISCPMessage
     {
         try
         {
-            final byte[] bytes = Utils.getUrlData(new URL(getDcpGoformUrl(host, port, "formiPhoneAppTunerPreset.xml")), true);
+            final String url = getDcpGoformUrl(host, port, "formiPhoneAppTunerPreset.xml");
+            ProtocolRecorder.record(ProtocolRecorder.Source.HTTP, ProtocolRecorder.Direction.OUT, url);
+            final byte[] bytes = Utils.getUrlData(new URL(url), true);
+            ProtocolRecorder.record(ProtocolRecorder.Source.HTTP, ProtocolRecorder.Direction.IN, bytes);
             if (bytes != null)
             {
                 final int offset = Utils.getUrlHeaderLength(bytes);
@@ -807,7 +814,7 @@ public class ReceiverInformationMsg extends ISCPMessage
         }
         catch (Exception ex)
         {
-            Logging.info(this, "Cannot parse DCP presets: " + ex.getLocalizedMessage());
+            Logging.info(this, "Cannot parse DCP presets: {}", ex.getLocalizedMessage());
         }
     }
 
@@ -941,7 +948,7 @@ public class ReceiverInformationMsg extends ISCPMessage
         }
         else
         {
-            Logging.info(this, "Input source " + name + " for zone " + zone + " is not implemented");
+            Logging.info(this, "Input source {} for zone {} is not implemented", name, zone);
         }
     }
 
@@ -14,8 +14,6 @@
 
 package com.mkulesh.onpc.iscp.messages;
 
-import android.annotation.SuppressLint;
-
 import com.mkulesh.onpc.iscp.EISCPMessage;
 import com.mkulesh.onpc.iscp.ISCPMessage;
 import com.mkulesh.onpc.utils.Utils;
@@ -88,7 +86,7 @@ public class TimeInfoMsg extends ISCPMessage
     private final static String HEOS_COMMAND = "event/player_now_playing_progress";
 
     @Nullable
-    @SuppressLint("SimpleDateFormat")
+    @SuppressWarnings("SimpleDateFormat")
     public static TimeInfoMsg processHeosMessage(@NonNull final String command, @NonNull final Map<String, String> tokens)
     {
         if (HEOS_COMMAND.equals(command))
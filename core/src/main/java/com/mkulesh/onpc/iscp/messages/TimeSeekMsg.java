@@ -14,8 +14,6 @@
 
 package com.mkulesh.onpc.iscp.messages;
 
-import android.annotation.SuppressLint;
-
 import com.mkulesh.onpc.iscp.EISCPMessage;
 import com.mkulesh.onpc.iscp.ISCPMessage;
 
@@ -65,7 +63,7 @@ public class TimeSeekMsg extends ISCPMessage
         return CODE + "[" + getTimeAsString() + ", FORMAT=" + timeFormat.toString() + "]";
     }
 
-    @SuppressLint("DefaultLocale")
+    @SuppressWarnings("DefaultLocale")
     public String getTimeAsString()
     {
         int MM99_MAX_MIN = 99;
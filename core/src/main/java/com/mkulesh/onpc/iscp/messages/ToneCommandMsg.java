@@ -14,8 +14,6 @@
 
 package com.mkulesh.onpc.iscp.messages;
 
-import android.annotation.SuppressLint;
-
 import com.mkulesh.onpc.iscp.EISCPMessage;
 import com.mkulesh.onpc.iscp.ZonedMessage;
 import com.mkulesh.onpc.utils.Logging;
@@ -181,7 +179,7 @@ public class ToneCommandMsg extends ZonedMessage
                 }
                 catch (Exception e)
                 {
-                    Logging.info(ToneCommandMsg.class, "Unable to parse bass level " + par);
+                    Logging.info(ToneCommandMsg.class, "Unable to parse bass level {}", par);
                     return null;
                 }
             }
@@ -200,7 +198,7 @@ public class ToneCommandMsg extends ZonedMessage
                 }
                 catch (Exception e)
                 {
-                    Logging.info(ToneCommandMsg.class, "Unable to parse treble level " + par);
+                    Logging.info(ToneCommandMsg.class, "Unable to parse treble level {}", par);
                     return null;
                 }
             }
@@ -210,7 +208,7 @@ public class ToneCommandMsg extends ZonedMessage
 
     @Nullable
     @Override
-    @SuppressLint("DefaultLocale")
+    @SuppressWarnings("DefaultLocale")
     public String buildDcpMsg(boolean isQuery)
     {
         if (isQuery)
@@ -64,7 +64,7 @@ public class AutoPower implements MessageScriptIf
     @Override
     public void start(@NonNull final State state, @NonNull MessageChannel channel)
     {
-        Logging.info(this, "started script: " + autoPowerMode);
+        Logging.info(this, "started script: {}", autoPowerMode);
         done = false;
         allStandbyStep = AllStandbyStep.NONE;
     }
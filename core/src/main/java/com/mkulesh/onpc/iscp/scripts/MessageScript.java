@@ -13,8 +13,6 @@
  */
 package com.mkulesh.onpc.iscp.scripts;
 
-import android.content.Context;
-
 import com.mkulesh.onpc.iscp.ConnectionIf;
 import com.mkulesh.onpc.iscp.EISCPMessage;
 import com.mkulesh.onpc.iscp.ISCPMessage;
@@ -29,6 +27,8 @@ import com.mkulesh.onpc.iscp.messages.ReceiverInformationMsg;
 import com.mkulesh.onpc.iscp.messages.ServiceType;
 import com.mkulesh.onpc.iscp.messages.XmlListInfoMsg;
 import com.mkulesh.onpc.iscp.messages.XmlListItemMsg;
+import com.mkulesh.onpc.utils.AppScheduler;
+import com.mkulesh.onpc.utils.StringResourceIf;
 import com.mkulesh.onpc.utils.Utils;
 
 import org.w3c.dom.Element;
@@ -36,7 +36,6 @@ import org.w3c.dom.Node;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Timer;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -114,11 +113,11 @@ public class MessageScript implements ConnectionIf, MessageScriptIf
     // Actions to be performed
     private final List<Action> actions = new ArrayList<>();
 
-    private final Context context;
+    private final StringResourceIf strings;
 
-    public MessageScript(Context context, @NonNull final String data)
+    public MessageScript(StringResourceIf strings, @NonNull final String data)
     {
-        this.context = context;
+        this.strings = strings;
         initialize(data);
     }
 
@@ -302,7 +301,7 @@ public class MessageScript implements ConnectionIf, MessageScriptIf
         {
             if (!a.listitem.isEmpty())
             {
-                final List<XmlListItemMsg> mediaItems = state.cloneMediaItems();
+                final List<XmlListItemMsg> mediaItems = state.getMediaItems();
                 for (XmlListItemMsg item : mediaItems)
                 {
                     if (item.getTitle().equals(a.listitem))
@@ -310,10 +309,10 @@ public class MessageScript implements ConnectionIf, MessageScriptIf
                         return true;
                     }
                 }
-                final List<NetworkServiceMsg> serviceItems = state.cloneServiceItems();
+                final List<NetworkServiceMsg> serviceItems = state.getServiceItems();
                 for (NetworkServiceMsg item : serviceItems)
                 {
-                    if (context.getString(item.getService().getDescriptionId()).equals(a.listitem))
+                    if (strings.getString(item.getService().getDescriptionId()).equals(a.listitem))
                     {
                         return true;
                     }
@@ -346,8 +345,8 @@ public class MessageScript implements ConnectionIf, MessageScriptIf
             EISCPMessage msg = null;
             if (a.cmd.equals(XmlListInfoMsg.CODE))
             {
-                final List<XmlListItemMsg> cloneMediaItems = state.cloneMediaItems();
-                for (XmlListItemMsg item : cloneMediaItems)
+                final List<XmlListItemMsg> mediaItems = state.getMediaItems();
+                for (XmlListItemMsg item : mediaItems)
                 {
                     if (item.getTitle().equals(a.par))
                     {
@@ -367,16 +366,11 @@ public class MessageScript implements ConnectionIf, MessageScriptIf
         if (a.milliseconds >= 0)
         {
             info(this, a + ": scheduling timer for " + a.milliseconds + " milliseconds");
-            final Timer t = new Timer();
-            t.schedule(new java.util.TimerTask()
+            AppScheduler.schedule(() ->
             {
-                @Override
-                public void run()
-                {
-                    info(MessageScript.this, a + ": timer expired");
-                    a.state = ActionState.DONE;
-                    processNextActions(state, channel);
-                }
+                info(MessageScript.this, a + ": timer expired");
+                a.state = ActionState.DONE;
+                processNextActions(state, channel);
             }, a.milliseconds);
         }
         return a.state;
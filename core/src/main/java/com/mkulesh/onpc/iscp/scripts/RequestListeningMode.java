@@ -18,11 +18,10 @@ import com.mkulesh.onpc.iscp.ISCPMessage;
 import com.mkulesh.onpc.iscp.MessageChannel;
 import com.mkulesh.onpc.iscp.State;
 import com.mkulesh.onpc.iscp.messages.ListeningModeMsg;
+import com.mkulesh.onpc.utils.AppScheduler;
 import com.mkulesh.onpc.utils.Logging;
 
-import java.util.Timer;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import androidx.annotation.NonNull;
@@ -40,7 +39,7 @@ public class RequestListeningMode implements MessageScriptIf
     private static final long LISTENING_MODE_DELAY = 1000;
     private static final int MAX_LISTENING_MODE_REQUESTS = 5;
     private final AtomicInteger listeningModeRequests = new AtomicInteger();
-    private final BlockingQueue<Timer> listeningModeQueue = new ArrayBlockingQueue<>(1, true);
+    private final AtomicBoolean listeningModeRequested = new AtomicBoolean();
 
     @Override
     public boolean isValid()
@@ -67,21 +66,15 @@ public class RequestListeningMode implements MessageScriptIf
         if (msg instanceof ListeningModeMsg &&
                 ((ListeningModeMsg) msg).getMode() == ListeningModeMsg.Mode.MODE_FF &&
                 listeningModeRequests.get() < MAX_LISTENING_MODE_REQUESTS &&
-                listeningModeQueue.isEmpty())
+                listeningModeRequested.compareAndSet(false, true))
         {
-            Logging.info(this, "scheduling listening mode request in " + LISTENING_MODE_DELAY + "ms");
-            final Timer t = new Timer();
-            listeningModeQueue.add(t);
-            t.schedule(new java.util.TimerTask()
+            Logging.info(this, "scheduling listening mode request in {}ms", LISTENING_MODE_DELAY);
+            AppScheduler.schedule(() ->
             {
-                @Override
-                public void run()
-                {
-                    listeningModeQueue.poll();
-                    Logging.info(RequestListeningMode.this, "re-requesting LM state ["
-                            + listeningModeRequests.addAndGet(1) + "]...");
-                    channel.sendMessage(new EISCPMessage(ListeningModeMsg.CODE, EISCPMessage.QUERY));
-                }
+                listeningModeRequested.set(false);
+                Logging.info(RequestListeningMode.this, "re-requesting LM state ["
+                        + listeningModeRequests.addAndGet(1) + "]...");
+                channel.sendMessage(new EISCPMessage(ListeningModeMsg.CODE, EISCPMessage.QUERY));
             }, LISTENING_MODE_DELAY);
         }
     }
@@ -0,0 +1,79 @@
+/*
+ * Enhanced Music Controller
+ * Copyright (C) 2018-2023 by Mikhail Kulesh
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with this program.
+ */
+
+package com.mkulesh.onpc.utils;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Application-wide scheduler for delayed tasks. All tasks are executed one after
+ * another in a single daemon thread; therefore, a task shall not block.
+ */
+public class AppScheduler
+{
+    private final static AppScheduler instance = new AppScheduler();
+    private final static AtomicInteger threadCount = new AtomicInteger();
+    private final static AtomicInteger taskCount = new AtomicInteger();
+
+    private final static ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r ->
+    {
+        final Thread t = new Thread(r, AppScheduler.class.getSimpleName() + "-" + threadCount.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+
+    private AppScheduler()
+    {
+        // only static methods
+    }
+
+    @NonNull
+    public static ScheduledFuture<?> schedule(@NonNull final Runnable task, final long delay)
+    {
+        taskCount.incrementAndGet();
+        return executor.schedule(() ->
+        {
+            try
+            {
+                task.run();
+            }
+            catch (Exception e)
+            {
+                Logging.info(instance, "scheduled task failed: {}", e.getLocalizedMessage());
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Number of threads created by the scheduler since the application start
+     */
+    public static int getThreadCount()
+    {
+        return threadCount.get();
+    }
+
+    /**
+     * Number of tasks scheduled since the application start
+     */
+    public static int getTaskCount()
+    {
+        return taskCount.get();
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Enhanced Music Controller
+ * Copyright (C) 2018-2023 by Mikhail Kulesh
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with this program.
+ */
+
+package com.mkulesh.onpc.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import androidx.annotation.NonNull;
+
+@SuppressWarnings("SameReturnValue")
+public final class Logging
+{
+    /*
+     * Logging levels: INFO is the regular application logging, TRACE additionally
+     * logs every received and sent protocol message. The default level is INFO;
+     * the Android application sets it from the build type and the developer mode
+     */
+    public enum Level
+    {
+        NONE, INFO, TRACE
+    }
+
+    private static volatile Level level = Level.INFO;
+
+    /*
+     * Output of the logging lines: the standard output by default,
+     * the Android application redirects it into the Android log
+     */
+    public interface Output
+    {
+        void write(@NonNull String line);
+    }
+
+    private static volatile Output output = System.out::println;
+
+    public static boolean saveLogging = false;
+
+    // Saved logging: a ring buffer that keeps the latest LOG_SIZE lines. A writer reserves a slot
+    // by incrementing the line number, invalidates the slot, writes the line, and then marks
+    // the slot with its line number.
+    private final static int LOG_SIZE = 5000;
+    private final static AtomicReferenceArray<String> latestLogging = new AtomicReferenceArray<>(LOG_SIZE);
+    private final static AtomicLongArray latestLoggingLines = new AtomicLongArray(LOG_SIZE);
+    private final static AtomicLong logLineNumber = new AtomicLong(0);
+    private final static AtomicLong logReadNumber = new AtomicLong(0);
+
+    public static boolean isEnabled()
+    {
+        return level.ordinal() >= Level.INFO.ordinal();
+    }
+
+    public static boolean isTraceEnabled()
+    {
+        return level.ordinal() >= Level.TRACE.ordinal();
+    }
+
+    public static void setTraceEnabled(boolean flag)
+    {
+        if (isEnabled())
+        {
+            level = flag ? Level.TRACE : Level.INFO;
+        }
+    }
+
+    public static void setLevel(@NonNull final Level l)
+    {
+        level = l;
+    }
+
+    public static void setOutput(@NonNull final Output o)
+    {
+        output = o;
+    }
+
+    public static boolean isTimeMsgEnabled()
+    {
+        // Time messages arrive every second and are not logged, even on TRACE level
+        return false;
+    }
+
+    public static void info(Object o, String text)
+    {
+        if (isEnabled())
+        {
+            log(o, text);
+        }
+    }
+
+    /*
+     * Parameterized logging: each "{}" in the text is replaced by the next argument.
+     * The line is only built if the level is enabled.
+     */
+    public static void info(Object o, String text, Object arg1)
+    {
+        if (isEnabled())
+        {
+            log(o, format(text, arg1));
+        }
+    }
+
+    public static void info(Object o, String text, Object arg1, Object arg2)
+    {
+        if (isEnabled())
+        {
+            log(o, format(text, arg1, arg2));
+        }
+    }
+
+    public static void info(Object o, String text, Object arg1, Object arg2, Object arg3)
+    {
+        if (isEnabled())
+        {
+            log(o, format(text, arg1, arg2, arg3));
+        }
+    }
+
+    public static void trace(Object o, String text)
+    {
+        if (isTraceEnabled())
+        {
+            log(o, text);
+        }
+    }
+
+    public static void trace(Object o, String text, Object arg1)
+    {
+        if (isTraceEnabled())
+        {
+            log(o, format(text, arg1));
+        }
+    }
+
+    public static void trace(Object o, String text, Object arg1, Object arg2)
+    {
+        if (isTraceEnabled())
+        {
+            log(o, format(text, arg1, arg2));
+        }
+    }
+
+    public static void trace(Object o, String text, Object arg1, Object arg2, Object arg3)
+    {
+        if (isTraceEnabled())
+        {
+            log(o, format(text, arg1, arg2, arg3));
+        }
+    }
+
+    public static void trace(Object o, String text, Object arg1, Object arg2, Object arg3, Object arg4)
+    {
+        if (isTraceEnabled())
+        {
+            log(o, format(text, arg1, arg2, arg3, arg4));
+        }
+    }
+
+    public static void trace(Object o, String text, Object arg1, Object arg2, Object arg3, Object arg4, Object arg5)
+    {
+        if (isTraceEnabled())
+        {
+            log(o, format(text, arg1, arg2, arg3, arg4, arg5));
+        }
+    }
+
+    private static void log(Object o, String text)
+    {
+        final String out = o.getClass().getSimpleName() + ": " + text;
+        if (saveLogging)
+        {
+            final long line = logLineNumber.getAndIncrement();
+            final int slot = (int) (line % LOG_SIZE);
+            latestLoggingLines.set(slot, -1);
+            latestLogging.set(slot, out);
+            latestLoggingLines.set(slot, line);
+        }
+        output.write(out);
+    }
+
+    @NonNull
+    private static String format(String text, Object... args)
+    {
+        final StringBuilder str = new StringBuilder(text.length() + 16 * args.length);
+        int start = 0;
+        for (Object arg : args)
+        {
+            final int idx = text.indexOf("{}", start);
+            if (idx < 0)
+            {
+                break;
+            }
+            str.append(text, start, idx).append(arg);
+            start = idx + 2;
+        }
+        str.append(text, start, text.length());
+        return str.toString();
+    }
+
+    public static String getLatestLogging()
+    {
+        final StringBuilder str = new StringBuilder();
+        final long end = logLineNumber.get();
+        final long start = Math.max(logReadNumber.getAndSet(end), end - LOG_SIZE);
+        for (long line = start; line < end; line++)
+        {
+            final int slot = (int) (line % LOG_SIZE);
+            if (latestLoggingLines.get(slot) != line)
+            {
+                continue;
+            }
+            final String out = latestLogging.get(slot);
+            // The slot can be overwritten by a newer line in the meantime
+            if (out == null || latestLoggingLines.get(slot) != line)
+            {
+                continue;
+            }
+            final String number = Long.toString(line + 1);
+            str.append('#');
+            for (int i = number.length(); i < 4; i++)
+            {
+                str.append('0');
+            }
+            str.append(number).append(": ").append(out).append("\n");
+        }
+        return str.toString();
+    }
+}
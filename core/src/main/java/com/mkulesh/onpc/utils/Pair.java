@@ -0,0 +1,38 @@
+/*
+ * Enhanced Music Controller
+ * Copyright (C) 2018-2023 by Mikhail Kulesh
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with this program.
+ */
+package com.mkulesh.onpc.utils;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Container to ease passing around a tuple of two objects
+ */
+public class Pair<F, S>
+{
+    public final F first;
+    public final S second;
+
+    public Pair(F first, S second)
+    {
+        this.first = first;
+        this.second = second;
+    }
+
+    @NonNull
+    @Override
+    public String toString()
+    {
+        return "Pair{" + first + " " + second + "}";
+    }
+}
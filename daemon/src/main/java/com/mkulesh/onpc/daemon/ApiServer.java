@@ -0,0 +1,165 @@
+/*
+ * Enhanced Music Controller
+ * Copyright (C) 2018-2023 by Mikhail Kulesh
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with this program.
+ */
+
+package com.mkulesh.onpc.daemon;
+
+import com.mkulesh.onpc.utils.Logging;
+import com.mkulesh.onpc.utils.Utils;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import net.minidev.json.JSONObject;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import androidx.annotation.NonNull;
+
+/**
+ * HTTP API of the daemon. All requests are answered from the cached snapshots, i.e.
+ * a request never waits for the receiver:
+ * - GET /api/receivers: snapshots of all receivers
+ * - GET /api/receivers/{id}: snapshot of the given receiver
+ * - POST /api/receivers/{id}/command: raw commands, one per line, e.g. "MVL20"
+ * - GET /api/stats: statistics of the sessions and the WebSocket server
+ */
+public class ApiServer
+{
+    private final static String RECEIVERS = "/api/receivers";
+    private final static String COMMAND = "/command";
+    private final static String STATS = "/api/stats";
+    private final static int THREADS = 4;
+
+    private final Daemon daemon;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    ApiServer(@NonNull final String bind, final int port, @NonNull final Daemon daemon) throws IOException
+    {
+        this.daemon = daemon;
+        server = HttpServer.create(new InetSocketAddress(bind, port), 0);
+        executor = Executors.newFixedThreadPool(THREADS);
+        server.setExecutor(executor);
+        server.createContext(RECEIVERS, this::handleReceivers);
+        server.createContext(STATS, this::handleStats);
+    }
+
+    void start()
+    {
+        server.start();
+        Logging.info(this, "started on {}", server.getAddress());
+    }
+
+    void stop()
+    {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handleReceivers(@NonNull final HttpExchange exchange) throws IOException
+    {
+        final String path = exchange.getRequestURI().getPath();
+        final String method = exchange.getRequestMethod();
+        if (path.equals(RECEIVERS) || path.equals(RECEIVERS + "/"))
+        {
+            if (!"GET".equals(method))
+            {
+                send(exchange, 405, "{}");
+                return;
+            }
+            final StringBuilder json = new StringBuilder("[");
+            for (ReceiverSession s : daemon.getSessions())
+            {
+                json.append(json.length() > 1 ? "," : "").append(s.getSnapshot().toJson());
+            }
+            send(exchange, 200, json.append("]").toString());
+            return;
+        }
+
+        final String tail = path.substring(RECEIVERS.length() + 1);
+        final boolean command = tail.endsWith(COMMAND);
+        final ReceiverSession session = daemon.getSession(
+                command ? tail.substring(0, tail.length() - COMMAND.length()) : tail);
+        if (session == null)
+        {
+            send(exchange, 404, "{}");
+        }
+        else if (!command && "GET".equals(method))
+        {
+            send(exchange, 200, session.getSnapshot().toJson());
+        }
+        else if (command && "POST".equals(method))
+        {
+            final String body = new String(Utils.streamToByteArray(exchange.getRequestBody()), Utils.UTF_8);
+            int sent = 0, rejected = 0;
+            for (String c : body.split("\n"))
+            {
+                final String cmd = c.trim();
+                if (cmd.isEmpty())
+                {
+                    continue;
+                }
+                if (session.sendCommand(cmd))
+                {
+                    sent++;
+                }
+                else
+                {
+                    rejected++;
+                }
+            }
+            final Map<String, Object> result = new LinkedHashMap<>();
+            result.put("sent", sent);
+            result.put("rejected", rejected);
+            send(exchange, rejected == 0 ? 202 : 409, JSONObject.toJSONString(result));
+        }
+        else
+        {
+            send(exchange, 405, "{}");
+        }
+    }
+
+    private void handleStats(@NonNull final HttpExchange exchange) throws IOException
+    {
+        final Map<String, Object> stats = new LinkedHashMap<>();
+        final Map<String, Object> receivers = new LinkedHashMap<>();
+        for (ReceiverSession s : daemon.getSessions())
+        {
+            final Map<String, Object> r = new LinkedHashMap<>();
+            s.getStatistics(r);
+            receivers.put(s.getId(), r);
+        }
+        stats.put("receivers", receivers);
+        final Map<String, Object> ws = new LinkedHashMap<>();
+        daemon.getWebSocketServer().getStatistics(ws);
+        stats.put("webSocket", ws);
+        send(exchange, 200, JSONObject.toJSONString(stats));
+    }
+
+    private static void send(@NonNull final HttpExchange exchange, final int code, @NonNull final String json)
+            throws IOException
+    {
+        final byte[] bytes = json.getBytes(Utils.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(code, bytes.length);
+        final OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Enhanced Music Controller
+ * Copyright (C) 2018-2023 by Mikhail Kulesh
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with this program.
+ */
+
+package com.mkulesh.onpc.daemon;
+
+import com.mkulesh.onpc.iscp.ConnectionIf;
+import com.mkulesh.onpc.iscp.DeviceDiscovery;
+import com.mkulesh.onpc.iscp.SubnetSweep;
+import com.mkulesh.onpc.utils.Logging;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Headless controller that keeps persistent connections to a number of receivers and serves
+ * their state to any number of HTTP and WebSocket clients, for example
+ * "--favorite 192.168.1.10:60128,192.168.1.11:23 --discovery --http-port 8090 --ws-port 8091".
+ */
+public final class Daemon
+{
+    static class Options
+    {
+        // The API accepts raw commands without authentication: only local clients by default
+        String bind = "127.0.0.1";
+        int httpPort = 8090;
+        int wsPort = 8091;
+        int zone = 0;
+        boolean discovery = false;
+        // Networks for the TCP sweep, "local" for the local networks; null if not enabled
+        String sweep = null;
+        boolean quiet = false;
+        final List<String> favorites = new ArrayList<>();
+    }
+
+    private final static String USAGE = "Usage: Daemon [options]\n"
+            + "  --favorite H:P[,H:P]  receivers given by host and port\n"
+            + "  --discovery          add receivers found in the local network\n"
+            + "  --sweep N[,N]        add receivers found by a TCP sweep of the networks\n"
+            + "                       given in CIDR notation, or \"local\" for local networks\n"
+            + "  --zone N             controlled zone of all receivers (0)\n"
+            + "  --http-port P        port of the HTTP API (8090)\n"
+            + "  --ws-port P          port of the WebSocket API (8091)\n"
+            + "  --bind A             address of the HTTP and WebSocket APIs (127.0.0.1),\n"
+            + "                       0.0.0.0 for all interfaces\n"
+            + "  --quiet              disable logging";
+
+    private final Options options;
+    private final ConcurrentMap<String, ReceiverSession> sessions = new ConcurrentHashMap<>();
+    private final AtomicBoolean stopped = new AtomicBoolean();
+    private final WebSocketServer webSocketServer;
+    private final ApiServer apiServer;
+
+    private Daemon(@NonNull final Options options) throws Exception
+    {
+        this.options = options;
+        webSocketServer = new WebSocketServer(options.bind, options.wsPort, sessions);
+        apiServer = new ApiServer(options.bind, options.httpPort, this);
+    }
+
+    @NonNull
+    Collection<ReceiverSession> getSessions()
+    {
+        return sessions.values();
+    }
+
+    @Nullable
+    ReceiverSession getSession(@NonNull final String id)
+    {
+        return sessions.get(id);
+    }
+
+    @NonNull
+    WebSocketServer getWebSocketServer()
+    {
+        return webSocketServer;
+    }
+
+    private void addReceiver(@NonNull final String host, final int port)
+    {
+        if (sessions.containsKey(ReceiverSession.getId(host, port)))
+        {
+            return;
+        }
+        final ReceiverSession s = new ReceiverSession(host, port, options.zone, webSocketServer);
+        if (sessions.putIfAbsent(s.getId(), s) == null)
+        {
+            Logging.info(this, "new receiver: {}", s.getId());
+            s.start();
+        }
+    }
+
+    private void start()
+    {
+        webSocketServer.start();
+        apiServer.start();
+        for (String f : options.favorites)
+        {
+            final int sep = f.lastIndexOf(':');
+            if (sep > 0)
+            {
+                addReceiver(f.substring(0, sep), Integer.parseInt(f.substring(sep + 1)));
+            }
+            else
+            {
+                addReceiver(f, ConnectionIf.ISCP_PORT);
+            }
+        }
+        if (options.discovery)
+        {
+            final Thread t = new Thread(() -> new DeviceDiscovery(response ->
+                    addReceiver(response.getHost(), response.getPort())).run(stopped::get),
+                    DeviceDiscovery.class.getSimpleName());
+            t.setDaemon(true);
+            t.start();
+        }
+        if (options.sweep != null)
+        {
+            final List<String> networks = SubnetSweep.parseNetworks(
+                    "local".equals(options.sweep) ? null : options.sweep);
+            final Thread t = new Thread(() -> new SubnetSweep(response ->
+                    addReceiver(response.getHost(), response.getPort())).run(networks, stopped::get),
+                    SubnetSweep.class.getSimpleName());
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+
+    private void stop()
+    {
+        stopped.set(true);
+        apiServer.stop();
+        for (ReceiverSession s : sessions.values())
+        {
+            s.stop();
+        }
+        webSocketServer.stop();
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        final Options options = new Options();
+        for (int i = 0; i < args.length; i++)
+        {
+            final String arg = args[i];
+            final String value = i + 1 < args.length ? args[i + 1] : null;
+            if (value == null && !"--discovery".equals(arg) && !"--quiet".equals(arg))
+            {
+                // all other options require a value
+                System.out.println(USAGE);
+                return;
+            }
+            switch (arg)
+            {
+            case "--favorite":
+                for (String f : value.split(","))
+                {
+                    options.favorites.add(f.trim());
+                }
+                i++;
+                break;
+            case "--discovery":
+                options.discovery = true;
+                break;
+            case "--sweep":
+                options.sweep = value;
+                i++;
+                break;
+            case "--zone":
+                options.zone = Integer.parseInt(value);
+                i++;
+                break;
+            case "--http-port":
+                options.httpPort = Integer.parseInt(value);
+                i++;
+                break;
+            case "--ws-port":
+                options.wsPort = Integer.parseInt(value);
+                i++;
+                break;
+            case "--bind":
+                options.bind = value;
+                i++;
+                break;
+            case "--quiet":
+                options.quiet = true;
+                break;
+            default:
+                System.out.println(USAGE);
+                return;
+            }
+        }
+        if (options.favorites.isEmpty() && !options.discovery && options.sweep == null)
+        {
+            System.out.println(USAGE);
+            return;
+        }
+        if (options.quiet)
+        {
+            Logging.setLevel(Logging.Level.NONE);
+        }
+
+        final Daemon daemon = new Daemon(options);
+        daemon.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(daemon::stop));
+        Thread.currentThread().join();
+    }
+}
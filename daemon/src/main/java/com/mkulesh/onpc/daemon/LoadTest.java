@@ -0,0 +1,357 @@
+/*
+ * Enhanced Music Controller
+ * Copyright (C) 2018-2023 by Mikhail Kulesh
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with this program.
+ */
+
+package com.mkulesh.onpc.daemon;
+
+import com.mkulesh.onpc.utils.Logging;
+import com.mkulesh.onpc.utils.Utils;
+
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
+import net.minidev.json.JSONValue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Throughput and latency benchmark of a running daemon, for example against simulated receivers:
+ * "Simulator --count 4" and "Daemon --favorite 127.0.0.1:60128,...,127.0.0.1:60131".
+ * The benchmark opens the given number of WebSocket clients per receiver and changes the volume of
+ * each receiver with the given rate using the HTTP API. The latency is measured from sending the
+ * command until a client receives the volume delta. The result is printed as JSON.
+ */
+public final class LoadTest
+{
+    private final static int VOLUME_MIN = 10;
+    private final static int VOLUME_MAX = 60;
+    private final static int INPUT_BUFFER = 64 * 1024;
+
+    private static class Client
+    {
+        final String receiver;
+        final SocketChannel channel;
+        final ByteBuffer input = ByteBuffer.allocate(INPUT_BUFFER);
+        boolean upgraded = false;
+
+        Client(final String receiver, final SocketChannel channel)
+        {
+            this.receiver = receiver;
+            this.channel = channel;
+        }
+    }
+
+    private final String httpAddress;
+    private final String wsHost;
+    private final int wsPort;
+    // Send time of the latest command per receiver and volume
+    private final Map<String, Long> commandTimes = new ConcurrentHashMap<>();
+    private final List<Long> deltaLatencies = new ArrayList<>();
+    private final List<Long> httpLatencies = new ArrayList<>();
+    private long frames = 0, bytes = 0, snapshots = 0, commands = 0, failedCommands = 0;
+
+    private LoadTest(@NonNull final String httpAddress, @NonNull final String wsAddress)
+    {
+        this.httpAddress = httpAddress;
+        final int sep = wsAddress.lastIndexOf(':');
+        this.wsHost = wsAddress.substring(0, sep);
+        this.wsPort = Integer.parseInt(wsAddress.substring(sep + 1));
+    }
+
+    @NonNull
+    private List<String> getReceivers() throws IOException
+    {
+        final List<String> ids = new ArrayList<>();
+        final String json = new String(Utils.streamToByteArray(
+                new URL("http://" + httpAddress + "/api/receivers").openStream()), Utils.UTF_8);
+        for (Object o : (JSONArray) JSONValue.parse(json))
+        {
+            final JSONObject r = (JSONObject) o;
+            if (Boolean.TRUE.equals(r.get("connected")))
+            {
+                ids.add((String) r.get("id"));
+            }
+        }
+        return ids;
+    }
+
+    private void run(final int clientsPerReceiver, final int duration, final int rate) throws Exception
+    {
+        final List<String> receivers = getReceivers();
+        if (receivers.isEmpty())
+        {
+            throw new Exception("no connected receivers");
+        }
+
+        final Selector selector = Selector.open();
+        final List<Client> clients = new ArrayList<>();
+        for (String r : receivers)
+        {
+            for (int i = 0; i < clientsPerReceiver; i++)
+            {
+                final SocketChannel channel = SocketChannel.open(new InetSocketAddress(wsHost, wsPort));
+                channel.write(ByteBuffer.wrap(("GET /ws/" + r + " HTTP/1.1\r\n"
+                        + "Host: " + wsHost + ":" + wsPort + "\r\n"
+                        + "Upgrade: websocket\r\n"
+                        + "Connection: Upgrade\r\n"
+                        + "Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\n"
+                        + "Sec-WebSocket-Version: 13\r\n\r\n").getBytes(Utils.UTF_8)));
+                channel.configureBlocking(false);
+                final Client c = new Client(r, channel);
+                channel.register(selector, SelectionKey.OP_READ, c);
+                clients.add(c);
+            }
+        }
+
+        // The volume commands are sent by a separate thread
+        final long endTime = System.currentTimeMillis() + duration * 1000L;
+        final Thread sender = new Thread(() ->
+        {
+            int volume = VOLUME_MIN;
+            while (System.currentTimeMillis() < endTime)
+            {
+                for (String r : receivers)
+                {
+                    sendVolume(r, volume);
+                }
+                volume = volume >= VOLUME_MAX ? VOLUME_MIN : volume + 1;
+                try
+                {
+                    Thread.sleep(1000 / rate);
+                }
+                catch (InterruptedException e)
+                {
+                    break;
+                }
+            }
+        }, "LoadTestSender");
+        sender.start();
+
+        final long startTime = System.currentTimeMillis();
+        while (System.currentTimeMillis() < endTime + 1000)
+        {
+            selector.select(100);
+            final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext())
+            {
+                final SelectionKey key = keys.next();
+                keys.remove();
+                read((Client) key.attachment());
+            }
+        }
+        sender.join();
+        for (Client c : clients)
+        {
+            c.channel.close();
+        }
+        selector.close();
+
+        final Map<String, Object> result = new LinkedHashMap<>();
+        result.put("receivers", receivers.size());
+        result.put("clients", clients.size());
+        result.put("durationMs", System.currentTimeMillis() - startTime);
+        result.put("commands", commands);
+        result.put("failedCommands", failedCommands);
+        result.put("frames", frames);
+        result.put("bytes", bytes);
+        result.put("snapshots", snapshots);
+        result.put("framesPerSecond", frames * 1000 / Math.max(1, System.currentTimeMillis() - startTime));
+        result.put("deltaLatencyMs", getPercentiles(deltaLatencies));
+        result.put("httpLatencyMs", getPercentiles(httpLatencies));
+        result.put("daemon", JSONValue.parse(new String(Utils.streamToByteArray(
+                new URL("http://" + httpAddress + "/api/stats").openStream()), Utils.UTF_8)));
+        System.out.println(JSONValue.toJSONString(result));
+    }
+
+    private void sendVolume(@NonNull final String receiver, final int volume)
+    {
+        final String command = String.format(Locale.ENGLISH, "MVL%02X", volume);
+        final long start = System.nanoTime();
+        commandTimes.put(receiver + "/" + volume, start);
+        try
+        {
+            final HttpURLConnection c = (HttpURLConnection) new URL(
+                    "http://" + httpAddress + "/api/receivers/" + receiver + "/command").openConnection();
+            c.setRequestMethod("POST");
+            c.setDoOutput(true);
+            final OutputStream out = c.getOutputStream();
+            out.write(command.getBytes(Utils.UTF_8));
+            out.close();
+            final int code = c.getResponseCode();
+            Utils.streamToByteArray(code < 400 ? c.getInputStream() : c.getErrorStream());
+            synchronized (httpLatencies)
+            {
+                commands++;
+                failedCommands += code == 202 ? 0 : 1;
+                httpLatencies.add(System.nanoTime() - start);
+            }
+        }
+        catch (IOException e)
+        {
+            synchronized (httpLatencies)
+            {
+                failedCommands++;
+            }
+        }
+    }
+
+    private void read(@NonNull final Client c)
+    {
+        try
+        {
+            final int n = c.channel.read(c.input);
+            if (n < 0)
+            {
+                c.channel.close();
+                return;
+            }
+            bytes += n;
+            c.input.flip();
+            if (!c.upgraded)
+            {
+                final String s = new String(c.input.array(), 0, c.input.limit(), Utils.UTF_8);
+                final int end = s.indexOf("\r\n\r\n");
+                if (end < 0)
+                {
+                    c.input.position(c.input.limit()).limit(c.input.capacity());
+                    return;
+                }
+                c.upgraded = true;
+                c.input.position(end + 4);
+            }
+            // Server frames are not masked; a frame longer than 64KB is not expected
+            while (c.input.remaining() >= 2)
+            {
+                final int start = c.input.position();
+                int length = c.input.get(start + 1) & 0x7F;
+                int header = 2;
+                if (length == 126)
+                {
+                    if (c.input.remaining() < 4)
+                    {
+                        break;
+                    }
+                    length = c.input.getShort(start + 2) & 0xFFFF;
+                    header = 4;
+                }
+                if (c.input.remaining() < header + length)
+                {
+                    break;
+                }
+                processFrame(c, new String(c.input.array(), start + header, length, Utils.UTF_8));
+                c.input.position(start + header + length);
+            }
+            c.input.compact();
+        }
+        catch (IOException e)
+        {
+            Logging.info(this, "client error: {}", e.getLocalizedMessage());
+        }
+    }
+
+    private void processFrame(@NonNull final Client c, @NonNull final String text)
+    {
+        final long now = System.nanoTime();
+        frames++;
+        final JSONObject msg = (JSONObject) JSONValue.parse(text);
+        if ("snapshot".equals(msg.get("type")))
+        {
+            snapshots++;
+            return;
+        }
+        final Object volume = ((JSONObject) msg.get("changes")).get("volume");
+        if (volume instanceof Number)
+        {
+            final Long start = commandTimes.get(c.receiver + "/" + volume);
+            if (start != null)
+            {
+                deltaLatencies.add(now - start);
+            }
+        }
+    }
+
+    @NonNull
+    private static Map<String, Object> getPercentiles(@NonNull final List<Long> samples)
+    {
+        final Map<String, Object> r = new LinkedHashMap<>();
+        final List<Long> s;
+        synchronized (samples)
+        {
+            s = new ArrayList<>(samples);
+        }
+        Collections.sort(s);
+        r.put("samples", s.size());
+        if (!s.isEmpty())
+        {
+            r.put("p50", toMs(s.get(s.size() / 2)));
+            r.put("p90", toMs(s.get(s.size() * 9 / 10)));
+            r.put("p99", toMs(s.get(s.size() * 99 / 100)));
+            r.put("max", toMs(s.get(s.size() - 1)));
+        }
+        return r;
+    }
+
+    private static double toMs(final long nanos)
+    {
+        return Math.round(nanos / 1000.0) / 1000.0;
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        String http = "127.0.0.1:8090", ws = "127.0.0.1:8091";
+        int clients = 100, duration = 10, rate = 10;
+        for (int i = 0; i + 1 < args.length; i += 2)
+        {
+            switch (args[i])
+            {
+            case "--http":
+                http = args[i + 1];
+                break;
+            case "--ws":
+                ws = args[i + 1];
+                break;
+            case "--clients":
+                clients = Integer.parseInt(args[i + 1]);
+                break;
+            case "--duration":
+                duration = Integer.parseInt(args[i + 1]);
+                break;
+            case "--rate":
+                rate = Integer.parseInt(args[i + 1]);
+                break;
+            default:
+                System.out.println("Usage: LoadTest [--http H:P] [--ws H:P] [--clients N] [--duration S] [--rate R]");
+                return;
+            }
+        }
+        Logging.setLevel(Logging.Level.NONE);
+        new LoadTest(http, ws).run(clients, duration, rate);
+    }
+}
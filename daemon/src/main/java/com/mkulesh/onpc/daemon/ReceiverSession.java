@@ -0,0 +1,437 @@
+/*
+ * Enhanced Music Controller
+ * Copyright (C) 2018-2023 by Mikhail Kulesh
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with this program.
+ */
+
+package com.mkulesh.onpc.daemon;
+
+import com.mkulesh.onpc.iscp.ConnectionIf;
+import com.mkulesh.onpc.iscp.EISCPMessage;
+import com.mkulesh.onpc.iscp.ISCPMessage;
+import com.mkulesh.onpc.iscp.MessageChannel;
+import com.mkulesh.onpc.iscp.MessageChannelDcp;
+import com.mkulesh.onpc.iscp.MessageChannelIscp;
+import com.mkulesh.onpc.iscp.NetworkStateIf;
+import com.mkulesh.onpc.iscp.SocketConnector;
+import com.mkulesh.onpc.iscp.State;
+import com.mkulesh.onpc.iscp.ZonedMessage;
+import com.mkulesh.onpc.iscp.messages.AlbumNameMsg;
+import com.mkulesh.onpc.iscp.messages.ArtistNameMsg;
+import com.mkulesh.onpc.iscp.messages.AudioMutingMsg;
+import com.mkulesh.onpc.iscp.messages.DcpMediaItemMsg;
+import com.mkulesh.onpc.iscp.messages.DcpReceiverInformationMsg;
+import com.mkulesh.onpc.iscp.messages.DimmerLevelMsg;
+import com.mkulesh.onpc.iscp.messages.FileFormatMsg;
+import com.mkulesh.onpc.iscp.messages.FriendlyNameMsg;
+import com.mkulesh.onpc.iscp.messages.InputSelectorMsg;
+import com.mkulesh.onpc.iscp.messages.ListeningModeMsg;
+import com.mkulesh.onpc.iscp.messages.MasterVolumeMsg;
+import com.mkulesh.onpc.iscp.messages.MenuStatusMsg;
+import com.mkulesh.onpc.iscp.messages.PlayStatusMsg;
+import com.mkulesh.onpc.iscp.messages.PowerStatusMsg;
+import com.mkulesh.onpc.iscp.messages.PresetCommandMsg;
+import com.mkulesh.onpc.iscp.messages.RadioStationNameMsg;
+import com.mkulesh.onpc.iscp.messages.ReceiverInformationMsg;
+import com.mkulesh.onpc.iscp.messages.SleepSetCommandMsg;
+import com.mkulesh.onpc.iscp.messages.TimeInfoMsg;
+import com.mkulesh.onpc.iscp.messages.TitleNameMsg;
+import com.mkulesh.onpc.iscp.messages.TrackInfoMsg;
+import com.mkulesh.onpc.utils.AppScheduler;
+import com.mkulesh.onpc.utils.Logging;
+import com.mkulesh.onpc.utils.Utils;
+
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Persistent connection to a single receiver. The session owns the message channel
+ * and the State; it requests the initial state like the state manager of the app,
+ * reconnects after a connection loss and publishes state snapshots. All clients
+ * of the receiver share the published snapshots instead of own connections.
+ */
+public class ReceiverSession implements NetworkStateIf, Runnable
+{
+    private final static long RECONNECT_DELAY = 5000;
+    private final static long CONNECTION_TIMEOUT = 5000;
+    // Changes are collected while further messages are waiting in the input queue,
+    // but not longer than this period
+    private final static long PUBLISH_PERIOD = 50;
+
+    public interface Listener
+    {
+        void onStateChanged(@NonNull ReceiverSession session, @NonNull StateSnapshot snapshot,
+                            @NonNull Map<String, Object> changes);
+    }
+
+    private final static String[] trackStateQueries = new String[]{
+            ArtistNameMsg.CODE, AlbumNameMsg.CODE, TitleNameMsg.CODE,
+            FileFormatMsg.CODE, TrackInfoMsg.CODE, TimeInfoMsg.CODE,
+            MenuStatusMsg.CODE
+    };
+
+    private final String id;
+    private final String host;
+    private final int port;
+    private final int zone;
+    private final Listener listener;
+    private final BlockingQueue<ISCPMessage> inputQueue = new ArrayBlockingQueue<>(MessageChannel.QUEUE_SIZE, true);
+    private final AtomicReference<MessageChannel> messageChannel = new AtomicReference<>();
+    private final AtomicReference<StateSnapshot> snapshot = new AtomicReference<>();
+    private final AtomicBoolean stopped = new AtomicBoolean();
+    private Thread thread = null;
+    private State state = null;
+    private long sequence = 0;
+
+    // Statistics
+    private final AtomicLong messages = new AtomicLong();
+    private final AtomicLong deltas = new AtomicLong();
+    private final AtomicLong commands = new AtomicLong();
+    private final AtomicLong reconnects = new AtomicLong();
+
+    ReceiverSession(@NonNull final String host, final int port, final int zone, @NonNull final Listener listener)
+    {
+        this.id = getId(host, port);
+        this.host = host;
+        this.port = port;
+        this.zone = zone;
+        this.listener = listener;
+        snapshot.set(StateSnapshot.disconnected(sequence, this));
+    }
+
+    @NonNull
+    static String getId(@NonNull final String host, final int port)
+    {
+        return host + ":" + port;
+    }
+
+    @NonNull
+    public String getId()
+    {
+        return id;
+    }
+
+    @NonNull
+    public String getHost()
+    {
+        return host;
+    }
+
+    public int getPort()
+    {
+        return port;
+    }
+
+    @NonNull
+    public StateSnapshot getSnapshot()
+    {
+        return snapshot.get();
+    }
+
+    void start()
+    {
+        thread = new Thread(this, ReceiverSession.class.getSimpleName() + "-" + id);
+        thread.start();
+    }
+
+    void stop()
+    {
+        stopped.set(true);
+        final MessageChannel m = messageChannel.get();
+        if (m != null)
+        {
+            m.stop();
+        }
+        if (thread != null)
+        {
+            thread.interrupt();
+        }
+    }
+
+    @Override
+    public boolean isNetwork()
+    {
+        return !stopped.get();
+    }
+
+    @Override
+    public void showConnectionError(@NonNull String hostAndPort)
+    {
+        Logging.info(this, "device {} does not respond", hostAndPort);
+    }
+
+    /**
+     * Procedure sends a raw command like "MVL20" or "PWR01" to the receiver. For Denon receivers,
+     * the command is converted by the message channel like the ISCP commands of the app.
+     *
+     * @return false if the receiver is not connected or the command is invalid
+     */
+    public boolean sendCommand(@NonNull final String command)
+    {
+        final MessageChannel m = messageChannel.get();
+        if (m == null || !m.isActive() || command.length() < 3)
+        {
+            return false;
+        }
+        commands.incrementAndGet();
+        m.sendMessage(new EISCPMessage(command.substring(0, 3), command.substring(3)));
+        return true;
+    }
+
+    @Override
+    public void run()
+    {
+        Logging.info(this, "started: {}", id);
+        while (!stopped.get())
+        {
+            if (connect())
+            {
+                processMessages();
+                messageChannel.getAndSet(null).stop();
+                publish(StateSnapshot.disconnected(++sequence, this));
+            }
+            if (stopped.get())
+            {
+                break;
+            }
+            try
+            {
+                Thread.sleep(RECONNECT_DELAY);
+            }
+            catch (InterruptedException e)
+            {
+                break;
+            }
+            reconnects.incrementAndGet();
+        }
+        Logging.info(this, "stopped: {}", id);
+    }
+
+    private boolean connect()
+    {
+        inputQueue.clear();
+        // The connection thread waits on the shared connector, i.e. an offline receiver costs no CPU
+        final SocketChannel socket;
+        try
+        {
+            socket = SocketConnector.getInstance().connectAndWait(host, port, CONNECTION_TIMEOUT);
+        }
+        catch (IOException e)
+        {
+            showConnectionError(Utils.ipToString(host, port));
+            return false;
+        }
+        final MessageChannel m;
+        if (port == ConnectionIf.DCP_PORT)
+        {
+            final MessageChannelDcp dcpChannel = new MessageChannelDcp(zone, this, inputQueue);
+            dcpChannel.attachToServer(socket);
+            try
+            {
+                // HEOS connection is optional
+                dcpChannel.attachHeos(SocketConnector.getInstance().connectAndWait(
+                        host, ConnectionIf.DCP_HEOS_PORT, CONNECTION_TIMEOUT));
+            }
+            catch (IOException e)
+            {
+                Logging.info(this, "HEOS port of {} not available: {}", host, e.getLocalizedMessage());
+            }
+            m = dcpChannel;
+        }
+        else
+        {
+            m = new MessageChannelIscp(this, inputQueue);
+            m.attachToServer(socket);
+        }
+        state = new State(m.getProtoType(), m.getHost(), m.getPort(), zone);
+        messageChannel.set(m);
+        m.start();
+        if (state.protoType == ConnectionIf.ProtoType.ISCP)
+        {
+            sendQueries(new String[]{
+                    ReceiverInformationMsg.CODE,
+                    PowerStatusMsg.ZONE_COMMANDS[zone],
+                    FriendlyNameMsg.CODE,
+                    ListeningModeMsg.CODE
+            });
+        }
+        else
+        {
+            try
+            {
+                inputQueue.add(new ReceiverInformationMsg(m.getHost(), ConnectionIf.DCP_HTTP_PORT));
+            }
+            catch (Exception ex)
+            {
+                Logging.info(this, "Cannot load DCP receiver information: {}", ex.getLocalizedMessage());
+                sendMessage(new DcpReceiverInformationMsg(DcpReceiverInformationMsg.QueryType.FULL));
+                sendQueries(new String[]{ PowerStatusMsg.ZONE_COMMANDS[zone] });
+            }
+        }
+        publish(StateSnapshot.create(++sequence, this, state));
+        return true;
+    }
+
+    private void processMessages()
+    {
+        boolean changed = false;
+        long publishTime = System.currentTimeMillis();
+        while (!stopped.get())
+        {
+            final MessageChannel m = messageChannel.get();
+            if (m == null || !m.isActive())
+            {
+                Logging.info(this, "message channel stopped");
+                break;
+            }
+            final ISCPMessage msg;
+            try
+            {
+                msg = inputQueue.take();
+            }
+            catch (InterruptedException e)
+            {
+                break;
+            }
+            messages.incrementAndGet();
+            if (msg instanceof ZonedMessage && ((ZonedMessage) msg).getZoneIndex() != zone)
+            {
+                continue;
+            }
+            try
+            {
+                changed |= processMessage(msg);
+            }
+            catch (Exception e)
+            {
+                Logging.info(this, "cannot process message: {}", e.getLocalizedMessage());
+            }
+            final long now = System.currentTimeMillis();
+            if (changed && (inputQueue.isEmpty() || now - publishTime >= PUBLISH_PERIOD))
+            {
+                publish(StateSnapshot.create(++sequence, this, state));
+                changed = false;
+                publishTime = now;
+            }
+        }
+    }
+
+    /**
+     * Compact version of the message handling of the state manager: only the queries
+     * needed for the published snapshot are sent.
+     */
+    private boolean processMessage(@NonNull final ISCPMessage msg)
+    {
+        final PlayStatusMsg.PlayStatus playStatus = state.playStatus;
+        final State.ChangeType changed = state.update(msg);
+
+        if (msg instanceof ReceiverInformationMsg && state.protoType == ConnectionIf.ProtoType.DCP)
+        {
+            sendMessage(new DcpReceiverInformationMsg(((ReceiverInformationMsg) msg).getPresetList().isEmpty() ?
+                    DcpReceiverInformationMsg.QueryType.FULL : DcpReceiverInformationMsg.QueryType.SHORT));
+            sendQueries(new String[]{
+                    DcpMediaItemMsg.CODE,
+                    PowerStatusMsg.ZONE_COMMANDS[zone],
+                    FriendlyNameMsg.CODE
+            });
+        }
+
+        if (!state.isOn() || changed == State.ChangeType.NONE)
+        {
+            return changed != State.ChangeType.NONE;
+        }
+
+        if (msg instanceof PowerStatusMsg)
+        {
+            final String[] playStateQueries = new String[]{
+                    InputSelectorMsg.ZONE_COMMANDS[zone],
+                    PlayStatusMsg.CODE,
+                    AudioMutingMsg.ZONE_COMMANDS[zone],
+                    MasterVolumeMsg.ZONE_COMMANDS[zone],
+                    ListeningModeMsg.CODE,
+                    DimmerLevelMsg.CODE,
+                    SleepSetCommandMsg.CODE,
+                    PresetCommandMsg.ZONE_COMMANDS[zone],
+                    RadioStationNameMsg.CODE
+            };
+            if (state.protoType == ConnectionIf.ProtoType.ISCP)
+            {
+                sendQueries(playStateQueries);
+            }
+            else
+            {
+                // After transmitting a power on command, the next command
+                // shall be transmitted at least 1 second later
+                AppScheduler.schedule(() -> sendQueries(playStateQueries), 1500);
+            }
+        }
+
+        if (msg instanceof PlayStatusMsg && playStatus != state.playStatus && state.isPlaying())
+        {
+            sendQueries(state.protoType == ConnectionIf.ProtoType.ISCP ?
+                    trackStateQueries : new String[]{ DcpMediaItemMsg.CODE });
+        }
+        return true;
+    }
+
+    private void sendMessage(@NonNull final ISCPMessage msg)
+    {
+        final MessageChannel m = messageChannel.get();
+        final EISCPMessage cmdMsg = msg.getCmdMsg();
+        if (m != null && cmdMsg != null)
+        {
+            m.sendMessage(cmdMsg);
+        }
+    }
+
+    private void sendQueries(@NonNull final String[] queries)
+    {
+        final MessageChannel m = messageChannel.get();
+        if (m == null)
+        {
+            return;
+        }
+        for (String code : queries)
+        {
+            m.sendMessage(new EISCPMessage(code, EISCPMessage.QUERY));
+        }
+    }
+
+    private void publish(@NonNull final StateSnapshot s)
+    {
+        final StateSnapshot older = snapshot.getAndSet(s);
+        final Map<String, Object> changes = s.diff(older);
+        if (!changes.isEmpty())
+        {
+            deltas.incrementAndGet();
+            listener.onStateChanged(this, s, changes);
+        }
+    }
+
+    /**
+     * Procedure appends the statistics of this session to the given map
+     */
+    void getStatistics(@NonNull final Map<String, Object> stats)
+    {
+        stats.put("messages", messages.get());
+        stats.put("deltas", deltas.get());
+        stats.put("commands", commands.get());
+        stats.put("reconnects", reconnects.get());
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Enhanced Music Controller
+ * Copyright (C) 2018-2023 by Mikhail Kulesh
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with this program.
+ */
+
+package com.mkulesh.onpc.daemon;
+
+import com.mkulesh.onpc.iscp.State;
+
+import net.minidev.json.JSONObject;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Immutable copy of the receiver state that is shared between all clients of a receiver.
+ * The snapshot is created in the session thread since the State is not thread-safe;
+ * afterwards, it can be read from any thread. The JSON representation is built once.
+ */
+public final class StateSnapshot
+{
+    private final long sequence;
+    private final Map<String, Object> values;
+    private volatile String json = null;
+
+    private StateSnapshot(final long sequence, @NonNull final Map<String, Object> values)
+    {
+        this.sequence = sequence;
+        this.values = Collections.unmodifiableMap(values);
+    }
+
+    /**
+     * Snapshot of a receiver that is not connected yet or was disconnected
+     */
+    @NonNull
+    static StateSnapshot disconnected(final long sequence, @NonNull final ReceiverSession session)
+    {
+        final Map<String, Object> v = new LinkedHashMap<>();
+        v.put("id", session.getId());
+        v.put("host", session.getHost());
+        v.put("port", session.getPort());
+        v.put("connected", false);
+        return new StateSnapshot(sequence, v);
+    }
+
+    @NonNull
+    static StateSnapshot create(final long sequence, @NonNull final ReceiverSession session, @NonNull final State state)
+    {
+        final Map<String, Object> v = new LinkedHashMap<>();
+        v.put("id", session.getId());
+        v.put("host", session.getHost());
+        v.put("port", session.getPort());
+        v.put("connected", true);
+        v.put("protocol", state.protoType.name());
+        v.put("model", state.getModel());
+        v.put("brand", state.getBrand());
+        v.put("name", state.getDeviceName(true));
+        v.put("zone", state.getActiveZone());
+        v.put("power", state.powerStatus.name());
+        v.put("input", state.inputType.name());
+        v.put("service", state.serviceIcon.name());
+        v.put("playStatus", state.playStatus.name());
+        v.put("repeat", state.repeatStatus.name());
+        v.put("shuffle", state.shuffleStatus.name());
+        v.put("volume", state.volumeLevel);
+        v.put("muting", state.audioMuting.name());
+        v.put("listeningMode", state.listeningMode.name());
+        v.put("artist", state.artist);
+        v.put("album", state.album);
+        v.put("title", state.title);
+        v.put("currentTime", state.currentTime);
+        v.put("maxTime", state.maxTime);
+        v.put("fileFormat", state.fileFormat);
+        v.put("preset", state.preset);
+        v.put("stationName", state.stationName);
+        v.put("dimmer", state.dimmerLevel.name());
+        v.put("sleepTime", state.sleepTime);
+        return new StateSnapshot(sequence, v);
+    }
+
+    public long getSequence()
+    {
+        return sequence;
+    }
+
+    @NonNull
+    public Map<String, Object> getValues()
+    {
+        return values;
+    }
+
+    /**
+     * Procedure returns the values of this snapshot that differ from the given older snapshot.
+     * Values that do not exist in this snapshot are reported as null.
+     */
+    @NonNull
+    public Map<String, Object> diff(@Nullable final StateSnapshot older)
+    {
+        if (older == null)
+        {
+            return values;
+        }
+        final Map<String, Object> changes = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> e : values.entrySet())
+        {
+            final Object o = older.values.get(e.getKey());
+            if (o == null ? e.getValue() != null : !o.equals(e.getValue()))
+            {
+                changes.put(e.getKey(), e.getValue());
+            }
+        }
+        for (String key : older.values.keySet())
+        {
+            if (!values.containsKey(key))
+            {
+                changes.put(key, null);
+            }
+        }
+        return changes;
+    }
+
+    @NonNull
+    public String toJson()
+    {
+        String j = json;
+        if (j == null)
+        {
+            j = JSONObject.toJSONString(values);
+            json = j;
+        }
+        return j;
+    }
+}
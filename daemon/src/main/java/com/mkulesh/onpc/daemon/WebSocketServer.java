@@ -0,0 +1,602 @@
+/*
+ * Enhanced Music Controller
+ * Copyright (C) 2018-2023 by Mikhail Kulesh
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with this program.
+ */
+
+package com.mkulesh.onpc.daemon;
+
+import com.mkulesh.onpc.utils.Logging;
+import com.mkulesh.onpc.utils.Utils;
+
+import net.minidev.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import androidx.annotation.NonNull;
+
+/**
+ * WebSocket endpoint "/ws/{receiver id}" (RFC 6455) that is served by a single selector thread.
+ * A new client receives the current snapshot of the receiver followed by the deltas. Each delta
+ * is encoded into a frame once and the frame bytes are shared between all clients of the
+ * receiver. A slow client is not allowed to hold an unbounded number of frames: if its
+ * queue overflows, the queued deltas are dropped and a fresh snapshot is sent instead.
+ * Text frames received from a client are sent to the receiver as raw commands, e.g. "MVL20".
+ */
+public class WebSocketServer implements ReceiverSession.Listener, Runnable
+{
+    private final static String GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private final static String PATH = "/ws/";
+    private final static int MAX_QUEUED_FRAMES = 64;
+    private final static int INPUT_BUFFER = 4096;
+
+    private final static int OPCODE_CONTINUATION = 0x0;
+    private final static int OPCODE_TEXT = 0x1;
+    private final static int OPCODE_BINARY = 0x2;
+    private final static int OPCODE_CLOSE = 0x8;
+    private final static int OPCODE_PING = 0x9;
+    private final static int OPCODE_PONG = 0xA;
+    private final static int STATUS_PROTOCOL_ERROR = 1002;
+    private final static int STATUS_UNSUPPORTED_DATA = 1003;
+    private final static int STATUS_MESSAGE_TOO_BIG = 1009;
+
+    private static class Frame
+    {
+        final String receiver;
+        final long sequence;
+        final byte[] bytes;
+
+        Frame(final String receiver, final long sequence, final byte[] bytes)
+        {
+            this.receiver = receiver;
+            this.sequence = sequence;
+            this.bytes = bytes;
+        }
+    }
+
+    private static class Client
+    {
+        final SocketChannel channel;
+        final ByteBuffer input = ByteBuffer.allocate(INPUT_BUFFER);
+        final ArrayDeque<ByteBuffer> output = new ArrayDeque<>();
+        ReceiverSession session = null; // set after the handshake
+        long sequence = -1; // sequence of the latest queued snapshot or delta
+        ByteArrayOutputStream fragments = null; // payload of a fragmented text message
+        boolean closing = false;
+
+        Client(final SocketChannel channel)
+        {
+            this.channel = channel;
+        }
+    }
+
+    private final ConcurrentMap<String, ReceiverSession> sessions;
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final ConcurrentLinkedQueue<Frame> frames = new ConcurrentLinkedQueue<>();
+    // Accessed from the selector thread only
+    private final Map<String, List<Client>> clients = new HashMap<>();
+    private Thread thread = null;
+
+    // Statistics
+    private final AtomicLong connectedClients = new AtomicLong();
+    private final AtomicLong encodedFrames = new AtomicLong();
+    private final AtomicLong sentFrames = new AtomicLong();
+    private final AtomicLong sentBytes = new AtomicLong();
+    private final AtomicLong resyncs = new AtomicLong();
+
+    WebSocketServer(@NonNull final String bind, final int port,
+                    @NonNull final ConcurrentMap<String, ReceiverSession> sessions) throws IOException
+    {
+        this.sessions = sessions;
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(bind, port));
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    void start()
+    {
+        thread = new Thread(this, WebSocketServer.class.getSimpleName());
+        thread.start();
+        Logging.info(this, "started on {}", server.socket().getLocalSocketAddress());
+    }
+
+    void stop()
+    {
+        if (thread != null)
+        {
+            thread.interrupt();
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Called in the session thread: the delta is encoded here once
+     * and handed over to the selector thread.
+     */
+    @Override
+    public void onStateChanged(@NonNull ReceiverSession session, @NonNull StateSnapshot snapshot,
+                               @NonNull Map<String, Object> changes)
+    {
+        final Map<String, Object> msg = new LinkedHashMap<>();
+        msg.put("type", "delta");
+        msg.put("id", session.getId());
+        msg.put("seq", snapshot.getSequence());
+        msg.put("changes", changes);
+        frames.add(new Frame(session.getId(), snapshot.getSequence(), encode(OPCODE_TEXT,
+                JSONObject.toJSONString(msg).getBytes(Utils.UTF_8))));
+        encodedFrames.incrementAndGet();
+        selector.wakeup();
+    }
+
+    @Override
+    public void run()
+    {
+        while (!Thread.currentThread().isInterrupted())
+        {
+            try
+            {
+                selector.select();
+                distributeFrames();
+                final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext())
+                {
+                    final SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid())
+                    {
+                        continue;
+                    }
+                    if (key.isAcceptable())
+                    {
+                        accept();
+                        continue;
+                    }
+                    final Client c = (Client) key.attachment();
+                    try
+                    {
+                        if (key.isReadable())
+                        {
+                            read(c);
+                        }
+                        if (key.isValid() && key.isWritable())
+                        {
+                            flush(c);
+                        }
+                    }
+                    catch (IOException e)
+                    {
+                        close(c);
+                    }
+                }
+            }
+            catch (IOException e)
+            {
+                Logging.info(this, "selector error: {}", e.getLocalizedMessage());
+                break;
+            }
+        }
+        for (List<Client> list : clients.values())
+        {
+            for (Client c : new ArrayList<>(list))
+            {
+                close(c);
+            }
+        }
+        try
+        {
+            server.close();
+            selector.close();
+        }
+        catch (IOException e)
+        {
+            // nothing to do
+        }
+        Logging.info(this, "stopped");
+    }
+
+    private void accept() throws IOException
+    {
+        final SocketChannel channel = server.accept();
+        if (channel == null)
+        {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        channel.register(selector, SelectionKey.OP_READ, new Client(channel));
+    }
+
+    private void distributeFrames()
+    {
+        Frame f;
+        while ((f = frames.poll()) != null)
+        {
+            final List<Client> list = clients.get(f.receiver);
+            if (list == null)
+            {
+                continue;
+            }
+            for (Client c : new ArrayList<>(list))
+            {
+                if (f.sequence <= c.sequence)
+                {
+                    // already contained in the snapshot sent to this client
+                    continue;
+                }
+                if (c.output.size() >= MAX_QUEUED_FRAMES)
+                {
+                    resync(c);
+                }
+                else
+                {
+                    c.output.add(ByteBuffer.wrap(f.bytes));
+                    c.sequence = f.sequence;
+                }
+                try
+                {
+                    flush(c);
+                }
+                catch (IOException e)
+                {
+                    close(c);
+                }
+            }
+        }
+    }
+
+    /**
+     * Procedure replaces the queued deltas of a slow client by the current snapshot.
+     * A partially written frame is kept in order to not break the stream.
+     */
+    private void resync(@NonNull final Client c)
+    {
+        final ByteBuffer head = c.output.peek();
+        c.output.clear();
+        if (head != null && head.position() > 0)
+        {
+            c.output.add(head);
+        }
+        queueSnapshot(c);
+        resyncs.incrementAndGet();
+    }
+
+    private void queueSnapshot(@NonNull final Client c)
+    {
+        final StateSnapshot s = c.session.getSnapshot();
+        c.output.add(ByteBuffer.wrap(encode(OPCODE_TEXT, ("{\"type\":\"snapshot\",\"id\":\""
+                + JSONObject.escape(c.session.getId()) + "\",\"seq\":" + s.getSequence()
+                + ",\"state\":" + s.toJson() + "}").getBytes(Utils.UTF_8))));
+        c.sequence = s.getSequence();
+    }
+
+    private void flush(@NonNull final Client c) throws IOException
+    {
+        while (!c.output.isEmpty())
+        {
+            final ByteBuffer b = c.output.peek();
+            sentBytes.addAndGet(c.channel.write(b));
+            if (b.hasRemaining())
+            {
+                c.channel.keyFor(selector).interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return;
+            }
+            c.output.poll();
+            sentFrames.incrementAndGet();
+        }
+        if (c.closing)
+        {
+            close(c);
+            return;
+        }
+        c.channel.keyFor(selector).interestOps(SelectionKey.OP_READ);
+    }
+
+    private void read(@NonNull final Client c) throws IOException
+    {
+        if (c.channel.read(c.input) < 0)
+        {
+            close(c);
+            return;
+        }
+        c.input.flip();
+        if (c.session == null)
+        {
+            handshake(c);
+        }
+        if (c.session != null && !c.closing)
+        {
+            processFrames(c);
+        }
+        if (!c.channel.isOpen())
+        {
+            return;
+        }
+        if (c.input.position() == 0 && c.input.limit() == c.input.capacity())
+        {
+            // the request or the frame does not fit into the input buffer
+            close(c);
+            return;
+        }
+        c.input.compact();
+    }
+
+    private void handshake(@NonNull final Client c) throws IOException
+    {
+        final ByteBuffer in = c.input;
+        int end = -1;
+        for (int i = 3; i < in.limit() && end < 0; i++)
+        {
+            if (in.get(i - 3) == '\r' && in.get(i - 2) == '\n' && in.get(i - 1) == '\r' && in.get(i) == '\n')
+            {
+                end = i + 1;
+            }
+        }
+        if (end < 0)
+        {
+            // wait for the complete request
+            return;
+        }
+        final String request = new String(in.array(), 0, end, Utils.UTF_8);
+        in.position(end);
+
+        final String[] lines = request.trim().split("\r\n");
+        final String[] requestLine = lines[0].split(" ");
+        String key = null;
+        for (int i = 1; i < lines.length; i++)
+        {
+            final int sep = lines[i].indexOf(':');
+            if (sep > 0 && lines[i].substring(0, sep).trim().equalsIgnoreCase("Sec-WebSocket-Key"))
+            {
+                key = lines[i].substring(sep + 1).trim();
+            }
+        }
+        final ReceiverSession session = requestLine.length > 1 && requestLine[1].startsWith(PATH) ?
+                sessions.get(requestLine[1].substring(PATH.length())) : null;
+        if (session == null || key == null)
+        {
+            c.output.add(ByteBuffer.wrap(((session == null ? "HTTP/1.1 404 Not Found" : "HTTP/1.1 400 Bad Request")
+                    + "\r\nContent-Length: 0\r\nConnection: close\r\n\r\n").getBytes(Utils.UTF_8)));
+            c.closing = true;
+            flush(c);
+            return;
+        }
+
+        c.output.add(ByteBuffer.wrap(("HTTP/1.1 101 Switching Protocols\r\n"
+                + "Upgrade: websocket\r\n"
+                + "Connection: Upgrade\r\n"
+                + "Sec-WebSocket-Accept: " + getAcceptKey(key) + "\r\n\r\n").getBytes(Utils.UTF_8)));
+        c.session = session;
+        List<Client> list = clients.get(session.getId());
+        if (list == null)
+        {
+            list = new ArrayList<>();
+            clients.put(session.getId(), list);
+        }
+        list.add(c);
+        connectedClients.incrementAndGet();
+        queueSnapshot(c);
+        flush(c);
+    }
+
+    /**
+     * Procedure processes complete client frames in the input buffer. Client frames are always masked,
+     * fragmented text messages are reassembled up to the size of the input buffer.
+     */
+    private void processFrames(@NonNull final Client c) throws IOException
+    {
+        final ByteBuffer in = c.input;
+        while (in.remaining() >= 2)
+        {
+            final int start = in.position();
+            final boolean fin = (in.get(start) & 0x80) != 0;
+            final int opcode = in.get(start) & 0x0F;
+            if ((in.get(start + 1) & 0x80) == 0)
+            {
+                // RFC 6455: the server closes the connection upon an unmasked client frame
+                closeWithStatus(c, STATUS_PROTOCOL_ERROR);
+                return;
+            }
+            long length = in.get(start + 1) & 0x7F;
+            int header = 2;
+            if (length == 126)
+            {
+                if (in.remaining() < 4)
+                {
+                    return;
+                }
+                length = in.getShort(start + 2) & 0xFFFF;
+                header = 4;
+            }
+            else if (length == 127)
+            {
+                // such frames do not fit into the input buffer
+                closeWithStatus(c, STATUS_MESSAGE_TOO_BIG);
+                return;
+            }
+            if (in.remaining() < header + 4 + length)
+            {
+                return;
+            }
+            final byte[] payload = new byte[(int) length];
+            for (int i = 0; i < payload.length; i++)
+            {
+                payload[i] = (byte) (in.get(start + header + 4 + i) ^ in.get(start + header + (i % 4)));
+            }
+            in.position(start + header + 4 + (int) length);
+
+            if (opcode >= OPCODE_CLOSE && !fin)
+            {
+                // control frames are never fragmented
+                closeWithStatus(c, STATUS_PROTOCOL_ERROR);
+                return;
+            }
+            switch (opcode)
+            {
+            case OPCODE_CLOSE:
+                c.output.add(ByteBuffer.wrap(encode(OPCODE_CLOSE, payload)));
+                c.closing = true;
+                flush(c);
+                return;
+            case OPCODE_PING:
+                c.output.add(ByteBuffer.wrap(encode(OPCODE_PONG, payload)));
+                flush(c);
+                break;
+            case OPCODE_PONG:
+                break;
+            case OPCODE_TEXT:
+            case OPCODE_CONTINUATION:
+                if ((opcode == OPCODE_TEXT) == (c.fragments != null))
+                {
+                    // a continuation without a started message or a new message within a started one
+                    closeWithStatus(c, STATUS_PROTOCOL_ERROR);
+                    return;
+                }
+                if (fin && c.fragments == null)
+                {
+                    processCommand(c, payload);
+                    break;
+                }
+                if (c.fragments == null)
+                {
+                    c.fragments = new ByteArrayOutputStream();
+                }
+                if (c.fragments.size() + payload.length > INPUT_BUFFER)
+                {
+                    closeWithStatus(c, STATUS_MESSAGE_TOO_BIG);
+                    return;
+                }
+                c.fragments.write(payload);
+                if (fin)
+                {
+                    processCommand(c, c.fragments.toByteArray());
+                    c.fragments = null;
+                }
+                break;
+            case OPCODE_BINARY:
+                closeWithStatus(c, STATUS_UNSUPPORTED_DATA);
+                return;
+            default:
+                closeWithStatus(c, STATUS_PROTOCOL_ERROR);
+                return;
+            }
+        }
+    }
+
+    private void processCommand(@NonNull final Client c, @NonNull final byte[] payload)
+    {
+        final String command = new String(payload, Utils.UTF_8).trim();
+        if (!c.session.sendCommand(command))
+        {
+            Logging.info(this, "command {} rejected by {}", command, c.session.getId());
+        }
+    }
+
+    private void closeWithStatus(@NonNull final Client c, final int status) throws IOException
+    {
+        Logging.info(this, "closing client connection with status {}", status);
+        c.output.add(ByteBuffer.wrap(encode(OPCODE_CLOSE, new byte[]{ (byte) (status >> 8), (byte) status })));
+        c.closing = true;
+        flush(c);
+    }
+
+    private void close(@NonNull final Client c)
+    {
+        if (c.session != null)
+        {
+            final List<Client> list = clients.get(c.session.getId());
+            if (list != null && list.remove(c))
+            {
+                connectedClients.decrementAndGet();
+            }
+        }
+        c.output.clear();
+        try
+        {
+            c.channel.close();
+        }
+        catch (IOException e)
+        {
+            // nothing to do
+        }
+    }
+
+    @NonNull
+    private static byte[] encode(final int opcode, @NonNull final byte[] payload)
+    {
+        final int header = payload.length < 126 ? 2 : (payload.length < 65536 ? 4 : 10);
+        final ByteBuffer b = ByteBuffer.allocate(header + payload.length);
+        b.put((byte) (0x80 | opcode));
+        if (payload.length < 126)
+        {
+            b.put((byte) payload.length);
+        }
+        else if (payload.length < 65536)
+        {
+            b.put((byte) 126);
+            b.putShort((short) payload.length);
+        }
+        else
+        {
+            b.put((byte) 127);
+            b.putLong(payload.length);
+        }
+        b.put(payload);
+        return b.array();
+    }
+
+    @NonNull
+    private static String getAcceptKey(@NonNull final String key)
+    {
+        try
+        {
+            final MessageDigest md = MessageDigest.getInstance("SHA-1");
+            return Base64.getEncoder().encodeToString(md.digest((key + GUID).getBytes(Utils.UTF_8)));
+        }
+        catch (Exception e)
+        {
+            return "";
+        }
+    }
+
+    /**
+     * Procedure appends the statistics of the WebSocket server to the given map
+     */
+    void getStatistics(@NonNull final Map<String, Object> stats)
+    {
+        stats.put("clients", connectedClients.get());
+        stats.put("encodedFrames", encodedFrames.get());
+        stats.put("sentFrames", sentFrames.get());
+        stats.put("sentBytes", sentBytes.get());
+        stats.put("resyncs", resyncs.get());
+    }
+}
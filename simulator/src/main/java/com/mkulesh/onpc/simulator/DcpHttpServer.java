@@ -0,0 +1,158 @@
+/*
+ * Enhanced Music Controller
+ * Copyright (C) 2018-2023 by Mikhail Kulesh
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with this program.
+ */
+
+package com.mkulesh.onpc.simulator;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The HTTP interface of a simulated Denon receiver:
+ * - GET /goform/Deviceinfo.xml: the receiver information from the profile;
+ * - GET /goform/formiPhoneAppTunerPreset.xml: the tuner presets;
+ * - GET /goform/formiPhoneAppXXX.xml?1+CMD: the command is processed like a DCP command;
+ * - POST /goform/AppCommand.xml: only SetTunerPresetMemory is supported.
+ * Requests are processed on the scheduler thread of the receiver; the command-specific
+ * latency is configured using the file name, for example "AppCommand.xml=200".
+ */
+final class DcpHttpServer
+{
+    private final static String GOFORM = "/goform/";
+    private final static Pattern PRESET_MEMORY = Pattern.compile(
+            "SetTunerPresetMemory</cmd>\\s*<presetno>(\\d+)</presetno>");
+
+    private final DcpReceiver receiver;
+    private final int port;
+    private final ExecutorService workers;
+    private HttpServer server = null;
+
+    DcpHttpServer(DcpReceiver receiver, int port)
+    {
+        this.receiver = receiver;
+        this.port = port;
+        this.workers = Executors.newCachedThreadPool(r ->
+        {
+            final Thread t = new Thread(r, receiver.name + "/HTTP");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    void start() throws IOException
+    {
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext(GOFORM, this::handle);
+        server.setExecutor(workers);
+        server.start();
+        receiver.log("HTTP listening on port " + port);
+    }
+
+    void stop()
+    {
+        if (server != null)
+        {
+            server.stop(0);
+        }
+        workers.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException
+    {
+        final String path = exchange.getRequestURI().getPath();
+        final String query = exchange.getRequestURI().getRawQuery();
+        final String file = path.substring(GOFORM.length());
+        final byte[] body = DeviceProfile.readAll(exchange.getRequestBody());
+        if (receiver.options.verbose)
+        {
+            receiver.log("HTTP << " + exchange.getRequestMethod() + " " + path + (query != null ? "?" + query : ""));
+        }
+        try
+        {
+            final int latency = receiver.options.latency + receiver.options.getCommandLatency(file);
+            if (latency > 0)
+            {
+                Thread.sleep(latency);
+            }
+            final byte[] response = receiver.executor.submit(
+                    (Callable<byte[]>) () -> processRequest(file, query, new String(body, IscpFrame.UTF_8))).get();
+            if (response == null)
+            {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", "text/xml; charset=utf-8");
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream out = exchange.getResponseBody())
+            {
+                out.write(response);
+            }
+        }
+        catch (Exception e)
+        {
+            receiver.log("HTTP error: " + e.getLocalizedMessage());
+            exchange.sendResponseHeaders(500, -1);
+        }
+        finally
+        {
+            exchange.close();
+        }
+    }
+
+    private byte[] processRequest(String file, String query, String body)
+    {
+        if (file.equals("Deviceinfo.xml"))
+        {
+            return receiver.profile.deviceInfo;
+        }
+        if (file.equals("formiPhoneAppTunerPreset.xml"))
+        {
+            return receiver.getPresetXml().getBytes(IscpFrame.UTF_8);
+        }
+        if (file.startsWith("formiPhoneApp"))
+        {
+            // For example, formiPhoneAppTuner.xml?1+PRESETCALL26
+            if (query != null && query.startsWith("1+"))
+            {
+                final String cmd = query.substring(2).replace("%20", " ");
+                receiver.processCommand(null, cmd.startsWith("PRESETCALL") ?
+                        "TPAN" + cmd.substring("PRESETCALL".length()) : cmd);
+            }
+            return "<?xml version=\"1.0\" encoding=\"utf-8\" ?>\n<item/>\n".getBytes(IscpFrame.UTF_8);
+        }
+        if (file.startsWith("AppCommand"))
+        {
+            final Matcher m = PRESET_MEMORY.matcher(body);
+            if (m.find())
+            {
+                receiver.storePreset(Integer.parseInt(m.group(1)));
+            }
+            return "<?xml version=\"1.0\" encoding=\"utf-8\" ?>\n<rx/>\n".getBytes(IscpFrame.UTF_8);
+        }
+        return null;
+    }
+
+    static String escapeXml(String s)
+    {
+        return s.replace("&", "&amp;").replace("\"", "&quot;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+}
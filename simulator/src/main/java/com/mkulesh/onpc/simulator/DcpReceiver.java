@@ -0,0 +1,289 @@
+/*
+ * Enhanced Music Controller
+ * Copyright (C) 2018-2023 by Mikhail Kulesh
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with this program.
+ */
+
+package com.mkulesh.onpc.simulator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A simulated Denon receiver: the DCP telnet server that owns the HEOS server
+ * and the HTTP server of the same device. A query "XX?" is answered by all state
+ * parameters starting with "XX" or by the fixed response of the profile; a command
+ * "XXvalue" changes the parameter with the longest matching name and is echoed to
+ * all clients, like the real device does.
+ */
+final class DcpReceiver extends SimulatedServer
+{
+    private final static String QUERY = "?";
+    private final static String PRESET = "OPTPN";
+    private final static String PRESET_SELECT = "TPAN";
+    private final static String TUNER_FREQUENCY = "TFAN";
+    private final static String STEP_UP = "UP";
+    private final static String STEP_DOWN = "DOWN";
+
+    final DeviceProfile profile;
+    private final Map<String, String> state;
+    private final List<String> presets;
+    private final HeosServer heosServer;
+    private final DcpHttpServer httpServer;
+
+    DcpReceiver(DeviceProfile profile, String name, int port, int heosPort, int httpPort, Simulator.Options options)
+    {
+        super(name, port, options);
+        this.profile = profile;
+        this.state = new TreeMap<>(profile.state);
+        this.presets = new ArrayList<>(profile.presets);
+        this.heosServer = new HeosServer(profile, name, heosPort, options);
+        this.httpServer = new DcpHttpServer(this, httpPort);
+    }
+
+    @Override
+    void start() throws IOException
+    {
+        super.start();
+        heosServer.start();
+        httpServer.start();
+    }
+
+    @Override
+    void stop()
+    {
+        httpServer.stop();
+        heosServer.stop();
+        super.stop();
+    }
+
+    @Override
+    void onConnected(Connection c)
+    {
+        c.attachment = new LineDecoder();
+    }
+
+    @Override
+    void onData(Connection c, byte[] data)
+    {
+        for (String line : ((LineDecoder) c.attachment).decode(data))
+        {
+            processCommand(c, line);
+        }
+    }
+
+    /**
+     * Procedure processes a command received via telnet or via the HTTP interface.
+     * In the second case, the connection is null. Shall only be called from the
+     * scheduler thread.
+     */
+    void processCommand(Connection c, String line)
+    {
+        if (options.verbose)
+        {
+            log("<< " + line);
+        }
+        final int latency = options.getCommandLatency(line);
+        if (line.endsWith(QUERY))
+        {
+            if (c != null)
+            {
+                processQuery(c, line.substring(0, line.length() - QUERY.length()).trim(), latency);
+            }
+            return;
+        }
+
+        // The parameter with the longest name that matches the command
+        String key = null;
+        for (String k : state.keySet())
+        {
+            if (line.startsWith(k) && line.length() > k.length() && (key == null || k.length() > key.length()))
+            {
+                key = k;
+            }
+        }
+        if (key == null)
+        {
+            log("unknown command: " + line);
+            return;
+        }
+        final String value = line.substring(key.length());
+        final String newValue = value.trim().equals(STEP_UP) ? step(state.get(key), 1) :
+                value.trim().equals(STEP_DOWN) ? step(state.get(key), -1) : value;
+        if (newValue == null)
+        {
+            return;
+        }
+        setParameter(key, newValue, latency);
+        if (key.equals(PRESET_SELECT))
+        {
+            final String frequency = getPresetFrequency(newValue);
+            if (frequency != null && state.containsKey(TUNER_FREQUENCY))
+            {
+                setParameter(TUNER_FREQUENCY, frequency, latency);
+            }
+        }
+    }
+
+    private void processQuery(Connection c, String key, int latency)
+    {
+        if (key.equals(PRESET))
+        {
+            sendPresets(c, latency);
+            return;
+        }
+        final String fixed = profile.queries.get(key);
+        if (fixed != null)
+        {
+            for (String s : fixed.split("\\|"))
+            {
+                send(c, s, latency);
+            }
+            return;
+        }
+        for (Map.Entry<String, String> e : state.entrySet())
+        {
+            if (e.getKey().startsWith(key))
+            {
+                send(c, e.getKey() + e.getValue(), latency);
+            }
+        }
+    }
+
+    private void setParameter(String key, String value, int latency)
+    {
+        state.put(key, value);
+        final byte[] bytes = getBytes(key + value, true);
+        if (options.verbose)
+        {
+            log(">> " + key + value);
+        }
+        // Changes are reported to all clients
+        broadcast(bytes, latency);
+    }
+
+    /**
+     * Procedure changes a numerical value like "50" or " 50" by the given step,
+     * keeps its format and returns null if the value is not numerical.
+     */
+    private static String step(String value, int delta)
+    {
+        if (value == null)
+        {
+            return null;
+        }
+        final String digits = value.trim();
+        try
+        {
+            final int newValue = Math.max(0, Integer.parseInt(digits) + delta);
+            final String prefix = value.substring(0, value.length() - digits.length());
+            return prefix + String.format(Locale.ENGLISH, "%0" + digits.length() + "d", newValue);
+        }
+        catch (NumberFormatException e)
+        {
+            return null;
+        }
+    }
+
+    private void send(Connection c, String line, int latency)
+    {
+        if (options.verbose)
+        {
+            log(">> " + line);
+        }
+        c.send(getBytes(line, true), latency);
+    }
+
+    private static byte[] getBytes(String line, boolean terminated)
+    {
+        return (terminated ? line + "\r" : line).getBytes(IscpFrame.UTF_8);
+    }
+
+    /**
+     * Procedure sends the tuner presets. The real devices sometimes do not terminate
+     * the preset list: the last preset is therefore sent as a separate packet without CR.
+     */
+    private void sendPresets(Connection c, int latency)
+    {
+        for (int i = 0; i < presets.size(); i++)
+        {
+            final String[] tokens = presets.get(i).split("\\|");
+            final String par = tokens.length > 1 && "FM".equalsIgnoreCase(tokens[0]) ?
+                    String.format(Locale.ENGLISH, "         %06d", Integer.parseInt(tokens[1].trim())) :
+                    tokens[tokens.length - 1];
+            final String line = String.format(Locale.ENGLISH, "%s%02d%s", PRESET, i + 1, par);
+            if (options.verbose)
+            {
+                log(">> " + line);
+            }
+            c.send(getBytes(line, i + 1 < presets.size()), latency);
+        }
+    }
+
+    private String getPresetFrequency(String number)
+    {
+        try
+        {
+            final String[] tokens = presets.get(Integer.parseInt(number.trim()) - 1).split("\\|");
+            return tokens.length > 1 && "FM".equalsIgnoreCase(tokens[0]) ?
+                    String.format(Locale.ENGLISH, "%06d", Integer.parseInt(tokens[1].trim())) : null;
+        }
+        catch (Exception e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Procedure returns the content of formiPhoneAppTunerPreset.xml.
+     * Shall only be called from the scheduler thread.
+     */
+    String getPresetXml()
+    {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("<?xml version=\"1.0\" encoding=\"utf-8\" ?>\n<item>\n<PresetLists>\n");
+        for (int i = 0; i < presets.size(); i++)
+        {
+            final String[] tokens = presets.get(i).split("\\|");
+            final boolean fm = tokens.length > 1 && "FM".equalsIgnoreCase(tokens[0]);
+            final String par = fm ? String.format(Locale.ENGLISH, " %06d", Integer.parseInt(tokens[1].trim())) :
+                    tokens[tokens.length - 1];
+            sb.append(String.format(Locale.ENGLISH,
+                    "<value index=\"%d\" skip=\"OFF\" table=\"%02d\" band=\"%s\" param=\"%s\"/>\n",
+                    i + 1, i + 1, fm ? "FM" : "DAB", DcpHttpServer.escapeXml(par)));
+        }
+        sb.append("</PresetLists>\n</item>\n");
+        return sb.toString();
+    }
+
+    /**
+     * Procedure stores the current FM frequency as the given preset.
+     * Shall only be called from the scheduler thread.
+     */
+    void storePreset(int number)
+    {
+        final String frequency = state.get(TUNER_FREQUENCY);
+        if (number < 1 || frequency == null)
+        {
+            return;
+        }
+        while (presets.size() < number)
+        {
+            presets.add("FM|0");
+        }
+        presets.set(number - 1, "FM|" + Integer.parseInt(frequency.trim()));
+        log("preset " + number + " stored: " + frequency);
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Enhanced Music Controller
+ * Copyright (C) 2018-2023 by Mikhail Kulesh
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with this program.
+ */
+
+package com.mkulesh.onpc.simulator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * A simulated device described by a properties file:
+ * - protocol: "iscp" (default) or "dcp" for Denon receivers;
+ * - model, area, nri: the model name, destination area and the receiver information XML file;
+ * - deviceinfo: the Deviceinfo.xml file of a Denon receiver;
+ * - state.XXX: initial parameters of the ISCP/DCP commands that are answered on query;
+ * - query.XXX: fixed DCP responses "line1|line2|..." of the query "XXX ?";
+ * - preset.N: DCP tuner presets "FM|frequency in 10 kHz" or "DAB|station name";
+ * - heos.XXX: parameters of the HEOS browse tree and play queue;
+ * - track.N: playlist entries "title|artist|album|duration in seconds";
+ * - list.N: items of the media list;
+ * - cover: an optional JPEG file delivered on cover request, cover.url otherwise.
+ * File names are relative to the profile file. A profile without path is loaded
+ * from the built-in profiles.
+ */
+final class DeviceProfile
+{
+    static class Track
+    {
+        final String title, artist, album;
+        final int duration;
+
+        Track(String def)
+        {
+            final String[] tokens = def.split("\\|");
+            title = tokens.length > 0 ? tokens[0] : "";
+            artist = tokens.length > 1 ? tokens[1] : "";
+            album = tokens.length > 2 ? tokens[2] : "";
+            duration = tokens.length > 3 ? Integer.parseInt(tokens[3].trim()) : 180;
+        }
+    }
+
+    final String protocol;
+    final String model;
+    final String area;
+    final String receiverInformation;
+    final byte[] deviceInfo;
+    final Map<String, String> state = new TreeMap<>();
+    final Map<String, String> queries = new TreeMap<>();
+    final List<String> presets = new ArrayList<>();
+    final List<String> heosSources = new ArrayList<>();
+    final List<Track> tracks = new ArrayList<>();
+    final List<String> listItems = new ArrayList<>();
+    final byte[] cover;
+    final String coverUrl;
+    private final Properties properties;
+
+    private DeviceProfile(Properties p, Loader loader) throws IOException
+    {
+        properties = p;
+        protocol = p.getProperty("protocol", "iscp");
+        model = p.getProperty("model", "TX-NR676");
+        area = p.getProperty("area", "DX");
+        final String nri = p.getProperty("nri");
+        receiverInformation = nri != null ? new String(loader.load(nri), IscpFrame.UTF_8)
+                .replaceAll("\\s*[\\r\\n]+\\s*", "") : null;
+        final String deviceInfoFile = p.getProperty("deviceinfo");
+        deviceInfo = deviceInfoFile != null ? loader.load(deviceInfoFile) : null;
+        final String coverFile = p.getProperty("cover");
+        cover = coverFile != null ? loader.load(coverFile) : null;
+        coverUrl = p.getProperty("cover.url");
+        for (String key : p.stringPropertyNames())
+        {
+            if (key.startsWith("state."))
+            {
+                state.put(key.substring("state.".length()), p.getProperty(key));
+            }
+            else if (key.startsWith("query."))
+            {
+                queries.put(key.substring("query.".length()), p.getProperty(key));
+            }
+        }
+        for (int i = 1; p.getProperty("preset." + i) != null; i++)
+        {
+            presets.add(p.getProperty("preset." + i));
+        }
+        for (int i = 1; p.getProperty("heos.source." + i) != null; i++)
+        {
+            heosSources.add(p.getProperty("heos.source." + i));
+        }
+        for (int i = 1; p.getProperty("track." + i) != null; i++)
+        {
+            tracks.add(new Track(p.getProperty("track." + i)));
+        }
+        for (int i = 1; p.getProperty("list." + i) != null; i++)
+        {
+            listItems.add(p.getProperty("list." + i));
+        }
+        if (tracks.isEmpty())
+        {
+            tracks.add(new Track("Track|Artist|Album|180"));
+        }
+    }
+
+    boolean isDcp()
+    {
+        return "dcp".equalsIgnoreCase(protocol);
+    }
+
+    int getInt(String key, int defValue)
+    {
+        final String value = properties.getProperty(key);
+        return value != null ? Integer.parseInt(value.trim()) : defValue;
+    }
+
+    private interface Loader
+    {
+        byte[] load(String name) throws IOException;
+    }
+
+    static DeviceProfile load(String name) throws IOException
+    {
+        final File file = new File(name);
+        if (file.exists())
+        {
+            final File dir = file.getAbsoluteFile().getParentFile();
+            return new DeviceProfile(readProperties(new FileInputStream(file)),
+                    n -> readAll(new FileInputStream(new File(dir, n))));
+        }
+        final String prefix = "/profiles/";
+        final InputStream stream = DeviceProfile.class.getResourceAsStream(prefix + name + ".properties");
+        if (stream == null)
+        {
+            throw new IOException("Profile not found: " + name);
+        }
+        return new DeviceProfile(readProperties(stream), n ->
+        {
+            final InputStream s = DeviceProfile.class.getResourceAsStream(prefix + n);
+            if (s == null)
+            {
+                throw new IOException("Profile resource not found: " + n);
+            }
+            return readAll(s);
+        });
+    }
+
+    private static Properties readProperties(InputStream stream) throws IOException
+    {
+        final Properties p = new Properties();
+        try (InputStreamReader reader = new InputStreamReader(stream, IscpFrame.UTF_8))
+        {
+            p.load(reader);
+        }
+        return p;
+    }
+
+    static byte[] readAll(InputStream stream) throws IOException
+    {
+        try (InputStream s = stream)
+        {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[4096];
+            int n;
+            while ((n = s.read(buffer)) > 0)
+            {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+}
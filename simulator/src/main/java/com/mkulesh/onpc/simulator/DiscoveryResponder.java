@@ -0,0 +1,94 @@
+/*
+ * Enhanced Music Controller
+ * Copyright (C) 2018-2023 by Mikhail Kulesh
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with this program.
+ */
+
+package com.mkulesh.onpc.simulator;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.util.List;
+
+/**
+ * Answers the ISCP discovery broadcast "ECNQSTN" on UDP port 60128. Since only one
+ * socket can receive the broadcast, a single responder answers for all simulated
+ * receivers: every receiver sends its own response with its TCP port.
+ */
+final class DiscoveryResponder
+{
+    private final int port;
+    private final List<IscpReceiver> receivers;
+    private DatagramSocket socket = null;
+
+    DiscoveryResponder(int port, List<IscpReceiver> receivers)
+    {
+        this.port = port;
+        this.receivers = receivers;
+    }
+
+    void start() throws IOException
+    {
+        socket = new DatagramSocket(null);
+        socket.setReuseAddress(true);
+        socket.setBroadcast(true);
+        socket.bind(new InetSocketAddress(port));
+        final Thread t = new Thread(this::run, "DiscoveryResponder");
+        t.setDaemon(true);
+        t.start();
+        System.out.println("Discovery: listening on UDP port " + port);
+    }
+
+    void stop()
+    {
+        if (socket != null)
+        {
+            socket.close();
+        }
+    }
+
+    private void run()
+    {
+        final byte[] buffer = new byte[1024];
+        while (!socket.isClosed())
+        {
+            try
+            {
+                final DatagramPacket request = new DatagramPacket(buffer, buffer.length);
+                socket.receive(request);
+                for (IscpFrame f : new IscpFrame.Decoder().decode(request.getData(), request.getLength()))
+                {
+                    if (!"ECN".equals(f.code) || !f.isQuery())
+                    {
+                        continue;
+                    }
+                    final char category = f.modelCategoryId == 'x' ? '1' : f.modelCategoryId;
+                    for (IscpReceiver r : receivers)
+                    {
+                        final byte[] bytes = new IscpFrame(category, "ECN", r.getDiscoveryResponse()).getBytes();
+                        socket.send(new DatagramPacket(bytes, bytes.length, request.getSocketAddress()));
+                    }
+                    System.out.println("Discovery: answered " + request.getSocketAddress()
+                            + " for " + receivers.size() + " receiver(s)");
+                }
+            }
+            catch (IOException e)
+            {
+                if (!socket.isClosed())
+                {
+                    System.out.println("Discovery error: " + e.getLocalizedMessage());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,567 @@
+/*
+ * Enhanced Music Controller
+ * Copyright (C) 2018-2023 by Mikhail Kulesh
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with this program.
+ */
+
+package com.mkulesh.onpc.simulator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The HEOS JSON server of a simulated Denon receiver. Every service has a synthetic
+ * browse tree: a container on the level L has heos.browse.width children, the containers
+ * on the level heos.browse.depth contain songs. The play queue initially contains
+ * heos.queue.size songs. Like the real devices, lists are returned in pages of
+ * heos.page.size items and events are only sent to connections that are registered
+ * for change events.
+ */
+final class HeosServer extends SimulatedServer
+{
+    private final static String HEOS_PREFIX = "heos://";
+    private final static String CID_PREFIX = "c";
+    private final static String MID_PREFIX = "m";
+
+    static class Song
+    {
+        final String song, artist, album, mid;
+        final int duration;
+
+        Song(String song, String artist, String album, String mid, int duration)
+        {
+            this.song = song;
+            this.artist = artist;
+            this.album = album;
+            this.mid = mid;
+            this.duration = duration;
+        }
+    }
+
+    private final DeviceProfile profile;
+    private final String playerName;
+    private final int pid;
+    private final int browseDepth;
+    private final int browseWidth;
+    private final int pageSize;
+    private final List<Song> queue = new ArrayList<>();
+    private final Set<Connection> registered = new HashSet<>();
+    private int current = 0, position = 0;
+    private String playState = "stop", repeat = "off", shuffle = "off";
+
+    HeosServer(DeviceProfile profile, String name, int port, Simulator.Options options)
+    {
+        super(name + "/HEOS", port, options);
+        this.profile = profile;
+        this.playerName = name;
+        this.pid = profile.getInt("heos.pid", 1238762312);
+        this.browseDepth = Math.max(1, profile.getInt("heos.browse.depth", 3));
+        this.browseWidth = Math.max(1, profile.getInt("heos.browse.width", 100));
+        this.pageSize = Math.max(1, profile.getInt("heos.page.size", 100));
+        final int queueSize = profile.getInt("heos.queue.size", 1000);
+        for (int i = 0; i < queueSize; i++)
+        {
+            queue.add(getSong(MID_PREFIX + "q." + (i + 1), i));
+        }
+    }
+
+    @Override
+    void start() throws IOException
+    {
+        super.start();
+        executor.scheduleAtFixedRate(this::onTimer, 1, 1, TimeUnit.SECONDS);
+    }
+
+    @Override
+    void onConnected(Connection c)
+    {
+        c.attachment = new LineDecoder();
+    }
+
+    @Override
+    void onData(Connection c, byte[] data)
+    {
+        for (String line : ((LineDecoder) c.attachment).decode(data))
+        {
+            if (options.verbose)
+            {
+                log("<< " + line);
+            }
+            if (!line.startsWith(HEOS_PREFIX))
+            {
+                continue;
+            }
+            final String request = line.substring(HEOS_PREFIX.length());
+            final int q = request.indexOf('?');
+            final String command = q < 0 ? request : request.substring(0, q);
+            final Map<String, String> tokens = parseMessage(q < 0 ? "" : request.substring(q + 1));
+            final int latency = options.getCommandLatency(command);
+            String response;
+            try
+            {
+                response = processCommand(c, command, tokens);
+            }
+            catch (Exception e)
+            {
+                log("can not process " + line + ": " + e);
+                response = getResponse(command, "fail", "eid=3&text=Invalid Arguments", null);
+            }
+            send(c, response != null ? response :
+                    getResponse(command, "fail", "eid=1&text=Unrecognized Command", null), latency);
+        }
+    }
+
+    private String processCommand(Connection c, String command, Map<String, String> tokens)
+    {
+        final String pidStr = "pid=" + pid;
+        switch (command)
+        {
+        case "system/register_for_change_events":
+            if ("on".equals(tokens.get("enable")))
+            {
+                registered.add(c);
+            }
+            else
+            {
+                registered.remove(c);
+            }
+            return getResponse(command, "success", "enable=" + tokens.get("enable"), null);
+        case "system/heart_beat":
+            return getResponse(command, "success", "", null);
+        case "player/get_players":
+            return getResponse(command, "success", "", "[" + getPlayerInfo() + "]");
+        case "player/get_player_info":
+            return getResponse(command, "success", pidStr, getPlayerInfo());
+        case "player/check_update":
+            return getResponse(command, "success", pidStr, "{\"update\": \"update_none\"}");
+        case "player/get_play_state":
+            return getResponse(command, "success", pidStr + "&state=" + playState, null);
+        case "player/get_play_mode":
+            return getResponse(command, "success", pidStr + "&repeat=" + repeat + "&shuffle=" + shuffle, null);
+        case "player/get_now_playing_media":
+            return getResponse(command, "success", pidStr, getNowPlaying());
+        case "player/set_play_state":
+            setPlayState(tokens.get("state"));
+            return getResponse(command, "success", pidStr + "&state=" + playState, null);
+        case "player/set_play_mode":
+            if (tokens.containsKey("repeat"))
+            {
+                repeat = tokens.get("repeat");
+                sendEvent("event/repeat_mode_changed", pidStr + "&repeat=" + repeat);
+            }
+            if (tokens.containsKey("shuffle"))
+            {
+                shuffle = tokens.get("shuffle");
+                sendEvent("event/shuffle_mode_changed", pidStr + "&shuffle=" + shuffle);
+            }
+            return getResponse(command, "success", pidStr + "&repeat=" + repeat + "&shuffle=" + shuffle, null);
+        case "player/play_next":
+        case "player/play_previous":
+            playQueueItem(current + (command.endsWith("next") ? 1 : -1));
+            return getResponse(command, "success", pidStr, null);
+        case "player/play_queue":
+            playQueueItem(getInt(tokens, "qid", 1) - 1);
+            return getResponse(command, "success", pidStr + "&qid=" + tokens.get("qid"), null);
+        case "player/get_queue":
+            return getQueue(command, tokens);
+        case "player/clear_queue":
+            queue.clear();
+            playQueueItem(0);
+            queueChanged();
+            return getResponse(command, "success", pidStr, null);
+        case "player/remove_from_queue":
+        {
+            final int index = getInt(tokens, "qid", 0) - 1;
+            if (index >= 0 && index < queue.size())
+            {
+                queue.remove(index);
+                queueChanged();
+            }
+            return getResponse(command, "success", pidStr + "&qid=" + tokens.get("qid"), null);
+        }
+        case "player/move_queue_item":
+        {
+            final int src = getInt(tokens, "sqid", 0) - 1, dst = getInt(tokens, "dqid", 0) - 1;
+            if (src >= 0 && src < queue.size() && dst >= 0 && dst < queue.size())
+            {
+                queue.add(dst, queue.remove(src));
+                queueChanged();
+            }
+            return getResponse(command, "success", pidStr + "&sqid=" + tokens.get("sqid")
+                    + "&dqid=" + tokens.get("dqid"), null);
+        }
+        case "browse/get_music_sources":
+            return getResponse(command, "success", "", getMusicSources());
+        case "browse/browse":
+            return browse(command, tokens);
+        case "browse/get_search_criteria":
+            return getResponse(command, "success", "sid=" + tokens.get("sid"),
+                    "[{\"name\": \"Artist\", \"scid\": 1}, {\"name\": \"Album\", \"scid\": 2}, "
+                            + "{\"name\": \"Track\", \"scid\": 3}]");
+        case "browse/search":
+            return search(command, tokens);
+        case "browse/add_to_queue":
+            addToQueue(tokens);
+            return getResponse(command, "success", getMessage(tokens), null);
+        case "browse/play_stream":
+        {
+            final String mid = tokens.get("mid");
+            queue.add(Math.min(current + 1, queue.size()),
+                    getSong(mid != null ? mid : MID_PREFIX + "stream", queue.size()));
+            playQueueItem(current + 1);
+            queueChanged();
+            return getResponse(command, "success", getMessage(tokens), null);
+        }
+        default:
+            // Commands like volume or grouping are accepted, but have no effect
+            if (command.startsWith("player/set_") || command.startsWith("group/")
+                    || command.startsWith("browse/set_service_option"))
+            {
+                return getResponse(command, "success", getMessage(tokens), null);
+            }
+            return null;
+        }
+    }
+
+    private String getPlayerInfo()
+    {
+        return "{\"name\": " + quote(playerName) + ", \"pid\": " + pid + ", \"model\": " + quote(profile.model)
+                + ", \"version\": \"1.583.147\", \"network\": \"wired\", \"lineout\": 0}";
+    }
+
+    private String getMusicSources()
+    {
+        final StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < profile.heosSources.size(); i++)
+        {
+            final String[] tokens = profile.heosSources.get(i).split("\\|");
+            sb.append(i > 0 ? ", " : "").append("{\"name\": ").append(quote(tokens[0]))
+                    .append(", \"image_url\": \"\", \"type\": \"heos_service\", \"sid\": ")
+                    .append(tokens.length > 1 ? tokens[1].trim() : "0")
+                    .append(", \"available\": \"true\"}");
+        }
+        return sb.append("]").toString();
+    }
+
+    private String getNowPlaying()
+    {
+        if (current >= queue.size())
+        {
+            return "{\"type\": \"song\", \"song\": \"\", \"album\": \"\", \"artist\": \"\", "
+                    + "\"image_url\": \"\", \"mid\": \"\", \"qid\": 0, \"sid\": 1024, \"album_id\": \"\"}";
+        }
+        final Song s = queue.get(current);
+        return "{\"type\": \"song\", \"song\": " + quote(s.song) + ", \"album\": " + quote(s.album)
+                + ", \"artist\": " + quote(s.artist) + ", \"image_url\": " + quote(profile.coverUrl != null ? profile.coverUrl : "")
+                + ", \"mid\": " + quote(s.mid) + ", \"qid\": " + (current + 1) + ", \"sid\": 1024"
+                + ", \"album_id\": " + quote(s.mid) + "}";
+    }
+
+    private String getQueue(String command, Map<String, String> tokens)
+    {
+        final int[] range = getRange(tokens, queue.size());
+        final StringBuilder sb = new StringBuilder("[");
+        for (int i = range[0]; i <= range[1]; i++)
+        {
+            final Song s = queue.get(i);
+            sb.append(i > range[0] ? ", " : "").append("{\"song\": ").append(quote(s.song))
+                    .append(", \"album\": ").append(quote(s.album))
+                    .append(", \"artist\": ").append(quote(s.artist))
+                    .append(", \"image_url\": \"\", \"qid\": ").append(i + 1)
+                    .append(", \"mid\": ").append(quote(s.mid))
+                    .append(", \"album_id\": ").append(quote(s.mid)).append("}");
+        }
+        sb.append("]");
+        return getResponse(command, "success", "pid=" + pid + "&range=" + range[0] + "," + range[1]
+                + "&returned=" + (range[1] - range[0] + 1) + "&count=" + queue.size(), sb.toString());
+    }
+
+    /**
+     * Procedure browses the synthetic tree: a container ID "c1.5" means the fifth child
+     * of the first top-level container.
+     */
+    private String browse(String command, Map<String, String> tokens)
+    {
+        final String sid = tokens.get("sid");
+        final String cid = tokens.get("cid");
+        final int level = cid == null || !cid.startsWith(CID_PREFIX) ? 0 :
+                cid.substring(CID_PREFIX.length()).split("\\.").length;
+        if (level > browseDepth)
+        {
+            return getResponse(command, "fail", "eid=2&text=Invalid container&sid=" + sid, null);
+        }
+        final int[] range = getRange(tokens, browseWidth);
+        final StringBuilder sb = new StringBuilder("[");
+        for (int i = range[0]; i <= range[1]; i++)
+        {
+            final String path = (level == 0 ? "" : cid.substring(CID_PREFIX.length()) + ".") + (i + 1);
+            sb.append(i > range[0] ? ", " : "");
+            if (level < browseDepth)
+            {
+                sb.append("{\"container\": \"yes\", \"playable\": \"yes\", \"type\": \"")
+                        .append(level == 0 ? "artist" : "album").append("\", \"name\": ")
+                        .append(quote((level == 0 ? "Artist " : "Album ") + path))
+                        .append(", \"image_url\": \"\", \"cid\": ").append(quote(CID_PREFIX + path)).append("}");
+            }
+            else
+            {
+                final Song s = getSong(MID_PREFIX + path, i);
+                sb.append("{\"container\": \"no\", \"playable\": \"yes\", \"type\": \"song\", \"name\": ")
+                        .append(quote(s.song)).append(", \"artist\": ").append(quote(s.artist))
+                        .append(", \"album\": ").append(quote(s.album))
+                        .append(", \"image_url\": \"\", \"mid\": ").append(quote(s.mid)).append("}");
+            }
+        }
+        sb.append("]");
+        return getResponse(command, "success", "sid=" + sid + (cid != null ? "&cid=" + cid : "")
+                + "&range=" + range[0] + "," + range[1] + "&returned=" + (range[1] - range[0] + 1)
+                + "&count=" + browseWidth, sb.toString());
+    }
+
+    private String search(String command, Map<String, String> tokens)
+    {
+        final String search = tokens.get("search") != null ? tokens.get("search") : "";
+        final int count = Math.min(browseWidth, 50);
+        final int[] range = getRange(tokens, count);
+        final StringBuilder sb = new StringBuilder("[");
+        for (int i = range[0]; i <= range[1]; i++)
+        {
+            final Song s = getSong(MID_PREFIX + "s." + (i + 1), i);
+            sb.append(i > range[0] ? ", " : "").append("{\"container\": \"no\", \"playable\": \"yes\", ")
+                    .append("\"type\": \"song\", \"name\": ").append(quote(search + " " + s.song))
+                    .append(", \"artist\": ").append(quote(s.artist)).append(", \"album\": ").append(quote(s.album))
+                    .append(", \"image_url\": \"\", \"mid\": ").append(quote(s.mid)).append("}");
+        }
+        sb.append("]");
+        return getResponse(command, "success", "sid=" + tokens.get("sid") + "&search=" + search
+                + "&scid=" + tokens.get("scid") + "&range=" + range[0] + "," + range[1]
+                + "&returned=" + (range[1] - range[0] + 1) + "&count=" + count, sb.toString());
+    }
+
+    /**
+     * Procedure adds a song or all songs of a container to the queue. The aid parameter
+     * is 1: play now, 2: play next, 3: add to end, 4: replace and play.
+     */
+    private void addToQueue(Map<String, String> tokens)
+    {
+        final List<Song> songs = new ArrayList<>();
+        final String mid = tokens.get("mid");
+        final String cid = tokens.get("cid");
+        if (mid != null)
+        {
+            songs.add(getSong(mid, queue.size()));
+        }
+        else if (cid != null && cid.startsWith(CID_PREFIX))
+        {
+            final String path = cid.substring(CID_PREFIX.length());
+            if (path.split("\\.").length == browseDepth)
+            {
+                for (int i = 0; i < browseWidth; i++)
+                {
+                    songs.add(getSong(MID_PREFIX + path + "." + (i + 1), i));
+                }
+            }
+        }
+        if (songs.isEmpty())
+        {
+            return;
+        }
+        final int aid = getInt(tokens, "aid", 3);
+        if (aid == 4)
+        {
+            queue.clear();
+        }
+        final int index = aid == 3 || queue.isEmpty() ? queue.size() : current + 1;
+        queue.addAll(index, songs);
+        queueChanged();
+        if (aid == 1 || aid == 4)
+        {
+            playQueueItem(index);
+        }
+    }
+
+    private Song getSong(String mid, int index)
+    {
+        final DeviceProfile.Track t = profile.tracks.get(index % profile.tracks.size());
+        return new Song(t.title + " (" + mid + ")", t.artist, t.album, mid, t.duration);
+    }
+
+    private void playQueueItem(int index)
+    {
+        current = queue.isEmpty() ? 0 : Math.max(0, Math.min(index, queue.size() - 1));
+        position = 0;
+        sendEvent("event/player_now_playing_changed", "pid=" + pid);
+        if (!queue.isEmpty())
+        {
+            setPlayState("play");
+        }
+    }
+
+    private void setPlayState(String state)
+    {
+        if (state != null && !state.equals(playState))
+        {
+            playState = state;
+            if ("stop".equals(state))
+            {
+                position = 0;
+            }
+            sendEvent("event/player_state_changed", "pid=" + pid + "&state=" + playState);
+        }
+    }
+
+    private void queueChanged()
+    {
+        sendEvent("event/player_queue_changed", "pid=" + pid);
+    }
+
+    private void onTimer()
+    {
+        if (!"play".equals(playState) || current >= queue.size())
+        {
+            return;
+        }
+        final Song s = queue.get(current);
+        position++;
+        if (position > s.duration)
+        {
+            if (current + 1 < queue.size() || "on_all".equals(repeat))
+            {
+                playQueueItem(current + 1 < queue.size() ? current + 1 : 0);
+            }
+            else
+            {
+                setPlayState("stop");
+            }
+            return;
+        }
+        sendEvent("event/player_now_playing_progress", "pid=" + pid + "&cur_pos=" + position * 1000
+                + "&duration=" + s.duration * 1000);
+    }
+
+    private void sendEvent(String event, String message)
+    {
+        final String line = "{\"heos\": {\"command\": \"" + event + "\", \"message\": \"" + message + "\"}}";
+        registered.removeIf(Connection::isClosed);
+        for (Connection c : registered)
+        {
+            send(c, line, 0);
+        }
+    }
+
+    private void send(Connection c, String line, int latency)
+    {
+        if (options.verbose)
+        {
+            log(">> " + (line.length() > 256 ? line.substring(0, 256) + "... (" + line.length() + "B)" : line));
+        }
+        c.send((line + "\r\n").getBytes(IscpFrame.UTF_8), latency);
+    }
+
+    private static String getResponse(String command, String result, String message, String payload)
+    {
+        return "{\"heos\": {\"command\": \"" + command + "\", \"result\": \"" + result
+                + "\", \"message\": " + quote(message) + "}"
+                + (payload != null ? ", \"payload\": " + payload : "") + "}";
+    }
+
+    /**
+     * Procedure returns the first and the last index of the requested range,
+     * limited by the list size and the page size.
+     */
+    private int[] getRange(Map<String, String> tokens, int size)
+    {
+        int start = 0, end = size - 1;
+        final String range = tokens.get("range");
+        if (range != null)
+        {
+            final String[] r = range.split(",");
+            start = Integer.parseInt(r[0].trim());
+            end = r.length > 1 ? Integer.parseInt(r[1].trim()) : end;
+        }
+        end = Math.max(start - 1, Math.min(Math.min(end, size - 1), start + pageSize - 1));
+        return new int[]{ start, end };
+    }
+
+    private static Map<String, String> parseMessage(String message)
+    {
+        final Map<String, String> tokens = new HashMap<>();
+        for (String token : message.split("&"))
+        {
+            final int eq = token.indexOf('=');
+            if (eq > 0)
+            {
+                tokens.put(token.substring(0, eq), token.substring(eq + 1));
+            }
+            else if (!token.isEmpty())
+            {
+                tokens.put(token, "");
+            }
+        }
+        return tokens;
+    }
+
+    private static String getMessage(Map<String, String> tokens)
+    {
+        final StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, String> e : tokens.entrySet())
+        {
+            sb.append(sb.length() > 0 ? "&" : "").append(e.getKey()).append("=").append(e.getValue());
+        }
+        return sb.toString();
+    }
+
+    private static int getInt(Map<String, String> tokens, String key, int defValue)
+    {
+        try
+        {
+            return Integer.parseInt(tokens.get(key));
+        }
+        catch (NumberFormatException e)
+        {
+            return defValue;
+        }
+    }
+
+    private static String quote(String s)
+    {
+        final StringBuilder sb = new StringBuilder("\"");
+        for (char ch : s.toCharArray())
+        {
+            switch (ch)
+            {
+            case '"':
+                sb.append("\\\"");
+                break;
+            case '\\':
+                sb.append("\\\\");
+                break;
+            default:
+                if (ch < 0x20)
+                {
+                    sb.append(String.format(Locale.ENGLISH, "\\u%04x", (int) ch));
+                }
+                else
+                {
+                    sb.append(ch);
+                }
+            }
+        }
+        return sb.append("\"").toString();
+    }
+}
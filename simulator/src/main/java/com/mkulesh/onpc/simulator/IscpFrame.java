@@ -0,0 +1,161 @@
+/*
+ * Enhanced Music Controller
+ * Copyright (C) 2018-2023 by Mikhail Kulesh
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with this program.
+ */
+
+package com.mkulesh.onpc.simulator;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * EISCP framing as used on TCP and UDP port 60128: the "ISCP" header with header size,
+ * data size and version, followed by the message "!1CODEPARAMETERS" that is
+ * terminated by EOF, CR and LF.
+ */
+final class IscpFrame
+{
+    final static Charset UTF_8 = Charset.forName("UTF-8");
+    private final static byte[] MSG_START = "ISCP".getBytes(UTF_8);
+    private final static int HEADER_SIZE = 16;
+    private final static int EOF = 0x1A;
+    private final static int CR = 0x0D;
+    private final static int LF = 0x0A;
+
+    final char modelCategoryId;
+    final String code;
+    final String parameters;
+
+    IscpFrame(char modelCategoryId, String code, String parameters)
+    {
+        this.modelCategoryId = modelCategoryId;
+        this.code = code;
+        this.parameters = parameters;
+    }
+
+    IscpFrame(String code, String parameters)
+    {
+        this('1', code, parameters);
+    }
+
+    boolean isQuery()
+    {
+        return "QSTN".equals(parameters);
+    }
+
+    @Override
+    public String toString()
+    {
+        return code + "(" + (parameters.length() > 64 ? parameters.length() + "B" : parameters) + ")";
+    }
+
+    byte[] getBytes()
+    {
+        final byte[] body = ("!" + modelCategoryId + code + parameters).getBytes(UTF_8);
+        final int dataSize = body.length + 3;
+        final ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + dataSize);
+        buffer.put(MSG_START);
+        buffer.putInt(HEADER_SIZE);
+        buffer.putInt(dataSize);
+        buffer.put((byte) 1); // version
+        buffer.put(new byte[3]); // reserved
+        buffer.put(body);
+        buffer.put((byte) EOF);
+        buffer.put((byte) CR);
+        buffer.put((byte) LF);
+        return buffer.array();
+    }
+
+    /**
+     * Incremental decoder of an EISCP stream. The incomplete tail of the received data
+     * is kept until the next call.
+     */
+    static class Decoder
+    {
+        private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+        List<IscpFrame> decode(byte[] data, int length)
+        {
+            pending.write(data, 0, length);
+            final byte[] bytes = pending.toByteArray();
+            final List<IscpFrame> frames = new ArrayList<>();
+            int pos = 0;
+            while (true)
+            {
+                final int start = indexOf(bytes, pos);
+                if (start < 0 || start + HEADER_SIZE > bytes.length)
+                {
+                    // keep a possible partial header
+                    pos = start < 0 ? Math.max(pos, bytes.length - MSG_START.length + 1) : start;
+                    break;
+                }
+                final ByteBuffer header = ByteBuffer.wrap(bytes, start + MSG_START.length, 8);
+                final int headerSize = header.getInt();
+                final int dataSize = header.getInt();
+                if (headerSize < HEADER_SIZE || dataSize < 0)
+                {
+                    // invalid header: skip the start marker
+                    pos = start + MSG_START.length;
+                    continue;
+                }
+                if (start + headerSize + dataSize > bytes.length)
+                {
+                    pos = start;
+                    break;
+                }
+                final IscpFrame f = parse(bytes, start + headerSize, dataSize);
+                if (f != null)
+                {
+                    frames.add(f);
+                }
+                pos = start + headerSize + dataSize;
+            }
+            pending.reset();
+            if (pos < bytes.length)
+            {
+                pending.write(bytes, pos, bytes.length - pos);
+            }
+            return frames;
+        }
+    }
+
+    static IscpFrame parse(byte[] bytes, int offset, int length)
+    {
+        int end = offset;
+        while (end < offset + length && bytes[end] != EOF && bytes[end] != CR && bytes[end] != LF)
+        {
+            end++;
+        }
+        final String body = new String(bytes, offset, end - offset, UTF_8);
+        if (body.length() < 5 || body.charAt(0) != '!')
+        {
+            return null;
+        }
+        return new IscpFrame(body.charAt(1), body.substring(2, 5), body.substring(5));
+    }
+
+    private static int indexOf(byte[] bytes, int from)
+    {
+        for (int i = from; i + MSG_START.length <= bytes.length; i++)
+        {
+            if (bytes[i] == MSG_START[0] && bytes[i + 1] == MSG_START[1]
+                    && bytes[i + 2] == MSG_START[2] && bytes[i + 3] == MSG_START[3])
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,364 @@
+/*
+ * Enhanced Music Controller
+ * Copyright (C) 2018-2023 by Mikhail Kulesh
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with this program.
+ */
+
+package com.mkulesh.onpc.simulator;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A simulated Onkyo/Pioneer receiver that speaks EISCP. It answers queries from the
+ * device profile, handles NRI, MDI, NLT/NLA list and NJA cover requests, and pushes
+ * unsolicited messages like a real device: NTM while playing, volume and track changes.
+ */
+final class IscpReceiver extends SimulatedServer
+{
+    private final static String NOT_AVAILABLE = "N/A";
+    private final static int COVER_PACKET_SIZE = 1024;
+
+    private final DeviceProfile profile;
+    private final String identifier;
+    private final Map<String, String> state;
+    private final Random random = new Random();
+    private int track = 0, position = 0;
+    private boolean coverAsLink = true;
+
+    IscpReceiver(DeviceProfile profile, String name, int port, String identifier, Simulator.Options options)
+    {
+        super(name, port, options);
+        this.profile = profile;
+        this.identifier = identifier;
+        this.state = new HashMap<>(profile.state);
+        state.put("NFN", name);
+        putIfAbsent("PWR", "01");
+        putIfAbsent("MVL", "20");
+        putIfAbsent("AMT", "00");
+        putIfAbsent("SLI", "2B");
+        putIfAbsent("NST", "P--");
+    }
+
+    private void putIfAbsent(String code, String par)
+    {
+        if (!state.containsKey(code))
+        {
+            state.put(code, par);
+        }
+    }
+
+    @Override
+    void start() throws IOException
+    {
+        super.start();
+        if (options.timePeriod > 0)
+        {
+            executor.scheduleAtFixedRate(this::onTimer, options.timePeriod, options.timePeriod, TimeUnit.MILLISECONDS);
+        }
+        if (options.volumePeriod > 0)
+        {
+            executor.scheduleAtFixedRate(this::onVolumeChange,
+                    options.volumePeriod, options.volumePeriod, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Discovery response for the ECN query: model/port/area/identifier
+     */
+    String getDiscoveryResponse()
+    {
+        return profile.model + "/" + port + "/" + profile.area + "/" + identifier;
+    }
+
+    @Override
+    void onConnected(Connection c)
+    {
+        c.attachment = new IscpFrame.Decoder();
+    }
+
+    @Override
+    void onData(Connection c, byte[] data)
+    {
+        for (IscpFrame f : ((IscpFrame.Decoder) c.attachment).decode(data, data.length))
+        {
+            if (options.verbose)
+            {
+                log("<< " + f);
+            }
+            processFrame(c, f);
+        }
+    }
+
+    private void send(Connection c, String code, String par)
+    {
+        if (options.verbose)
+        {
+            log(">> " + code + "(" + (par.length() > 64 ? par.length() + "B" : par) + ")");
+        }
+        c.send(new IscpFrame(code, par).getBytes(), options.getCommandLatency(code));
+    }
+
+    private void broadcast(String code, String par)
+    {
+        broadcast(new IscpFrame(code, par).getBytes());
+    }
+
+    private void processFrame(Connection c, IscpFrame f)
+    {
+        if (f.isQuery())
+        {
+            send(c, f.code, getQueryResponse(f.code));
+            return;
+        }
+        switch (f.code)
+        {
+        case "NLA":
+            send(c, "NLA", getListResponse(f.parameters));
+            break;
+        case "NJA":
+            if ("LINK".equals(f.parameters) || "BMP".equals(f.parameters))
+            {
+                coverAsLink = "LINK".equals(f.parameters);
+            }
+            else if ("REQ".equals(f.parameters))
+            {
+                sendCover(c);
+            }
+            break;
+        case "NTC":
+            processOperation(f.parameters);
+            break;
+        case "MVL":
+            setVolume(f.parameters);
+            break;
+        default:
+            state.put(f.code, f.parameters);
+            broadcast(f.code, f.parameters);
+            break;
+        }
+    }
+
+    private String getQueryResponse(String code)
+    {
+        final DeviceProfile.Track t = profile.tracks.get(track);
+        switch (code)
+        {
+        case "ECN":
+            return getDiscoveryResponse();
+        case "NRI":
+            return profile.receiverInformation != null ? profile.receiverInformation : NOT_AVAILABLE;
+        case "MDI":
+            return getMultiroomInformation();
+        case "NLT":
+            return getListTitle();
+        case "NTI":
+            return t.title;
+        case "NAT":
+            return t.artist;
+        case "NAL":
+            return t.album;
+        case "NTR":
+            return String.format(Locale.ENGLISH, "%04d/%04d", track + 1, profile.tracks.size());
+        case "NTM":
+            return getTimeInfo();
+        default:
+            final String par = state.get(code);
+            return par != null ? par : NOT_AVAILABLE;
+        }
+    }
+
+    private String getMultiroomInformation()
+    {
+        return "<mdi><deviceid>" + identifier + "</deviceid><netstandby>1</netstandby>"
+                + "<currentversion>100</currentversion>"
+                + "<zonelist><zone id=\"1\" groupid=\"0\" ch=\"ST\" role=\"none\" roomname=\"" + name
+                + "\" groupname=\"\" powerstate=\"" + ("01".equals(state.get("PWR")) ? 1 : 0)
+                + "\" iconid=\"1\" color=\"0\" delay=\"0\" /></zonelist></mdi>";
+    }
+
+    private String getListTitle()
+    {
+        // xxuycccciiiillsraabbss + title: Music Server, list, one layer
+        return String.format(Locale.ENGLISH, "00010000%04x0100000000Music Server", profile.listItems.size());
+    }
+
+    private String getListResponse(String request)
+    {
+        // Request "Lzzzzllxxxxyyyy": sequence, layer, start and end item
+        final String seq = request.length() >= 5 ? request.substring(1, 5) : "0000";
+        final StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"utf-8\"?>"
+                + "<response status=\"ok\"><items offset=\"0\" totalitems=\"" + profile.listItems.size() + "\">");
+        for (String item : profile.listItems)
+        {
+            xml.append("<item iconid=\"2d\" title=\"").append(escape(item)).append("\" url=\"\" />");
+        }
+        xml.append("</items></response>");
+        // tzzzzsurr<xml>: X type, sequence, status S, UI list, reserved
+        return "X" + seq + "S000" + xml;
+    }
+
+    private static String escape(String s)
+    {
+        return s.replace("&", "&amp;").replace("\"", "&quot;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
+    private void sendCover(Connection c)
+    {
+        if (!coverAsLink && profile.cover != null)
+        {
+            final byte[] cover = profile.cover;
+            // The app expects a start and an end packet: a small cover is split into two packets
+            final int packetSize = cover.length > COVER_PACKET_SIZE ?
+                    COVER_PACKET_SIZE : Math.max(1, (cover.length + 1) / 2);
+            for (int offset = 0; offset < cover.length; offset += packetSize)
+            {
+                final int length = Math.min(packetSize, cover.length - offset);
+                final char flag = offset == 0 ? '0' : (offset + length >= cover.length ? '2' : '1');
+                final StringBuilder par = new StringBuilder(2 + 2 * length);
+                par.append('1').append(flag);
+                for (int i = offset; i < offset + length; i++)
+                {
+                    par.append(String.format(Locale.ENGLISH, "%02X", cover[i] & 0xFF));
+                }
+                send(c, "NJA", par.toString());
+            }
+        }
+        else if (profile.coverUrl != null)
+        {
+            send(c, "NJA", "2-" + profile.coverUrl);
+        }
+        else
+        {
+            send(c, "NJA", "n-");
+        }
+    }
+
+    private void processOperation(String cmd)
+    {
+        switch (cmd)
+        {
+        case "PLAY":
+            setPlayStatus('P');
+            break;
+        case "PAUSE":
+            setPlayStatus(isPlaying() ? 'p' : 'P');
+            break;
+        case "STOP":
+            position = 0;
+            setPlayStatus('S');
+            break;
+        case "TRUP":
+            changeTrack(1);
+            break;
+        case "TRDN":
+            changeTrack(-1);
+            break;
+        default:
+            break;
+        }
+    }
+
+    private boolean isPlaying()
+    {
+        return "01".equals(state.get("PWR")) && state.get("NST").charAt(0) == 'P';
+    }
+
+    private void setPlayStatus(char status)
+    {
+        final String par = status + state.get("NST").substring(1);
+        state.put("NST", par);
+        broadcast("NST", par);
+    }
+
+    private void setVolume(String par)
+    {
+        int volume = Integer.parseInt(state.get("MVL"), 16);
+        if (par.startsWith("UP"))
+        {
+            volume++;
+        }
+        else if (par.startsWith("DOWN"))
+        {
+            volume--;
+        }
+        else
+        {
+            try
+            {
+                volume = Integer.parseInt(par, 16);
+            }
+            catch (NumberFormatException e)
+            {
+                return;
+            }
+        }
+        volume = Math.max(0, Math.min(0x64, volume));
+        state.put("MVL", String.format(Locale.ENGLISH, "%02X", volume));
+        broadcast("MVL", state.get("MVL"));
+    }
+
+    private void changeTrack(int delta)
+    {
+        final int size = profile.tracks.size();
+        track = ((track + delta) % size + size) % size;
+        position = 0;
+        final DeviceProfile.Track t = profile.tracks.get(track);
+        broadcast("NTI", t.title);
+        broadcast("NAT", t.artist);
+        broadcast("NAL", t.album);
+        broadcast("NTR", getQueryResponse("NTR"));
+        broadcast("NTM", getTimeInfo());
+        if (profile.coverUrl != null)
+        {
+            broadcast("NJA", "2-" + profile.coverUrl);
+        }
+    }
+
+    private String getTimeInfo()
+    {
+        return formatTime(position) + "/" + formatTime(profile.tracks.get(track).duration);
+    }
+
+    private static String formatTime(int seconds)
+    {
+        return String.format(Locale.ENGLISH, "%02d:%02d", seconds / 60, seconds % 60);
+    }
+
+    private void onTimer()
+    {
+        if (!isPlaying() || !hasConnections())
+        {
+            return;
+        }
+        position++;
+        if (position >= profile.tracks.get(track).duration)
+        {
+            changeTrack(1);
+        }
+        else
+        {
+            broadcast("NTM", getTimeInfo());
+        }
+    }
+
+    private void onVolumeChange()
+    {
+        if ("01".equals(state.get("PWR")) && hasConnections())
+        {
+            setVolume(String.format(Locale.ENGLISH, "%02X", Integer.parseInt(state.get("MVL"), 16) + random.nextInt(7) - 3));
+        }
+    }
+}
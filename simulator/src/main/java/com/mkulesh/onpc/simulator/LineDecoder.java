@@ -0,0 +1,49 @@
+/*
+ * Enhanced Music Controller
+ * Copyright (C) 2018-2023 by Mikhail Kulesh
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with this program.
+ */
+
+package com.mkulesh.onpc.simulator;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits the input stream of a text protocol (DCP or HEOS) into lines terminated
+ * by CR, LF or CR LF. An incomplete line is kept until its remaining part is received.
+ */
+final class LineDecoder
+{
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+    List<String> decode(byte[] data)
+    {
+        final List<String> lines = new ArrayList<>();
+        for (byte b : data)
+        {
+            if (b == '\r' || b == '\n')
+            {
+                if (buffer.size() > 0)
+                {
+                    lines.add(new String(buffer.toByteArray(), IscpFrame.UTF_8).trim());
+                    buffer.reset();
+                }
+            }
+            else
+            {
+                buffer.write(b);
+            }
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Enhanced Music Controller
+ * Copyright (C) 2018-2023 by Mikhail Kulesh
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with this program.
+ */
+
+package com.mkulesh.onpc.simulator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A TCP server of a simulated device. All device logic runs on a single scheduler thread:
+ * received data is handed over to this thread, and responses are sent from it after the
+ * configured latency and jitter. The responses of a connection keep their order.
+ * Each connection has its own writer thread with a bounded queue, so a slow client does
+ * not delay other clients: if its queue is full, the client is disconnected.
+ */
+abstract class SimulatedServer
+{
+    final String name;
+    final int port;
+    final Simulator.Options options;
+    final ScheduledExecutorService executor;
+    private final static int WRITE_QUEUE_SIZE = 1024;
+    private final List<Connection> connections = new CopyOnWriteArrayList<>();
+    private final Random random = new Random();
+    private ServerSocket serverSocket = null;
+
+    class Connection
+    {
+        private final Socket socket;
+        private final OutputStream out;
+        private final ArrayDeque<byte[]> pending = new ArrayDeque<>();
+        private final BlockingQueue<byte[]> writeQueue = new ArrayBlockingQueue<>(WRITE_QUEUE_SIZE);
+        private long lastSendTime = 0;
+        Object attachment = null; // protocol decoder of this connection
+
+        Connection(Socket socket) throws IOException
+        {
+            this.socket = socket;
+            this.out = socket.getOutputStream();
+        }
+
+        boolean isClosed()
+        {
+            return socket.isClosed();
+        }
+
+        String getRemote()
+        {
+            return socket.getRemoteSocketAddress().toString();
+        }
+
+        void send(byte[] bytes)
+        {
+            send(bytes, 0);
+        }
+
+        /**
+         * Procedure sends the data after the simulated latency, extended by the given
+         * command-specific latency. Shall only be called from the scheduler thread.
+         */
+        void send(byte[] bytes, int commandLatency)
+        {
+            final long now = System.nanoTime();
+            final long delay = TimeUnit.MILLISECONDS.toNanos(options.latency + commandLatency)
+                    + (options.jitter > 0 ? TimeUnit.MILLISECONDS.toNanos(random.nextInt(2 * options.jitter + 1) - options.jitter) : 0);
+            lastSendTime = Math.max(lastSendTime, now + Math.max(0, delay));
+            // The send times are ascending: every task writes the oldest pending data,
+            // even if it is executed slightly before an earlier scheduled task
+            pending.add(bytes);
+            executor.schedule(() ->
+            {
+                if (!isClosed() && !writeQueue.offer(pending.poll()))
+                {
+                    log("client " + getRemote() + " does not read, dropped");
+                    close();
+                }
+            }, lastSendTime - now, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Procedure writes the queued data in the writer thread of this connection
+         */
+        private void writeConnection()
+        {
+            try
+            {
+                while (!isClosed())
+                {
+                    final byte[] bytes = writeQueue.poll(1, TimeUnit.SECONDS);
+                    if (bytes != null)
+                    {
+                        out.write(bytes);
+                        out.flush();
+                    }
+                }
+            }
+            catch (IOException | InterruptedException e)
+            {
+                // connection closed
+            }
+            close();
+        }
+
+        void close()
+        {
+            if (connections.remove(this))
+            {
+                log("disconnected " + getRemote());
+            }
+            try
+            {
+                socket.close();
+            }
+            catch (IOException e)
+            {
+                // nothing to do
+            }
+        }
+    }
+
+    SimulatedServer(String name, int port, Simulator.Options options)
+    {
+        this.name = name;
+        this.port = port;
+        this.options = options;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r ->
+        {
+            final Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    void start() throws IOException
+    {
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(port));
+        final Thread t = new Thread(this::acceptConnections, name + ":" + port);
+        t.setDaemon(true);
+        t.start();
+        log("listening on port " + port);
+    }
+
+    void stop()
+    {
+        try
+        {
+            if (serverSocket != null)
+            {
+                serverSocket.close();
+            }
+        }
+        catch (IOException e)
+        {
+            // nothing to do
+        }
+        for (Connection c : connections)
+        {
+            c.close();
+        }
+        executor.shutdownNow();
+    }
+
+    private void acceptConnections()
+    {
+        while (!serverSocket.isClosed())
+        {
+            try
+            {
+                final Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                final Connection c = new Connection(socket);
+                connections.add(c);
+                log("connected " + c.getRemote());
+                executor.execute(() -> onConnected(c));
+                final Thread t = new Thread(() -> readConnection(c, socket), name + ":" + c.getRemote());
+                t.setDaemon(true);
+                t.start();
+                final Thread w = new Thread(c::writeConnection, name + ":" + c.getRemote() + ":writer");
+                w.setDaemon(true);
+                w.start();
+            }
+            catch (IOException e)
+            {
+                if (!serverSocket.isClosed())
+                {
+                    log("accept error: " + e.getLocalizedMessage());
+                }
+            }
+        }
+    }
+
+    private void readConnection(Connection c, Socket socket)
+    {
+        try
+        {
+            final InputStream in = socket.getInputStream();
+            final byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) > 0)
+            {
+                final byte[] data = new byte[n];
+                System.arraycopy(buffer, 0, data, 0, n);
+                executor.execute(() -> onData(c, data));
+            }
+        }
+        catch (IOException e)
+        {
+            // connection closed
+        }
+        c.close();
+    }
+
+    boolean hasConnections()
+    {
+        return !connections.isEmpty();
+    }
+
+    void broadcast(byte[] bytes)
+    {
+        broadcast(bytes, 0);
+    }
+
+    void broadcast(byte[] bytes, int commandLatency)
+    {
+        for (Connection c : connections)
+        {
+            c.send(bytes, commandLatency);
+        }
+    }
+
+    void log(String text)
+    {
+        System.out.println(name + ": " + text);
+    }
+
+    abstract void onConnected(Connection c);
+
+    abstract void onData(Connection c, byte[] data);
+}
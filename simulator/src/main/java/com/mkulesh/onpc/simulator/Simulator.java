@@ -0,0 +1,198 @@
+/*
+ * Enhanced Music Controller
+ * Copyright (C) 2018-2023 by Mikhail Kulesh
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details. You should have received a copy of the GNU General
+ * Public License along with this program.
+ */
+
+package com.mkulesh.onpc.simulator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Starts a number of simulated receivers on consecutive TCP ports, for example
+ * "--count 8 --port 60128 --latency 20 --jitter 10 --profile onkyo".
+ * A Denon profile starts the DCP, HEOS and HTTP endpoints of the device, for example
+ * "--profile denon --port 23 --command-latency browse/browse=300,OPTPN=150".
+ */
+public final class Simulator
+{
+    static class Options
+    {
+        int count = 1;
+        int port = 60128;
+        int latency = 0;      // response latency in milliseconds
+        int jitter = 0;       // maximal deviation of the latency in milliseconds
+        int timePeriod = 1000;    // NTM period in milliseconds, 0 disables it
+        int volumePeriod = 0;     // period of random volume changes in milliseconds, 0 disables it
+        int heosPort = 1255;      // HEOS JSON port of the first Denon receiver
+        int httpPort = 8080;      // HTTP port of the first Denon receiver
+        boolean discovery = true;
+        boolean verbose = false;
+        final List<String> profiles = new ArrayList<>();
+        final Map<String, Integer> commandLatency = new TreeMap<>();
+
+        /**
+         * Procedure returns the additional latency of the given command: the longest
+         * configured command prefix is used.
+         */
+        int getCommandLatency(String command)
+        {
+            int latency = 0, length = -1;
+            for (Map.Entry<String, Integer> e : commandLatency.entrySet())
+            {
+                if (command.startsWith(e.getKey()) && e.getKey().length() > length)
+                {
+                    latency = e.getValue();
+                    length = e.getKey().length();
+                }
+            }
+            return latency;
+        }
+    }
+
+    private final static String USAGE = "Usage: Simulator [options]\n"
+            + "  --count N          number of simulated receivers (1)\n"
+            + "  --port P           TCP port of the first receiver (60128)\n"
+            + "  --profile A[,B]    device profiles, built-in name or properties file (onkyo)\n"
+            + "  --latency MS       response latency (0)\n"
+            + "  --jitter MS        latency jitter (0)\n"
+            + "  --command-latency CMD=MS[,CMD=MS]\n"
+            + "                     additional latency of commands with given prefix\n"
+            + "  --heos-port P      HEOS port of the first Denon receiver (1255)\n"
+            + "  --http-port P      HTTP port of the first Denon receiver (8080)\n"
+            + "  --time-period MS   NTM period while playing, 0 to disable (1000)\n"
+            + "  --volume-period MS random volume changes, 0 to disable (0)\n"
+            + "  --no-discovery     do not answer UDP discovery requests\n"
+            + "  --verbose          log every message";
+
+    public static void main(String[] args) throws Exception
+    {
+        final Options options = new Options();
+        for (int i = 0; i < args.length; i++)
+        {
+            final String arg = args[i];
+            final String value = i + 1 < args.length ? args[i + 1] : null;
+            switch (arg)
+            {
+            case "--count":
+                options.count = Integer.parseInt(value);
+                i++;
+                break;
+            case "--port":
+                options.port = Integer.parseInt(value);
+                i++;
+                break;
+            case "--profile":
+                for (String p : value.split(","))
+                {
+                    options.profiles.add(p.trim());
+                }
+                i++;
+                break;
+            case "--latency":
+                options.latency = Integer.parseInt(value);
+                i++;
+                break;
+            case "--jitter":
+                options.jitter = Integer.parseInt(value);
+                i++;
+                break;
+            case "--command-latency":
+                for (String p : value.split(","))
+                {
+                    final String[] tokens = p.split("=");
+                    options.commandLatency.put(tokens[0].trim(), Integer.parseInt(tokens[1].trim()));
+                }
+                i++;
+                break;
+            case "--heos-port":
+                options.heosPort = Integer.parseInt(value);
+                i++;
+                break;
+            case "--http-port":
+                options.httpPort = Integer.parseInt(value);
+                i++;
+                break;
+            case "--time-period":
+                options.timePeriod = Integer.parseInt(value);
+                i++;
+                break;
+            case "--volume-period":
+                options.volumePeriod = Integer.parseInt(value);
+                i++;
+                break;
+            case "--no-discovery":
+                options.discovery = false;
+                break;
+            case "--verbose":
+                options.verbose = true;
+                break;
+            default:
+                System.out.println(USAGE);
+                return;
+            }
+        }
+        if (options.profiles.isEmpty())
+        {
+            options.profiles.add("onkyo");
+        }
+
+        final List<IscpReceiver> receivers = new ArrayList<>();
+        final List<DcpReceiver> dcpReceivers = new ArrayList<>();
+        for (int i = 0; i < options.count; i++)
+        {
+            final DeviceProfile profile = DeviceProfile.load(options.profiles.get(i % options.profiles.size()));
+            final String name = options.count > 1 ? profile.model + " #" + (i + 1) : profile.model;
+            if (profile.isDcp())
+            {
+                // The app always uses the default HEOS and HTTP ports: the further
+                // receivers are only reachable with these ports for other clients
+                final DcpReceiver r = new DcpReceiver(profile, name, options.port + i,
+                        options.heosPort + i, options.httpPort + i, options);
+                r.start();
+                dcpReceivers.add(r);
+                continue;
+            }
+            final String identifier = String.format(Locale.ENGLISH, "0009B0%06X", options.port + i);
+            final IscpReceiver r = new IscpReceiver(profile, name, options.port + i, identifier, options);
+            r.start();
+            receivers.add(r);
+        }
+
+        final DiscoveryResponder discovery = options.discovery && !receivers.isEmpty() ?
+                new DiscoveryResponder(options.port, receivers) : null;
+        if (discovery != null)
+        {
+            discovery.start();
+        }
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() ->
+        {
+            if (discovery != null)
+            {
+                discovery.stop();
+            }
+            for (IscpReceiver r : receivers)
+            {
+                r.stop();
+            }
+            for (DcpReceiver r : dcpReceivers)
+            {
+                r.stop();
+            }
+        }));
+        Thread.currentThread().join();
+    }
+}